@@ -0,0 +1,142 @@
+// Nombre del Programa: Benchmark de Arranque del Servidor
+// Descripción: Mide un arranque en frío, cada medición en una JVM nueva (SingleShotTime, sin calentamiento de JMH y
+// 10 forks), con y sin el precalentamiento del servidor (servidor.precalentamiento.mensajes):
+// - hastaListo: desde new Servidor hasta que un cliente conectado recibe el eco de su primer mensaje; incluye el
+//   precalentamiento, que es lo que cuesta.
+// - primerosMensajes: con el servidor ya arrancado (fuera de la medición), las primeras 1.000 idas y vueltas, que sin
+//   precalentamiento pasan por el intérprete; es lo que ven los clientes que se reconectan después de un reinicio.
+// Ejecución: mvn -Pjmh test-compile exec:exec -Djmh.argumentos=Arranque
+
+package com.proyecto.cliente_servidor2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(value = 10, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class ArranqueBenchmark {
+    private static final int MENSAJES = 1_000;
+
+    // Mensajes del precalentamiento (0: sin precalentamiento)
+    @Param({"0", "20000"})
+    int precalentamiento;
+
+    private Servidor servidor; // El que arranca hastaListo
+    private ClientePrueba medido;
+    private ClientePrueba sumidero;
+
+    @TearDown
+    public void terminar() throws IOException {
+        if (servidor != null) {
+            medido.cerrar();
+            sumidero.cerrar();
+            servidor.detener();
+        }
+    }
+
+    @Benchmark
+    public String hastaListo() throws IOException {
+        servidor = new Servidor(configuracion());
+        int puerto = servidor.iniciar();
+        sumidero = new ClientePrueba(puerto, "sumidero");
+        medido = new ClientePrueba(puerto, "medido");
+        return medido.idaYVuelta("Privado:sumidero:listo");
+    }
+
+    @Benchmark
+    public String primerosMensajes(ServidorArrancado arrancado) throws IOException {
+        String respuesta = null;
+        for (int i = 0; i < MENSAJES; i++) {
+            respuesta = arrancado.medido.idaYVuelta("Privado:sumidero:hola, ¿cómo va todo por allá?");
+        }
+        return respuesta;
+    }
+
+    ConfiguracionServidor configuracion() {
+        ConfiguracionServidor configuracion = new ConfiguracionServidor();
+        configuracion.setPuerto(0);
+        configuracion.setTasaMensajes(0);
+        configuracion.setMensajesPrecalentamiento(precalentamiento);
+        return configuracion;
+    }
+
+    // Servidor arrancado antes de medir, con el cliente medido y un sumidero que descarta lo que recibe
+    @State(Scope.Benchmark)
+    public static class ServidorArrancado {
+        private Servidor servidor;
+        private ClientePrueba medido;
+        private ClientePrueba sumidero;
+        private Thread descarte;
+
+        @Setup
+        public void preparar(ArranqueBenchmark benchmark) throws IOException {
+            servidor = new Servidor(benchmark.configuracion());
+            int puerto = servidor.iniciar();
+            sumidero = new ClientePrueba(puerto, "sumidero");
+            medido = new ClientePrueba(puerto, "medido");
+            descarte = Thread.ofVirtual().start(() -> sumidero.descartar());
+        }
+
+        @TearDown
+        public void terminar() throws Exception {
+            medido.cerrar();
+            sumidero.cerrar();
+            descarte.join();
+            servidor.detener();
+        }
+    }
+
+    // Cliente de texto mínimo con E/S bloqueante
+    private static final class ClientePrueba {
+        private final Socket socket;
+        private final BufferedReader entrada;
+        private final Writer salida;
+        private final String eco; // Prefijo del eco de sus propios mensajes
+
+        ClientePrueba(int puerto, String nombre) throws IOException {
+            socket = new Socket("localhost", puerto);
+            socket.setTcpNoDelay(true);
+            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            salida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            eco = "Privado:" + nombre + ":";
+            salida.write(nombre + "\n");
+            salida.flush();
+        }
+
+        // Función que envía la línea y espera su eco; las demás líneas (presencia, mensajes de otros) se saltan
+        String idaYVuelta(String linea) throws IOException {
+            salida.write(linea);
+            salida.write('\n');
+            salida.flush();
+            String respuesta;
+            while ((respuesta = entrada.readLine()) != null) {
+                if (respuesta.startsWith(eco)) {
+                    return respuesta;
+                }
+            }
+            throw new EOFException("El servidor cerró la conexión");
+        }
+
+        void descartar() {
+            try {
+                while (entrada.readLine() != null) {
+                    // Se descarta
+                }
+            } catch (IOException e) {
+                // La conexión se cerró al terminar el benchmark
+            }
+        }
+
+        void cerrar() throws IOException {
+            socket.close();
+        }
+    }
+}
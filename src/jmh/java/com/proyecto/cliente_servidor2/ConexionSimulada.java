@@ -0,0 +1,42 @@
+// Nombre del Programa: Conexión Simulada para Benchmarks
+// Descripción: Conexión sin socket que vacía su cola de salida con llenar() en cuanto recibe una carga, igual que el
+// escritor de un motor pero sin tocar la red. Así los benchmarks miden el trabajo del servidor (análisis, búsqueda,
+// colas y copia de bytes) sin el ruido del sistema operativo. Todas comparten un buffer: se usan desde un solo hilo.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+
+class ConexionSimulada extends Conexion {
+    private static final ByteBuffer BUFFER = ByteBuffer.allocateDirect(PoolBuffers.TAMANO_BUFFER);
+
+    private long bytesEnviados; // Bytes que se habrían escrito en el socket
+
+    // Conexión recién aceptada: su primera línea será el nombre
+    ConexionSimulada(Servidor servidor) {
+        super(servidor);
+    }
+
+    // Conexión ya registrada, para agregarla directamente a un RegistroClientes
+    ConexionSimulada(Servidor servidor, String nombre, int id) {
+        super(servidor);
+        setNombreCliente(nombre);
+        setIdCliente(id);
+    }
+
+    @Override
+    protected void hayDatosParaEnviar() {
+        while (llenar(BUFFER)) {
+            bytesEnviados += BUFFER.position();
+            BUFFER.clear();
+        }
+    }
+
+    long getBytesEnviados() {
+        return bytesEnviados;
+    }
+
+    @Override
+    protected void cerrarTransporte() {
+    }
+}
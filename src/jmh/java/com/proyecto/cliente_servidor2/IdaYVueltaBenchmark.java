@@ -0,0 +1,148 @@
+// Nombre del Programa: Benchmark de Ida y Vuelta por Loopback
+// Descripción: Mide la latencia de un mensaje privado a través de un servidor real en localhost: el cliente medido envía
+// "Privado:sumidero:texto" y espera el eco que el servidor le devuelve. Mientras tanto, N clientes simulados hacen lo
+// mismo sin pausa en sus propios hilos, de modo que la latencia se mide con el servidor ocupado.
+// JMH reporta la distribución de tiempos (percentiles p50, p99, p99.9...) para cada motor de conexiones.
+// Ejecución: mvn -Pjmh test-compile exec:exec -Djmh.argumentos=IdaYVuelta
+
+package com.proyecto.cliente_servidor2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Benchmark)
+public class IdaYVueltaBenchmark {
+
+    @Param({ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+    String motor;
+
+    // Clientes que generan carga además del medido
+    @Param({"0", "100"})
+    int clientesSimulados;
+
+    private Servidor servidor;
+    private ClientePrueba medido;
+    private ClientePrueba sumidero;
+    private final List<ClientePrueba> simulados = new ArrayList<>();
+    private final List<Thread> hilos = new ArrayList<>();
+    private volatile boolean activo;
+
+    @Setup
+    public void preparar() throws Exception {
+        ConfiguracionServidor configuracion = new ConfiguracionServidor();
+        configuracion.setPuerto(0);
+        configuracion.setMotor(motor);
+        configuracion.setTasaMensajes(0); // Los clientes envían sin pausa; el límite de mensajes mediría la espera
+        servidor = new Servidor(configuracion);
+        int puerto = servidor.iniciar();
+
+        // El sumidero recibe los mensajes del cliente medido y los descarta
+        sumidero = new ClientePrueba(puerto, "sumidero");
+        medido = new ClientePrueba(puerto, "medido");
+        activo = true;
+        hilos.add(Thread.ofVirtual().start(() -> descartar(sumidero)));
+
+        // Los clientes simulados se envían mensajes por parejas (i con i ^ 1)
+        int total = clientesSimulados + (clientesSimulados % 2);
+        for (int i = 0; i < total; i++) {
+            simulados.add(new ClientePrueba(puerto, "simulado-" + i));
+        }
+        for (int i = 0; i < total; i++) {
+            ClientePrueba cliente = simulados.get(i);
+            String linea = "Privado:simulado-" + (i ^ 1) + ":carga de fondo";
+            hilos.add(Thread.ofVirtual().start(() -> generarCarga(cliente, linea)));
+        }
+        // Esperar a que el servidor haya registrado a todos antes de medir
+        medido.idaYVuelta("Privado:sumidero:listo");
+    }
+
+    @TearDown
+    public void terminar() throws Exception {
+        activo = false;
+        medido.cerrar();
+        sumidero.cerrar();
+        for (ClientePrueba cliente : simulados) {
+            cliente.cerrar();
+        }
+        for (Thread hilo : hilos) {
+            hilo.join();
+        }
+        servidor.detener();
+    }
+
+    @Benchmark
+    public String idaYVuelta() throws IOException {
+        return medido.idaYVuelta("Privado:sumidero:hola, ¿cómo va todo por allá?");
+    }
+
+    private void generarCarga(ClientePrueba cliente, String linea) {
+        try {
+            while (activo) {
+                cliente.idaYVuelta(linea);
+            }
+        } catch (IOException e) {
+            // La conexión se cerró al terminar el benchmark
+        }
+    }
+
+    private void descartar(ClientePrueba cliente) {
+        try {
+            while (cliente.leer() != null) {
+                // Se descarta
+            }
+        } catch (IOException e) {
+            // La conexión se cerró al terminar el benchmark
+        }
+    }
+
+    // Cliente de texto mínimo con E/S bloqueante
+    private static final class ClientePrueba {
+        private final Socket socket;
+        private final BufferedReader entrada;
+        private final Writer salida;
+        private final String eco; // Prefijo del eco de sus propios mensajes
+
+        ClientePrueba(int puerto, String nombre) throws IOException {
+            socket = new Socket("localhost", puerto);
+            socket.setTcpNoDelay(true);
+            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            salida = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+            eco = "Privado:" + nombre + ":";
+            salida.write(nombre + "\n");
+            salida.flush();
+        }
+
+        // Función que envía la línea y espera su eco; las demás líneas (presencia, mensajes de otros) se saltan
+        String idaYVuelta(String linea) throws IOException {
+            salida.write(linea);
+            salida.write('\n');
+            salida.flush();
+            String respuesta;
+            while ((respuesta = entrada.readLine()) != null) {
+                if (respuesta.startsWith(eco)) {
+                    return respuesta;
+                }
+            }
+            throw new EOFException("El servidor cerró la conexión");
+        }
+
+        String leer() throws IOException {
+            return entrada.readLine();
+        }
+
+        void cerrar() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+// Nombre del Programa: Benchmark de la Presencia de Clientes
+// Descripción: Mide el costo de informar a los clientes quién está conectado (lo que antes hacía
+// actualizarClientesConectados reenviando la lista completa a todos) con 10, 1.000 y 10.000 clientes:
+// - deltaATodos: una línea de deltas compartida que se encola y se copia en la salida de todos los clientes.
+// - listaCompleta: la lista completa que recibe un cliente al registrarse.
+// Ejecución: mvn -Pjmh test-compile exec:exec -Djmh.argumentos=Presencia
+
+package com.proyecto.cliente_servidor2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class PresenciaBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    int clientes;
+
+    private Servidor servidor;
+    private Presencia presencia;
+    private Conexion nuevo;
+
+    @Setup
+    public void preparar() {
+        ConfiguracionServidor configuracion = new ConfiguracionServidor();
+        servidor = new Servidor(configuracion);
+        // Presencia propia, con una ventana tan larga que los deltas solo se envían cuando el benchmark lo pide
+        RegistroClientes registro = new RegistroClientes();
+        TablaIds ids = new TablaIds();
+        presencia = new Presencia(registro, ids, new DirectorioCluster(), TimeUnit.HOURS.toMillis(1));
+        for (int i = 0; i < clientes; i++) {
+            String nombre = "cliente-" + i;
+            registro.registrar(nombre, new ConexionSimulada(servidor, nombre, ids.id(nombre)));
+        }
+        nuevo = new ConexionSimulada(servidor, "nuevo", ids.id("nuevo"));
+    }
+
+    @TearDown
+    public void terminar() {
+        presencia.detener();
+        servidor.detener();
+    }
+
+    @Benchmark
+    public void deltaATodos() {
+        // Un cliente que sale en cada ventana; los deltas son idempotentes, así que repetirlo no cambia nada
+        presencia.baja("nuevo");
+        presencia.enviarCambios();
+    }
+
+    @Benchmark
+    public void listaCompleta() {
+        presencia.enviarLista(nuevo);
+    }
+}
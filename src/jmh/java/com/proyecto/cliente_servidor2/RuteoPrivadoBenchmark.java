@@ -0,0 +1,79 @@
+// Nombre del Programa: Benchmark del Enrutamiento de Mensajes Privados
+// Descripción: Mide cuántos mensajes privados por segundo analiza y enruta el servidor, desde los bytes recibidos hasta
+// la copia en el buffer de escritura del destinatario y del remitente (eco). Compara los tres caminos de entrada:
+// - lineaDeTexto: línea "Privado:destinatario:texto" tal como llega del socket (camino sin String).
+// - lineaComoString: la misma línea ya convertida a String (enviarMensajePrivado, usado por las tramas TEXTO).
+// - tramaBinaria: trama PRIVADO del protocolo binario.
+// Ejecución: mvn -Pjmh test-compile exec:exec -Djmh.argumentos=RuteoPrivado
+
+package com.proyecto.cliente_servidor2;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+@State(Scope.Thread)
+public class RuteoPrivadoBenchmark {
+
+    // Clientes registrados: el tamaño del registro influye en la búsqueda del destinatario
+    @Param({"10", "1000", "10000"})
+    int clientes;
+
+    private Servidor servidor;
+    private Conexion remitente;
+    private ByteBuffer linea;
+    private String lineaTexto;
+    private ByteBuffer trama;
+
+    @Setup
+    public void preparar() {
+        ConfiguracionServidor configuracion = new ConfiguracionServidor();
+        configuracion.setVentanaPresenciaMs(TimeUnit.HOURS.toMillis(1));
+        configuracion.setTasaMensajes(0); // El remitente envía sin pausa; el límite de mensajes mediría la espera
+        servidor = new Servidor(configuracion);
+        Conexion[] conexiones = new Conexion[clientes];
+        for (int i = 0; i < clientes; i++) {
+            conexiones[i] = new ConexionSimulada(servidor);
+        }
+        // La primera línea de cada conexión es su nombre; solo se registra en la preparación
+        for (int i = 0; i < clientes; i++) {
+            servidor.procesarLinea(conexiones[i], "cliente-" + i);
+        }
+        remitente = conexiones[0];
+        String destinatario = "cliente-" + (clientes - 1);
+        String texto = "hola, ¿cómo va todo por allá?";
+        lineaTexto = "Privado:" + destinatario + ":" + texto;
+        linea = ByteBuffer.wrap((lineaTexto + "\n").getBytes(StandardCharsets.UTF_8));
+
+        byte[] bytesTexto = texto.getBytes(StandardCharsets.UTF_8);
+        trama = ByteBuffer.allocate(4 + bytesTexto.length);
+        trama.putInt(conexiones[clientes - 1].getIdCliente()).put(bytesTexto).flip();
+    }
+
+    @TearDown
+    public void terminar() {
+        servidor.detener();
+    }
+
+    @Benchmark
+    public void lineaDeTexto() throws Exception {
+        remitente.recibir(linea.rewind());
+    }
+
+    @Benchmark
+    public void lineaComoString() {
+        servidor.procesarLinea(remitente, lineaTexto);
+    }
+
+    @Benchmark
+    public void tramaBinaria() {
+        servidor.procesarTrama(remitente, ProtocoloBinario.PRIVADO, trama.rewind());
+    }
+}
@@ -0,0 +1,164 @@
+// Nombre del Programa: Benchmark del Transporte TLS
+// Descripción: Mide lo que cuesta cifrar las conexiones contra un servidor real en localhost, con un certificado
+// autofirmado (EC P-256) que se genera al preparar el benchmark:
+// - conectar: conexiones por segundo (abrir el socket, saludo, enviar el nombre y recibir la lista de clientes), como
+//   en una tormenta de reconexiones; "texto" sin TLS, "completo" con un saludo completo cada vez y "reanudado" con el
+//   ticket de la conexión anterior. La diferencia entre completo y reanudado es lo que ahorra la reanudación.
+// - idaYVuelta: latencia de un mensaje privado hasta recibir su eco, sin y con TLS; la diferencia es el costo de
+//   cifrar y descifrar cada mensaje en ambos extremos.
+// Ejecución: mvn -Pjmh test-compile exec:exec -Djmh.argumentos=Tls
+
+package com.proyecto.cliente_servidor2;
+
+import org.openjdk.jmh.annotations.*;
+
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx1g"})
+public class TlsBenchmark {
+    private static final String CLAVE = "benchmark";
+
+    // Servidor con TLS (o sin él) y la fábrica de sockets de los clientes
+    abstract static class Entorno {
+        Servidor servidor;
+        SSLSocketFactory fabrica; // null: texto plano
+        int puerto;
+        private Path directorio;
+
+        void arrancar(boolean tls) throws IOException {
+            ConfiguracionServidor configuracion = new ConfiguracionServidor();
+            configuracion.setPuerto(0);
+            configuracion.setTasaMensajes(0); // El cliente medido envía sin pausa; el límite de mensajes mediría la espera
+            if (tls) {
+                directorio = Files.createTempDirectory("tls-benchmark");
+                Path almacen = directorio.resolve("servidor.p12");
+                ContextoTls.generarAutofirmado(almacen, CLAVE, "localhost");
+                configuracion.setAlmacenTls(almacen.toString());
+                configuracion.setClaveTls(CLAVE);
+                fabrica = ContextoTls.fabricaCliente(almacen.toString(), CLAVE);
+            }
+            servidor = new Servidor(configuracion);
+            puerto = servidor.iniciar();
+        }
+
+        Socket abrir() throws IOException {
+            Socket socket = fabrica != null ? fabrica.createSocket("localhost", puerto) : new Socket("localhost", puerto);
+            socket.setTcpNoDelay(true);
+            return socket;
+        }
+
+        void detener() throws IOException {
+            servidor.detener();
+            if (directorio != null) {
+                Files.deleteIfExists(directorio.resolve("servidor.p12"));
+                Files.deleteIfExists(directorio);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Conexiones extends Entorno {
+        @Param({"texto", "completo", "reanudado"})
+        String saludo;
+
+        private int siguiente; // Para que cada conexión se registre con un nombre nuevo
+
+        @Setup
+        public void preparar() throws IOException {
+            arrancar(!"texto".equals(saludo));
+        }
+
+        @TearDown
+        public void terminar() throws IOException {
+            detener();
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Mensajes extends Entorno {
+        @Param({"false", "true"})
+        boolean tls;
+
+        private Socket medido;
+        private BufferedReader entrada;
+        private Writer salida;
+        private Socket sumidero;
+        private Thread descarte;
+
+        @Setup
+        public void preparar() throws IOException {
+            arrancar(tls);
+            // El sumidero recibe los mensajes del cliente medido y los descarta
+            sumidero = abrir();
+            sumidero.getOutputStream().write("sumidero\n".getBytes(StandardCharsets.UTF_8));
+            InputStream entradaSumidero = sumidero.getInputStream();
+            descarte = Thread.ofVirtual().start(() -> {
+                try {
+                    entradaSumidero.transferTo(OutputStream.nullOutputStream());
+                } catch (IOException e) {
+                    // La conexión se cerró al terminar el benchmark
+                }
+            });
+            medido = abrir();
+            entrada = new BufferedReader(new InputStreamReader(medido.getInputStream(), StandardCharsets.UTF_8));
+            salida = new BufferedWriter(new OutputStreamWriter(medido.getOutputStream(), StandardCharsets.UTF_8));
+            salida.write("medido\n");
+            salida.flush();
+            idaYVuelta("Privado:sumidero:listo");
+        }
+
+        @TearDown
+        public void terminar() throws Exception {
+            medido.close();
+            sumidero.close();
+            descarte.join();
+            detener();
+        }
+
+        // Función que envía la línea y espera su eco; las demás líneas (presencia) se saltan
+        String idaYVuelta(String linea) throws IOException {
+            salida.write(linea);
+            salida.write('\n');
+            salida.flush();
+            String respuesta;
+            while ((respuesta = entrada.readLine()) != null) {
+                if (respuesta.startsWith("Privado:medido:")) {
+                    return respuesta;
+                }
+            }
+            throw new EOFException("El servidor cerró la conexión");
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public String conectar(Conexiones conexiones) throws IOException {
+        try (Socket socket = conexiones.abrir()) {
+            socket.setSoLinger(true, 0); // Sin TIME_WAIT: miles de conexiones por segundo agotarían los puertos locales
+            socket.getOutputStream().write(("cliente-" + conexiones.siguiente++ + "\n").getBytes(StandardCharsets.UTF_8));
+            String lista = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)).readLine();
+            if ("completo".equals(conexiones.saludo)) {
+                // Sin la sesión en la caché del cliente, la siguiente conexión no tiene ticket que presentar
+                ((SSLSocket) socket).getSession().invalidate();
+            }
+            return lista;
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public String idaYVuelta(Mensajes mensajes) throws IOException {
+        return mensajes.idaYVuelta("Privado:sumidero:hola, ¿cómo va todo por allá?");
+    }
+}
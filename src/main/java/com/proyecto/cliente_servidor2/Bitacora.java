@@ -0,0 +1,228 @@
+// Nombre del Programa: Bitácora Asíncrona del Servidor
+// Descripción: Registro de eventos del servidor que nunca bloquea a quien lo escribe. Cada evento se copia a una casilla
+// de un anillo de tamaño fijo (reservada con un compareAndSet, sin candados) y un hilo de fondo los vacía por lotes:
+// arma el texto de todo el lote y lo escribe a la salida de una sola vez. Si el anillo está lleno, el evento se descarta
+// y se cuenta en Metricas.BITACORA_DESCARTADOS en lugar de frenar el ruteo.
+// Cada línea lleva campos estructurados (formato clave=valor), por ejemplo:
+// 2026-01-01T10:00:00.123Z INFO evento=registro usuario=ana par=/127.0.0.1:50312
+// El nivel mínimo se configura con servidor.log.nivel (DEPURAR, INFO, AVISO, ERROR o NADA); preguntar por un nivel
+// desactivado es una lectura volátil. Los eventos frecuentes se registran solo en 1 de cada N (ver muestra()).
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.time.Instant;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+public final class Bitacora {
+    private static final int CAPACIDAD = 8192; // Casillas del anillo del servidor (potencia de dos)
+    private static final int LOTE = 256; // Eventos que se escriben juntos como máximo
+
+    // Bitácora compartida por todos los componentes del servidor
+    static final Bitacora SERVIDOR = new Bitacora(CAPACIDAD, System.out);
+
+    public enum Nivel { DEPURAR, INFO, AVISO, ERROR, NADA }
+
+    private final Evento[] anillo;
+    private final int mascara;
+    private final PrintStream salida;
+    private final AtomicLong siguiente = new AtomicLong(); // Próxima secuencia que reservará un productor
+    private volatile long leidos; // Secuencia del próximo evento que escribirá el hilo de fondo (solo la cambia él)
+    private volatile boolean durmiendo; // El hilo de fondo está esperando eventos
+    private volatile Nivel nivel = Nivel.INFO;
+    private final Thread hilo;
+
+    Bitacora(int capacidad, PrintStream salida) {
+        int tamano = Integer.highestOneBit(Math.max(capacidad, 2));
+        this.anillo = new Evento[tamano];
+        for (int i = 0; i < tamano; i++) {
+            anillo[i] = new Evento(i - tamano); // Ninguna casilla está publicada al principio
+        }
+        this.mascara = tamano - 1;
+        this.salida = salida;
+        this.hilo = new Thread(this::vaciarPorLotes, "bitacora");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    void setNivel(Nivel nivel) {
+        this.nivel = nivel;
+    }
+
+    // Función que indica si se registran los eventos del nivel indicado
+    boolean activo(Nivel nivel) {
+        return nivel.compareTo(this.nivel) >= 0;
+    }
+
+    // Función para eventos frecuentes: devuelve true en 1 de cada cadaN llamadas (al azar, sin contador compartido)
+    static boolean muestra(int cadaN) {
+        return cadaN <= 1 || ThreadLocalRandom.current().nextInt(cadaN) == 0;
+    }
+
+    void depurar(String evento, String usuario, String par, long bytes, String detalle) {
+        registrar(Nivel.DEPURAR, evento, usuario, par, bytes, detalle, null);
+    }
+
+    void info(String evento, String usuario, String par) {
+        registrar(Nivel.INFO, evento, usuario, par, -1, null, null);
+    }
+
+    void info(String evento, String detalle) {
+        registrar(Nivel.INFO, evento, null, null, -1, detalle, null);
+    }
+
+    void aviso(String evento, String usuario, String detalle) {
+        registrar(Nivel.AVISO, evento, usuario, null, -1, detalle, null);
+    }
+
+    void error(String evento, String detalle, Throwable error) {
+        registrar(Nivel.ERROR, evento, null, null, -1, detalle, error);
+    }
+
+    // Método que copia el evento a una casilla libre del anillo; los campos null (o bytes < 0) no se escriben
+    void registrar(Nivel nivel, String evento, String usuario, String par, long bytes, String detalle, Throwable error) {
+        if (!activo(nivel)) {
+            return;
+        }
+        long secuencia;
+        do {
+            secuencia = siguiente.get();
+            if (secuencia - leidos >= anillo.length) {
+                Metricas.BITACORA_DESCARTADOS.increment();
+                return;
+            }
+        } while (!siguiente.compareAndSet(secuencia, secuencia + 1));
+        Evento casilla = anillo[(int) secuencia & mascara];
+        casilla.milisegundos = System.currentTimeMillis();
+        casilla.nivel = nivel;
+        casilla.evento = evento;
+        casilla.usuario = usuario;
+        casilla.par = par;
+        casilla.bytes = bytes;
+        casilla.detalle = detalle;
+        casilla.error = error;
+        casilla.publicado = secuencia; // Escritura volátil: a partir de aquí el hilo de fondo ve todos los campos
+        if (durmiendo) {
+            LockSupport.unpark(hilo);
+        }
+    }
+
+    // Método que espera (como mucho el tiempo indicado) a que se escriban los eventos registrados hasta ahora
+    void vaciar(long milisegundos) {
+        long objetivo = siguiente.get();
+        long limite = System.nanoTime() + milisegundos * 1_000_000;
+        while (leidos < objetivo && System.nanoTime() < limite) {
+            LockSupport.unpark(hilo);
+            Thread.onSpinWait();
+        }
+    }
+
+    // Bucle del hilo de fondo: lee las casillas publicadas en orden y escribe un lote cada vez que se queda sin eventos
+    // o junta LOTE eventos
+    private void vaciarPorLotes() {
+        StringBuilder lote = new StringBuilder(16 * 1024);
+        int enLote = 0;
+        while (true) {
+            long secuencia = leidos;
+            Evento casilla = anillo[(int) secuencia & mascara];
+            if (casilla.publicado == secuencia) {
+                formatear(casilla, lote);
+                casilla.limpiar();
+                leidos = secuencia + 1; // Libera la casilla para los productores
+                if (++enLote < LOTE) {
+                    continue;
+                }
+            }
+            if (enLote > 0) {
+                salida.print(lote);
+                salida.flush();
+                lote.setLength(0);
+                enLote = 0;
+                continue;
+            }
+            durmiendo = true;
+            if (anillo[(int) leidos & mascara].publicado != leidos) { // Vuelve a mirar por si se publicó justo antes
+                LockSupport.parkNanos(this, 100_000_000);
+            }
+            durmiendo = false;
+        }
+    }
+
+    private static void formatear(Evento casilla, StringBuilder lote) {
+        lote.append(Instant.ofEpochMilli(casilla.milisegundos)).append(' ').append(casilla.nivel)
+                .append(" evento=").append(casilla.evento);
+        campo(lote, "usuario", casilla.usuario);
+        campo(lote, "par", casilla.par);
+        if (casilla.bytes >= 0) {
+            lote.append(" bytes=").append(casilla.bytes);
+        }
+        campo(lote, "detalle", casilla.detalle);
+        if (casilla.error != null) {
+            campo(lote, "error", casilla.error.toString());
+            lote.append('\n');
+            StringWriter traza = new StringWriter();
+            casilla.error.printStackTrace(new PrintWriter(traza));
+            lote.append(traza);
+        } else {
+            lote.append('\n');
+        }
+    }
+
+    // Método que escribe " clave=valor", entre comillas si el valor tiene espacios, comillas o saltos de línea
+    private static void campo(StringBuilder lote, String clave, String valor) {
+        if (valor == null) {
+            return;
+        }
+        lote.append(' ').append(clave).append('=');
+        boolean comillas = valor.isEmpty();
+        for (int i = 0; i < valor.length() && !comillas; i++) {
+            char c = valor.charAt(i);
+            comillas = c == ' ' || c == '"' || c == '=' || c < 0x20;
+        }
+        if (!comillas) {
+            lote.append(valor);
+            return;
+        }
+        lote.append('"');
+        for (int i = 0; i < valor.length(); i++) {
+            char c = valor.charAt(i);
+            switch (c) {
+                case '"' -> lote.append("\\\"");
+                case '\\' -> lote.append("\\\\");
+                case '\n' -> lote.append("\\n");
+                case '\r' -> lote.append("\\r");
+                default -> lote.append(c);
+            }
+        }
+        lote.append('"');
+    }
+
+    // Casilla del anillo; se reutiliza para siempre, así que registrar un evento no crea objetos
+    private static final class Evento {
+        private volatile long publicado; // Secuencia del evento guardado (la casilla está libre si no coincide)
+        private long milisegundos;
+        private Nivel nivel;
+        private String evento;
+        private String usuario;
+        private String par;
+        private long bytes;
+        private String detalle;
+        private Throwable error;
+
+        Evento(long publicado) {
+            this.publicado = publicado;
+        }
+
+        // Suelta las referencias para que el anillo no retenga textos ni excepciones
+        void limpiar() {
+            usuario = null;
+            par = null;
+            detalle = null;
+            error = null;
+        }
+    }
+}
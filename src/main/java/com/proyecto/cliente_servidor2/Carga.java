@@ -0,0 +1,183 @@
+// Nombre del Programa: Carga de Salida
+// Descripción: Mensaje que el servidor deja en la cola de salida de una o varias conexiones. No se convierte a bytes al
+// encolarlo: lo hace el escritor de cada conexión según el modo (texto o binario) en que esté esa conexión en ese momento.
+// Cada forma se codifica una sola vez y se comparte entre todas las conexiones que reciben la misma carga; los
+// escritores la copian a su buffer de escritura con operaciones absolutas, sin crear vistas ni mover posiciones.
+// Los mensajes privados usan CargaPrivada, que además se reutiliza cuando todos sus receptores terminan con ella.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+abstract class Carga {
+    // Respuesta a "Modo:binario": se envía como texto y, una vez escrita, la conexión pasa a escribir tramas
+    static final Carga CAMBIO_A_BINARIO = new Linea(ProtocoloBinario.LINEA_NEGOCIACION) {
+        @Override
+        boolean cambiaABinario() {
+            return true;
+        }
+    };
+
+    // Respuesta a "Compresion:deflate": se envía sin comprimir y, una vez escrita, la salida pasa a bloques comprimidos
+    static final Carga CAMBIO_A_COMPRESION = new Linea(CompresionSalida.LINEA_NEGOCIACION) {
+        @Override
+        boolean cambiaACompresion() {
+            return true;
+        }
+    };
+
+    private volatile ByteBuffer texto; // Forma de texto ya codificada (incluye el '\n')
+    private volatile ByteBuffer binario; // Forma binaria ya codificada (trama completa)
+
+    // Función que devuelve el largo en bytes de la carga en el modo indicado
+    int largo(boolean enBinario) {
+        return codificada(enBinario).limit();
+    }
+
+    // Función que copia al destino todo lo que quepa a partir del byte "desde"; devuelve cuántos bytes copió
+    int copiar(boolean enBinario, int desde, ByteBuffer destino) {
+        ByteBuffer codificado = codificada(enBinario);
+        int cantidad = Math.min(destino.remaining(), codificado.limit() - desde);
+        destino.put(destino.position(), codificado, desde, cantidad);
+        destino.position(destino.position() + cantidad);
+        return cantidad;
+    }
+
+    // Método que anota nuevos dueños de la carga (colas en las que se deja); solo importa en las cargas reutilizables
+    void retener(int cantidad) {
+    }
+
+    // Método que avisa que un dueño ya terminó con la carga (se escribió o se descartó)
+    void liberar() {
+    }
+
+    private ByteBuffer codificada(boolean enBinario) {
+        ByteBuffer codificado = enBinario ? binario : texto;
+        if (codificado == null) {
+            // Si dos escritores llegan a la vez, ambos codifican lo mismo y cualquiera de los dos resultados sirve
+            if (enBinario) {
+                codificado = codificarBinario();
+                binario = codificado;
+            } else {
+                codificado = codificarTexto();
+                texto = codificado;
+            }
+        }
+        return codificado;
+    }
+
+    // Función que devuelve el instante (System.nanoTime) en que se encoló la carga si se eligió para medir la espera en
+    // la cola, o 0 si no se mide
+    long marcaNanos() {
+        return 0;
+    }
+
+    // Función que indica si, después de escribir esta carga, la conexión debe pasar a modo binario
+    boolean cambiaABinario() {
+        return false;
+    }
+
+    // Función que indica si, después de escribir esta carga, la salida de la conexión debe comprimirse
+    boolean cambiaACompresion() {
+        return false;
+    }
+
+    // Función que indica si la carga es un mensaje para el cliente (privado o de sala), que una sesión numera y puede
+    // repetir al reanudarse; las líneas de control y de presencia no se repiten
+    boolean reenviable() {
+        return false;
+    }
+
+    protected abstract ByteBuffer codificarTexto();
+
+    protected abstract ByteBuffer codificarBinario();
+
+    // Función para crear una carga a partir de una línea del protocolo de texto (sin '\n')
+    static Carga linea(String linea) {
+        return new Linea(linea);
+    }
+
+    // Función para crear la lista completa de clientes conectados
+    static Carga lista(List<Cambio> clientes) {
+        return new ListaPresencia(clientes, true);
+    }
+
+    // Función para crear una línea de deltas de presencia
+    static Carga presencia(List<Cambio> cambios) {
+        return new ListaPresencia(cambios, false);
+    }
+
+    // Entrada o salida de un cliente (en la lista completa, todos son entradas)
+    record Cambio(String nombre, int id, boolean entra) {
+    }
+
+    // Línea genérica del protocolo de texto; en modo binario viaja dentro de una trama TEXTO
+    private static class Linea extends Carga {
+        private final String linea;
+
+        Linea(String linea) {
+            this.linea = linea;
+        }
+
+        @Override
+        protected ByteBuffer codificarTexto() {
+            return StandardCharsets.UTF_8.encode(linea + "\n");
+        }
+
+        @Override
+        protected ByteBuffer codificarBinario() {
+            byte[] bytes = linea.getBytes(StandardCharsets.UTF_8);
+            return ProtocoloBinario.nuevaTrama(ProtocoloBinario.TEXTO, bytes.length).put(bytes).flip();
+        }
+    }
+
+    // Lista completa ("Clientes conectados:a, b, ") o deltas ("Presencia:+a,-b"); en binario, tramas LISTA o PRESENCIA
+    private static final class ListaPresencia extends Carga {
+        private final List<Cambio> cambios;
+        private final boolean completa;
+
+        ListaPresencia(List<Cambio> cambios, boolean completa) {
+            this.cambios = cambios;
+            this.completa = completa;
+        }
+
+        @Override
+        protected ByteBuffer codificarTexto() {
+            StringBuilder linea = new StringBuilder(completa ? Presencia.PREFIJO_LISTA : Presencia.PREFIJO_DELTA);
+            for (int i = 0; i < cambios.size(); i++) {
+                Cambio cambio = cambios.get(i);
+                if (completa) {
+                    linea.append(cambio.nombre()).append(", ");
+                } else {
+                    if (i > 0) {
+                        linea.append(',');
+                    }
+                    linea.append(cambio.entra() ? '+' : '-').append(cambio.nombre());
+                }
+            }
+            return StandardCharsets.UTF_8.encode(linea.append('\n').toString());
+        }
+
+        @Override
+        protected ByteBuffer codificarBinario() {
+            byte[][] nombres = new byte[cambios.size()][];
+            int largo = 4;
+            for (int i = 0; i < nombres.length; i++) {
+                nombres[i] = cambios.get(i).nombre().getBytes(StandardCharsets.UTF_8);
+                largo += (completa ? 0 : 1) + 4 + 2 + nombres[i].length;
+            }
+            ByteBuffer trama = ProtocoloBinario.nuevaTrama(completa ? ProtocoloBinario.LISTA : ProtocoloBinario.PRESENCIA, largo);
+            trama.putInt(nombres.length);
+            for (int i = 0; i < nombres.length; i++) {
+                Cambio cambio = cambios.get(i);
+                if (!completa) {
+                    trama.put((byte) (cambio.entra() ? '+' : '-'));
+                }
+                trama.putInt(cambio.id()).putShort((short) nombres[i].length).put(nombres[i]);
+            }
+            return trama.flip();
+        }
+    }
+}
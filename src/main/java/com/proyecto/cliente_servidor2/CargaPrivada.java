@@ -0,0 +1,186 @@
+// Nombre del Programa: Carga Reutilizable de Mensaje Privado
+// Descripción: Mensaje privado ya codificado que se comparte entre el destinatario y el eco al remitente, y que se
+// reutiliza cuando ambos escritores terminan de copiarlo. Se arma directamente con los bytes de la línea o de la
+// trama recibida (sin crear Strings) en arreglos propios que solo crecen, de modo que enrutar un mensaje no reserva
+// memoria una vez que la reserva de cargas está caliente. Una carga cuyos arreglos crecieron más allá de
+// LARGO_REUTILIZABLE (un mensaje grande) no vuelve a la reserva: así la reserva no retiene arreglos de hasta 64 KiB por
+// cada carga libre después de una ráfaga de mensajes grandes.
+// Ejemplo: Para "Privado:luis:hola" enviado por ana, la forma de texto es "Privado:ana:hola\n" y la binaria es la trama
+// PRIVADO [id de ana]["hola"]; la binaria solo se arma si algún receptor la necesita.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class CargaPrivada extends Carga {
+    private static final byte[] PREFIJO = "Privado:".getBytes(StandardCharsets.UTF_8);
+
+    // Cargas libres para reutilizar
+    private static final ArrayBlockingQueue<CargaPrivada> LIBRES = new ArrayBlockingQueue<>(4096);
+    // Largo máximo de los arreglos de una carga que se reutiliza; con 4096 libres, la reserva retiene como mucho 32 MiB
+    private static final int LARGO_REUTILIZABLE = 4 * 1024;
+
+    private final AtomicInteger referencias = new AtomicInteger(); // Colas (u otros dueños) que aún la usan
+    private byte[] texto = new byte[256]; // "Privado:remitente:texto\n"
+    private int largoTexto;
+    private int inicioMensaje; // Posición del texto del mensaje dentro de la forma de texto
+    private int idRemitente;
+    private byte[] binario = new byte[0]; // Trama PRIVADO, armada solo si hace falta
+    private volatile int largoBinario = -1; // -1 mientras la forma binaria no está armada
+    private long marcaNanos; // Instante del encolado si este mensaje se mide (0 si no)
+
+    private CargaPrivada() {
+    }
+
+    // Función que arma la carga con el texto contenido en un arreglo de bytes (línea de texto recibida)
+    static CargaPrivada obtener(Conexion remitente, byte[] mensaje, int desde, int largo) {
+        return obtener(remitente.getNombreBytes(), remitente.getIdCliente(), mensaje, desde, largo);
+    }
+
+    // Función que arma la carga a partir del nombre del remitente en bytes (mensajes guardados en el diario)
+    static CargaPrivada obtener(byte[] nombreRemitente, int idRemitente, byte[] mensaje, int desde, int largo) {
+        CargaPrivada carga = reservar(nombreRemitente, idRemitente, largo);
+        System.arraycopy(mensaje, desde, carga.texto, carga.inicioMensaje, largo);
+        return carga.terminar(largo);
+    }
+
+    // Función que arma la carga con el texto que queda en el buffer (trama binaria recibida)
+    static CargaPrivada obtener(Conexion remitente, ByteBuffer mensaje) {
+        int largo = mensaje.remaining();
+        CargaPrivada carga = reservar(remitente.getNombreBytes(), remitente.getIdCliente(), largo);
+        mensaje.get(carga.texto, carga.inicioMensaje, largo);
+        return carga.terminar(largo);
+    }
+
+    private static CargaPrivada reservar(byte[] nombre, int idRemitente, int largoMensaje) {
+        CargaPrivada carga = LIBRES.poll();
+        if (carga == null) {
+            carga = new CargaPrivada();
+        }
+        int necesario = PREFIJO.length + nombre.length + 1 + largoMensaje + 1;
+        if (carga.texto.length < necesario) {
+            carga.texto = new byte[Math.max(necesario, carga.texto.length * 2)];
+        }
+        System.arraycopy(PREFIJO, 0, carga.texto, 0, PREFIJO.length);
+        System.arraycopy(nombre, 0, carga.texto, PREFIJO.length, nombre.length);
+        carga.texto[PREFIJO.length + nombre.length] = ':';
+        carga.inicioMensaje = PREFIJO.length + nombre.length + 1;
+        carga.idRemitente = idRemitente;
+        carga.largoBinario = -1;
+        carga.marcaNanos = 0;
+        return carga;
+    }
+
+    private CargaPrivada terminar(int largoMensaje) {
+        texto[inicioMensaje + largoMensaje] = '\n';
+        largoTexto = inicioMensaje + largoMensaje + 1;
+        return this;
+    }
+
+    // Función que devuelve el arreglo con la forma de texto; el texto del mensaje empieza en inicioMensaje()
+    byte[] bytesTexto() {
+        return texto;
+    }
+
+    // Método que anota el instante del encolado en un mensaje elegido para medir; se llama antes de encolarlo
+    void marcar(long nanos) {
+        marcaNanos = nanos;
+    }
+
+    @Override
+    long marcaNanos() {
+        return marcaNanos;
+    }
+
+    int getIdRemitente() {
+        return idRemitente;
+    }
+
+    // Función que devuelve una copia del nombre del remitente, tal como va en la forma de texto
+    byte[] nombreRemitente() {
+        return Arrays.copyOfRange(texto, PREFIJO.length, inicioMensaje - 1);
+    }
+
+    int inicioMensaje() {
+        return inicioMensaje;
+    }
+
+    int largoMensaje() {
+        return largoTexto - inicioMensaje - 1;
+    }
+
+    @Override
+    boolean reenviable() {
+        return true;
+    }
+
+    @Override
+    void retener(int cantidad) {
+        referencias.addAndGet(cantidad);
+    }
+
+    @Override
+    void liberar() {
+        if (referencias.decrementAndGet() == 0 && texto.length <= LARGO_REUTILIZABLE
+                && binario.length <= LARGO_REUTILIZABLE) {
+            LIBRES.offer(this);
+        }
+    }
+
+    @Override
+    int largo(boolean enBinario) {
+        return enBinario ? formaBinaria() : largoTexto;
+    }
+
+    @Override
+    int copiar(boolean enBinario, int desde, ByteBuffer destino) {
+        int total = largo(enBinario);
+        int cantidad = Math.min(destino.remaining(), total - desde);
+        destino.put(enBinario ? binario : texto, desde, cantidad);
+        return cantidad;
+    }
+
+    // Función que arma la trama binaria la primera vez que un receptor en modo binario la pide
+    private int formaBinaria() {
+        int largo = largoBinario;
+        if (largo >= 0) {
+            return largo;
+        }
+        synchronized (this) {
+            if (largoBinario < 0) {
+                int largoMensaje = largoTexto - inicioMensaje - 1;
+                int necesario = 4 + 1 + 4 + largoMensaje;
+                if (binario.length < necesario) {
+                    binario = new byte[Math.max(necesario, texto.length)];
+                }
+                escribirEntero(binario, 0, 1 + 4 + largoMensaje);
+                binario[4] = ProtocoloBinario.PRIVADO;
+                escribirEntero(binario, 5, idRemitente);
+                System.arraycopy(texto, inicioMensaje, binario, 9, largoMensaje);
+                largoBinario = necesario;
+            }
+            return largoBinario;
+        }
+    }
+
+    private static void escribirEntero(byte[] destino, int posicion, int valor) {
+        destino[posicion] = (byte) (valor >>> 24);
+        destino[posicion + 1] = (byte) (valor >>> 16);
+        destino[posicion + 2] = (byte) (valor >>> 8);
+        destino[posicion + 3] = (byte) valor;
+    }
+
+    @Override
+    protected ByteBuffer codificarTexto() {
+        return ByteBuffer.wrap(texto, 0, largoTexto);
+    }
+
+    @Override
+    protected ByteBuffer codificarBinario() {
+        return ByteBuffer.wrap(binario, 0, formaBinaria());
+    }
+}
@@ -0,0 +1,52 @@
+// Nombre del Programa: Carga de Mensaje de Sala
+// Descripción: Mensaje publicado en una sala, codificado una sola vez y compartido por las colas de salida de todos los
+// miembros. La forma de texto se arma directamente con los bytes de la línea recibida, en un único arreglo del tamaño
+// justo; la forma binaria (trama SALA) solo se arma si algún miembro está en modo binario. Ningún miembro recibe una
+// copia propia: cada escritor copia los bytes compartidos a su buffer de escritura.
+// Ejemplo: Para "Sala:general:hola" publicado por ana, todos los miembros de "general" reciben "Sala:general:ana:hola".
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+final class CargaSala extends Carga {
+    private static final byte[] PREFIJO = Salas.PREFIJO_SALA.getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] texto; // "Sala:sala:remitente:texto\n"
+    private final int largoSala; // Bytes del nombre de la sala (empieza justo después del prefijo)
+    private final int inicioMensaje; // Posición del texto del mensaje dentro de la forma de texto
+    private final int idRemitente;
+
+    CargaSala(byte[] sala, byte[] remitente, int idRemitente, byte[] mensaje, int desde, int largo) {
+        this.texto = new byte[PREFIJO.length + sala.length + 1 + remitente.length + 1 + largo + 1];
+        System.arraycopy(PREFIJO, 0, texto, 0, PREFIJO.length);
+        System.arraycopy(sala, 0, texto, PREFIJO.length, sala.length);
+        texto[PREFIJO.length + sala.length] = ':';
+        System.arraycopy(remitente, 0, texto, PREFIJO.length + sala.length + 1, remitente.length);
+        this.inicioMensaje = PREFIJO.length + sala.length + 1 + remitente.length + 1;
+        texto[inicioMensaje - 1] = ':';
+        System.arraycopy(mensaje, desde, texto, inicioMensaje, largo);
+        texto[texto.length - 1] = '\n';
+        this.largoSala = sala.length;
+        this.idRemitente = idRemitente;
+    }
+
+    @Override
+    boolean reenviable() {
+        return true;
+    }
+
+    @Override
+    protected ByteBuffer codificarTexto() {
+        return ByteBuffer.wrap(texto);
+    }
+
+    @Override
+    protected ByteBuffer codificarBinario() {
+        int largoMensaje = texto.length - 1 - inicioMensaje;
+        ByteBuffer trama = ProtocoloBinario.nuevaTrama(ProtocoloBinario.SALA, 4 + 2 + largoSala + largoMensaje);
+        trama.putInt(idRemitente).putShort((short) largoSala).put(texto, PREFIJO.length, largoSala);
+        return trama.put(texto, inicioMensaje, largoMensaje).flip();
+    }
+}
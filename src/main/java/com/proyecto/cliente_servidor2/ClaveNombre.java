@@ -0,0 +1,52 @@
+// Nombre del Programa: Clave de Nombre en Bytes
+// Descripción: Permite buscar un nombre de cliente directamente con los bytes UTF-8 recibidos del socket, sin crear
+// un String. Las claves guardadas en los mapas son copias inmutables; para buscar, cada conexión reutiliza su propia
+// clave mutable apuntándola al trozo del buffer donde está el nombre.
+// Ejemplo: En "Privado:luis:hola", la clave de búsqueda apunta a los bytes 8 a 12 ("luis") del buffer de la línea.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+final class ClaveNombre {
+    private byte[] bytes;
+    private int desde;
+    private int largo;
+    private int hash;
+
+    // Función que crea una clave inmutable para guardarla en un mapa
+    static ClaveNombre copia(String nombre) {
+        byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+        return new ClaveNombre().apuntar(bytes, 0, bytes.length);
+    }
+
+    // Método que reutiliza la clave para una nueva búsqueda; no copia los bytes
+    ClaveNombre apuntar(byte[] bytes, int desde, int largo) {
+        this.bytes = bytes;
+        this.desde = desde;
+        this.largo = largo;
+        int h = 1;
+        for (int i = desde; i < desde + largo; i++) {
+            h = 31 * h + bytes[i];
+        }
+        this.hash = h;
+        return this;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object otro) {
+        if (this == otro) {
+            return true;
+        }
+        if (!(otro instanceof ClaveNombre clave) || clave.hash != hash) {
+            return false;
+        }
+        return Arrays.equals(bytes, desde, desde + largo, clave.bytes, clave.desde, clave.desde + clave.largo);
+    }
+}
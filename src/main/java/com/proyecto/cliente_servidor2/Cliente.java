@@ -14,19 +14,29 @@
 
 // Funciones principales del código:
 // 1. mostrarVentanaPrincipal(): Muestra la ventana principal donde el usuario puede ver la lista de clientes conectados y seleccionar uno para iniciar un chat privado.
-// 2. abrirChatConClienteSeleccionado(): Abre una ventana de chat privado con el cliente seleccionado de la lista.
-// 3. conectarAlServidor(): Establece la conexión con el servidor, envía el nombre del cliente y escucha los mensajes del servidor.
-// 4. actualizarListaClientesConectados(): Actualiza la lista de clientes conectados cada vez que el servidor envía la información.
-// 5. actualizarChatPrivado(): Muestra los mensajes recibidos en la ventana de chat privado.
+// 2. abrirChatConClienteSeleccionado(): Abre una ventana de chat privado con el cliente seleccionado de la lista (una por contacto).
+// 3. conectarAlServidor(): Empieza la conexión con el servidor en segundo plano (ConexionCliente, compartida con el otro cliente),
+//    que envía el nombre del cliente y entrega los mensajes del servidor a la ventana en el EDT, por lotes. Si la conexión
+//    se cae, reconecta sola y reanuda la sesión sin perder mensajes; mientras tanto el título lo indica.
+// 4. actualizarListaClientesConectados(): Carga la lista completa al conectarse y luego aplica los deltas de presencia (+nombre / -nombre).
+// 5. actualizarChatPrivado(): Guarda cada mensaje recibido en la conversación de su contacto (RegistroConversaciones), que es
+//    el modelo de la ventana de ese chat.
+//    Al abrir un chat se piden al servidor los últimos mensajes de esa conversación, que se muestran antes que los nuevos.
+// Las líneas del servidor se interpretan con ProtocoloCliente, el mismo que usa el generador de carga.
 
 package com.proyecto.cliente_servidor2;
 
 import javax.swing.*;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 import java.io.*;
-import java.net.*;
+import java.util.List;
 
 public class Cliente {
     private JFrame frame; // Ventana principal del cliente
@@ -34,13 +44,14 @@ public class Cliente {
     private DefaultListModel<String> listModel; // Modelo para la lista de clientes conectados
     private JTextField textFieldMensaje; // Campo para escribir mensajes
     private JTextArea textAreaChat; // Área para mostrar el chat principal
-    private JTextArea textAreaChatPrivado; // Área para mostrar el chat privado
 
-    private Socket socket; // Socket para conectarse al servidor
-    private BufferedReader entrada; // Para leer los mensajes entrantes
-    private PrintWriter salida; // Para enviar mensajes
+    private ConexionCliente conexion; // Conexión al servidor; conecta, lee y escribe fuera del EDT
+    private final RegistroConversaciones conversaciones = new RegistroConversaciones(); // Una conversación por contacto
     private String nombreCliente; // Nombre del cliente
-    private String clienteSeleccionado; // Cliente seleccionado para chat privado
+
+    private static final int MENSAJES_HISTORIAL = 50; // Mensajes anteriores que se muestran al abrir un chat
+    private static final String TITULO = "Cliente 1 - Lista de Clientes Conectados";
+    private static final String PROTOTIPO_MENSAJE = "m".repeat(60); // Fija el alto y el ancho de las filas de un chat
 
     // Función principal para iniciar el programa
     public static void main(String[] args) {
@@ -82,7 +93,7 @@ public class Cliente {
     // Función que inicializa la ventana principal y los componentes gráficos
     private void initialize() {
         // Configuración básica del JFrame (ventana principal)
-        frame = new JFrame("Cliente 1 - Lista de Clientes Conectados");
+        frame = new JFrame(TITULO);
         frame.setBounds(100, 100, 450, 300);
         frame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
         frame.getContentPane().setLayout(new BorderLayout());
@@ -105,115 +116,184 @@ public class Cliente {
         });
     }
 
-    // Función para abrir un chat privado con el cliente seleccionado
+    // Función para abrir la ventana de chat privado con el cliente seleccionado (o traerla al frente si ya está abierta)
     private void abrirChatConClienteSeleccionado() {
-        clienteSeleccionado = listaClientesConectados.getSelectedValue();
-        if (clienteSeleccionado != null && !clienteSeleccionado.isEmpty()) {
-            // Crear una nueva instancia del chat privado
-            JFrame chatFrame = new JFrame("Chat privado con " + clienteSeleccionado);
-            chatFrame.setBounds(100, 100, 450, 300);
-            chatFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-            chatFrame.getContentPane().setLayout(new BorderLayout());
-
-            // Área de texto para mostrar la conversación
-            textAreaChatPrivado = new JTextArea();
-            textAreaChatPrivado.setEditable(false);
-            chatFrame.getContentPane().add(new JScrollPane(textAreaChatPrivado), BorderLayout.CENTER);
-
-            // Panel inferior con un campo de texto para ingresar el mensaje
-            JPanel panel = new JPanel();
-            chatFrame.getContentPane().add(panel, BorderLayout.SOUTH);
-            panel.setLayout(new BorderLayout());
-
-            JTextField textFieldMensajePrivado = new JTextField();
-            panel.add(textFieldMensajePrivado, BorderLayout.CENTER);
-            textFieldMensajePrivado.setColumns(30);
-
-            // Botón para enviar el mensaje
-            JButton btnEnviarPrivado = new JButton("Enviar");
-            panel.add(btnEnviarPrivado, BorderLayout.EAST);
-
-            // Acción del botón Enviar para chat privado
-            btnEnviarPrivado.addActionListener(new ActionListener() {
-                public void actionPerformed(ActionEvent e) {
-                    String mensajePrivado = textFieldMensajePrivado.getText();
-                    if (!mensajePrivado.isEmpty()) {
-                        // Añadir el mensaje al chat privado localmente
-                        textAreaChatPrivado.append(nombreCliente + " (tú): " + mensajePrivado + "\n");
-                        
-                        // Enviar el mensaje al servidor para el cliente seleccionado
-                        salida.println("Privado:" + clienteSeleccionado + ":" + mensajePrivado);
-                        
-                        textFieldMensajePrivado.setText("");
-                    }
+        String clienteSeleccionado = listaClientesConectados.getSelectedValue();
+        if (clienteSeleccionado == null || clienteSeleccionado.isEmpty()) {
+            JOptionPane.showMessageDialog(frame, "Selecciona un cliente de la lista para iniciar un chat.");
+            return;
+        }
+        RegistroConversaciones.Conversacion conversacion = conversaciones.conversacion(clienteSeleccionado);
+        if (conversacion.getVentana() != null) {
+            conversacion.getVentana().toFront();
+            return;
+        }
+
+        // Crear la ventana de esta conversación; cada contacto tiene la suya
+        JFrame chatFrame = new JFrame("Chat privado con " + clienteSeleccionado);
+        chatFrame.setBounds(100, 100, 450, 300);
+        chatFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        chatFrame.getContentPane().setLayout(new BorderLayout());
+
+        // Lista con los mensajes de la conversación; con alto y ancho de fila fijos (los del prototipo) solo se
+        // calculan y pintan las filas visibles. El texto completo de una fila larga se ve al pasar el ratón.
+        JList<String> listaMensajes = new JList<>(conversacion.getMensajes()) {
+            @Override
+            public String getToolTipText(MouseEvent evento) {
+                int fila = locationToIndex(evento.getPoint());
+                return fila >= 0 ? getModel().getElementAt(fila) : null;
+            }
+        };
+        listaMensajes.setPrototypeCellValue(PROTOTIPO_MENSAJE);
+        ToolTipManager.sharedInstance().registerComponent(listaMensajes);
+        chatFrame.getContentPane().add(new JScrollPane(listaMensajes), BorderLayout.CENTER);
+
+        // Bajar al último mensaje cada vez que llegan nuevos
+        ListDataListener alFinal = new ListDataListener() {
+            public void intervalAdded(ListDataEvent e) {
+                listaMensajes.ensureIndexIsVisible(e.getIndex1());
+            }
+
+            public void intervalRemoved(ListDataEvent e) {
+            }
+
+            public void contentsChanged(ListDataEvent e) {
+            }
+        };
+        conversacion.getMensajes().addListDataListener(alFinal);
+
+        // Panel inferior con un campo de texto para ingresar el mensaje
+        JPanel panel = new JPanel();
+        chatFrame.getContentPane().add(panel, BorderLayout.SOUTH);
+        panel.setLayout(new BorderLayout());
+
+        JTextField textFieldMensajePrivado = new JTextField();
+        panel.add(textFieldMensajePrivado, BorderLayout.CENTER);
+        textFieldMensajePrivado.setColumns(30);
+
+        // Botón para enviar el mensaje
+        JButton btnEnviarPrivado = new JButton("Enviar");
+        panel.add(btnEnviarPrivado, BorderLayout.EAST);
+
+        // Acción del botón Enviar para chat privado
+        btnEnviarPrivado.addActionListener(new ActionListener() {
+            public void actionPerformed(ActionEvent e) {
+                String mensajePrivado = textFieldMensajePrivado.getText();
+                if (!mensajePrivado.isEmpty()) {
+                    // Añadir el mensaje a la conversación localmente (el eco del servidor se ignora)
+                    conversaciones.agregar(clienteSeleccionado, nombreCliente + " (tú): " + mensajePrivado);
+                    conversaciones.publicarCambios();
+
+                    // Enviar el mensaje al servidor para el cliente de esta conversación
+                    enviarAlServidor(ProtocoloCliente.lineaPrivado(clienteSeleccionado, mensajePrivado));
+
+                    textFieldMensajePrivado.setText("");
                 }
-            });
+            }
+        });
 
-            chatFrame.setVisible(true);
-        } else {
-            JOptionPane.showMessageDialog(frame, "Selecciona un cliente de la lista para iniciar un chat.");
+        // Al cerrar la ventana la conversación sigue guardando los mensajes que lleguen
+        chatFrame.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosed(WindowEvent e) {
+                conversacion.getMensajes().removeListDataListener(alFinal);
+                conversacion.setVentana(null);
+            }
+        });
+        conversacion.setVentana(chatFrame);
+        chatFrame.setVisible(true);
+
+        // Pedir los últimos mensajes de la conversación para abrir el chat con contexto
+        if (conversacion.pedirHistorial()) {
+            enviarAlServidor(ProtocoloCliente.lineaHistorial(clienteSeleccionado, MENSAJES_HISTORIAL));
         }
     }
 
-    // Función para conectar al servidor y recibir la lista de clientes conectados
+    // Función que envía una línea al servidor sin esperar al socket
+    private void enviarAlServidor(String linea) {
+        if (conexion != null) {
+            conexion.enviar(linea);
+        }
+    }
+
+    // Función que empieza la conexión al servidor (localhost, puerto 8080) sin bloquear la ventana; la lista de clientes
+    // conectados y los mensajes llegan después a OyenteVentana, en el EDT
     private void conectarAlServidor() {
-        try {
-            // Conectarse al servidor en localhost y puerto 8080
-            socket = new Socket("localhost", 8080);
-            entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            salida = new PrintWriter(socket.getOutputStream(), true);
-
-            // Enviar el nombre del cliente al servidor
-            salida.println(nombreCliente);
-
-            // Crear un nuevo hilo para escuchar los mensajes del servidor, incluyendo la lista de clientes conectados
-            new Thread(new EscucharClientesConectados()).start();
-        } catch (IOException e) {
+        conexion = new ConexionCliente("localhost", 8080, nombreCliente, new OyenteVentana());
+        conexion.conectar();
+    }
+
+    // Acciones ante las líneas del servidor; ConexionCliente las llama en el EDT, por lotes
+    private class OyenteVentana implements ConexionCliente.Oyente {
+        @Override
+        public void noConecto(IOException error) {
             JOptionPane.showMessageDialog(frame, "Error: No se pudo conectar al servidor.");
-            e.printStackTrace();
+            error.printStackTrace();
         }
-    }
 
-    // Hilo para escuchar la lista de clientes conectados desde el servidor
-    private class EscucharClientesConectados implements Runnable {
-        public void run() {
-            try {
-                String mensaje;
-                while ((mensaje = entrada.readLine()) != null) {
-                    if (mensaje.startsWith("Clientes conectados:")) {
-                        actualizarListaClientesConectados(mensaje);
-                    } else if (mensaje.startsWith("Privado:")) {
-                        actualizarChatPrivado(mensaje);
-                    }
-                }
-            } catch (IOException e) {
-                e.printStackTrace();
+        @Override
+        public void conectado() {
+            frame.setTitle(TITULO);
+        }
+
+        @Override
+        public void reconectando(int intento) {
+            frame.setTitle(TITULO + " (reconectando...)");
+        }
+
+        @Override
+        public void error(String motivo) {
+            frame.setTitle(TITULO + " (" + motivo + ")");
+        }
+
+        @Override
+        public void listaCompleta(List<String> clientes) {
+            actualizarListaClientesConectados(clientes);
+        }
+
+        @Override
+        public void entra(String cliente) {
+            if (!listModel.contains(cliente)) {
+                listModel.addElement(cliente);
             }
         }
-    }
 
-    // Función para actualizar la lista de clientes conectados
-    private void actualizarListaClientesConectados(String mensaje) {
-        // Limpiar el modelo de la lista
-        listModel.clear();
+        @Override
+        public void sale(String cliente) {
+            listModel.removeElement(cliente);
+        }
+
+        @Override
+        public void mensajePrivado(String remitente, String texto) {
+            // El eco de los mensajes propios no dice a quién iban; ya se mostraron al enviarlos
+            if (!remitente.equals(nombreCliente)) {
+                actualizarChatPrivado(remitente, remitente, texto);
+            }
+        }
+
+        @Override
+        public void historial(String otro, long secuencia, String remitente, String texto) {
+            actualizarChatPrivado(otro, remitente.equals(nombreCliente) ? nombreCliente + " (tú)" : remitente, texto);
+        }
 
-        // Dividir el mensaje para obtener los clientes conectados (después de "Clientes conectados:")
-        String[] partes = mensaje.split(":")[1].split(", ");
-        for (String cliente : partes) {
-            listModel.addElement(cliente);  // Añadir cada cliente individualmente
+        @Override
+        public void finLote() {
+            // Un solo aviso (y un solo repintado) por conversación y lote, aunque el lote traiga cientos de mensajes
+            conversaciones.publicarCambios();
         }
     }
 
-    // Función para actualizar el historial del chat privado
-    private void actualizarChatPrivado(String mensaje) {
-        // Separar la información del mensaje (Privado:clienteDestino:mensaje)
-        String[] partes = mensaje.split(":");
-        String remitente = partes[1];
-        String textoMensaje = partes[2];
+    // Función para cargar la lista completa de clientes conectados, recibida una sola vez al conectarse
+    // (después solo llegan los cambios, que se aplican en entra() y sale())
+    private void actualizarListaClientesConectados(List<String> clientes) {
+        // Limpiar el modelo de la lista y añadir todos los clientes con un solo aviso a la lista
+        listModel.clear();
+        listModel.addAll(clientes);
+    }
 
-        // Mostrar el mensaje en la ventana del chat
-        if (textAreaChatPrivado != null) {
-            textAreaChatPrivado.append(remitente + ": " + textoMensaje + "\n");
-        }
+    // Función para actualizar el historial del chat privado con el contacto indicado
+    private void actualizarChatPrivado(String contacto, String remitente, String textoMensaje) {
+        // Mostrar el mensaje en la ventana del chat de ese contacto, esté abierta o no (la lista se entera en finLote())
+        conversaciones.agregar(contacto, remitente + ": " + textoMensaje);
     }
 }
@@ -0,0 +1,26 @@
+// Nombre del Programa: Aplicación del Servidor de Chat
+// Descripción: Arranca el servidor de chat dentro de Spring Boot para publicar sus métricas por HTTP (ver
+// ControladorMetricas). La configuración del servidor se lee de application.properties, de los argumentos
+// "--servidor.puerto=9000" o de las propiedades del sistema, con los mismos nombres que ConfiguracionServidor.
+// El servidor HTTP escucha solo en 127.0.0.1 (server.address), separado del puerto del chat.
+
+package com.proyecto.cliente_servidor2;
+
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+@SpringBootApplication
+public class ClienteServidor2Application {
+
+    public static void main(String[] args) {
+        SpringApplication.run(ClienteServidor2Application.class, args);
+    }
+
+    // Función que crea el servidor de chat; Spring lo inicia al arrancar y lo drena al cerrarse el contexto
+    @Bean(initMethod = "iniciar", destroyMethod = "drenar")
+    public Servidor servidor(Environment entorno) {
+        return new Servidor(ConfiguracionServidor.desdePropiedades(entorno::getProperty));
+    }
+}
@@ -0,0 +1,616 @@
+// Nombre del Programa: Clúster de Servidores de Chat
+// Descripción: Une varios procesos Servidor para que un cliente pueda escribir a otro aunque estén conectados a nodos
+// distintos (por ejemplo, detrás de un balanceador de carga). Cada nodo escucha en un puerto propio para los enlaces
+// con los demás y mantiene un enlace de salida persistente hacia cada uno; por ese enlace envía, sin esperar respuesta,
+// las altas y bajas de sus clientes y los mensajes privados cuyo destinatario está en el otro nodo.
+// Protocolo entre nodos (líneas de texto, igual que con los clientes):
+// - "Reto:r1": lo primero que envía el nodo que acepta un enlace (r1, 16 bytes al azar en hexadecimal).
+// - "Nodo:nombre:puerto:arranque:r2:prueba": saludo del nodo que abre el enlace, con su propio reto r2; la prueba es
+//   HMAC-SHA256 con el secreto compartido (servidor.cluster.secreto) de "r1:" y el saludo sin ":prueba". El nodo que
+//   acepta cierra el enlace si la prueba no coincide; si coincide responde "Nodo:nombre:prueba" y no envía nada más, o
+//   "Duplicado:nombre:prueba" si ya tiene un enlace vivo de esa misma ejecución del otro nodo (arranque distinto indica
+//   que el otro nodo se reinició, y entonces se olvidan sus clientes anteriores). Su prueba firma "r2:" y la respuesta,
+//   así cada lado sabe que el otro conoce el secreto sin que el secreto viaje, y una respuesta grabada no sirve dos veces.
+// - "Alta:cliente" / "Baja:cliente": estado actual de un cliente local del nodo que lo envía.
+// - "Vecino:nodo:host:puerto": otro nodo conocido, para que todos terminen enlazados con todos.
+// - "Reenvio:remitente:destinatario:texto": mensaje privado para un cliente del nodo que lo recibe.
+// - "ReenvioSala:sala:remitente:texto": mensaje publicado en una sala; se envía a todos los nodos y cada uno lo reparte
+//   a sus miembros locales (la membresía de las salas es local a cada nodo).
+// Al abrirse un enlace se envía la lista completa de clientes locales; si un enlace se cae, el nodo que lo recibía
+// da de baja a todos los clientes del otro, y el que lo enviaba reintenta la conexión. Así la presencia converge.
+// Los mensajes reenviados que quedaron en la cola de un enlace caído, o en su buffer sin llegar al socket, se envían al
+// reconectar, detrás de la lista completa (lo que ya se pasó al socket y el otro nodo no llegó a leer se pierde): el nodo de origen ya los dio por entregados (mientras el enlace está caído, los mensajes nuevos para ese
+// nodo siguen el camino de un destinatario desconectado). Las altas, bajas y vecinos viejos se descartan, porque la
+// lista completa los reemplaza.
+// Seguridad: el puerto de enlaces escucha solo en loopback salvo que se configure servidor.cluster.direccion; fuera de
+// loopback el secreto compartido es obligatorio, para que ningún otro equipo pueda hacerse pasar por un nodo e
+// inyectar mensajes con un remitente falso.
+// Ejemplo: java -Dservidor.puerto=8080 -Dservidor.cluster.puerto=9080 ... Servidor
+//          java -Dservidor.puerto=8081 -Dservidor.cluster.puerto=9081 -Dservidor.cluster.vecinos=localhost:9080 ... Servidor
+//          (en equipos distintos, además -Dservidor.cluster.direccion=0.0.0.0 -Dservidor.cluster.secreto=... en ambos)
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+class Cluster {
+    static final String RETO = "Reto:";
+    static final String SALUDO = "Nodo:";
+    static final String DUPLICADO = "Duplicado:";
+    static final String ALTA = "Alta:";
+    static final String BAJA = "Baja:";
+    static final String VECINO = "Vecino:";
+    static final String REENVIO = "Reenvio:";
+    static final String REENVIO_SALA = "ReenvioSala:";
+    private static final byte[] PREFIJO_REENVIO = REENVIO.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PREFIJO_REENVIO_SALA = REENVIO_SALA.getBytes(StandardCharsets.UTF_8);
+
+    private static final int CAPACIDAD_ENLACE = 16 * 1024; // Líneas pendientes por enlace de salida
+    private static final int TAMANO_LOTE = 256; // Líneas que se escriben antes de vaciar el buffer al socket
+    private static final int TAMANO_LECTURA = 64 * 1024; // Buffer de lectura de cada enlace de entrada
+    private static final int ESPERA_CONEXION_MS = 2_000;
+    private static final long ESPERA_REINTENTO_MS = 500;
+    private static final String ALGORITMO_PRUEBA = "HmacSHA256";
+    // Clave de las pruebas sin secreto configurado: solo se permite en loopback, donde no protege de nada más que de
+    // enlazar por error nodos de clústeres distintos que tampoco tengan secreto
+    private static final byte[] SIN_SECRETO = "sin-secreto".getBytes(StandardCharsets.UTF_8);
+
+    private final Servidor servidor; // Entrega los mensajes reenviados a los clientes locales
+    private final RegistroClientes clientes; // Clientes locales, los que este nodo anuncia
+    private final TablaIds ids;
+    private final DirectorioCluster directorio; // Clientes de los demás nodos
+    private final Presencia presencia; // Avisa a los clientes locales de las altas y bajas remotas
+    private final int puertoPedido;
+    private final String nombrePedido;
+    private final String vecinos;
+    private final String direccionPedida; // Dirección local de los enlaces de entrada (null: loopback)
+    private final byte[] secreto; // Secreto compartido por los nodos (vacío: sin secreto)
+    private final SecretKeySpec clavePrueba;
+    private final SecureRandom aleatorio = new SecureRandom();
+
+    private final ConcurrentHashMap<String, Enlace> enlacesPorDireccion = new ConcurrentHashMap<>(); // "host:puerto" -> enlace
+    private final ConcurrentHashMap<String, Enlace> enlacesPorNodo = new ConcurrentHashMap<>(); // nodo -> enlace saludado
+    private final ConcurrentHashMap<String, Entrante> entrantesPorNodo = new ConcurrentHashMap<>(); // nodo -> enlace de entrada vigente
+    private final Set<SocketChannel> entrantes = ConcurrentHashMap.newKeySet(); // Enlaces de entrada abiertos, para cerrarlos al detener
+
+    private String nombre; // Nombre de este nodo
+    private int puerto; // Puerto real de los enlaces de entrada
+    private long arranque; // Identifica esta ejecución del nodo ante los demás
+    private ServerSocketChannel canalServidor;
+    private volatile boolean activo;
+
+    Cluster(Servidor servidor, ConfiguracionServidor configuracion, RegistroClientes clientes, TablaIds ids,
+            DirectorioCluster directorio, Presencia presencia) {
+        this.servidor = servidor;
+        this.clientes = clientes;
+        this.ids = ids;
+        this.directorio = directorio;
+        this.presencia = presencia;
+        this.puertoPedido = configuracion.getPuertoCluster();
+        this.nombrePedido = configuracion.getNombreNodo();
+        this.vecinos = configuracion.getVecinosCluster();
+        this.direccionPedida = configuracion.getDireccionCluster();
+        this.secreto = configuracion.getSecretoCluster().getBytes(StandardCharsets.UTF_8);
+        this.clavePrueba = new SecretKeySpec(secreto.length > 0 ? secreto : SIN_SECRETO, ALGORITMO_PRUEBA);
+    }
+
+    // Método que abre el puerto de los enlaces de entrada y se conecta a los vecinos configurados
+    void iniciar() throws IOException {
+        InetAddress direccion = direccionPedida != null ? InetAddress.getByName(direccionPedida) : InetAddress.getLoopbackAddress();
+        if (!direccion.isLoopbackAddress() && secreto.length == 0) {
+            throw new IOException("Los enlaces del clúster en " + direccion.getHostAddress()
+                    + " necesitan un secreto compartido (servidor.cluster.secreto)");
+        }
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(direccion, puertoPedido));
+        puerto = ((InetSocketAddress) canalServidor.getLocalAddress()).getPort();
+        nombre = nombrePedido != null ? nombrePedido : "nodo-" + puerto;
+        arranque = System.currentTimeMillis();
+        activo = true;
+        Thread.ofPlatform().name("cluster-aceptador").daemon().start(this::aceptarNodos);
+        for (String vecino : vecinos.split(",")) {
+            int separador = vecino.lastIndexOf(':');
+            if (separador > 0) {
+                asegurarEnlace(null, vecino.substring(0, separador).trim(),
+                        Integer.parseInt(vecino.substring(separador + 1).trim()));
+            }
+        }
+        Bitacora.SERVIDOR.info("cluster_inicio", "nodo " + nombre + " escuchando enlaces en el puerto " + puerto);
+    }
+
+    // Método que cierra todos los enlaces; los demás nodos darán de baja a los clientes de este
+    void detener() {
+        activo = false;
+        if (canalServidor == null) {
+            return; // iniciar() falló antes de abrir el puerto
+        }
+        try {
+            canalServidor.close();
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("cluster", "no se pudo cerrar el puerto de enlaces", e);
+        }
+        for (Enlace enlace : enlacesPorDireccion.values()) {
+            enlace.cerrar();
+        }
+        for (SocketChannel canal : entrantes) {
+            cerrarCanal(canal);
+        }
+    }
+
+    int getPuerto() {
+        return puerto;
+    }
+
+    // Método que anuncia a todos los nodos el estado actual de un cliente local (después de registrarlo o eliminarlo).
+    // Se anuncia el estado y no el evento, con el mismo candado que la lista completa de un enlace nuevo: así la última
+    // línea sobre un nombre en cada enlace siempre coincide con el registro local.
+    synchronized void anunciar(String cliente) {
+        String linea = (clientes.buscar(cliente) != null ? ALTA : BAJA) + cliente + "\n";
+        byte[] bytes = linea.getBytes(StandardCharsets.UTF_8);
+        for (Enlace enlace : enlacesPorDireccion.values()) {
+            enlace.control(bytes);
+        }
+    }
+
+    // Función que reenvía un mensaje privado al nodo del destinatario; devuelve false si el destinatario no está en
+    // ningún otro nodo o si el enlace no está disponible (el llamador lo trata como destinatario desconectado)
+    boolean reenviar(String destinatario, byte[] nombreRemitente, byte[] mensaje, int desde, int largo) {
+        String nodo = directorio.nodo(destinatario);
+        if (nodo == null) {
+            return false;
+        }
+        Enlace enlace = enlacesPorNodo.get(nodo);
+        if (enlace == null || !enlace.conectado) {
+            return false;
+        }
+        byte[] linea = armarLinea(PREFIJO_REENVIO, nombreRemitente, destinatario.getBytes(StandardCharsets.UTF_8),
+                mensaje, desde, largo);
+        if (!enlace.cola.offer(linea)) {
+            return false;
+        }
+        Metricas.CLUSTER_REENVIADOS.increment();
+        return true;
+    }
+
+    // Método que envía a todos los nodos un mensaje publicado en una sala local; la misma línea se comparte entre los
+    // enlaces. Si la cola de un enlace está llena, ese nodo no recibe el mensaje (como un miembro lento).
+    void difundirSala(byte[] sala, byte[] nombreRemitente, byte[] mensaje, int desde, int largo) {
+        byte[] linea = null;
+        for (Enlace enlace : enlacesPorNodo.values()) {
+            if (enlace.conectado) {
+                if (linea == null) {
+                    linea = armarLinea(PREFIJO_REENVIO_SALA, sala, nombreRemitente, mensaje, desde, largo);
+                }
+                enlace.cola.offer(linea);
+            }
+        }
+    }
+
+    // Función que arma "prefijo" + primero + ":" + segundo + ":" + mensaje + "\n" en un solo arreglo
+    private static byte[] armarLinea(byte[] prefijo, byte[] primero, byte[] segundo, byte[] mensaje, int desde, int largo) {
+        byte[] linea = new byte[prefijo.length + primero.length + 1 + segundo.length + 1 + largo + 1];
+        int posicion = copiar(prefijo, 0, prefijo.length, linea, 0);
+        posicion = copiar(primero, 0, primero.length, linea, posicion);
+        linea[posicion++] = ':';
+        posicion = copiar(segundo, 0, segundo.length, linea, posicion);
+        linea[posicion++] = ':';
+        posicion = copiar(mensaje, desde, largo, linea, posicion);
+        linea[posicion] = '\n';
+        return linea;
+    }
+
+    // Método que crea el enlace de salida hacia un nodo si todavía no hay uno (nodo es null para los vecinos
+    // configurados, cuyo nombre se conoce al saludar)
+    private void asegurarEnlace(String nodo, String host, int puertoNodo) {
+        if (!activo || nombre.equals(nodo) || (nodo != null && enlacesPorNodo.containsKey(nodo))) {
+            return;
+        }
+        // La dirección se resuelve para que "localhost" y "127.0.0.1" no den lugar a dos enlaces con el mismo nodo
+        InetSocketAddress resuelta = new InetSocketAddress(host, puertoNodo);
+        String direccion = (resuelta.isUnresolved() ? host : resuelta.getAddress().getHostAddress()) + ":" + puertoNodo;
+        enlacesPorDireccion.computeIfAbsent(direccion, d -> new Enlace(d, host, puertoNodo).iniciar());
+    }
+
+    // Método que prepara un enlace recién saludado: pone en su cola la lista completa de clientes locales y los demás
+    // nodos conocidos, y detrás los mensajes reenviados que quedaron de la conexión anterior, en el mismo orden; las
+    // líneas de control viejas se descartan. El enlace se marca conectado al final, para que ningún mensaje nuevo se
+    // adelante a los que quedaron. Usa el mismo candado que anunciar().
+    private synchronized void enlazado(Enlace nuevo) {
+        List<byte[]> anteriores = new ArrayList<>(nuevo.sinEnviar);
+        nuevo.sinEnviar.clear();
+        nuevo.cola.drainTo(anteriores);
+        for (String cliente : clientes.nombres()) {
+            nuevo.cola.offer((ALTA + cliente + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        for (Enlace enlace : enlacesPorNodo.values()) {
+            if (enlace != nuevo && enlace.conectado) {
+                nuevo.cola.offer((VECINO + enlace.nodo + ":" + enlace.host + ":" + enlace.puerto + "\n")
+                        .getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        int descartados = 0;
+        for (byte[] linea : anteriores) {
+            boolean reenviado = empiezaCon(linea, linea.length, PREFIJO_REENVIO) || empiezaCon(linea, linea.length, PREFIJO_REENVIO_SALA);
+            if (reenviado && !nuevo.cola.offer(linea)) {
+                descartados++;
+            }
+        }
+        if (descartados > 0) {
+            Bitacora.SERVIDOR.aviso("cluster", null, "nodo " + nuevo.nodo + ": " + descartados
+                    + " mensajes reenviados no cupieron en la cola detrás de la lista completa");
+        }
+        nuevo.conectado = true;
+    }
+
+    // Bucle que acepta los enlaces de entrada y atiende cada uno en su propio hilo virtual
+    private void aceptarNodos() {
+        while (activo) {
+            try {
+                SocketChannel canal = canalServidor.accept();
+                canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                entrantes.add(canal);
+                Thread.ofVirtual().name("cluster-entrada").start(() -> atenderNodo(canal));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (activo) {
+                    Bitacora.SERVIDOR.error("cluster", "error al aceptar un enlace", e);
+                }
+            }
+        }
+    }
+
+    // Función que envía el reto y lee las líneas de un enlace de entrada hasta que el otro nodo lo cierra
+    private void atenderNodo(SocketChannel canal) {
+        LectorLineas lector = new LectorLineas();
+        ByteBuffer lectura = ByteBuffer.allocate(TAMANO_LECTURA);
+        Entrante entrante = null;
+        try {
+            String reto = nuevoReto();
+            escribirLinea(canal, RETO + reto);
+            while (canal.read(lectura) >= 0) {
+                lectura.flip();
+                int largo;
+                while ((largo = lector.siguienteLinea(lectura)) >= 0) {
+                    if (entrante == null) {
+                        entrante = saludar(canal, lector.texto(largo), reto);
+                    } else {
+                        procesarLinea(entrante.nodo(), lector.bytes(), largo);
+                    }
+                }
+                lectura.clear();
+            }
+        } catch (IOException e) {
+            // El otro nodo se detuvo o el enlace se cortó
+        } finally {
+            entrantes.remove(canal);
+            cerrarCanal(canal);
+            // Solo se da de baja a sus clientes si este era el enlace vigente de ese nodo
+            if (entrante != null && entrantesPorNodo.remove(entrante.nodo(), entrante)) {
+                nodoPerdido(entrante.nodo());
+            }
+        }
+    }
+
+    // Función que atiende el saludo "Nodo:nombre:puerto:arranque:reto:prueba" de un enlace de entrada, comprueba la
+    // prueba del secreto y lo anota como el enlace vigente de ese nodo
+    private Entrante saludar(SocketChannel canal, String saludo, String reto) throws IOException {
+        String[] partes = saludo.startsWith(SALUDO) ? saludo.substring(SALUDO.length()).split(":") : new String[0];
+        if (partes.length != 5) {
+            throw new IOException("Saludo de nodo inválido: " + saludo);
+        }
+        if (!pruebaValida(reto, saludo.substring(0, saludo.lastIndexOf(':')), partes[4])) {
+            Bitacora.SERVIDOR.aviso("cluster_saludo_rechazado", partes[0], "prueba del secreto incorrecta desde "
+                    + canal.getRemoteAddress());
+            throw new IOException("El nodo " + partes[0] + " no conoce el secreto del clúster");
+        }
+        String retoOtro = partes[3];
+        Entrante entrante = new Entrante(partes[0], Long.parseLong(partes[2]), canal);
+        Entrante anterior;
+        synchronized (entrantesPorNodo) {
+            anterior = entrantesPorNodo.get(entrante.nodo());
+            if (anterior != null && anterior.arranque() == entrante.arranque()) {
+                // Segundo enlace de la misma ejecución (por ejemplo, descubierto por otra dirección): se rechaza
+                escribirLinea(canal, firmar(retoOtro, DUPLICADO + nombre));
+                throw new IOException("Enlace duplicado del nodo " + entrante.nodo());
+            }
+            entrantesPorNodo.put(entrante.nodo(), entrante);
+        }
+        if (anterior != null) {
+            // El otro nodo se reinició: sus clientes anteriores ya no están; lo que anuncie ahora es su lista completa
+            nodoPerdido(entrante.nodo());
+        }
+        escribirLinea(canal, firmar(retoOtro, SALUDO + nombre));
+        String host = ((InetSocketAddress) canal.getRemoteAddress()).getHostString();
+        asegurarEnlace(entrante.nodo(), host, Integer.parseInt(partes[1]));
+        return entrante;
+    }
+
+    private String nuevoReto() {
+        byte[] bytes = new byte[16];
+        aleatorio.nextBytes(bytes);
+        return HexFormat.of().formatHex(bytes);
+    }
+
+    // Función que calcula la prueba del secreto: HMAC-SHA256 de "reto:linea", en hexadecimal
+    private String prueba(String reto, String linea) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITMO_PRUEBA);
+            mac.init(clavePrueba);
+            return HexFormat.of().formatHex(mac.doFinal((reto + ":" + linea).getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("No se pudo calcular " + ALGORITMO_PRUEBA, e);
+        }
+    }
+
+    // Función que compara la prueba recibida en tiempo constante
+    private boolean pruebaValida(String reto, String linea, String recibida) {
+        return MessageDigest.isEqual(prueba(reto, linea).getBytes(StandardCharsets.UTF_8),
+                recibida.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Función que agrega a la línea su prueba para el reto del otro nodo
+    private String firmar(String reto, String linea) {
+        return linea + ":" + prueba(reto, linea);
+    }
+
+    private static void escribirLinea(SocketChannel canal, String linea) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap((linea + "\n").getBytes(StandardCharsets.UTF_8));
+        while (bytes.hasRemaining()) {
+            canal.write(bytes);
+        }
+    }
+
+    // Método que atiende una línea de un nodo ya saludado
+    private void procesarLinea(String nodo, byte[] linea, int largo) {
+        boolean privado = empiezaCon(linea, largo, PREFIJO_REENVIO);
+        if (privado || empiezaCon(linea, largo, PREFIJO_REENVIO_SALA)) {
+            // "Reenvio:remitente:destinatario:texto" o "ReenvioSala:sala:remitente:texto"
+            int inicio = privado ? PREFIJO_REENVIO.length : PREFIJO_REENVIO_SALA.length;
+            int finPrimero = buscarSeparador(linea, inicio, largo);
+            int finSegundo = finPrimero < 0 ? -1 : buscarSeparador(linea, finPrimero + 1, largo);
+            if (finSegundo < 0) {
+                return;
+            }
+            String primero = new String(linea, inicio, finPrimero - inicio, StandardCharsets.UTF_8);
+            String segundo = new String(linea, finPrimero + 1, finSegundo - finPrimero - 1, StandardCharsets.UTF_8);
+            if (privado) {
+                Metricas.CLUSTER_RECIBIDOS.increment();
+                servidor.recibirReenvio(primero, segundo, linea, finSegundo + 1, largo - finSegundo - 1);
+            } else {
+                servidor.recibirMensajeSala(primero, segundo, linea, finSegundo + 1, largo - finSegundo - 1);
+            }
+            return;
+        }
+        String texto = new String(linea, 0, largo, StandardCharsets.UTF_8);
+        if (texto.startsWith(ALTA)) {
+            String cliente = texto.substring(ALTA.length());
+            ids.id(cliente); // Para que los mensajes de los clientes locales encuentren el nombre
+            if (directorio.alta(cliente, nodo)) {
+                presencia.cambioRemoto(cliente, true);
+            }
+        } else if (texto.startsWith(BAJA)) {
+            String cliente = texto.substring(BAJA.length());
+            if (directorio.baja(cliente, nodo)) {
+                presencia.cambioRemoto(cliente, false);
+            }
+        } else if (texto.startsWith(VECINO)) {
+            String[] partes = texto.substring(VECINO.length()).split(":");
+            if (partes.length == 3) {
+                asegurarEnlace(partes[0], partes[1], Integer.parseInt(partes[2]));
+            }
+        } else {
+            Bitacora.SERVIDOR.aviso("cluster_linea_desconocida", null, "nodo " + nodo + ": " + texto);
+        }
+    }
+
+    // Método que da de baja a todos los clientes de un nodo cuyo enlace se perdió
+    private void nodoPerdido(String nodo) {
+        for (String cliente : directorio.eliminarNodo(nodo)) {
+            presencia.cambioRemoto(cliente, false);
+        }
+    }
+
+    private static void cerrarCanal(SocketChannel canal) {
+        try {
+            canal.close();
+        } catch (IOException e) {
+            // El canal ya estaba cerrado
+        }
+    }
+
+    private static int copiar(byte[] origen, int desde, int largo, byte[] destino, int posicion) {
+        System.arraycopy(origen, desde, destino, posicion, largo);
+        return posicion + largo;
+    }
+
+    private static boolean empiezaCon(byte[] linea, int largo, byte[] prefijo) {
+        if (largo < prefijo.length) {
+            return false;
+        }
+        for (int i = 0; i < prefijo.length; i++) {
+            if (linea[i] != prefijo[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int buscarSeparador(byte[] linea, int desde, int largo) {
+        for (int i = desde; i < largo; i++) {
+            if (linea[i] == ':') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Enlace de entrada vigente de un nodo, con el arranque que envió al saludar
+    private record Entrante(String nodo, long arranque, SocketChannel canal) {
+    }
+
+    // Enlace de salida persistente hacia otro nodo: un hilo virtual se conecta, saluda y escribe en lotes lo que llega a
+    // su cola, sin esperar respuestas; si la conexión se cae, vuelve a intentarlo
+    private final class Enlace {
+        private final String direccion;
+        private final String host;
+        private final int puerto;
+        private final ArrayBlockingQueue<byte[]> cola = new ArrayBlockingQueue<>(CAPACIDAD_ENLACE);
+        private volatile boolean conectado; // Saludado y con la lista completa en la cola
+        private volatile String nodo; // Nombre del otro nodo, conocido al saludar
+        private volatile Socket socket;
+        private Thread hilo;
+        private final List<byte[]> sinEnviar = new ArrayList<>(); // Sacadas de la cola sin llegar al socket (solo el hilo)
+
+        Enlace(String direccion, String host, int puerto) {
+            this.direccion = direccion;
+            this.host = host;
+            this.puerto = puerto;
+        }
+
+        Enlace iniciar() {
+            hilo = Thread.ofVirtual().name("cluster-enlace").start(this::ejecutar);
+            return this;
+        }
+
+        // Método que pone en la cola una línea de control (altas, bajas, vecinos). Si no cabe, se cierra la conexión:
+        // al reconectar se envía la lista completa, así que la presencia sigue convergiendo.
+        void control(byte[] linea) {
+            if (conectado && !cola.offer(linea)) {
+                cerrarSocket();
+            }
+        }
+
+        void cerrar() {
+            hilo.interrupt();
+            cerrarSocket();
+        }
+
+        private void cerrarSocket() {
+            Socket actual = socket;
+            if (actual != null) {
+                try {
+                    actual.close();
+                } catch (IOException e) {
+                    // El socket ya estaba cerrado
+                }
+            }
+        }
+
+        // Bucle del enlace: conectar, saludar, escribir hasta que falle y reintentar
+        private void ejecutar() {
+            while (activo) {
+                try (Socket nuevo = new Socket()) {
+                    socket = nuevo;
+                    nuevo.connect(new InetSocketAddress(host, puerto), ESPERA_CONEXION_MS);
+                    nuevo.setTcpNoDelay(true);
+                    OutputStream salida = new BufferedOutputStream(nuevo.getOutputStream(), TAMANO_LECTURA);
+                    BufferedReader entrada = new BufferedReader(new InputStreamReader(nuevo.getInputStream(), StandardCharsets.UTF_8));
+                    String reto = entrada.readLine();
+                    if (reto == null || !reto.startsWith(RETO)) {
+                        throw new IOException("El nodo " + direccion + " no envió el reto");
+                    }
+                    String propio = nuevoReto();
+                    String saludo = SALUDO + nombre + ":" + Cluster.this.puerto + ":" + arranque + ":" + propio;
+                    salida.write((firmar(reto.substring(RETO.length()), saludo) + "\n").getBytes(StandardCharsets.UTF_8));
+                    salida.flush();
+                    String respuesta = entrada.readLine();
+                    int separador = respuesta == null ? -1 : respuesta.lastIndexOf(':');
+                    if (separador < 0 || !pruebaValida(propio, respuesta.substring(0, separador), respuesta.substring(separador + 1))) {
+                        throw new IOException("El nodo " + direccion + " no respondió con la prueba del secreto");
+                    }
+                    respuesta = respuesta.substring(0, separador);
+                    if (respuesta.startsWith(DUPLICADO)) {
+                        Enlace otro = enlacesPorNodo.get(respuesta.substring(DUPLICADO.length()));
+                        if (otro != null && otro != this) {
+                            // Ya hay otro enlace vivo con ese nodo
+                            enlacesPorDireccion.remove(direccion, this);
+                            return;
+                        }
+                        throw new IOException("El nodo " + direccion + " aún no cerró el enlace anterior");
+                    }
+                    if (!respuesta.startsWith(SALUDO)) {
+                        throw new IOException("El nodo " + direccion + " no respondió al saludo");
+                    }
+                    String remoto = respuesta.substring(SALUDO.length());
+                    Enlace existente = remoto.equals(nombre) ? null : enlacesPorNodo.putIfAbsent(remoto, this);
+                    if (remoto.equals(nombre) || (existente != null && existente != this)) {
+                        // Es este mismo nodo, o ya hay un enlace con ese nodo por otra dirección
+                        enlacesPorDireccion.remove(direccion, this);
+                        return;
+                    }
+                    nodo = remoto;
+                    enlazado(this);
+                    escribir(salida);
+                } catch (IOException e) {
+                    // Nodo caído o enlace cortado: se reintenta
+                } catch (InterruptedException e) {
+                    return;
+                } finally {
+                    conectado = false;
+                }
+                if (nodo != null) {
+                    // Mientras esté caído, otro enlace (por ejemplo, con otra dirección) puede ocupar su lugar
+                    enlacesPorNodo.remove(nodo, this);
+                }
+                try {
+                    Thread.sleep(ESPERA_REINTENTO_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        // Método que escribe en lotes las líneas de la cola; el buffer se vacía al socket cuando la cola queda vacía.
+        // Las líneas siguen en sinEnviar hasta que el buffer se vacía, y el buffer se vacía aquí antes de que se llene
+        // (no por su cuenta), así que si la escritura falla, enlazado() las vuelve a encolar al reconectar.
+        private void escribir(OutputStream salida) throws IOException, InterruptedException {
+            int enBuffer = 0; // Bytes escritos en el buffer desde que se vació
+            while (activo) {
+                int siguiente = sinEnviar.size();
+                sinEnviar.add(cola.take());
+                cola.drainTo(sinEnviar, TAMANO_LOTE - 1);
+                for (; siguiente < sinEnviar.size(); siguiente++) {
+                    byte[] linea = sinEnviar.get(siguiente);
+                    if (enBuffer + linea.length > TAMANO_LECTURA) {
+                        salida.flush();
+                        sinEnviar.subList(0, siguiente).clear();
+                        siguiente = 0;
+                        enBuffer = 0;
+                    }
+                    salida.write(linea);
+                    enBuffer += linea.length;
+                }
+                if (cola.isEmpty()) {
+                    salida.flush();
+                    sinEnviar.clear();
+                    enBuffer = 0;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+// Nombre del Programa: Cola de Salida de una Conexión
+// Descripción: Cola acotada con las cargas pendientes de enviar a un cliente. El hilo que enruta un mensaje
+// solo lo encola; un escritor propio de la conexión la vacía en lotes y hace una única escritura al socket por lote.
+// Así un destinatario lento nunca bloquea al remitente (salvo con la política CONTRAPRESION, y siempre por un tiempo
+// acotado) y se evita una llamada al sistema por cada mensaje.
+// Ejemplo: Con capacidad 256 y DESCARTAR_ANTIGUO, un cliente que deja de leer conserva solo sus 256 mensajes más recientes.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+class ColaSalida {
+    // Máximo de cargas que el escritor toma de la cola para una sola escritura
+    static final int TAMANO_LOTE = 32;
+
+    private final ArrayBlockingQueue<Carga> cola; // Basada en arreglo: encolar no reserva memoria
+    private final int capacidad;
+    private final PoliticaDesbordamiento politica;
+    private final long esperaMs; // Espera máxima de la política CONTRAPRESION
+
+    ColaSalida(int capacidad, PoliticaDesbordamiento politica, long esperaMs) {
+        this.cola = new ArrayBlockingQueue<>(capacidad);
+        this.capacidad = capacidad;
+        this.politica = politica;
+        this.esperaMs = esperaMs;
+    }
+
+    // Función que encola una carga aplicando la política de desbordamiento.
+    // puedeEsperar es false cuando quien encola es el mismo hilo que vacía la cola (esperar sería un bloqueo mutuo).
+    // Devuelve false solo si la política es DESCONECTAR y la cola está llena: el llamador debe cerrar la conexión.
+    boolean ofrecer(Carga carga, boolean puedeEsperar) {
+        if (cola.offer(carga)) {
+            encolado();
+            return true;
+        }
+        switch (politica) {
+            case DESCONECTAR:
+                Metricas.CLIENTES_LENTOS_DESCONECTADOS.increment();
+                return false;
+            case CONTRAPRESION:
+                if (puedeEsperar && esperarSitio(carga)) {
+                    return true;
+                }
+                Metricas.MENSAJES_DESCARTADOS.increment();
+                carga.liberar();
+                return true;
+            default:
+                // Hacer sitio descartando la carga más antigua; si otro hilo ganó el hueco, se descarta la nueva
+                Carga antigua = cola.poll();
+                if (antigua != null) {
+                    Metricas.PROFUNDIDAD_COLAS.decrement();
+                    Metricas.MENSAJES_DESCARTADOS.increment();
+                    antigua.liberar();
+                }
+                if (cola.offer(carga)) {
+                    encolado();
+                } else {
+                    Metricas.MENSAJES_DESCARTADOS.increment();
+                    carga.liberar();
+                }
+                return true;
+        }
+    }
+
+    // Función que encola sin descartar nada ni esperar; con la cola llena devuelve false y el llamador cierra la conexión.
+    // La usan las conexiones con sesión: sus mensajes están numerados de forma implícita, así que descartar uno
+    // desfasaría la cuenta del cliente; al cerrar, el cliente reanuda y el anillo de la sesión repite lo que faltaba.
+    boolean ofrecerSinDescartar(Carga carga) {
+        if (cola.offer(carga)) {
+            encolado();
+            return true;
+        }
+        Metricas.CLIENTES_LENTOS_DESCONECTADOS.increment();
+        return false;
+    }
+
+    // Función que espera a que haya una carga y toma hasta lote.length; devuelve cuántos tomó
+    int tomarLote(Carga[] lote) throws InterruptedException {
+        lote[0] = cola.take();
+        return drenar(lote, 1);
+    }
+
+    // Función que toma sin esperar hasta lote.length cargas; devuelve cuántos tomó (0 si la cola está vacía)
+    int drenarLote(Carga[] lote) {
+        return drenar(lote, 0);
+    }
+
+    // Método que descarta lo pendiente al cerrar la conexión, para que la métrica de profundidad no quede inflada
+    void vaciar() {
+        Carga carga;
+        while ((carga = cola.poll()) != null) {
+            Metricas.PROFUNDIDAD_COLAS.decrement();
+            carga.liberar();
+        }
+    }
+
+    int profundidad() {
+        return cola.size();
+    }
+
+    int capacidad() {
+        return capacidad;
+    }
+
+    // Función que devuelve cuántas cargas caben todavía sin aplicar la política de desbordamiento
+    int sitioLibre() {
+        return cola.remainingCapacity();
+    }
+
+    private int drenar(Carga[] lote, int desde) {
+        int n = desde;
+        Carga carga;
+        while (n < lote.length && (carga = cola.poll()) != null) {
+            lote[n++] = carga;
+        }
+        Metricas.PROFUNDIDAD_COLAS.add(-n);
+        return n;
+    }
+
+    private boolean esperarSitio(Carga carga) {
+        Metricas.ESPERAS_CONTRAPRESION.increment();
+        try {
+            if (cola.offer(carga, esperaMs, TimeUnit.MILLISECONDS)) {
+                encolado();
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    private void encolado() {
+        Metricas.MENSAJES_ENCOLADOS.increment();
+        Metricas.PROFUNDIDAD_COLAS.increment();
+        Metricas.PROFUNDIDAD_MAXIMA.accumulate(cola.size());
+    }
+}
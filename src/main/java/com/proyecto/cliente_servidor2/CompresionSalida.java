@@ -0,0 +1,93 @@
+// Nombre del Programa: Compresión de la Salida de una Conexión
+// Descripción: Comprime con deflate lo que el servidor envía a un cliente que lo pidió con la línea "Compresion:deflate"
+// (antes del nombre, para que la lista completa de clientes ya llegue comprimida, o después, pero nunca después de
+// "Modo:binario"). El servidor confirma con la misma línea sin comprimir y, desde ahí, cada lote que el escritor iba a
+// escribir se envía como un bloque: [cabecera: int][bytes]. Si el bit alto de la cabecera está activo, los bytes son
+// deflate; si no, van tal cual. El resto de la cabecera es el largo de los bytes del bloque.
+// El contexto de deflate dura toda la conexión (cada bloque se cierra con SYNC_FLUSH): los nombres y textos que se
+// repiten entre mensajes se comprimen contra lo ya enviado, como con un diccionario compartido que se va llenando solo.
+// Los lotes de menos de UMBRAL bytes se envían sin comprimir y no pasan por el contexto.
+// Debajo de esta capa siguen las líneas de texto o las tramas binarias de siempre; el cliente la deshace con
+// EntradaComprimida. La memoria del Deflater (unos cientos de KB nativos, fuera del heap) solo la pagan las conexiones
+// que lo piden, y se libera con cerrar() al cerrarse la conexión: el recolector no la devuelve por su cuenta a tiempo.
+// cerrar() puede llegar desde cualquier hilo (o desde el propio escritor, al desbordarse una cola de sesión) mientras el
+// escritor comprime; sin candados, porque quien cierra puede tener tomado el de la sesión que el escritor espera: si
+// el escritor está dentro de llenar(), es él quien libera el Deflater al salir, y ya no comprime nada más.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+final class CompresionSalida {
+    static final String LINEA_NEGOCIACION = "Compresion:deflate";
+    static final int CABECERA = 4;
+    static final int COMPRIMIDO = 0x80000000; // Bit de la cabecera que indica un bloque deflate
+    // Margen para la peor expansión de deflate con datos incomprimibles (bloques almacenados y marca de SYNC_FLUSH)
+    private static final int HOLGURA = 128;
+    private static final int EN_USO = 1; // El escritor está dentro de llenar()
+    private static final int CERRADA = 2; // Se pidió liberar el Deflater
+
+    private final Deflater deflater;
+    private final int umbral;
+    private final ByteBuffer crudo; // Lote sin comprimir que se arma antes de decidir cómo enviarlo
+    private final AtomicInteger estado = new AtomicInteger(); // EN_USO y CERRADA
+
+    CompresionSalida(int nivel, int umbral) {
+        this.deflater = new Deflater(nivel, true);
+        this.umbral = umbral;
+        this.crudo = ByteBuffer.allocate(PoolBuffers.TAMANO_BUFFER - CABECERA - HOLGURA);
+    }
+
+    // Función que toma de la conexión un lote sin comprimir y lo escribe en el destino como un bloque; devuelve false
+    // si no había nada pendiente o la compresión ya se cerró
+    boolean llenar(Conexion conexion, ByteBuffer destino) {
+        if (!estado.compareAndSet(0, EN_USO)) {
+            return false; // Solo el escritor marca EN_USO, así que falla únicamente si ya está cerrada
+        }
+        try {
+            return comprimir(conexion, destino);
+        } finally {
+            if (estado.getAndAdd(-EN_USO) == (EN_USO | CERRADA)) {
+                deflater.end(); // Se cerró mientras comprimía
+            }
+        }
+    }
+
+    private boolean comprimir(Conexion conexion, ByteBuffer destino) {
+        crudo.clear().limit(Math.min(crudo.capacity(), destino.remaining() - CABECERA - HOLGURA));
+        if (crudo.limit() <= 0 || !conexion.llenarSinComprimir(crudo) || estado.get() != EN_USO) {
+            return false; // Nada pendiente, o la conexión se cerró mientras se tomaba el lote
+        }
+        crudo.flip();
+        int largo = crudo.remaining();
+        int cabecera = destino.position();
+        destino.position(cabecera + CABECERA);
+        if (largo < umbral) {
+            destino.put(crudo);
+            destino.putInt(cabecera, largo);
+            return true;
+        }
+        long inicio = System.nanoTime();
+        deflater.setInput(crudo);
+        // Con la holgura reservada, una sola llamada consume todo el lote y termina el bloque
+        int comprimidos = deflater.deflate(destino, Deflater.SYNC_FLUSH);
+        if (!deflater.needsInput() || !destino.hasRemaining()) {
+            throw new IllegalStateException("El bloque comprimido no cupo en el buffer de escritura");
+        }
+        destino.putInt(cabecera, COMPRIMIDO | comprimidos);
+        Metricas.COMPRESION.registrar(System.nanoTime() - inicio);
+        Metricas.COMPRESION_BYTES_ENTRADA.add(largo);
+        Metricas.COMPRESION_BYTES_SALIDA.add(comprimidos + CABECERA);
+        return true;
+    }
+
+    // Método que libera la memoria nativa del Deflater, o se lo deja al escritor si está comprimiendo; se puede llamar
+    // más de una vez y desde cualquier hilo
+    void cerrar() {
+        if (estado.getAndUpdate(actual -> actual | CERRADA) == 0) {
+            deflater.end();
+        }
+    }
+}
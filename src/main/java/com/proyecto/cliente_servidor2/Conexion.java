@@ -0,0 +1,410 @@
+// Nombre del Programa: Conexión de un Cliente en el Servidor
+// Descripción: Representa a un cliente conectado sin importar el motor que lo atiende. El motor entrega los bytes
+// leídos con recibir(), la conexión los convierte en líneas (o en tramas, si el cliente negoció el modo binario) y se
+// los pasa al Servidor, y el Servidor responde con encolar(). encolar() solo deja la carga en la cola de salida acotada
+// de la conexión; el escritor de cada motor la vacía en lotes copiando las cargas a un buffer prestado (llenar()),
+// con una sola escritura al socket por lote.
+// Coalescencia: si se configura servidor.coalescencia.ventanaMs, el escritor no escribe en cuanto llega el primer
+// mensaje sino que espera esa ventana (o a que se junten servidor.coalescencia.mensajes) para enviar más mensajes en la
+// misma escritura y en menos paquetes. El cliente la desactiva para su conexión con "Coalescencia:off".
+// Compresión: si el cliente la pide, cada lote pasa por CompresionSalida antes de llegar al buffer del motor.
+// Sesión: si el cliente la pidió, los mensajes reenviables pasan por su Sesion, que los numera y los deja en la cola de
+// la conexión actual del cliente (ver Sesiones). Con sesión la cola llena cierra la conexión en lugar de descartar.
+// Latidos: cada lectura anota el tic de la rueda de temporizadores, con el que Latidos decide si enviar "Ping" o cerrar
+// la conexión inactiva.
+// Límite de mensajes: antes de separar cada línea o trama, ControlAdmision consulta la cubeta del usuario (un long de
+// esta conexión); si se agota, los bytes que faltan por procesar quedan retenidos aquí y el motor pausa la lectura
+// con pausarLectura(). Al terminar la pausa, el motor llama a recibirRetenidos() antes de volver a leer del socket.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+abstract class Conexion {
+    static final String PREFIJO_COALESCENCIA = "Coalescencia:";
+
+    private final Servidor servidor; // Servidor que procesa las líneas de esta conexión
+    private final ControlAdmision admision; // Límite de mensajes que se consulta antes de separar cada uno
+    private final LectorLineas lector = new LectorLineas(); // Reconstruye las líneas a partir de los bytes
+    private final LectorTramas.Manejador manejadorTramas; // Entrega las tramas binarias al servidor
+    private final ColaSalida salida; // Cargas pendientes de escribir en el socket
+    private final AtomicBoolean cerrada = new AtomicBoolean(); // Evita cerrar dos veces la misma conexión
+    private volatile String nombreCliente; // Nombre con el que se registró el cliente (null hasta la primera línea)
+    private byte[] nombreBytes; // Nombre en UTF-8, para armar los mensajes sin convertirlo cada vez
+    private int idCliente; // Identificador del nombre en el protocolo binario
+    private String par; // Dirección remota del socket, para la bitácora (null en conexiones sin socket)
+    private final long ventanaCoalescencia; // Nanosegundos que el escritor espera a juntar más mensajes (0: sin espera)
+    private final int umbralCoalescencia; // Mensajes pendientes con los que se escribe sin esperar
+    private volatile boolean coalescencia = true; // false si el cliente pidió "Coalescencia:off"
+    private final ClaveNombre claveBusqueda = new ClaveNombre(); // Clave reutilizable para buscar destinatarios por bytes
+    private volatile Sesiones.Sesion sesion; // Sesión reanudable del cliente (null si no la pidió)
+    private volatile long reenviablesEscritos; // Mensajes reenviables que el escritor copió enteros (solo él escribe)
+    private final Latidos latidos; // Reloj de la rueda con el que se anota la última lectura
+    private volatile long ultimaActividad; // Tic de la rueda en que se recibió algo por última vez
+    private volatile Latidos.Vigilancia vigilancia; // Tarea de la rueda que vigila esta conexión (null si no se vigila)
+
+    // Estado del lector (solo lo usa el hilo que lee del socket)
+    private LectorTramas tramas; // Distinto de null cuando el cliente lee en modo binario
+    private int mensajesLeidos; // Para elegir uno de cada Metricas.MUESTREO mensajes a medir
+    private boolean compresionPedida; // El cliente ya pidió comprimir la salida
+    private boolean sesionPedida; // El cliente pidió una sesión reanudable antes de su nombre
+    private long llegadaTeorica = System.nanoTime(); // Estado de la cubeta de mensajes del usuario (ver LimiteTasa)
+    private boolean limitada; // Ya se avisó al cliente que pasó el límite y su cubeta no ha vuelto a llenarse
+    private ByteBuffer retenidos; // Bytes leídos que esperan el fin de la pausa por el límite (null si no hay)
+
+    // Estado del escritor (solo lo usa el escritor del motor)
+    private boolean escrituraBinaria; // Modo en que se están escribiendo las cargas
+    private final Carga[] lote = new Carga[ColaSalida.TAMANO_LOTE]; // Cargas tomadas de la cola
+    private int inicioLote; // Siguiente carga del lote por copiar
+    private int finLote; // Cantidad de cargas del lote
+    private Carga enCurso; // Carga copiada a medias porque no cupo en el buffer
+    private int copiadoEnCurso; // Bytes de enCurso ya copiados
+    private volatile CompresionSalida compresion; // Distinto de null cuando la salida se envía en bloques comprimidos
+
+    Conexion(Servidor servidor) {
+        this.servidor = servidor;
+        this.admision = servidor.getAdmision();
+        this.manejadorTramas = (codigo, datos) -> servidor.procesarTrama(this, codigo, datos);
+        ConfiguracionServidor configuracion = servidor.getConfiguracion();
+        this.salida = new ColaSalida(configuracion.getCapacidadSalida(), configuracion.getPoliticaSalida(),
+                configuracion.getEsperaSalidaMs());
+        this.ventanaCoalescencia = configuracion.getVentanaCoalescenciaMs() * 1_000_000;
+        this.umbralCoalescencia = configuracion.getUmbralCoalescencia();
+        this.latidos = servidor.getLatidos();
+    }
+
+    // Método que entrega al servidor cada línea o trama completa contenida en los bytes recibidos
+    void recibir(ByteBuffer datos) throws IOException {
+        Metricas.BYTES_RECIBIDOS.add(datos.remaining());
+        ultimaActividad = latidos.tic();
+        if (retenidos != null) {
+            retener(datos); // La lectura está en pausa (llegan varios registros TLS de una lectura): va detrás
+            return;
+        }
+        procesar(datos);
+    }
+
+    // Método que el motor llama al terminar la pausa de lectura: procesa lo retenido, que puede volver a pausarla
+    void recibirRetenidos() throws IOException {
+        ByteBuffer datos = retenidos;
+        if (datos != null) {
+            retenidos = null;
+            procesar(datos);
+        }
+    }
+
+    // Método que separa y entrega los mensajes mientras el usuario tenga turno; al primer rechazo retiene el resto
+    private void procesar(ByteBuffer datos) throws IOException {
+        while (!cerrada.get() && datos.hasRemaining()) {
+            if (!admision.hayTurno(this)) {
+                retener(datos);
+                return;
+            }
+            if (tramas != null) {
+                if (!tramas.procesar(datos, manejadorTramas)) {
+                    return;
+                }
+                continue;
+            }
+            int largo = lector.siguienteLinea(datos);
+            if (largo < 0) {
+                return;
+            }
+            servidor.procesarLinea(this, lector.bytes(), largo);
+        }
+    }
+
+    // Método que copia los bytes que quedan sin procesar detrás de los ya retenidos; el buffer del motor se reutiliza
+    // en la siguiente lectura. Queda acotado porque el motor no lee más del socket mientras dura la pausa.
+    private void retener(ByteBuffer datos) {
+        int previos = retenidos != null ? retenidos.remaining() : 0;
+        ByteBuffer copia = ByteBuffer.allocate(previos + datos.remaining());
+        if (retenidos != null) {
+            copia.put(retenidos);
+        }
+        retenidos = copia.put(datos).flip();
+    }
+
+    // Función que indica si el mensaje que se está leyendo se mide (uno de cada Metricas.MUESTREO; solo hilo lector)
+    boolean tocaMedir() {
+        return (++mensajesLeidos & (Metricas.MUESTREO - 1)) == 0;
+    }
+
+    // Método que pasa la lectura a modo binario; los bytes que sigan a la línea actual ya se leen como tramas
+    void leerEnBinario() {
+        tramas = new LectorTramas();
+    }
+
+    boolean leeEnBinario() {
+        return tramas != null;
+    }
+
+    // Función que anota que el cliente pidió comprimir la salida; devuelve false si ya lo había pedido
+    boolean pedirCompresion() {
+        if (compresionPedida) {
+            return false;
+        }
+        compresionPedida = true;
+        return true;
+    }
+
+    // Método que anota que el cliente quiere una sesión reanudable; se crea al registrar su nombre
+    void pedirSesion() {
+        sesionPedida = true;
+    }
+
+    boolean sesionPedida() {
+        return sesionPedida;
+    }
+
+    Sesiones.Sesion getSesion() {
+        return sesion;
+    }
+
+    void setSesion(Sesiones.Sesion sesion) {
+        this.sesion = sesion;
+    }
+
+    long getReenviablesEscritos() {
+        return reenviablesEscritos;
+    }
+
+    // Método para enviar una línea de texto al cliente (sin el '\n' final)
+    void enviar(String linea) {
+        encolar(Carga.linea(linea));
+    }
+
+    // Método que deja una carga en la cola de salida y avisa al escritor del motor
+    // El llamador ya anotó esta cola como dueña de la carga (retener); si no se encola, se libera aquí
+    void encolar(Carga carga) {
+        encolar(carga, puedeEsperarSitio());
+    }
+
+    // Método que encola indicando si el hilo actual puede esperar sitio; el reparto a las salas y los deltas de
+    // presencia usan false para que un cliente lento nunca frene a los demás
+    void encolar(Carga carga, boolean puedeEsperar) {
+        Sesiones.Sesion actual = sesion;
+        if (actual != null && carga.reenviable()) {
+            actual.encolar(carga);
+            return;
+        }
+        encolarEnCola(carga, puedeEsperar);
+    }
+
+    // Método que deja la carga en la cola de esta conexión sin pasar por la sesión. Con sesión la cola nunca descarta:
+    // si está llena, la conexión se cierra y el cliente reanuda (ver ColaSalida.ofrecerSinDescartar)
+    void encolarEnCola(Carga carga, boolean puedeEsperar) {
+        if (encolarSinAvisar(carga, puedeEsperar)) {
+            hayDatosParaEnviar();
+        }
+    }
+
+    // Función que deja la carga en la cola sin avisar al motor; la usa directamente el escritor al reponer mensajes de la
+    // sesión, que los va a tomar enseguida (avisar desde ahí volvería a entrar en la escritura del reactor NIO).
+    // Devuelve false si la conexión está cerrada o se cerró por tener la cola llena.
+    final boolean encolarSinAvisar(Carga carga, boolean puedeEsperar) {
+        if (estaCerrada()) {
+            carga.liberar();
+            return false;
+        }
+        boolean aceptada = sesion != null ? salida.ofrecerSinDescartar(carga) : salida.ofrecer(carga, puedeEsperar);
+        if (!aceptada) {
+            carga.liberar();
+            Bitacora.SERVIDOR.aviso("cliente_lento", nombreCliente, "cola de salida llena");
+            cerrar();
+            return false;
+        }
+        return true;
+    }
+
+    long getLlegadaTeorica() {
+        return llegadaTeorica;
+    }
+
+    void setLlegadaTeorica(long llegadaTeorica) {
+        this.llegadaTeorica = llegadaTeorica;
+    }
+
+    boolean isLimitada() {
+        return limitada;
+    }
+
+    void setLimitada(boolean limitada) {
+        this.limitada = limitada;
+    }
+
+    // Método que el hilo lector llama al pasar del límite de mensajes: el motor deja de leer de esta conexión durante
+    // esos nanosegundos (o un poco más), para que los datos esperen en el socket en lugar de ocupar al lector
+    protected void pausarLectura(long nanos) {
+    }
+
+    // Método que usa el escritor con E/S bloqueante para esperar hasta que haya algo en la cola de salida
+    protected final void esperarSalida() throws InterruptedException {
+        if (enCurso == null && inicioLote == finLote) {
+            reponerSesion();
+            finLote = salida.tomarLote(lote);
+            inicioLote = 0;
+        }
+    }
+
+    // Función que usa el escritor del motor para copiar al buffer todas las cargas pendientes que quepan,
+    // cada una en el modo (texto o binario) que corresponde a su posición en la cola, y comprimidas si el cliente lo pidió.
+    // Devuelve true si copió algo; una carga que no cabe entera se termina de copiar en la siguiente llamada.
+    protected final boolean llenar(ByteBuffer destino) {
+        int posicionInicial = destino.position();
+        boolean copiado = compresion != null ? compresion.llenar(this, destino) : llenarSinComprimir(destino);
+        Metricas.BYTES_ENVIADOS.add(destino.position() - posicionInicial);
+        return copiado;
+    }
+
+    // Función que copia las cargas pendientes tal como se envían sin compresión
+    final boolean llenarSinComprimir(ByteBuffer destino) {
+        int posicionInicial = destino.position();
+        while (destino.hasRemaining()) {
+            if (enCurso == null) {
+                if (inicioLote == finLote) {
+                    reponerSesion();
+                    finLote = salida.drenarLote(lote);
+                    inicioLote = 0;
+                    if (finLote == 0) {
+                        break;
+                    }
+                }
+                enCurso = lote[inicioLote];
+                lote[inicioLote++] = null;
+                copiadoEnCurso = 0;
+                long marca = enCurso.marcaNanos();
+                if (marca != 0) {
+                    Metricas.ESPERA_COLA.registrar(System.nanoTime() - marca);
+                }
+            }
+            copiadoEnCurso += enCurso.copiar(escrituraBinaria, copiadoEnCurso, destino);
+            if (copiadoEnCurso == enCurso.largo(escrituraBinaria)) {
+                if (enCurso.cambiaABinario()) {
+                    escrituraBinaria = true;
+                }
+                if (enCurso.reenviable()) {
+                    reenviablesEscritos++;
+                }
+                enCurso.liberar();
+                if (enCurso.cambiaACompresion()) {
+                    ConfiguracionServidor configuracion = servidor.getConfiguracion();
+                    compresion = new CompresionSalida(configuracion.getNivelCompresion(), configuracion.getUmbralCompresion());
+                    if (estaCerrada()) {
+                        compresion.cerrar(); // cerrar() ya pasó y quizá no la vio
+                    }
+                    enCurso = null;
+                    break; // Lo que siga ya va en bloques comprimidos
+                }
+                enCurso = null;
+            }
+        }
+        return destino.position() > posicionInicial;
+    }
+
+    // Método del escritor: si la sesión está repitiendo mensajes al reanudarse, pasa a la cola los siguientes que quepan
+    private void reponerSesion() {
+        Sesiones.Sesion actual = sesion;
+        if (actual != null && actual.isAtrasada()) {
+            actual.reponer(this, false);
+        }
+    }
+
+    // Método con el que el motor se entera de que hay cargas nuevas en la cola de salida
+    protected abstract void hayDatosParaEnviar();
+
+    // Función que indica si el escritor debe esperar a que se junten más mensajes antes de escribir
+    protected final boolean convieneEsperar() {
+        return ventanaCoalescencia > 0 && coalescencia && salida.profundidad() < umbralCoalescencia;
+    }
+
+    protected final long getVentanaCoalescencia() {
+        return ventanaCoalescencia;
+    }
+
+    void setCoalescencia(boolean coalescencia) {
+        this.coalescencia = coalescencia;
+    }
+
+    // Función que indica si el hilo actual puede esperar sitio en la cola (política CONTRAPRESION)
+    protected boolean puedeEsperarSitio() {
+        return true;
+    }
+
+    // Método que cierra el socket subyacente
+    protected abstract void cerrarTransporte();
+
+    // Método que cierra la conexión y avisa al servidor para que elimine al cliente
+    void cerrar() {
+        if (cerrada.compareAndSet(false, true)) {
+            cerrarTransporte();
+            salida.vaciar();
+            CompresionSalida actual = compresion;
+            if (actual != null) {
+                actual.cerrar(); // Si el escritor está comprimiendo, la libera él al terminar el lote
+            }
+            servidor.clienteDesconectado(this);
+        }
+    }
+
+    void anotarActividad(long tic) {
+        ultimaActividad = tic;
+    }
+
+    long getUltimaActividad() {
+        return ultimaActividad;
+    }
+
+    Latidos.Vigilancia getVigilancia() {
+        return vigilancia;
+    }
+
+    void setVigilancia(Latidos.Vigilancia vigilancia) {
+        this.vigilancia = vigilancia;
+    }
+
+    String getPar() {
+        return par;
+    }
+
+    void setPar(String par) {
+        this.par = par;
+    }
+
+    ColaSalida getSalida() {
+        return salida;
+    }
+
+    boolean estaCerrada() {
+        return cerrada.get();
+    }
+
+    String getNombreCliente() {
+        return nombreCliente;
+    }
+
+    void setNombreCliente(String nombreCliente) {
+        this.nombreBytes = nombreCliente.getBytes(StandardCharsets.UTF_8);
+        this.nombreCliente = nombreCliente;
+    }
+
+    byte[] getNombreBytes() {
+        return nombreBytes;
+    }
+
+    // Función que devuelve la clave reutilizable de esta conexión para buscar nombres por bytes (solo hilo lector)
+    ClaveNombre getClaveBusqueda() {
+        return claveBusqueda;
+    }
+
+    int getIdCliente() {
+        return idCliente;
+    }
+
+    void setIdCliente(int idCliente) {
+        this.idCliente = idCliente;
+    }
+}
@@ -0,0 +1,380 @@
+// Nombre del Programa: Conexión de Red de los Clientes Swing
+// Descripción: Capa de red que comparten Cliente y Cliente2. Conecta, se registra y lee en un hilo propio, de modo que el
+// hilo de eventos de Swing (EDT) nunca espera al socket. Las líneas que llegan se juntan en una lista y se entregan al EDT
+// por lotes: solo hay un invokeLater pendiente a la vez, así que mientras el EDT está ocupado (pintando, por ejemplo)
+// las líneas se acumulan y se procesan todas juntas en la siguiente vuelta. Durante una ráfaga, cada lote es lo que
+// llegó en un cuadro, en lugar de un invokeLater (o peor, un cambio fuera del EDT) por mensaje.
+// Todos los métodos del Oyente se llaman en el EDT; finLote() avisa que terminó un lote, para que la ventana aplique de
+// una vez lo que fue juntando (por ejemplo, un solo aviso a la lista de cada conversación).
+// Reconexión: el cliente pide una sesión reanudable (ver Sesiones) y cuenta los mensajes privados y de salas que
+// recibe. Si la conexión se cae, vuelve a intentar con espera exponencial y reanuda la sesión con esa cuenta, así que
+// el servidor solo repite lo que falta. Solo cuentan las líneas completas: si la conexión se corta a mitad de una línea,
+// ese mensaje no se entrega ni se cuenta, y el servidor lo repite al reanudar. Lo que la ventana envía mientras tanto se guarda (acotado) y sale al reanudar.
+// Si el servidor se va a reiniciar, avisa con "Reconectar:ms": el cliente cierra en ese momento y espera esos
+// milisegundos (distintos para cada cliente) antes del primer intento, en lugar de la espera exponencial.
+// Los "Ping" del servidor se responden desde el hilo de red, sin pasar por el EDT.
+// Propiedades del sistema:
+// - cliente.coalescenciaMs: Ventana para juntar los envíos en una escritura (por defecto 2; con 0 cada mensaje sale al
+//   momento y se le pide lo mismo al servidor).
+// - cliente.compresion: Si es true, pide al servidor que comprima lo que envía (útil en enlaces lentos).
+// - cliente.reconectar: Si es false, no reconecta y avisa desconectado() en cuanto se pierde la conexión.
+// - cliente.tls.almacen / cliente.tls.clave: Almacén PKCS12 con el certificado en el que se confía (el mismo del
+//   servidor si es autofirmado) y su contraseña; con él la conexión va cifrada con TLS. Todas las conexiones comparten
+//   la fábrica de sockets, así que cada reconexión reanuda la sesión TLS anterior en lugar de repetir el saludo completo.
+
+package com.proyecto.cliente_servidor2;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.awt.EventQueue;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class ConexionCliente {
+    private static final long VENTANA_COALESCENCIA_MS = Long.getLong("cliente.coalescenciaMs", 2);
+    private static final int UMBRAL_COALESCENCIA = 16 * 1024; // Bytes con los que se escribe sin esperar la ventana
+    private static final boolean COMPRESION = Boolean.getBoolean("cliente.compresion");
+    private static final boolean RECONECTAR = !"false".equals(System.getProperty("cliente.reconectar"));
+    private static final String ALMACEN_TLS = System.getProperty("cliente.tls.almacen");
+    private static final long ESPERA_INICIAL_MS = 250; // Primera espera antes de reconectar; se duplica en cada intento
+    private static final long ESPERA_MAXIMA_MS = 10_000;
+    private static final int MAXIMO_POR_ENVIAR = 1000; // Líneas que se guardan mientras no hay conexión
+    private static SSLSocketFactory fabricaTls; // Fábrica de sockets TLS compartida (null hasta la primera conexión TLS)
+
+    // Acciones de la ventana; todas se llaman en el EDT
+    public interface Oyente extends ProtocoloCliente.Oyente {
+        // La conexión está lista y el nombre ya se envió (también después de cada reconexión)
+        default void conectado() {
+        }
+
+        // Se perdió la conexión y se volverá a intentar; "intento" empieza en 1
+        default void reconectando(int intento) {
+        }
+
+        // No se pudo conectar al servidor
+        default void noConecto(IOException error) {
+        }
+
+        // La conexión se cerró con cerrar(), o se perdió y no se va a reconectar
+        default void desconectado() {
+        }
+
+        // Terminó un lote de líneas: es el momento de aplicar a los componentes lo que se juntó
+        default void finLote() {
+        }
+    }
+
+    private final String host;
+    private final int puerto;
+    private final String nombre;
+    private final Oyente oyente;
+    private final Object candado = new Object();
+    private List<String> recibidas = new ArrayList<>(); // Líneas que esperan al EDT (con el candado)
+    private List<String> enProceso = new ArrayList<>(); // Lote que está procesando el EDT
+    private boolean programado; // Hay un invokeLater pendiente (con el candado)
+    private final ArrayDeque<String> porEnviar = new ArrayDeque<>(); // Líneas que esperan conexión (con su candado)
+    private volatile Socket socket;
+    private volatile EscritorAgrupado salida; // Disponible para la ventana solo después de registrarse o reanudar
+    private volatile boolean cerrada;
+    private volatile Thread hilo;
+    private volatile long lotes; // Lotes entregados al EDT
+    // Solo los usa el hilo de red
+    private EscritorAgrupado escritor; // Escritor de la conexión actual
+    private String token; // Sesión actual (null antes de que el servidor la confirme)
+    private long recibidos; // Mensajes de la sesión recibidos
+    private long esperaPedida = -1; // Espera antes de reconectar que pidió el servidor al drenarse (-1: ninguna)
+
+    public ConexionCliente(String host, int puerto, String nombre, Oyente oyente) {
+        this.host = host;
+        this.puerto = puerto;
+        this.nombre = nombre;
+        this.oyente = oyente;
+    }
+
+    // Método que empieza a conectar en segundo plano y vuelve de inmediato; el resultado llega al oyente
+    public void conectar() {
+        Thread nuevo = new Thread(this::conectarYLeer, "cliente-red");
+        nuevo.setDaemon(true);
+        hilo = nuevo;
+        nuevo.start();
+    }
+
+    // Método que envía una línea al servidor. Si no hay conexión (todavía, o mientras reconecta) la guarda para enviarla
+    // al registrarse o reanudar; después de cerrar() no hace nada.
+    // Con ventana de coalescencia solo copia la línea a un buffer, así que no frena al EDT.
+    public void enviar(String linea) {
+        synchronized (porEnviar) {
+            EscritorAgrupado actual = salida;
+            if (actual != null) {
+                try {
+                    actual.enviar(linea);
+                    return;
+                } catch (IOException e) {
+                    // El hilo de red se entera de la misma falla; la línea sale al reconectar
+                }
+            }
+            if (!cerrada && porEnviar.size() < MAXIMO_POR_ENVIAR) {
+                porEnviar.add(linea);
+            }
+        }
+    }
+
+    // Método que cierra la conexión sin volver a intentar
+    public void cerrar() {
+        cerrada = true;
+        cerrarSocket();
+        Thread actual = hilo;
+        if (actual != null) {
+            actual.interrupt(); // Corta la espera entre intentos
+        }
+    }
+
+    // Función que devuelve cuántos lotes se han entregado al EDT, para comparar con las líneas recibidas
+    public long getLotes() {
+        return lotes;
+    }
+
+    private void conectarYLeer() {
+        boolean conecto = false; // Hubo al menos una conexión; si la primera falla, no se reintenta
+        int intento = 0;
+        while (!cerrada) {
+            LectorLineasCompletas entrada;
+            try {
+                entrada = abrir();
+            } catch (IOException e) {
+                soltarSalida();
+                cerrarSocket();
+                if (!conecto) {
+                    EventQueue.invokeLater(() -> oyente.noConecto(e));
+                    return;
+                }
+                if (!esperarIntento(++intento)) {
+                    break;
+                }
+                continue;
+            }
+            conecto = true;
+            EventQueue.invokeLater(oyente::conectado);
+            try {
+                String linea;
+                while ((linea = entrada.leer()) != null) {
+                    atender(linea);
+                }
+            } catch (IOException e) {
+                // Conexión perdida o cerrada con cerrar()
+            }
+            if (soltarSalida()) {
+                intento = 0; // Se llegó a registrar o reanudar: la cuenta de intentos vuelve a empezar
+            }
+            cerrarSocket();
+            if (cerrada || !RECONECTAR || !esperarIntento(++intento)) {
+                break;
+            }
+        }
+        // Va por la misma cola del EDT, así que llega después del último lote
+        EventQueue.invokeLater(oyente::desconectado);
+    }
+
+    // Función que abre el socket y se presenta: reanuda la sesión si hay una, o pide una nueva y envía el nombre
+    private LectorLineasCompletas abrir() throws IOException {
+        Socket nuevo = ALMACEN_TLS != null ? fabricaTls().createSocket(host, puerto) : new Socket(host, puerto);
+        socket = nuevo;
+        if (cerrada) {
+            throw new IOException("Conexión cerrada"); // cerrar() llegó mientras se conectaba
+        }
+        nuevo.setTcpNoDelay(true); // Los mensajes ya se agrupan aquí; no hace falta que el sistema los retrase
+        InputStream entradaSocket = COMPRESION ? new EntradaComprimida(nuevo.getInputStream()) : nuevo.getInputStream();
+        LectorLineasCompletas entrada = new LectorLineasCompletas(new InputStreamReader(entradaSocket, StandardCharsets.UTF_8));
+        escritor = new EscritorAgrupado(nuevo.getOutputStream(), VENTANA_COALESCENCIA_MS, UMBRAL_COALESCENCIA);
+        // La compresión se pide antes del nombre para que la lista completa ya llegue comprimida
+        if (COMPRESION) {
+            escritor.enviar(ProtocoloCliente.lineaCompresion());
+        }
+        if (token != null) {
+            // La salida queda disponible cuando el servidor confirma la sesión (ver atender())
+            escritor.enviar(ProtocoloCliente.lineaReanudar(token, recibidos));
+        } else {
+            registrarse();
+        }
+        return entrada;
+    }
+
+    // Función que devuelve la fábrica de sockets TLS, creada la primera vez; la guarda la clase para que su caché de
+    // sesiones sobreviva a las reconexiones
+    private static synchronized SSLSocketFactory fabricaTls() throws IOException {
+        if (fabricaTls == null) {
+            fabricaTls = ContextoTls.fabricaCliente(ALMACEN_TLS, System.getProperty("cliente.tls.clave", ""));
+        }
+        return fabricaTls;
+    }
+
+    // Método que pide una sesión nueva y envía el nombre
+    private void registrarse() throws IOException {
+        escritor.enviar(ProtocoloCliente.lineaPedirSesion());
+        escritor.enviar(nombre);
+        listo();
+    }
+
+    // Método que deja la salida disponible para la ventana, después de enviar lo que se guardó mientras no había conexión
+    private void listo() throws IOException {
+        synchronized (porEnviar) {
+            if (VENTANA_COALESCENCIA_MS == 0) {
+                escritor.enviar(ProtocoloCliente.lineaCoalescencia(false));
+            }
+            while (!porEnviar.isEmpty()) {
+                escritor.enviar(porEnviar.peek());
+                porEnviar.poll(); // Solo se quita una vez enviada; si falla, se vuelve a intentar al reconectar
+            }
+            salida = escritor;
+        }
+    }
+
+    // Función que retira la salida de la conexión que se cerró; devuelve true si la conexión llegó a estar lista
+    private boolean soltarSalida() {
+        boolean estabaLista;
+        synchronized (porEnviar) {
+            estabaLista = salida != null;
+            salida = null;
+        }
+        if (escritor != null) {
+            escritor.close();
+        }
+        return estabaLista;
+    }
+
+    // Función que espera antes de reconectar: 250 ms, 500 ms, 1 s... hasta 10 s, con una variación aleatoria de hasta la
+    // mitad para que los clientes de un servidor caído no vuelvan todos a la vez; devuelve false si se cerró mientras tanto.
+    // Si el servidor pidió una espera al drenarse, se usa esa (ya viene repartida al azar por el servidor).
+    private boolean esperarIntento(int intento) {
+        EventQueue.invokeLater(() -> oyente.reconectando(intento));
+        long espera = Math.min(ESPERA_MAXIMA_MS, ESPERA_INICIAL_MS << Math.min(intento - 1, 20));
+        espera = espera / 2 + ThreadLocalRandom.current().nextLong(espera / 2 + 1);
+        if (esperaPedida >= 0) {
+            espera = esperaPedida;
+            esperaPedida = -1;
+        }
+        try {
+            Thread.sleep(espera);
+        } catch (InterruptedException e) {
+            return false;
+        }
+        return !cerrada;
+    }
+
+    private void cerrarSocket() {
+        Socket actual = socket;
+        if (actual != null) {
+            try {
+                actual.close();
+            } catch (IOException e) {
+                // Ya estaba cerrado
+            }
+        }
+    }
+
+    // Método del hilo de red: atiende las líneas de la sesión y pasa las demás al EDT, contando los mensajes numerados
+    private void atender(String linea) throws IOException {
+        if (ProtocoloCliente.esPing(linea)) {
+            escritor.enviar(ProtocoloCliente.lineaPong());
+            return;
+        }
+        long espera = ProtocoloCliente.esperaReconectar(linea);
+        if (espera >= 0) {
+            // Todo lo anterior al aviso ya llegó; al cerrar, el servidor sabe que puede apagarse
+            esperaPedida = espera;
+            cerrarSocket();
+            return;
+        }
+        if (linea.startsWith(Sesiones.PREFIJO_SESION)) {
+            String confirmado = linea.substring(Sesiones.PREFIJO_SESION.length());
+            if (linea.equals(Sesiones.LINEA_EXPIRADA)) {
+                // Se tardó más que la gracia: se registra como al principio (lo perdido se puede pedir al historial)
+                token = null;
+                registrarse();
+            } else if (confirmado.equals(token)) {
+                listo(); // Sesión reanudada; lo que falta viene detrás
+            } else {
+                token = confirmado; // Sesión nueva: los mensajes se cuentan desde aquí
+                recibidos = 0;
+            }
+            return;
+        }
+        if (token != null && ProtocoloCliente.esMensajeDeSesion(linea)) {
+            recibidos++;
+        }
+        recibir(linea);
+    }
+
+    // Método del hilo de red: agrega la línea al lote y programa su entrega si no hay una pendiente
+    private void recibir(String linea) {
+        synchronized (candado) {
+            recibidas.add(linea);
+            if (programado) {
+                return;
+            }
+            programado = true;
+        }
+        EventQueue.invokeLater(this::entregarLote);
+    }
+
+    // Método del EDT: toma todas las líneas juntadas hasta ahora y las pasa al oyente
+    private void entregarLote() {
+        List<String> lote;
+        synchronized (candado) {
+            // Intercambia las listas: el hilo lector sigue agregando a la vacía mientras se procesa esta
+            lote = recibidas;
+            recibidas = enProceso;
+            enProceso = lote;
+            programado = false;
+        }
+        for (String linea : lote) {
+            ProtocoloCliente.procesar(linea, oyente);
+        }
+        lote.clear();
+        lotes++;
+        oyente.finLote();
+    }
+
+    // Lector de las líneas del servidor que, a diferencia de BufferedReader.readLine(), no devuelve una última línea sin
+    // '\n': es un mensaje cortado por el cierre de la conexión, que no se debe contar (solo lo usa el hilo de red)
+    static final class LectorLineasCompletas {
+        private final Reader entrada;
+        private final char[] buffer = new char[8192];
+        private int inicio; // Siguiente carácter sin leer del buffer
+        private int fin; // Caracteres válidos del buffer
+        private final StringBuilder linea = new StringBuilder(); // Principio de una línea que ocupa varias lecturas
+
+        LectorLineasCompletas(Reader entrada) {
+            this.entrada = entrada;
+        }
+
+        // Función que devuelve la siguiente línea completa sin el '\n' (ni un '\r' previo), o null al cerrarse la conexión
+        String leer() throws IOException {
+            while (true) {
+                for (int i = inicio; i < fin; i++) {
+                    if (buffer[i] == '\n') {
+                        int largo = i > inicio && buffer[i - 1] == '\r' ? i - 1 - inicio : i - inicio;
+                        String completa = linea.isEmpty() ? new String(buffer, inicio, largo)
+                                : linea.append(buffer, inicio, largo).toString();
+                        linea.setLength(0);
+                        inicio = i + 1;
+                        return completa;
+                    }
+                }
+                linea.append(buffer, inicio, fin - inicio);
+                inicio = 0;
+                fin = Math.max(0, entrada.read(buffer));
+                if (fin == 0) {
+                    return null; // Lo que quede en linea estaba cortado
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+// Nombre del Programa: Configuración del Generador de Carga
+// Descripción: Parámetros del generador de carga sin interfaz gráfica, tomados de propiedades del sistema igual que
+// ConfiguracionServidor. Ejemplo: java -Dgenerador.usuarios=5000 -Dgenerador.distribucion=zipf ... GeneradorCarga
+// Propiedades soportadas:
+// - generador.local: true para arrancar un Servidor en el mismo proceso (configurado con las propiedades servidor.*
+//   y en un puerto libre); false para conectarse a generador.host y generador.puerto.
+// - generador.host / generador.puerto: Servidor al que se conecta cuando no es local (por defecto localhost:8080).
+// - generador.usuarios: Usuarios simulados, cada uno con su propio socket y sus hilos virtuales.
+// - generador.tasa: Mensajes por segundo que envía cada usuario.
+// - generador.duracionS: Segundos de envío; luego se espera a que lleguen los mensajes en vuelo.
+// - generador.distribucion: uniforme, zipf o parejas (ver DistribucionDestinatarios).
+// - generador.zipf.s: Exponente de la distribución zipf.
+// - generador.parejas.fraccion: Fracción de los mensajes que cada usuario envía a su pareja.
+// - generador.largoTexto: Bytes de relleno de cada mensaje, además de los datos de control.
+// - generador.coalescenciaMs: Ventana en la que cada usuario junta sus mensajes en una sola escritura (0: una escritura
+//   por mensaje). La ventana del servidor se configura aparte con servidor.coalescencia.ventanaMs.
+// - generador.reinicioS: Segundo de la corrida en el que se drena el servidor local y se arranca otro en el mismo puerto,
+//   para medir cuánto tarda en estar listo y en volver al p99 estable (0, por defecto: sin reinicio).
+
+package com.proyecto.cliente_servidor2;
+
+public class ConfiguracionGenerador {
+    private boolean local = true; // Arrancar un Servidor en el mismo proceso
+    private String host = "localhost"; // Servidor remoto
+    private int puerto = 8080;
+    private int usuarios = 1000; // Usuarios simulados
+    private double tasa = 1.0; // Mensajes por segundo de cada usuario
+    private int duracionS = 30; // Duración del envío
+    private String distribucion = DistribucionDestinatarios.UNIFORME; // A quién escribe cada usuario
+    private double exponenteZipf = 1.0;
+    private double fraccionParejas = 0.9;
+    private int largoTexto = 32; // Relleno de cada mensaje
+    private long coalescenciaMs = 0; // Ventana de cada usuario para juntar mensajes (0: una escritura por mensaje)
+    private int reinicioS = 0; // Segundo en que se reinicia el servidor local (0: sin reinicio)
+
+    // Función que construye la configuración a partir de las propiedades del sistema
+    public static ConfiguracionGenerador desdePropiedades() {
+        ConfiguracionGenerador configuracion = new ConfiguracionGenerador();
+        configuracion.setLocal(Boolean.parseBoolean(System.getProperty("generador.local", String.valueOf(configuracion.isLocal()))));
+        configuracion.setHost(System.getProperty("generador.host", configuracion.getHost()));
+        configuracion.setPuerto(Integer.getInteger("generador.puerto", configuracion.getPuerto()));
+        configuracion.setUsuarios(Integer.getInteger("generador.usuarios", configuracion.getUsuarios()));
+        configuracion.setTasa(Double.parseDouble(System.getProperty("generador.tasa", String.valueOf(configuracion.getTasa()))));
+        configuracion.setDuracionS(Integer.getInteger("generador.duracionS", configuracion.getDuracionS()));
+        configuracion.setDistribucion(System.getProperty("generador.distribucion", configuracion.getDistribucion()));
+        configuracion.setExponenteZipf(Double.parseDouble(
+                System.getProperty("generador.zipf.s", String.valueOf(configuracion.getExponenteZipf()))));
+        configuracion.setFraccionParejas(Double.parseDouble(
+                System.getProperty("generador.parejas.fraccion", String.valueOf(configuracion.getFraccionParejas()))));
+        configuracion.setLargoTexto(Integer.getInteger("generador.largoTexto", configuracion.getLargoTexto()));
+        configuracion.setCoalescenciaMs(Long.getLong("generador.coalescenciaMs", configuracion.getCoalescenciaMs()));
+        configuracion.setReinicioS(Integer.getInteger("generador.reinicioS", configuracion.getReinicioS()));
+        return configuracion;
+    }
+
+    public boolean isLocal() {
+        return local;
+    }
+
+    public void setLocal(boolean local) {
+        this.local = local;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public void setHost(String host) {
+        this.host = host;
+    }
+
+    public int getPuerto() {
+        return puerto;
+    }
+
+    public void setPuerto(int puerto) {
+        this.puerto = puerto;
+    }
+
+    public int getUsuarios() {
+        return usuarios;
+    }
+
+    public void setUsuarios(int usuarios) {
+        this.usuarios = Math.max(2, usuarios);
+    }
+
+    public double getTasa() {
+        return tasa;
+    }
+
+    public void setTasa(double tasa) {
+        if (tasa <= 0) {
+            throw new IllegalArgumentException("La tasa debe ser positiva: " + tasa);
+        }
+        this.tasa = tasa;
+    }
+
+    public int getDuracionS() {
+        return duracionS;
+    }
+
+    public void setDuracionS(int duracionS) {
+        this.duracionS = Math.max(1, duracionS);
+    }
+
+    public String getDistribucion() {
+        return distribucion;
+    }
+
+    public void setDistribucion(String distribucion) {
+        this.distribucion = distribucion;
+    }
+
+    public double getExponenteZipf() {
+        return exponenteZipf;
+    }
+
+    public void setExponenteZipf(double exponenteZipf) {
+        this.exponenteZipf = exponenteZipf;
+    }
+
+    public double getFraccionParejas() {
+        return fraccionParejas;
+    }
+
+    public void setFraccionParejas(double fraccionParejas) {
+        this.fraccionParejas = Math.min(1, Math.max(0, fraccionParejas));
+    }
+
+    public int getLargoTexto() {
+        return largoTexto;
+    }
+
+    public void setLargoTexto(int largoTexto) {
+        this.largoTexto = Math.max(0, largoTexto);
+    }
+
+    public long getCoalescenciaMs() {
+        return coalescenciaMs;
+    }
+
+    public void setCoalescenciaMs(long coalescenciaMs) {
+        this.coalescenciaMs = Math.max(0, coalescenciaMs);
+    }
+
+    public int getReinicioS() {
+        return reinicioS;
+    }
+
+    public void setReinicioS(int reinicioS) {
+        this.reinicioS = Math.max(0, reinicioS);
+    }
+}
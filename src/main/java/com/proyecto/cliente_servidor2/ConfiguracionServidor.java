@@ -0,0 +1,518 @@
+// Nombre del Programa: Configuración del Servidor de Chats Privados
+// Descripción: Agrupa los parámetros de arranque del servidor (puerto, motor de conexiones, número de reactores).
+// Los valores por defecto reproducen el comportamiento original (puerto 8080) y se pueden cambiar con propiedades
+// del sistema, por ejemplo: java -Dservidor.motor=virtual -Dservidor.puerto=9000 ..., o en application.properties
+// cuando el servidor arranca dentro de la aplicación Spring Boot (ClienteServidor2Application).
+// Propiedades soportadas:
+// - servidor.puerto: Puerto TCP en el que escucha el servidor (0 elige un puerto libre).
+// - servidor.motor: "nio" (Selector con N reactores) o "virtual" (un hilo virtual por conexión).
+// - servidor.reactores: Número de hilos reactor del motor NIO (por defecto, el número de núcleos).
+// - servidor.presencia.ventanaMs: Ventana en la que se agrupan las entradas y salidas antes de avisar a los clientes.
+// - servidor.salida.capacidad: Mensajes que caben en la cola de salida de cada conexión.
+// - servidor.salida.politica: Qué hacer con la cola llena: DESCARTAR_ANTIGUO, DESCONECTAR o CONTRAPRESION (las
+//   conexiones con sesión siempre se cierran, para reanudar sin huecos).
+// - servidor.salida.esperaMs: Espera máxima de un remitente con la política CONTRAPRESION.
+// - servidor.diario.directorio: Carpeta del diario de mensajes para clientes desconectados (sin valor, no se guardan).
+// - servidor.diario.tamanoSegmento: Bytes máximos de cada segmento del diario.
+// - servidor.diario.sincronizar: true para forzar cada escritura agrupada al disco (fsync) antes de seguir.
+// - servidor.historial.bytes: Memoria total del historial reciente de conversaciones (0 lo desactiva).
+// - servidor.historial.bytesPorConversacion: Memoria máxima del historial de una sola conversación.
+// - servidor.ids.maximo: Identificadores de nombres a partir de los cuales se reclaman los de nombres que ya nadie usa
+//   (ver TablaIds).
+// - servidor.cluster.puerto: Puerto para los enlaces con otros nodos del clúster (sin valor, el nodo trabaja solo).
+// - servidor.cluster.nodo: Nombre único del nodo dentro del clúster (por defecto, "nodo-" y el puerto del clúster).
+// - servidor.cluster.vecinos: Direcciones host:puerto de otros nodos, separadas por comas; el resto se descubre.
+// - servidor.cluster.direccion: Dirección local en la que escucha los enlaces (por defecto, solo loopback).
+// - servidor.cluster.secreto: Secreto compartido con el que los nodos se identifican al enlazarse; obligatorio si la
+//   dirección de los enlaces no es de loopback.
+// - servidor.coalescencia.ventanaMs: Tiempo que el escritor de una conexión espera a que se junten más mensajes antes
+//   de escribir (0, por defecto, escribe en cuanto hay algo). Cada cliente puede desactivarlo con "Coalescencia:off".
+// - servidor.coalescencia.mensajes: Mensajes pendientes con los que se escribe sin esperar a que termine la ventana.
+// - servidor.compresion.nivel: Nivel de deflate (1 a 9) para los clientes que piden "Compresion:deflate".
+// - servidor.compresion.umbral: Bytes mínimos de un lote para comprimirlo; los lotes menores se envían tal cual.
+// - servidor.sesion.graciaMs: Tiempo que un cliente con sesión sigue registrado después de perder la conexión.
+// - servidor.sesion.retransmision: Mensajes recientes que guarda cada sesión para repetirlos al reanudarse.
+// - servidor.latido.intervaloMs: Tiempo sin recibir nada de un cliente tras el que se le envía "Ping" (0: sin pings).
+// - servidor.latido.inactividadMs: Tiempo sin recibir nada tras el que se cierra la conexión (0: nunca).
+// - servidor.temporizadores.ticMs: Resolución de la rueda de temporizadores (latidos y vencimiento de sesiones).
+// - servidor.limite.conexiones: Conexiones abiertas como máximo; las demás reciben "Error:servidor_lleno" (0: sin límite).
+// - servidor.limite.ip.tasa / servidor.limite.ip.rafaga: Conexiones nuevas por segundo (y ráfaga) desde una misma
+//   dirección IP (tasa 0: sin límite).
+// - servidor.limite.ip.localExenta: Si es true, las conexiones desde la propia máquina no cuentan para el límite por IP.
+// - servidor.limite.mensajes.tasa / servidor.limite.mensajes.rafaga: Mensajes por segundo (y ráfaga) de cada cliente;
+//   al pasar del límite el cliente recibe "Error:limite_mensajes" y el servidor deja de leerle hasta que vuelve a
+//   tener turno, sin descartar nada (tasa 0: sin límite).
+// - servidor.tls.almacen: Almacén PKCS12 con la clave y el certificado del servidor; con él, las conexiones de los
+//   clientes van cifradas con TLS 1.3 (sin valor, texto plano como siempre). Ver ContextoTls.
+// - servidor.tls.clave: Contraseña del almacén TLS.
+// - servidor.drenado.ventanaMs: Al drenar (Servidor.drenar()), cada cliente reconecta tras una espera al azar dentro
+//   de esta ventana, para que no vuelvan todos a la vez.
+// - servidor.drenado.plazoMs: Tiempo máximo que drenar() espera a que los clientes lean lo pendiente y cierren.
+// - servidor.precalentamiento.mensajes: Mensajes que se enrutan entre conexiones simuladas al arrancar, para que el JIT
+//   compile el camino de ruteo antes del primer cliente (0 lo desactiva). Ver Precalentamiento.
+// - servidor.precalentamiento.archivo: Archivo donde drenar() guarda los nombres registrados y del que el siguiente
+//   arranque los carga (sin valor, no se guardan).
+// - servidor.log.nivel: Nivel mínimo de la bitácora: DEPURAR, INFO, AVISO, ERROR o NADA.
+// - servidor.log.muestreo: Los eventos frecuentes (mensajes que no son privados) se registran en 1 de cada N.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.function.Function;
+
+public class ConfiguracionServidor {
+    public static final String MOTOR_NIO = "nio";
+    public static final String MOTOR_VIRTUAL = "virtual";
+
+    private int puerto = 8080; // Puerto en el que escucha el servidor
+    private String motor = MOTOR_NIO; // Motor de conexiones a utilizar
+    private int reactores = Runtime.getRuntime().availableProcessors(); // Hilos reactor del motor NIO
+    private long ventanaPresenciaMs = 50; // Ventana de agrupación de los deltas de presencia
+    private int capacidadSalida = 256; // Capacidad de la cola de salida de cada conexión
+    private PoliticaDesbordamiento politicaSalida = PoliticaDesbordamiento.DESCARTAR_ANTIGUO; // Política con la cola llena
+    private long esperaSalidaMs = 100; // Espera máxima de la política CONTRAPRESION
+    private String directorioDiario; // Carpeta del diario de mensajes (null: desactivado)
+    private long tamanoSegmentoDiario = 64L * 1024 * 1024; // Tamaño máximo de cada segmento del diario
+    private boolean sincronizarDiario = true; // Forzar al disco cada escritura agrupada
+    private long bytesHistorial = 32L * 1024 * 1024; // Memoria total del historial de conversaciones
+    private int bytesPorConversacion = 64 * 1024; // Memoria máxima del historial de una conversación
+    private int maximoIds = 1 << 20; // Identificadores de nombres con los que se empiezan a reclamar los que no se usan
+    private int puertoCluster = -1; // Puerto de los enlaces entre nodos (-1: sin clúster)
+    private String nombreNodo; // Nombre del nodo en el clúster (null: se deriva del puerto)
+    private String vecinosCluster = ""; // Direcciones host:puerto de los nodos con los que arrancar
+    private String direccionCluster; // Dirección local de los enlaces entre nodos (null: loopback)
+    private String secretoCluster = ""; // Secreto compartido de los nodos (vacío: sin secreto, solo en loopback)
+    private long ventanaCoalescenciaMs = 0; // Espera para juntar mensajes en una sola escritura (0: sin espera)
+    private int umbralCoalescencia = ColaSalida.TAMANO_LOTE; // Mensajes pendientes que cortan la espera
+    private int nivelCompresion = 1; // Nivel de deflate: el más rápido, la salida se comprime en el hilo escritor
+    private int umbralCompresion = 128; // Lotes menores se envían sin comprimir
+    private long graciaSesionMs = 15_000; // Cortes más breves no se ven como salida y entrada
+    private int retransmisionSesion = 128; // Mensajes que se pueden repetir al reanudar una sesión
+    private long intervaloLatidoMs = 30_000; // Silencio tras el que se envía un ping
+    private long inactividadMs = 90_000; // Silencio tras el que se cierra la conexión (tres pings sin respuesta)
+    private long ticTemporizadoresMs = 100; // Los temporizadores vencen con esta precisión
+    private int maximoConexiones = 100_000; // Conexiones abiertas como máximo
+    private int tasaConexionesIp = 20; // Conexiones nuevas por segundo desde una IP
+    private int rafagaConexionesIp = 100; // Conexiones seguidas que se permiten desde una IP antes de aplicar la tasa
+    private boolean ipLocalExenta = true; // El generador de carga y las pruebas abren miles de conexiones locales
+    private int tasaMensajes = 500; // Mensajes por segundo de un cliente; una persona no se acerca ni de lejos
+    private int rafagaMensajes = 5_000; // Mensajes seguidos antes de aplicar la tasa (pegar un texto largo, reanudar)
+    private String almacenTls; // Almacén PKCS12 del certificado del servidor (null: sin TLS)
+    private String claveTls = ""; // Contraseña del almacén TLS
+    private long ventanaDrenadoMs = 10_000; // Las reconexiones se reparten en esta ventana al drenar
+    private long plazoDrenadoMs = 5_000; // Espera máxima a que los clientes cierren al drenar
+    private int mensajesPrecalentamiento = 20_000; // Suficientes para que el camino de ruteo llegue al compilador C2
+    private String archivoNombres; // Nombres registrados al drenar, para el siguiente arranque (null: no se guardan)
+    private Bitacora.Nivel nivelLog = Bitacora.Nivel.INFO; // Nivel mínimo de los eventos de la bitácora
+    private int muestreoLog = 64; // Se registra 1 de cada muestreoLog eventos frecuentes
+
+    // Función que construye la configuración a partir de las propiedades del sistema
+    public static ConfiguracionServidor desdePropiedades() {
+        return desdePropiedades(System::getProperty);
+    }
+
+    // Función que construye la configuración leyendo cada propiedad de la fuente indicada (por ejemplo, el Environment
+    // de Spring, que además de las propiedades del sistema incluye application.properties); devuelve null si no existe
+    public static ConfiguracionServidor desdePropiedades(Function<String, String> fuente) {
+        ConfiguracionServidor configuracion = new ConfiguracionServidor();
+        Propiedades propiedades = new Propiedades(fuente);
+        configuracion.setPuerto(propiedades.entero("servidor.puerto", configuracion.getPuerto()));
+        configuracion.setMotor(propiedades.texto("servidor.motor", configuracion.getMotor()));
+        configuracion.setReactores(propiedades.entero("servidor.reactores", configuracion.getReactores()));
+        configuracion.setVentanaPresenciaMs(propiedades.largo("servidor.presencia.ventanaMs", configuracion.getVentanaPresenciaMs()));
+        configuracion.setCapacidadSalida(propiedades.entero("servidor.salida.capacidad", configuracion.getCapacidadSalida()));
+        configuracion.setPoliticaSalida(PoliticaDesbordamiento.valueOf(
+                propiedades.texto("servidor.salida.politica", configuracion.getPoliticaSalida().name())));
+        configuracion.setEsperaSalidaMs(propiedades.largo("servidor.salida.esperaMs", configuracion.getEsperaSalidaMs()));
+        configuracion.setDirectorioDiario(propiedades.texto("servidor.diario.directorio", configuracion.getDirectorioDiario()));
+        configuracion.setTamanoSegmentoDiario(propiedades.largo("servidor.diario.tamanoSegmento", configuracion.getTamanoSegmentoDiario()));
+        configuracion.setSincronizarDiario(Boolean.parseBoolean(
+                propiedades.texto("servidor.diario.sincronizar", String.valueOf(configuracion.isSincronizarDiario()))));
+        configuracion.setBytesHistorial(propiedades.largo("servidor.historial.bytes", configuracion.getBytesHistorial()));
+        configuracion.setBytesPorConversacion(propiedades.entero("servidor.historial.bytesPorConversacion",
+                configuracion.getBytesPorConversacion()));
+        configuracion.setMaximoIds(propiedades.entero("servidor.ids.maximo", configuracion.getMaximoIds()));
+        configuracion.setPuertoCluster(propiedades.entero("servidor.cluster.puerto", configuracion.getPuertoCluster()));
+        configuracion.setNombreNodo(propiedades.texto("servidor.cluster.nodo", configuracion.getNombreNodo()));
+        configuracion.setVecinosCluster(propiedades.texto("servidor.cluster.vecinos", configuracion.getVecinosCluster()));
+        configuracion.setDireccionCluster(propiedades.texto("servidor.cluster.direccion", configuracion.getDireccionCluster()));
+        configuracion.setSecretoCluster(propiedades.texto("servidor.cluster.secreto", configuracion.getSecretoCluster()));
+        configuracion.setVentanaCoalescenciaMs(propiedades.largo("servidor.coalescencia.ventanaMs",
+                configuracion.getVentanaCoalescenciaMs()));
+        configuracion.setUmbralCoalescencia(propiedades.entero("servidor.coalescencia.mensajes",
+                configuracion.getUmbralCoalescencia()));
+        configuracion.setNivelCompresion(propiedades.entero("servidor.compresion.nivel", configuracion.getNivelCompresion()));
+        configuracion.setUmbralCompresion(propiedades.entero("servidor.compresion.umbral", configuracion.getUmbralCompresion()));
+        configuracion.setGraciaSesionMs(propiedades.largo("servidor.sesion.graciaMs", configuracion.getGraciaSesionMs()));
+        configuracion.setRetransmisionSesion(propiedades.entero("servidor.sesion.retransmision", configuracion.getRetransmisionSesion()));
+        configuracion.setIntervaloLatidoMs(propiedades.largo("servidor.latido.intervaloMs", configuracion.getIntervaloLatidoMs()));
+        configuracion.setInactividadMs(propiedades.largo("servidor.latido.inactividadMs", configuracion.getInactividadMs()));
+        configuracion.setTicTemporizadoresMs(propiedades.largo("servidor.temporizadores.ticMs", configuracion.getTicTemporizadoresMs()));
+        configuracion.setMaximoConexiones(propiedades.entero("servidor.limite.conexiones", configuracion.getMaximoConexiones()));
+        configuracion.setTasaConexionesIp(propiedades.entero("servidor.limite.ip.tasa", configuracion.getTasaConexionesIp()));
+        configuracion.setRafagaConexionesIp(propiedades.entero("servidor.limite.ip.rafaga", configuracion.getRafagaConexionesIp()));
+        configuracion.setIpLocalExenta(Boolean.parseBoolean(
+                propiedades.texto("servidor.limite.ip.localExenta", String.valueOf(configuracion.isIpLocalExenta()))));
+        configuracion.setTasaMensajes(propiedades.entero("servidor.limite.mensajes.tasa", configuracion.getTasaMensajes()));
+        configuracion.setRafagaMensajes(propiedades.entero("servidor.limite.mensajes.rafaga", configuracion.getRafagaMensajes()));
+        configuracion.setAlmacenTls(propiedades.texto("servidor.tls.almacen", configuracion.getAlmacenTls()));
+        configuracion.setClaveTls(propiedades.texto("servidor.tls.clave", configuracion.getClaveTls()));
+        configuracion.setVentanaDrenadoMs(propiedades.largo("servidor.drenado.ventanaMs", configuracion.getVentanaDrenadoMs()));
+        configuracion.setPlazoDrenadoMs(propiedades.largo("servidor.drenado.plazoMs", configuracion.getPlazoDrenadoMs()));
+        configuracion.setMensajesPrecalentamiento(propiedades.entero("servidor.precalentamiento.mensajes",
+                configuracion.getMensajesPrecalentamiento()));
+        configuracion.setArchivoNombres(propiedades.texto("servidor.precalentamiento.archivo", configuracion.getArchivoNombres()));
+        configuracion.setNivelLog(Bitacora.Nivel.valueOf(
+                propiedades.texto("servidor.log.nivel", configuracion.getNivelLog().name())));
+        configuracion.setMuestreoLog(propiedades.entero("servidor.log.muestreo", configuracion.getMuestreoLog()));
+        return configuracion;
+    }
+
+    // Lectura de propiedades con valor por defecto, sea cual sea la fuente
+    private record Propiedades(Function<String, String> fuente) {
+        String texto(String nombre, String porDefecto) {
+            String valor = fuente.apply(nombre);
+            return valor != null ? valor.trim() : porDefecto;
+        }
+
+        int entero(String nombre, int porDefecto) {
+            String valor = fuente.apply(nombre);
+            return valor != null ? Integer.parseInt(valor.trim()) : porDefecto;
+        }
+
+        long largo(String nombre, long porDefecto) {
+            String valor = fuente.apply(nombre);
+            return valor != null ? Long.parseLong(valor.trim()) : porDefecto;
+        }
+    }
+
+    public int getPuerto() {
+        return puerto;
+    }
+
+    public void setPuerto(int puerto) {
+        this.puerto = puerto;
+    }
+
+    public String getMotor() {
+        return motor;
+    }
+
+    public void setMotor(String motor) {
+        if (!MOTOR_NIO.equals(motor) && !MOTOR_VIRTUAL.equals(motor)) {
+            throw new IllegalArgumentException("Motor de conexiones desconocido: " + motor);
+        }
+        this.motor = motor;
+    }
+
+    public int getReactores() {
+        return reactores;
+    }
+
+    public void setReactores(int reactores) {
+        this.reactores = Math.max(1, reactores);
+    }
+
+    public long getVentanaPresenciaMs() {
+        return ventanaPresenciaMs;
+    }
+
+    public void setVentanaPresenciaMs(long ventanaPresenciaMs) {
+        this.ventanaPresenciaMs = Math.max(1, ventanaPresenciaMs);
+    }
+
+    public int getCapacidadSalida() {
+        return capacidadSalida;
+    }
+
+    public void setCapacidadSalida(int capacidadSalida) {
+        this.capacidadSalida = Math.max(1, capacidadSalida);
+    }
+
+    public PoliticaDesbordamiento getPoliticaSalida() {
+        return politicaSalida;
+    }
+
+    public void setPoliticaSalida(PoliticaDesbordamiento politicaSalida) {
+        this.politicaSalida = politicaSalida;
+    }
+
+    public long getEsperaSalidaMs() {
+        return esperaSalidaMs;
+    }
+
+    public void setEsperaSalidaMs(long esperaSalidaMs) {
+        this.esperaSalidaMs = Math.max(0, esperaSalidaMs);
+    }
+
+    public String getDirectorioDiario() {
+        return directorioDiario;
+    }
+
+    public void setDirectorioDiario(String directorioDiario) {
+        this.directorioDiario = directorioDiario == null || directorioDiario.isBlank() ? null : directorioDiario;
+    }
+
+    public long getTamanoSegmentoDiario() {
+        return tamanoSegmentoDiario;
+    }
+
+    public void setTamanoSegmentoDiario(long tamanoSegmentoDiario) {
+        this.tamanoSegmentoDiario = Math.max(4096, tamanoSegmentoDiario);
+    }
+
+    public boolean isSincronizarDiario() {
+        return sincronizarDiario;
+    }
+
+    public void setSincronizarDiario(boolean sincronizarDiario) {
+        this.sincronizarDiario = sincronizarDiario;
+    }
+
+    public long getBytesHistorial() {
+        return bytesHistorial;
+    }
+
+    public void setBytesHistorial(long bytesHistorial) {
+        this.bytesHistorial = Math.max(0, bytesHistorial);
+    }
+
+    public int getBytesPorConversacion() {
+        return bytesPorConversacion;
+    }
+
+    public void setBytesPorConversacion(int bytesPorConversacion) {
+        this.bytesPorConversacion = Math.max(1024, bytesPorConversacion);
+    }
+
+    public int getMaximoIds() {
+        return maximoIds;
+    }
+
+    public void setMaximoIds(int maximoIds) {
+        this.maximoIds = Math.max(1, maximoIds);
+    }
+
+    public int getPuertoCluster() {
+        return puertoCluster;
+    }
+
+    public void setPuertoCluster(int puertoCluster) {
+        this.puertoCluster = puertoCluster;
+    }
+
+    public String getNombreNodo() {
+        return nombreNodo;
+    }
+
+    public void setNombreNodo(String nombreNodo) {
+        this.nombreNodo = nombreNodo == null || nombreNodo.isBlank() ? null : nombreNodo;
+    }
+
+    public String getVecinosCluster() {
+        return vecinosCluster;
+    }
+
+    public void setVecinosCluster(String vecinosCluster) {
+        this.vecinosCluster = vecinosCluster == null ? "" : vecinosCluster;
+    }
+
+    public String getDireccionCluster() {
+        return direccionCluster;
+    }
+
+    public void setDireccionCluster(String direccionCluster) {
+        this.direccionCluster = direccionCluster;
+    }
+
+    public String getSecretoCluster() {
+        return secretoCluster;
+    }
+
+    public void setSecretoCluster(String secretoCluster) {
+        this.secretoCluster = secretoCluster == null ? "" : secretoCluster;
+    }
+
+    public long getVentanaCoalescenciaMs() {
+        return ventanaCoalescenciaMs;
+    }
+
+    public void setVentanaCoalescenciaMs(long ventanaCoalescenciaMs) {
+        this.ventanaCoalescenciaMs = Math.max(0, ventanaCoalescenciaMs);
+    }
+
+    public int getUmbralCoalescencia() {
+        return umbralCoalescencia;
+    }
+
+    public void setUmbralCoalescencia(int umbralCoalescencia) {
+        this.umbralCoalescencia = Math.max(1, umbralCoalescencia);
+    }
+
+    public int getNivelCompresion() {
+        return nivelCompresion;
+    }
+
+    public void setNivelCompresion(int nivelCompresion) {
+        this.nivelCompresion = Math.min(9, Math.max(1, nivelCompresion));
+    }
+
+    public int getUmbralCompresion() {
+        return umbralCompresion;
+    }
+
+    public void setUmbralCompresion(int umbralCompresion) {
+        this.umbralCompresion = Math.max(0, umbralCompresion);
+    }
+
+    public long getGraciaSesionMs() {
+        return graciaSesionMs;
+    }
+
+    public void setGraciaSesionMs(long graciaSesionMs) {
+        this.graciaSesionMs = Math.max(0, graciaSesionMs);
+    }
+
+    public int getRetransmisionSesion() {
+        return retransmisionSesion;
+    }
+
+    public void setRetransmisionSesion(int retransmisionSesion) {
+        this.retransmisionSesion = Math.max(1, retransmisionSesion);
+    }
+
+    public long getIntervaloLatidoMs() {
+        return intervaloLatidoMs;
+    }
+
+    public void setIntervaloLatidoMs(long intervaloLatidoMs) {
+        this.intervaloLatidoMs = Math.max(0, intervaloLatidoMs);
+    }
+
+    public long getInactividadMs() {
+        return inactividadMs;
+    }
+
+    public void setInactividadMs(long inactividadMs) {
+        this.inactividadMs = Math.max(0, inactividadMs);
+    }
+
+    public long getTicTemporizadoresMs() {
+        return ticTemporizadoresMs;
+    }
+
+    public void setTicTemporizadoresMs(long ticTemporizadoresMs) {
+        this.ticTemporizadoresMs = Math.max(1, ticTemporizadoresMs);
+    }
+
+    public int getMaximoConexiones() {
+        return maximoConexiones;
+    }
+
+    public void setMaximoConexiones(int maximoConexiones) {
+        this.maximoConexiones = Math.max(0, maximoConexiones);
+    }
+
+    public int getTasaConexionesIp() {
+        return tasaConexionesIp;
+    }
+
+    public void setTasaConexionesIp(int tasaConexionesIp) {
+        this.tasaConexionesIp = Math.max(0, tasaConexionesIp);
+    }
+
+    public int getRafagaConexionesIp() {
+        return rafagaConexionesIp;
+    }
+
+    public void setRafagaConexionesIp(int rafagaConexionesIp) {
+        this.rafagaConexionesIp = Math.max(1, rafagaConexionesIp);
+    }
+
+    public boolean isIpLocalExenta() {
+        return ipLocalExenta;
+    }
+
+    public void setIpLocalExenta(boolean ipLocalExenta) {
+        this.ipLocalExenta = ipLocalExenta;
+    }
+
+    public int getTasaMensajes() {
+        return tasaMensajes;
+    }
+
+    public void setTasaMensajes(int tasaMensajes) {
+        this.tasaMensajes = Math.max(0, tasaMensajes);
+    }
+
+    public int getRafagaMensajes() {
+        return rafagaMensajes;
+    }
+
+    public void setRafagaMensajes(int rafagaMensajes) {
+        this.rafagaMensajes = Math.max(1, rafagaMensajes);
+    }
+
+    public String getAlmacenTls() {
+        return almacenTls;
+    }
+
+    public void setAlmacenTls(String almacenTls) {
+        this.almacenTls = almacenTls;
+    }
+
+    public String getClaveTls() {
+        return claveTls;
+    }
+
+    public void setClaveTls(String claveTls) {
+        this.claveTls = claveTls;
+    }
+
+    public long getVentanaDrenadoMs() {
+        return ventanaDrenadoMs;
+    }
+
+    public void setVentanaDrenadoMs(long ventanaDrenadoMs) {
+        this.ventanaDrenadoMs = Math.max(0, ventanaDrenadoMs);
+    }
+
+    public long getPlazoDrenadoMs() {
+        return plazoDrenadoMs;
+    }
+
+    public void setPlazoDrenadoMs(long plazoDrenadoMs) {
+        this.plazoDrenadoMs = Math.max(0, plazoDrenadoMs);
+    }
+
+    public int getMensajesPrecalentamiento() {
+        return mensajesPrecalentamiento;
+    }
+
+    public void setMensajesPrecalentamiento(int mensajesPrecalentamiento) {
+        this.mensajesPrecalentamiento = Math.max(0, mensajesPrecalentamiento);
+    }
+
+    public String getArchivoNombres() {
+        return archivoNombres;
+    }
+
+    public void setArchivoNombres(String archivoNombres) {
+        this.archivoNombres = archivoNombres;
+    }
+
+    public Bitacora.Nivel getNivelLog() {
+        return nivelLog;
+    }
+
+    public void setNivelLog(Bitacora.Nivel nivelLog) {
+        this.nivelLog = nivelLog;
+    }
+
+    public int getMuestreoLog() {
+        return muestreoLog;
+    }
+
+    public void setMuestreoLog(int muestreoLog) {
+        this.muestreoLog = Math.max(1, muestreoLog);
+    }
+}
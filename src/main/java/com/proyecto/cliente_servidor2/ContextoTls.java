@@ -0,0 +1,152 @@
+// Nombre del Programa: Contexto TLS del Servidor y de los Clientes
+// Descripción: Carga el almacén PKCS12 con la clave y el certificado del servidor y crea el SSLContext que comparten
+// todas las conexiones. Compartirlo es lo que permite reanudar: TLS 1.3 le entrega al cliente un ticket de sesión al
+// terminar el saludo, y al reconectar el cliente lo presenta y se salta el certificado y su firma (saludo abreviado).
+// - Servidor: cada conexión crea su SSLEngine con crearMotor(); los motores lo usan a través de TransporteTls.
+// - Clientes: fabricaCliente() confía en el certificado del mismo almacén (sirve el autofirmado); como la fábrica y su
+//   caché de sesiones se comparten, cada reconexión al mismo host y puerto reanuda la sesión anterior.
+// Solo se habilita TLS 1.3: un viaje de ida y vuelta para el saludo completo y reanudación con tickets sin estado.
+// Para distinguir los saludos completos de los reanudados, el KeyManager cuenta cuántas veces se pide la clave privada:
+// solo el saludo completo firma con ella.
+// generarAutofirmado() crea un almacén con una clave EC P-256 (firmar con ella es mucho más barato que con RSA, lo que
+// abarata cada saludo completo) usando keytool, para pruebas y para el benchmark de TLS.
+
+package com.proyecto.cliente_servidor2;
+
+import javax.net.ssl.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+final class ContextoTls {
+    static final String[] PROTOCOLOS = {"TLSv1.3"};
+
+    private final SSLContext contexto;
+
+    private ContextoTls(SSLContext contexto) {
+        this.contexto = contexto;
+    }
+
+    // Función que crea el contexto del servidor a partir del almacén PKCS12 y su clave
+    static ContextoTls servidor(String almacen, String clave) throws IOException {
+        try {
+            KeyManagerFactory fabrica = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            fabrica.init(cargar(almacen, clave), clave.toCharArray());
+            X509ExtendedKeyManager claves = null;
+            for (KeyManager gestor : fabrica.getKeyManagers()) {
+                if (gestor instanceof X509ExtendedKeyManager x509) {
+                    claves = x509;
+                }
+            }
+            if (claves == null) {
+                throw new GeneralSecurityException("El almacén no tiene una clave X.509");
+            }
+            SSLContext contexto = SSLContext.getInstance("TLS");
+            contexto.init(new KeyManager[] {new ClavesContadas(claves)}, null, null);
+            return new ContextoTls(contexto);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo cargar el almacén TLS " + almacen, e);
+        }
+    }
+
+    // Función que crea la fábrica de sockets de los clientes, que confía en los certificados del almacén
+    static SSLSocketFactory fabricaCliente(String almacen, String clave) throws IOException {
+        try {
+            TrustManagerFactory fabrica = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            fabrica.init(cargar(almacen, clave));
+            SSLContext contexto = SSLContext.getInstance("TLS");
+            contexto.init(null, fabrica.getTrustManagers(), null);
+            return contexto.getSocketFactory();
+        } catch (GeneralSecurityException e) {
+            throw new IOException("No se pudo cargar el almacén TLS " + almacen, e);
+        }
+    }
+
+    // Función que crea el SSLEngine de una conexión recién aceptada
+    SSLEngine crearMotor() {
+        SSLEngine motor = contexto.createSSLEngine();
+        motor.setUseClientMode(false);
+        motor.setEnabledProtocols(PROTOCOLOS);
+        return motor;
+    }
+
+    // Método que crea un almacén PKCS12 con una clave EC y un certificado autofirmado para "nombre" (por ejemplo,
+    // localhost), llamando a la herramienta keytool del mismo JDK
+    static void generarAutofirmado(Path almacen, String clave, String nombre) throws IOException {
+        Path keytool = Path.of(System.getProperty("java.home"), "bin", "keytool");
+        Process proceso = new ProcessBuilder(keytool.toString(), "-genkeypair", "-alias", "servidor",
+                "-keyalg", "EC", "-groupname", "secp256r1", "-sigalg", "SHA256withECDSA", "-validity", "3650",
+                "-dname", "CN=" + nombre, "-ext", "SAN=dns:" + nombre + ",ip:127.0.0.1",
+                "-storetype", "PKCS12", "-keystore", almacen.toString(), "-storepass", clave)
+                .redirectErrorStream(true).start();
+        try {
+            String salida = new String(proceso.getInputStream().readAllBytes());
+            if (proceso.waitFor() != 0) {
+                throw new IOException("keytool terminó con error: " + salida);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Se interrumpió keytool", e);
+        }
+    }
+
+    private static KeyStore cargar(String almacen, String clave) throws IOException, GeneralSecurityException {
+        KeyStore almacenClaves = KeyStore.getInstance("PKCS12");
+        try (InputStream entrada = Files.newInputStream(Path.of(almacen))) {
+            almacenClaves.load(entrada, clave.toCharArray());
+        }
+        return almacenClaves;
+    }
+
+    // KeyManager que delega en el del almacén y cuenta los saludos completos (los únicos que usan la clave privada)
+    private static final class ClavesContadas extends X509ExtendedKeyManager {
+        private final X509ExtendedKeyManager delegado;
+
+        ClavesContadas(X509ExtendedKeyManager delegado) {
+            this.delegado = delegado;
+        }
+
+        @Override
+        public PrivateKey getPrivateKey(String alias) {
+            Metricas.TLS_SALUDOS_COMPLETOS.increment();
+            return delegado.getPrivateKey(alias);
+        }
+
+        @Override
+        public String chooseEngineServerAlias(String tipoClave, Principal[] emisores, SSLEngine motor) {
+            return delegado.chooseEngineServerAlias(tipoClave, emisores, motor);
+        }
+
+        @Override
+        public String chooseServerAlias(String tipoClave, Principal[] emisores, Socket socket) {
+            return delegado.chooseServerAlias(tipoClave, emisores, socket);
+        }
+
+        @Override
+        public String[] getServerAliases(String tipoClave, Principal[] emisores) {
+            return delegado.getServerAliases(tipoClave, emisores);
+        }
+
+        @Override
+        public X509Certificate[] getCertificateChain(String alias) {
+            return delegado.getCertificateChain(alias);
+        }
+
+        @Override
+        public String[] getClientAliases(String tipoClave, Principal[] emisores) {
+            return delegado.getClientAliases(tipoClave, emisores);
+        }
+
+        @Override
+        public String chooseClientAlias(String[] tiposClave, Principal[] emisores, Socket socket) {
+            return delegado.chooseClientAlias(tiposClave, emisores, socket);
+        }
+    }
+}
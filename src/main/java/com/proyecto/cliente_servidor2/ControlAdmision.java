@@ -0,0 +1,143 @@
+// Nombre del Programa: Control de Admisión y Límites de Tasa
+// Descripción: Evita que un cliente abusivo inunde a otro o agote el servidor, en dos puntos:
+// - Al aceptar un socket (bucle de aceptación de cada motor), antes de crear su conexión:
+//   - Límite global de conexiones abiertas (servidor.limite.conexiones): si se alcanza, el socket recibe
+//     "Error:servidor_lleno" y se cierra.
+//   - Límite de conexiones nuevas por dirección IP (servidor.limite.ip.tasa por segundo, con ráfaga
+//     servidor.limite.ip.rafaga): quien abre sockets en bucle recibe "Error:demasiadas_conexiones". Las direcciones
+//     locales quedan exentas si servidor.limite.ip.localExenta es true (por defecto), para el generador de carga.
+// - Antes de separar cada línea o trama: límite de mensajes por usuario (servidor.limite.mensajes.tasa y .rafaga). Si
+//   el usuario no tiene token, el lector deja de separar mensajes: lo que ya leyó queda retenido en su Conexion (sin
+//   descartarse) y la lectura de esa conexión se pausa hasta que vuelva a haber un token, así que lo demás espera en el
+//   socket y TCP frena al cliente. El abusador deja de ocupar al reactor y a los demás no les cambia nada.
+//   El cliente recibe "Error:limite_mensajes" una vez por episodio (hasta que su cubeta vuelve a llenarse).
+// El estado por usuario es un long en su Conexion que solo toca su hilo lector, así que comprobarlo no crea objetos ni
+// usa candados. El estado por IP es un AtomicLong por dirección; la rueda de temporizadores borra cada minuto las
+// direcciones que ya no tienen nada pendiente, para que el mapa no crezca sin fin.
+// Todo rechazo se cuenta en Metricas y la bitácora lo registra con muestreo (un ataque no la inunda).
+
+package com.proyecto.cliente_servidor2;
+
+import java.net.InetAddress;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ControlAdmision {
+    static final String PREFIJO_ERROR = "Error:";
+    static final String SERVIDOR_LLENO = "Error:servidor_lleno";
+    static final String DEMASIADAS_CONEXIONES = "Error:demasiadas_conexiones";
+    static final String LIMITE_MENSAJES = "Error:limite_mensajes";
+    private static final Carga AVISO_LIMITE = Carga.linea(LIMITE_MENSAJES);
+    private static final long LIMPIEZA_MS = 60_000;
+
+    private final int maximoConexiones; // 0: sin límite
+    private final LimiteTasa porIp; // null: sin límite por IP
+    private final boolean localExenta;
+    private final LimiteTasa porUsuario; // null: sin límite de mensajes
+    private final int muestreoLog;
+    private final AtomicInteger abiertas = new AtomicInteger(); // Conexiones admitidas que siguen abiertas
+    private final ConcurrentHashMap<InetAddress, AtomicLong> cubetasIp = new ConcurrentHashMap<>(); // IP -> tiempo teórico
+
+    ControlAdmision(ConfiguracionServidor configuracion, RuedaTemporizadores rueda) {
+        this.maximoConexiones = configuracion.getMaximoConexiones();
+        this.porIp = LimiteTasa.crear(configuracion.getTasaConexionesIp(), configuracion.getRafagaConexionesIp());
+        this.localExenta = configuracion.isIpLocalExenta();
+        this.porUsuario = LimiteTasa.crear(configuracion.getTasaMensajes(), configuracion.getRafagaMensajes());
+        this.muestreoLog = configuracion.getMuestreoLog();
+        if (porIp != null) {
+            rueda.programar(new Limpieza(rueda), rueda.tics(LIMPIEZA_MS));
+        }
+    }
+
+    // Función del bucle de aceptación: devuelve null si se admite un socket de "origen", o la línea de error que se le
+    // envía antes de cerrarlo. Si se admite, liberar() se llama al cerrarse la conexión.
+    String admitir(InetAddress origen) {
+        if (porIp != null && !(localExenta && origen.isLoopbackAddress())) {
+            long ahora = System.nanoTime();
+            AtomicLong cubeta = cubetasIp.get(origen);
+            if (cubeta == null) {
+                cubeta = cubetasIp.computeIfAbsent(origen, o -> new AtomicLong(ahora));
+            }
+            if (!porIp.tomar(cubeta, ahora)) {
+                Metricas.CONEXIONES_LIMITADAS_IP.increment();
+                registrar("demasiadas_conexiones", origen);
+                return DEMASIADAS_CONEXIONES;
+            }
+        }
+        if (abiertas.incrementAndGet() > maximoConexiones && maximoConexiones > 0) {
+            abiertas.decrementAndGet();
+            Metricas.CONEXIONES_RECHAZADAS.increment();
+            registrar("servidor_lleno", origen);
+            return SERVIDOR_LLENO;
+        }
+        return null;
+    }
+
+    // Método que descuenta una conexión admitida que se cerró
+    void liberar() {
+        abiertas.decrementAndGet();
+    }
+
+    int abiertas() {
+        return abiertas.get();
+    }
+
+    // Función del hilo lector, antes de separar el siguiente mensaje: indica si el usuario tiene un token para él. Si no
+    // lo tiene, avisa al cliente (una vez por episodio), pausa la lectura hasta que lo haya y devuelve false; el lector
+    // retiene el mensaje y lo que le sigue sin separarlos. No gasta el token: eso lo hace admitirMensaje().
+    boolean hayTurno(Conexion conexion) {
+        if (porUsuario == null) {
+            return true;
+        }
+        long ahora = System.nanoTime();
+        long teorico = conexion.getLlegadaTeorica();
+        if (porUsuario.admite(teorico, ahora)) {
+            return true;
+        }
+        Metricas.MENSAJES_LIMITADOS.increment();
+        if (!conexion.isLimitada()) {
+            conexion.setLimitada(true);
+            conexion.encolar(AVISO_LIMITE, false);
+            registrar("limite_mensajes", conexion.getNombreCliente() != null ? conexion.getNombreCliente() : conexion.getPar());
+        }
+        conexion.pausarLectura(porUsuario.espera(teorico, ahora));
+        return false;
+    }
+
+    // Método del hilo lector que gasta el token del mensaje que acaba de separar (hayTurno() ya comprobó que lo había).
+    // El episodio de límite termina cuando un mensaje pasa con la cubeta llena otra vez.
+    void admitirMensaje(Conexion conexion) {
+        if (porUsuario == null) {
+            return;
+        }
+        long ahora = System.nanoTime();
+        long teorico = conexion.getLlegadaTeorica();
+        if (teorico - ahora <= 0) {
+            conexion.setLimitada(false);
+        }
+        conexion.setLlegadaTeorica(porUsuario.siguiente(teorico, ahora));
+    }
+
+    private void registrar(String evento, Object origen) {
+        if (Bitacora.muestra(muestreoLog)) {
+            Bitacora.SERVIDOR.aviso(evento, String.valueOf(origen), "rechazado por el control de admision");
+        }
+    }
+
+    // Tarea de la rueda que borra las direcciones cuya cubeta ya está llena (equivalen a una dirección nueva)
+    private final class Limpieza extends RuedaTemporizadores.Tarea {
+        private final RuedaTemporizadores rueda;
+
+        private Limpieza(RuedaTemporizadores rueda) {
+            this.rueda = rueda;
+        }
+
+        @Override
+        void vencer() {
+            long ahora = System.nanoTime();
+            cubetasIp.values().removeIf(cubeta -> cubeta.get() - ahora <= 0);
+            rueda.programar(this, rueda.tics(LIMPIEZA_MS));
+        }
+    }
+}
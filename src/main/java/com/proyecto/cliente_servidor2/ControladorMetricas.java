@@ -0,0 +1,22 @@
+// Nombre del Programa: Punto de Acceso de Métricas
+// Descripción: Publica en GET /metrics las métricas del servidor de chat en el formato de texto de Prometheus.
+// Las métricas se leen solo cuando llega la petición; los hilos del chat se limitan a incrementar contadores.
+
+package com.proyecto.cliente_servidor2;
+
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+public class ControladorMetricas {
+    private final Servidor servidor;
+
+    public ControladorMetricas(Servidor servidor) {
+        this.servidor = servidor;
+    }
+
+    @GetMapping(value = "/metrics", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String metricas() {
+        return servidor.exportarMetricas();
+    }
+}
@@ -0,0 +1,461 @@
+// Nombre del Programa: Diario de Mensajes para Clientes Desconectados
+// Descripción: Guarda los mensajes privados cuyo destinatario no está conectado y se los entrega en un solo lote cuando
+// se vuelve a registrar. Es un diario de solo agregado dividido en segmentos (archivos segmento-N.diario) que escribe un
+// único hilo: los hilos que enrutan solo dejan el registro ya armado en una cola, y el hilo del diario junta todo lo que
+// haya llegado y lo escribe con una sola escritura agrupada y un solo fsync (escritura en grupo), así guardar un mensaje
+// nunca cuesta una ida y vuelta al disco por mensaje.
+// Un índice en memoria (destinatario -> posiciones de sus mensajes pendientes) evita recorrer el diario al entregar.
+// Cada entrega agrega una marca "entregado hasta tal posición" para ese destinatario; al arrancar, el diario se recorre
+// (mapeado en memoria) para reconstruir el índice aplicando mensajes y marcas en orden.
+// La cola del diario es acotada y quien guarda nunca espera en ella (suele ser un hilo del reactor): si está llena, la
+// operación se descarta, se cuenta en Metricas.DIARIO_DESCARTADOS y se avisa una vez en la bitácora por cada desborde.
+// Las entregas dejan libre una cuarta parte de la cola de salida del cliente, para que el tráfico en vivo que llegue a
+// la vez no desplace (DESCARTAR_ANTIGUO) mensajes del diario que ya tienen su marca de entrega.
+// Compactación: los segmentos más antiguos se borran en cuanto todos sus mensajes se entregaron. Se borran siempre por
+// el principio, porque las marcas de un segmento pueden referirse a mensajes de segmentos anteriores.
+// Formato de cada registro: [largo del contenido: int][CRC32C del contenido: int][contenido], donde el contenido es
+// [tipo: byte][destinatario: short + UTF-8] y luego, para un mensaje, [remitente: short + UTF-8][texto UTF-8] y, para una
+// marca de entrega, [segmento: long][posición: long] del último mensaje entregado. Un registro con el CRC incorrecto al
+// final de un segmento (escritura cortada por una caída) se descarta al arrancar.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+
+class DiarioMensajes {
+    private static final String PREFIJO_SEGMENTO = "segmento-";
+    private static final String EXTENSION = ".diario";
+    private static final byte MENSAJE = 1;
+    private static final byte ENTREGA = 2;
+    private static final int CABECERA = 8; // Largo del contenido y CRC32C
+    private static final int MAXIMO_LOTE = 1024; // Operaciones que se procesan juntas como máximo
+    private static final long ESPERA_ENTREGA_MS = 10; // Reintento de las entregas que no cupieron en la cola de salida
+    private static final Object DETENER = new Object();
+
+    private final Path directorio;
+    private final long tamanoSegmento;
+    private final boolean sincronizar;
+    private final RegistroClientes clientes;
+    private final TablaIds ids;
+    private final BlockingQueue<Object> operaciones = new ArrayBlockingQueue<>(64 * 1024); // Guardar, Entregar o DETENER
+    private final AtomicBoolean desbordado = new AtomicBoolean(); // Ya se avisó del desborde actual de la cola
+    private Thread hilo;
+    private volatile boolean detenido;
+    // Destinatario -> mensajes en orden; solo lo cambia el hilo del diario, pero TablaIds pregunta desde otros hilos si
+    // un nombre tiene pendientes
+    private final Map<String, ArrayDeque<Pendiente>> pendientes = new ConcurrentHashMap<>();
+
+    // Estado que solo usa el hilo del diario (y el arranque, antes de crearlo)
+    private final ArrayDeque<Segmento> segmentos = new ArrayDeque<>(); // Del más antiguo al activo
+    private final Map<String, Conexion> entregasEnCurso = new HashMap<>(); // Entregas que no cupieron de una vez
+    private final List<Object> lote = new ArrayList<>();
+    private final List<ByteBuffer> escrituras = new ArrayList<>(); // Registros del lote aún no escritos en el activo
+    private final CRC32C crc = new CRC32C();
+    private long siguienteSegmento;
+
+    private record Guardar(String destinatario, ByteBuffer registro) {
+    }
+
+    private record Entregar(String nombre, Conexion conexion) {
+    }
+
+    // Mensaje pendiente: dónde está su registro completo (cabecera incluida)
+    private record Pendiente(Segmento segmento, long posicion, int largo) {
+    }
+
+    private static final class Segmento {
+        private final long numero;
+        private final Path ruta;
+        private final FileChannel canal;
+        private long tamano; // Bytes escritos (o por escribir en el lote actual)
+        private int pendientes; // Mensajes del segmento que aún no se entregaron
+
+        Segmento(long numero, Path ruta, FileChannel canal) {
+            this.numero = numero;
+            this.ruta = ruta;
+            this.canal = canal;
+        }
+    }
+
+    private DiarioMensajes(ConfiguracionServidor configuracion, RegistroClientes clientes, TablaIds ids) {
+        this.directorio = Path.of(configuracion.getDirectorioDiario());
+        this.tamanoSegmento = Math.min(configuracion.getTamanoSegmentoDiario(), Integer.MAX_VALUE);
+        this.sincronizar = configuracion.isSincronizarDiario();
+        this.clientes = clientes;
+        this.ids = ids;
+    }
+
+    // Función que abre el diario: recupera los segmentos existentes, reconstruye el índice y arranca el hilo del diario
+    static DiarioMensajes abrir(ConfiguracionServidor configuracion, RegistroClientes clientes, TablaIds ids) throws IOException {
+        DiarioMensajes diario = new DiarioMensajes(configuracion, clientes, ids);
+        diario.recuperar();
+        diario.hilo = new Thread(diario::ejecutar, "diario");
+        diario.hilo.setDaemon(true);
+        diario.hilo.start();
+        return diario;
+    }
+
+    // Método que guarda un mensaje para un destinatario desconectado; copia los bytes, así que el llamador puede reutilizarlos
+    void guardar(String destinatario, byte[] remitente, byte[] mensaje, int desde, int largo) {
+        if (detenido) {
+            return;
+        }
+        byte[] bytesDestinatario = destinatario.getBytes(StandardCharsets.UTF_8);
+        int contenido = 1 + 2 + bytesDestinatario.length + 2 + remitente.length + largo;
+        ByteBuffer registro = ByteBuffer.allocate(CABECERA + contenido);
+        registro.putInt(contenido).putInt(0).put(MENSAJE);
+        registro.putShort((short) bytesDestinatario.length).put(bytesDestinatario);
+        registro.putShort((short) remitente.length).put(remitente);
+        registro.put(mensaje, desde, largo);
+        sellar(registro, new CRC32C());
+        ofrecer(new Guardar(destinatario, registro), destinatario, "mensaje guardado");
+    }
+
+    // Método llamado al registrarse un cliente: el hilo del diario le entrega sus mensajes pendientes
+    void entregarPendientes(String nombre, Conexion conexion) {
+        if (detenido) {
+            return;
+        }
+        ofrecer(new Entregar(nombre, conexion), nombre, "entrega de pendientes");
+    }
+
+    // Función que indica si el destinatario tiene mensajes guardados sin entregar (su identificador no se reclama)
+    boolean tienePendientes(String nombre) {
+        return pendientes.containsKey(nombre);
+    }
+
+    // Función que devuelve cuántas operaciones esperan al hilo del diario
+    int profundidad() {
+        return operaciones.size();
+    }
+
+    // Método que deja una operación en la cola sin esperar; con la cola llena la descarta, la cuenta y avisa una vez
+    // por desborde (el hilo del diario rearma el aviso cuando la vacía)
+    private void ofrecer(Object operacion, String usuario, String descripcion) {
+        if (operaciones.offer(operacion)) {
+            return;
+        }
+        Metricas.DIARIO_DESCARTADOS.increment();
+        if (desbordado.compareAndSet(false, true)) {
+            Bitacora.SERVIDOR.aviso("diario", usuario, "cola del diario llena, se descarta: " + descripcion);
+        }
+    }
+
+    // Método que escribe lo que quede en la cola y cierra los segmentos; aquí sí se espera sitio en la cola, porque
+    // DETENER no se puede perder y quien detiene el servidor no es un hilo del reactor
+    void detener() {
+        detenido = true;
+        try {
+            operaciones.put(DETENER);
+            hilo.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Bucle del hilo del diario: toma todo lo que haya en la cola y lo procesa como un solo lote
+    private void ejecutar() {
+        try {
+            boolean seguir = true;
+            while (seguir) {
+                Object primera = entregasEnCurso.isEmpty()
+                        ? operaciones.take()
+                        : operaciones.poll(ESPERA_ENTREGA_MS, TimeUnit.MILLISECONDS);
+                if (primera != null) {
+                    lote.add(primera);
+                    operaciones.drainTo(lote, MAXIMO_LOTE - 1);
+                }
+                seguir = procesarLote();
+                lote.clear();
+                if (operaciones.isEmpty()) {
+                    desbordado.set(false);
+                }
+            }
+        } catch (InterruptedException e) {
+            // El servidor se detuvo
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("diario", "el escritor del diario se detuvo", e);
+        } finally {
+            for (Segmento segmento : segmentos) {
+                cerrar(segmento);
+            }
+        }
+    }
+
+    // Función que procesa un lote; devuelve false si el lote incluye la orden de detenerse
+    private boolean procesarLote() throws IOException {
+        boolean seguir = true;
+        Map<String, Conexion> porEntregar = new HashMap<>(entregasEnCurso);
+
+        // 1. Todos los mensajes nuevos con una sola escritura agrupada y un solo fsync
+        for (Object operacion : lote) {
+            if (operacion instanceof Guardar guardar) {
+                int largo = guardar.registro().remaining();
+                Segmento segmento = segmentoCon(largo);
+                pendientesDe(guardar.destinatario()).add(new Pendiente(segmento, segmento.tamano, largo));
+                segmento.pendientes++;
+                segmento.tamano += largo;
+                escrituras.add(guardar.registro());
+                Metricas.DIARIO_GUARDADOS.increment();
+                // El destinatario pudo registrarse mientras su mensaje esperaba en la cola del diario
+                Conexion conexion = clientes.buscar(guardar.destinatario());
+                if (conexion != null) {
+                    porEntregar.put(guardar.destinatario(), conexion);
+                }
+            } else if (operacion instanceof Entregar entregar) {
+                porEntregar.put(entregar.nombre(), entregar.conexion());
+            } else if (operacion == DETENER) {
+                seguir = false;
+            }
+        }
+        escribir();
+
+        // 2. Entregas (una vez escritos los mensajes, para poder leerlos del segmento)
+        for (Map.Entry<String, Conexion> entrega : porEntregar.entrySet()) {
+            if (entregar(entrega.getKey(), entrega.getValue())) {
+                entregasEnCurso.put(entrega.getKey(), entrega.getValue());
+            } else {
+                entregasEnCurso.remove(entrega.getKey());
+            }
+        }
+        escribir();
+        compactar();
+        return seguir;
+    }
+
+    // Función que entrega los mensajes pendientes que quepan en la cola de salida del cliente, en orden, y anota la
+    // marca de entrega; devuelve true si quedaron mensajes por entregar
+    private boolean entregar(String nombre, Conexion conexion) throws IOException {
+        ArrayDeque<Pendiente> cola = pendientes.get(nombre);
+        if (cola == null || conexion.estaCerrada() || clientes.buscar(nombre) != conexion) {
+            return false;
+        }
+        ColaSalida salida = conexion.getSalida();
+        int sitio = salida.sitioLibre() - salida.capacidad() / 4;
+        Pendiente ultimo = null;
+        while (sitio-- > 0 && !cola.isEmpty()) {
+            Pendiente pendiente = cola.poll();
+            ByteBuffer registro = leer(pendiente);
+            int posicion = CABECERA + 1;
+            posicion += 2 + (registro.getShort(posicion) & 0xFFFF); // Destinatario
+            int largoRemitente = registro.getShort(posicion) & 0xFFFF;
+            byte[] remitente = Arrays.copyOfRange(registro.array(), posicion + 2, posicion + 2 + largoRemitente);
+            int inicioMensaje = posicion + 2 + largoRemitente;
+            CargaPrivada carga = CargaPrivada.obtener(remitente, ids.id(new String(remitente, StandardCharsets.UTF_8)),
+                    registro.array(), inicioMensaje, registro.limit() - inicioMensaje);
+            carga.retener(1);
+            conexion.encolar(carga);
+            pendiente.segmento().pendientes--;
+            Metricas.DIARIO_ENTREGADOS.increment();
+            ultimo = pendiente;
+        }
+        if (cola.isEmpty()) {
+            pendientes.remove(nombre);
+        }
+        if (ultimo != null) {
+            agregarMarca(nombre, ultimo);
+        }
+        return !cola.isEmpty();
+    }
+
+    private void agregarMarca(String nombre, Pendiente ultimo) throws IOException {
+        byte[] bytesNombre = nombre.getBytes(StandardCharsets.UTF_8);
+        int contenido = 1 + 2 + bytesNombre.length + 8 + 8;
+        ByteBuffer registro = ByteBuffer.allocate(CABECERA + contenido);
+        registro.putInt(contenido).putInt(0).put(ENTREGA);
+        registro.putShort((short) bytesNombre.length).put(bytesNombre);
+        registro.putLong(ultimo.segmento().numero).putLong(ultimo.posicion());
+        sellar(registro, crc);
+        Segmento segmento = segmentoCon(registro.remaining());
+        segmento.tamano += registro.remaining();
+        escrituras.add(registro);
+    }
+
+    // Función que devuelve el segmento activo, empezando uno nuevo si el registro ya no cabe en él
+    private Segmento segmentoCon(int largo) throws IOException {
+        Segmento activo = segmentos.peekLast();
+        if (activo == null || (activo.tamano > 0 && activo.tamano + largo > tamanoSegmento)) {
+            escribir();
+            activo = nuevoSegmento();
+        }
+        return activo;
+    }
+
+    private Segmento nuevoSegmento() throws IOException {
+        long numero = siguienteSegmento++;
+        Path ruta = directorio.resolve(PREFIJO_SEGMENTO + numero + EXTENSION);
+        FileChannel canal = FileChannel.open(ruta, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        Segmento segmento = new Segmento(numero, ruta, canal);
+        segmentos.addLast(segmento);
+        return segmento;
+    }
+
+    // Método que escribe en el segmento activo los registros acumulados, con una escritura agrupada y un fsync
+    private void escribir() throws IOException {
+        if (escrituras.isEmpty()) {
+            return;
+        }
+        Segmento activo = segmentos.peekLast();
+        ByteBuffer[] buffers = escrituras.toArray(new ByteBuffer[0]);
+        int inicio = 0;
+        while (inicio < buffers.length) {
+            activo.canal.write(buffers, inicio, buffers.length - inicio);
+            while (inicio < buffers.length && !buffers[inicio].hasRemaining()) {
+                inicio++;
+            }
+        }
+        if (sincronizar) {
+            activo.canal.force(false);
+        }
+        escrituras.clear();
+        Metricas.DIARIO_ESCRITURAS.increment();
+    }
+
+    private ByteBuffer leer(Pendiente pendiente) throws IOException {
+        ByteBuffer registro = ByteBuffer.allocate(pendiente.largo());
+        long posicion = pendiente.posicion();
+        while (registro.hasRemaining()) {
+            int leidos = pendiente.segmento().canal.read(registro, posicion);
+            if (leidos < 0) {
+                throw new IOException("Registro incompleto en " + pendiente.segmento().ruta);
+            }
+            posicion += leidos;
+        }
+        return registro.flip();
+    }
+
+    // Método que borra, desde el más antiguo, los segmentos cuyos mensajes ya se entregaron todos
+    private void compactar() {
+        while (segmentos.size() > 1 && segmentos.peekFirst().pendientes == 0) {
+            Segmento segmento = segmentos.pollFirst();
+            cerrar(segmento);
+            try {
+                Files.deleteIfExists(segmento.ruta);
+                Metricas.DIARIO_SEGMENTOS_ELIMINADOS.increment();
+            } catch (IOException e) {
+                Bitacora.SERVIDOR.aviso("diario", null, "no se pudo borrar " + segmento.ruta + ": " + e.getMessage());
+            }
+        }
+    }
+
+    // Método que recorre los segmentos existentes (mapeados en memoria) y reconstruye el índice de pendientes
+    private void recuperar() throws IOException {
+        Files.createDirectories(directorio);
+        TreeMap<Long, Path> existentes = new TreeMap<>();
+        try (DirectoryStream<Path> archivos = Files.newDirectoryStream(directorio, PREFIJO_SEGMENTO + "*" + EXTENSION)) {
+            for (Path archivo : archivos) {
+                String nombre = archivo.getFileName().toString();
+                try {
+                    existentes.put(Long.parseLong(nombre.substring(PREFIJO_SEGMENTO.length(),
+                            nombre.length() - EXTENSION.length())), archivo);
+                } catch (NumberFormatException e) {
+                    // No es un segmento del diario
+                }
+            }
+        }
+        for (Map.Entry<Long, Path> existente : existentes.entrySet()) {
+            FileChannel canal = FileChannel.open(existente.getValue(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Segmento segmento = new Segmento(existente.getKey(), existente.getValue(), canal);
+            segmentos.addLast(segmento);
+            recorrer(segmento);
+            siguienteSegmento = segmento.numero + 1;
+        }
+        for (String destinatario : pendientes.keySet()) {
+            // Los destinatarios con mensajes guardados se conocen aunque aún no se hayan conectado en esta ejecución
+            ids.id(destinatario);
+        }
+        compactar();
+        // Los mensajes nuevos van siempre a un segmento nuevo
+        nuevoSegmento();
+    }
+
+    private void recorrer(Segmento segmento) throws IOException {
+        long tamano = segmento.canal.size();
+        MappedByteBuffer mapa = segmento.canal.map(FileChannel.MapMode.READ_ONLY, 0, tamano);
+        int posicion = 0;
+        while (posicion + CABECERA <= tamano) {
+            int contenido = mapa.getInt(posicion);
+            if (contenido <= 0 || posicion + CABECERA + (long) contenido > tamano) {
+                break;
+            }
+            crc.reset();
+            crc.update(mapa.slice(posicion + CABECERA, contenido));
+            if ((int) crc.getValue() != mapa.getInt(posicion + 4)) {
+                break;
+            }
+            int cursor = posicion + CABECERA;
+            byte tipo = mapa.get(cursor);
+            int largoDestinatario = mapa.getShort(cursor + 1) & 0xFFFF;
+            byte[] destinatario = new byte[largoDestinatario];
+            mapa.get(cursor + 3, destinatario);
+            String nombre = new String(destinatario, StandardCharsets.UTF_8);
+            cursor += 3 + largoDestinatario;
+            if (tipo == MENSAJE) {
+                pendientesDe(nombre).add(new Pendiente(segmento, posicion, CABECERA + contenido));
+                segmento.pendientes++;
+            } else if (tipo == ENTREGA) {
+                aplicarMarca(nombre, mapa.getLong(cursor), mapa.getLong(cursor + 8));
+            }
+            posicion += CABECERA + contenido;
+        }
+        if (posicion < tamano) {
+            Bitacora.SERVIDOR.aviso("diario", null, "se descartan " + (tamano - posicion) + " bytes incompletos al final de " + segmento.ruta);
+            segmento.canal.truncate(posicion);
+        }
+        segmento.tamano = posicion;
+        segmento.canal.position(posicion);
+    }
+
+    // Método que da por entregados los mensajes del destinatario hasta la posición de la marca (incluida)
+    private void aplicarMarca(String nombre, long numeroSegmento, long posicion) {
+        ArrayDeque<Pendiente> cola = pendientes.get(nombre);
+        while (cola != null && !cola.isEmpty()) {
+            Pendiente primero = cola.peek();
+            long numero = primero.segmento().numero;
+            if (numero > numeroSegmento || (numero == numeroSegmento && primero.posicion() > posicion)) {
+                break;
+            }
+            cola.poll();
+            primero.segmento().pendientes--;
+        }
+        if (cola != null && cola.isEmpty()) {
+            pendientes.remove(nombre);
+        }
+    }
+
+    private ArrayDeque<Pendiente> pendientesDe(String destinatario) {
+        return pendientes.computeIfAbsent(destinatario, d -> new ArrayDeque<>());
+    }
+
+    // Método que completa la cabecera con el CRC32C del contenido y deja el registro listo para escribir
+    private static void sellar(ByteBuffer registro, CRC32C crc) {
+        crc.reset();
+        crc.update(registro.array(), CABECERA, registro.position() - CABECERA);
+        registro.putInt(4, (int) crc.getValue());
+        registro.flip();
+    }
+
+    private static void cerrar(Segmento segmento) {
+        try {
+            segmento.canal.close();
+        } catch (IOException e) {
+            // El segmento ya estaba cerrado
+        }
+    }
+}
@@ -0,0 +1,53 @@
+// Nombre del Programa: Directorio de Clientes del Clúster
+// Descripción: Recuerda en qué nodo del clúster está conectado cada cliente remoto. Cada nodo es la única fuente de
+// verdad sobre sus propios clientes: anuncia sus altas y bajas a los demás, y el directorio de cada nodo solo guarda
+// lo que le anunciaron los otros. Los clientes locales no están aquí; se buscan en RegistroClientes.
+// Ejemplo: Si "luis" se conecta al nodo-b, el nodo-a recibe "Alta:luis" por el enlace con nodo-b y guarda
+// luis -> nodo-b; un mensaje de ana (en nodo-a) para luis se reenvía entonces a nodo-b.
+// Si un mismo nombre aparece en dos nodos, gana el último anuncio; la baja de un nodo solo borra la entrada si
+// todavía apunta a ese nodo.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+class DirectorioCluster {
+    // Mapa concurrente nombre del cliente -> nombre del nodo donde está conectado
+    private final ConcurrentHashMap<String, String> nodos = new ConcurrentHashMap<>();
+
+    // Función que anota al cliente en el nodo; devuelve true si antes no estaba en ningún nodo remoto
+    boolean alta(String nombre, String nodo) {
+        return nodos.put(nombre, nodo) == null;
+    }
+
+    // Función que borra al cliente si seguía en ese nodo; devuelve true si se borró
+    boolean baja(String nombre, String nodo) {
+        return nodos.remove(nombre, nodo);
+    }
+
+    // Función que borra todos los clientes de un nodo que dejó el clúster y devuelve sus nombres
+    List<String> eliminarNodo(String nodo) {
+        List<String> eliminados = new ArrayList<>();
+        for (Map.Entry<String, String> entrada : nodos.entrySet()) {
+            if (entrada.getValue().equals(nodo) && nodos.remove(entrada.getKey(), nodo)) {
+                eliminados.add(entrada.getKey());
+            }
+        }
+        return eliminados;
+    }
+
+    // Función que devuelve el nodo donde está el cliente, o null si no está en ningún nodo remoto
+    String nodo(String nombre) {
+        return nombre == null ? null : nodos.get(nombre);
+    }
+
+    // Función que devuelve los nombres de los clientes remotos, con la misma semántica que RegistroClientes.nombres()
+    Set<String> nombres() {
+        return Collections.unmodifiableSet(nodos.keySet());
+    }
+}
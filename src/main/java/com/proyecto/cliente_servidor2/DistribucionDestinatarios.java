@@ -0,0 +1,103 @@
+// Nombre del Programa: Distribución de Destinatarios del Generador de Carga
+// Descripción: Decide a quién envía cada mensaje un usuario simulado. Nunca elige al propio remitente.
+// Distribuciones disponibles (propiedad generador.distribucion):
+// - uniforme: Cualquier otro usuario con la misma probabilidad.
+// - zipf: Unos pocos usuarios reciben casi todo el tráfico; el usuario de rango k recibe en proporción a 1/k^s
+//   (exponente generador.zipf.s, por defecto 1).
+// - parejas: Cada usuario conversa sobre todo con su pareja fija (usuario i con i ^ 1); una fracción
+//   generador.parejas.fraccion de sus mensajes va a ella y el resto se reparte de forma uniforme.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+abstract class DistribucionDestinatarios {
+    static final String UNIFORME = "uniforme";
+    static final String ZIPF = "zipf";
+    static final String PAREJAS = "parejas";
+
+    protected final int usuarios;
+
+    DistribucionDestinatarios(int usuarios) {
+        if (usuarios < 2) {
+            throw new IllegalArgumentException("Se necesitan al menos 2 usuarios");
+        }
+        this.usuarios = usuarios;
+    }
+
+    // Función que crea la distribución indicada en la configuración
+    static DistribucionDestinatarios crear(ConfiguracionGenerador configuracion) {
+        int usuarios = configuracion.getUsuarios();
+        return switch (configuracion.getDistribucion()) {
+            case UNIFORME -> new Uniforme(usuarios);
+            case ZIPF -> new Zipf(usuarios, configuracion.getExponenteZipf());
+            case PAREJAS -> new Parejas(usuarios, configuracion.getFraccionParejas());
+            default -> throw new IllegalArgumentException("Distribución desconocida: " + configuracion.getDistribucion());
+        };
+    }
+
+    // Función que devuelve el índice del destinatario del siguiente mensaje del remitente
+    abstract int siguiente(int remitente, ThreadLocalRandom aleatorio);
+
+    // Cualquier usuario menos el remitente, con la misma probabilidad
+    protected int uniformeSinRemitente(int remitente, ThreadLocalRandom aleatorio) {
+        int destinatario = aleatorio.nextInt(usuarios - 1);
+        return destinatario >= remitente ? destinatario + 1 : destinatario;
+    }
+
+    private static final class Uniforme extends DistribucionDestinatarios {
+        Uniforme(int usuarios) {
+            super(usuarios);
+        }
+
+        @Override
+        int siguiente(int remitente, ThreadLocalRandom aleatorio) {
+            return uniformeSinRemitente(remitente, aleatorio);
+        }
+    }
+
+    // Se precalcula la distribución acumulada y cada sorteo es una búsqueda binaria
+    private static final class Zipf extends DistribucionDestinatarios {
+        private final double[] acumulada;
+
+        Zipf(int usuarios, double exponente) {
+            super(usuarios);
+            acumulada = new double[usuarios];
+            double suma = 0;
+            for (int i = 0; i < usuarios; i++) {
+                suma += 1.0 / Math.pow(i + 1, exponente);
+                acumulada[i] = suma;
+            }
+            for (int i = 0; i < usuarios; i++) {
+                acumulada[i] /= suma;
+            }
+        }
+
+        @Override
+        int siguiente(int remitente, ThreadLocalRandom aleatorio) {
+            int posicion = Arrays.binarySearch(acumulada, aleatorio.nextDouble());
+            int destinatario = Math.min(posicion >= 0 ? posicion : -posicion - 1, usuarios - 1);
+            // Los usuarios más populares también escriben: se desvían al siguiente en vez de escribirse a sí mismos
+            return destinatario == remitente ? (destinatario + 1) % usuarios : destinatario;
+        }
+    }
+
+    private static final class Parejas extends DistribucionDestinatarios {
+        private final double fraccion;
+
+        Parejas(int usuarios, double fraccion) {
+            super(usuarios);
+            this.fraccion = fraccion;
+        }
+
+        @Override
+        int siguiente(int remitente, ThreadLocalRandom aleatorio) {
+            int pareja = remitente ^ 1;
+            if (pareja < usuarios && aleatorio.nextDouble() < fraccion) {
+                return pareja;
+            }
+            return uniformeSinRemitente(remitente, aleatorio);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+// Nombre del Programa: Entrada Comprimida del Cliente
+// Descripción: Envuelve la entrada del socket de un cliente que pidió "Compresion:deflate" y entrega los mismos bytes que
+// enviaría el servidor sin compresión. Hasta que el servidor confirma con la línea "Compresion:deflate", los bytes pasan
+// tal cual; a partir de ahí llegan bloques [cabecera: int][bytes] (ver CompresionSalida) y los comprimidos se inflan con
+// un solo Inflater que dura toda la conexión, igual que el Deflater del servidor.
+// Ejemplo: new BufferedReader(new InputStreamReader(new EntradaComprimida(socket.getInputStream()), UTF_8))
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+public final class EntradaComprimida extends InputStream {
+    private static final byte[] CONFIRMACION = (CompresionSalida.LINEA_NEGOCIACION + "\n").getBytes(StandardCharsets.UTF_8);
+
+    private final DataInputStream origen;
+    private final Inflater inflater = new Inflater(true);
+    private int coincidencia; // Bytes de CONFIRMACION vistos desde el último inicio de línea (-1: la línea no coincide)
+    private boolean enBloques; // Ya pasó la confirmación: todo lo que sigue llega en bloques
+    private byte[] entrada = new byte[8 * 1024]; // Bytes de un bloque comprimido
+    private byte[] bloque = new byte[16 * 1024]; // Bytes listos para entregar
+    private int posicion; // Próximo byte de bloque por entregar
+    private int largo; // Bytes válidos de bloque
+
+    public EntradaComprimida(InputStream origen) {
+        this.origen = new DataInputStream(new BufferedInputStream(origen));
+    }
+
+    @Override
+    public int read() throws IOException {
+        byte[] uno = new byte[1];
+        return read(uno, 0, 1) < 0 ? -1 : uno[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] destino, int desde, int cantidad) throws IOException {
+        if (cantidad == 0) {
+            return 0;
+        }
+        if (!enBloques) {
+            return leerSinComprimir(destino, desde, cantidad);
+        }
+        while (posicion == largo) {
+            if (!leerBloque()) {
+                return -1;
+            }
+        }
+        int copiados = Math.min(cantidad, largo - posicion);
+        System.arraycopy(bloque, posicion, destino, desde, copiados);
+        posicion += copiados;
+        return copiados;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return enBloques ? largo - posicion : 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        inflater.end();
+        origen.close();
+    }
+
+    // Función que entrega bytes tal cual llegan, sin pasar de la línea de confirmación para que lo que sigue se lea
+    // como bloques
+    private int leerSinComprimir(byte[] destino, int desde, int cantidad) throws IOException {
+        int leidos = 0;
+        while (leidos < cantidad) {
+            // Solo se bloquea por el primer byte; los demás se toman mientras ya estén disponibles
+            if (leidos > 0 && origen.available() == 0) {
+                break;
+            }
+            int b = origen.read();
+            if (b < 0) {
+                return leidos > 0 ? leidos : -1;
+            }
+            destino[desde + leidos++] = (byte) b;
+            if (coincidencia >= 0 && b == (CONFIRMACION[coincidencia] & 0xFF)) {
+                if (++coincidencia == CONFIRMACION.length) {
+                    enBloques = true;
+                    break;
+                }
+            } else {
+                coincidencia = b == '\n' ? 0 : -1;
+            }
+        }
+        return leidos;
+    }
+
+    // Función que lee el siguiente bloque y lo deja en bloque; devuelve false al final de la entrada
+    private boolean leerBloque() throws IOException {
+        int cabecera;
+        try {
+            cabecera = origen.readInt();
+        } catch (EOFException e) {
+            return false;
+        }
+        int bytes = cabecera & ~CompresionSalida.COMPRIMIDO;
+        posicion = 0;
+        if ((cabecera & CompresionSalida.COMPRIMIDO) == 0) {
+            bloque = espacio(bloque, bytes);
+            origen.readFully(bloque, 0, bytes);
+            largo = bytes;
+            return true;
+        }
+        entrada = espacio(entrada, bytes);
+        origen.readFully(entrada, 0, bytes);
+        inflater.setInput(entrada, 0, bytes);
+        largo = 0;
+        try {
+            // El bloque termina con SYNC_FLUSH: se infla hasta consumir toda la entrada (si el buffer se llenó justo,
+            // puede quedar salida dentro del Inflater y se vuelve a llamar con más espacio)
+            while (!inflater.needsInput() || largo == bloque.length) {
+                if (largo == bloque.length) {
+                    bloque = Arrays.copyOf(bloque, bloque.length * 2);
+                }
+                largo += inflater.inflate(bloque, largo, bloque.length - largo);
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Bloque comprimido inválido", e);
+        }
+        return true;
+    }
+
+    private static byte[] espacio(byte[] actual, int necesario) {
+        return actual.length >= necesario ? actual : new byte[Math.max(necesario, actual.length * 2)];
+    }
+}
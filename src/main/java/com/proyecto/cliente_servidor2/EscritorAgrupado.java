@@ -0,0 +1,139 @@
+// Nombre del Programa: Escritor Agrupado del Cliente
+// Descripción: Envía las líneas de un cliente al servidor juntando las que se escriben en una ventana corta en una sola
+// escritura al socket, en lugar de una escritura (y un paquete TCP) por línea como hacía el PrintWriter con autoflush.
+// Las líneas se copian a un buffer; un hilo virtual espera la ventana desde la primera línea pendiente (o a que el
+// buffer llegue al umbral de bytes), intercambia el buffer por uno vacío y lo escribe entero.
+// Con ventana 0 no hay hilo escritor: cada línea se escribe en cuanto se envía, con una sola llamada.
+// Ejemplo: Con ventana de 2 ms, un usuario que envía 20 mensajes seguidos hace una o dos escrituras en lugar de 20.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+public final class EscritorAgrupado implements AutoCloseable {
+    private static final int TAMANO_INICIAL = 8 * 1024;
+
+    private final OutputStream salida;
+    private final long ventanaNanos; // Espera desde la primera línea pendiente (0: escribir cada línea al momento)
+    private final int umbralBytes; // Bytes pendientes con los que se escribe sin esperar a que venza la ventana
+    private final ReentrantLock candado = new ReentrantLock();
+    private final Condition hayLineas = candado.newCondition();
+    private byte[] pendiente = new byte[TAMANO_INICIAL]; // Líneas por escribir (con el candado)
+    private int largo; // Bytes usados de pendiente
+    private byte[] enEscritura = new byte[TAMANO_INICIAL]; // Buffer que está escribiendo el hilo escritor
+    private boolean cerrado;
+    private IOException error; // Error del hilo escritor, que se informa en el siguiente envío
+    private volatile long escrituras; // Escrituras al socket realizadas
+
+    public EscritorAgrupado(OutputStream salida, long ventanaMs, int umbralBytes) {
+        this.salida = salida;
+        this.ventanaNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, ventanaMs));
+        this.umbralBytes = Math.max(1, umbralBytes);
+        if (ventanaNanos > 0) {
+            Thread.ofVirtual().name("escritor-agrupado").start(this::escribirEnLotes);
+        }
+    }
+
+    // Método que envía una línea (sin el '\n' final); con ventana solo la deja en el buffer
+    public void enviar(String linea) throws IOException {
+        byte[] bytes = linea.getBytes(StandardCharsets.UTF_8);
+        candado.lock();
+        try {
+            if (error != null) {
+                throw error;
+            }
+            if (cerrado) {
+                throw new IOException("El escritor está cerrado");
+            }
+            agregar(bytes);
+            if (ventanaNanos == 0) {
+                salida.write(pendiente, 0, largo);
+                salida.flush();
+                largo = 0;
+                escrituras++;
+            } else if (largo == bytes.length + 1 || largo >= umbralBytes) {
+                hayLineas.signal(); // Empieza la ventana, o ya no hace falta esperar a que termine
+            }
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    // Función que devuelve cuántas escrituras al socket se han hecho, para comparar con las líneas enviadas
+    public long getEscrituras() {
+        return escrituras;
+    }
+
+    // Método que escribe lo pendiente y detiene el hilo escritor
+    @Override
+    public void close() {
+        candado.lock();
+        try {
+            cerrado = true;
+            hayLineas.signal();
+        } finally {
+            candado.unlock();
+        }
+    }
+
+    private void agregar(byte[] bytes) {
+        if (largo + bytes.length + 1 > pendiente.length) {
+            pendiente = Arrays.copyOf(pendiente, Math.max(pendiente.length * 2, largo + bytes.length + 1));
+        }
+        System.arraycopy(bytes, 0, pendiente, largo, bytes.length);
+        largo += bytes.length;
+        pendiente[largo++] = '\n';
+    }
+
+    // Bucle del hilo escritor: espera la primera línea, luego la ventana (o el umbral), y escribe todo junto
+    private void escribirEnLotes() {
+        while (true) {
+            int aEscribir;
+            candado.lock();
+            try {
+                while (largo == 0 && !cerrado) {
+                    hayLineas.awaitUninterruptibly();
+                }
+                long restante = ventanaNanos;
+                while (largo < umbralBytes && !cerrado && restante > 0) {
+                    try {
+                        restante = hayLineas.awaitNanos(restante);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                if (largo == 0) {
+                    return; // Cerrado y sin nada pendiente
+                }
+                // Intercambia los buffers: los envíos siguientes se copian al otro mientras este se escribe
+                byte[] lleno = pendiente;
+                pendiente = enEscritura;
+                enEscritura = lleno;
+                aEscribir = largo;
+                largo = 0;
+            } finally {
+                candado.unlock();
+            }
+            try {
+                salida.write(enEscritura, 0, aEscribir);
+                salida.flush();
+                escrituras++;
+            } catch (IOException e) {
+                candado.lock();
+                try {
+                    error = e;
+                    cerrado = true;
+                } finally {
+                    candado.unlock();
+                }
+                return;
+            }
+        }
+    }
+}
@@ -0,0 +1,526 @@
+// Nombre del Programa: Generador de Carga sin Interfaz Gráfica
+// Descripción: Simula miles de usuarios que se conectan al servidor y se envían mensajes privados, para medir cuánto
+// tráfico aguanta. Cada usuario tiene su propio socket, un hilo virtual que lee y otro que envía a la tasa configurada
+// eligiendo el destinatario según la distribución configurada (ver DistribucionDestinatarios). Habla el mismo protocolo
+// que las ventanas Swing a través de ProtocoloCliente.
+// Cada mensaje lleva el índice del destinatario esperado y el instante de envío ("destino;nanos;relleno"), así el
+// receptor mide la latencia de entrega y detecta los mensajes mal enrutados; los que nunca llegan se cuentan como perdidos.
+// Ejemplo: java -Dgenerador.usuarios=5000 -Dgenerador.tasa=2 -Dgenerador.distribucion=zipf ... GeneradorCarga
+// arranca un Servidor local, conecta 5.000 usuarios, envía durante 30 s y muestra el rendimiento, los percentiles de
+// latencia y los mensajes perdidos o mal enrutados. La configuración completa está en ConfiguracionGenerador.
+// También muestra las escrituras al socket por mensaje de los usuarios y, con servidor local, las del servidor, para
+// comparar corridas con y sin coalescencia (generador.coalescenciaMs y servidor.coalescencia.ventanaMs). Con TCP_NODELAY
+// cada escritura pequeña sale en su propio paquete, así que las escrituras por mensaje aproximan los paquetes por mensaje.
+// Reinicio (generador.reinicioS, solo con servidor local): en ese segundo se drena el servidor y se arranca otro en el
+// mismo puerto. Cada usuario atiende el aviso "Reconectar:ms" como ConexionCliente: cierra, espera lo pedido y vuelve a
+// conectarse; mientras tanto no envía. El resultado muestra cuánto tardó el drenado, cuánto el nuevo servidor en estar
+// listo (de new Servidor a iniciar()) y cuántos segundos pasaron hasta el primero con el p99 y las entregas de vuelta a
+// los de antes del reinicio. Los mensajes enviados a usuarios que aún no se reconectan se cuentan como perdidos.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.*;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class GeneradorCarga {
+    private static final String PREFIJO_USUARIO = "usuario-";
+    private static final long ESPERA_REGISTRO_MS = 30_000; // Máximo para que el servidor registre a todos
+    private static final long ESPERA_ENTREGAS_MS = 10_000; // Máximo para que lleguen los mensajes en vuelo
+    private static final int UMBRAL_COALESCENCIA = 16 * 1024; // Bytes con los que un usuario escribe sin esperar la ventana
+    private static final long ESPERA_MAXIMA_RECONEXION_MS = 2_000; // Tope de la espera entre intentos de reconexión
+    private static final double TOLERANCIA_P99 = 1.5; // Un segundo con p99 hasta 1,5 veces el estable ya se recuperó
+    private static final double FRACCION_ENTREGAS = 0.9; // ... si además entrega al menos el 90 % de lo de antes
+
+    private final ConfiguracionGenerador configuracion;
+    private final DistribucionDestinatarios distribucion;
+    private final String relleno; // Texto de relleno de cada mensaje
+    private final Histograma latencias = new Histograma(); // Latencia de entrega en nanosegundos
+    private final LongAdder enviados = new LongAdder();
+    private final LongAdder entregados = new LongAdder();
+    private final LongAdder malEnrutados = new LongAdder();
+    private final LongAdder erroresConexion = new LongAdder();
+    private final LongAdder reconexiones = new LongAdder();
+    private volatile Servidor servidor; // Servidor local (el nuevo después de un reinicio), o null si es remoto
+    private volatile long inicioEnvio;
+    private Histograma[] porSegundo; // Latencias de cada segundo desde inicioEnvio, solo si hay reinicio
+    private volatile long drenadoNanos; // Mediciones del reinicio (drenadoNanos < 0 si no se hizo)
+    private volatile long listoNanos;
+    private volatile int sinCerrar;
+
+    public GeneradorCarga(ConfiguracionGenerador configuracion) {
+        this.configuracion = configuracion;
+        this.distribucion = DistribucionDestinatarios.crear(configuracion);
+        this.relleno = "x".repeat(configuracion.getLargoTexto());
+    }
+
+    public static void main(String[] args) {
+        try {
+            GeneradorCarga generador = new GeneradorCarga(ConfiguracionGenerador.desdePropiedades());
+            generador.ejecutar().imprimir(System.out);
+        } catch (IOException | InterruptedException e) {
+            e.printStackTrace();
+        }
+        System.exit(0);
+    }
+
+    // Función que realiza una corrida completa: conectar, enviar durante la duración configurada y esperar entregas
+    public Resultado ejecutar() throws IOException, InterruptedException {
+        ConfiguracionServidor configuracionServidor = null;
+        String host = configuracion.getHost();
+        int puerto = configuracion.getPuerto();
+        if (configuracion.isLocal()) {
+            configuracionServidor = ConfiguracionServidor.desdePropiedades();
+            configuracionServidor.setPuerto(0);
+            servidor = new Servidor(configuracionServidor);
+            host = "localhost";
+            puerto = servidor.iniciar();
+        }
+        int segundoReinicio = configuracion.getReinicioS();
+        boolean reinicia = configuracionServidor != null && segundoReinicio > 0 && segundoReinicio < configuracion.getDuracionS();
+        drenadoNanos = -1;
+        if (reinicia) {
+            porSegundo = new Histograma[configuracion.getDuracionS() + (int) (ESPERA_ENTREGAS_MS / 1000) + 1];
+            for (int i = 0; i < porSegundo.length; i++) {
+                porSegundo[i] = new Histograma();
+            }
+        }
+
+        List<UsuarioSimulado> usuarios = new ArrayList<>(configuracion.getUsuarios());
+        try {
+            for (int i = 0; i < configuracion.getUsuarios(); i++) {
+                UsuarioSimulado usuario = new UsuarioSimulado(i);
+                usuarios.add(usuario);
+                usuario.conectar(host, puerto);
+            }
+            esperarRegistro(host, puerto);
+
+            long lotesServidor = Metricas.LOTES_ESCRITOS.sum();
+            long encoladosServidor = Metricas.MENSAJES_ENCOLADOS.sum();
+            long inicio = System.nanoTime();
+            long fin = inicio + TimeUnit.SECONDS.toNanos(configuracion.getDuracionS());
+            inicioEnvio = inicio;
+            List<Thread> emisores = new ArrayList<>(usuarios.size());
+            for (UsuarioSimulado usuario : usuarios) {
+                emisores.add(Thread.ofVirtual().name("emisor-" + usuario.indice).start(() -> usuario.enviarMensajes(inicio, fin)));
+            }
+            Thread progreso = Thread.ofPlatform().daemon().name("progreso").start(() -> informarProgreso(inicio));
+            Thread reinicio = null;
+            if (reinicia) {
+                ConfiguracionServidor configuracionReinicio = configuracionServidor;
+                int puertoReinicio = puerto;
+                reinicio = Thread.ofPlatform().name("reinicio")
+                        .start(() -> reiniciar(inicio + TimeUnit.SECONDS.toNanos(segundoReinicio), configuracionReinicio, puertoReinicio));
+            }
+            for (Thread emisor : emisores) {
+                emisor.join();
+            }
+            double segundos = (System.nanoTime() - inicio) / 1e9;
+            if (reinicio != null) {
+                reinicio.join();
+            }
+            esperarEntregas();
+            progreso.interrupt();
+            long escriturasUsuarios = 0;
+            for (UsuarioSimulado usuario : usuarios) {
+                escriturasUsuarios += usuario.escrituras() - usuario.escriturasRegistro;
+            }
+            // Las métricas del servidor solo se conocen si corre en este proceso
+            long escriturasServidor = servidor != null ? Metricas.LOTES_ESCRITOS.sum() - lotesServidor : -1;
+            long encolados = servidor != null ? Metricas.MENSAJES_ENCOLADOS.sum() - encoladosServidor : -1;
+            return new Resultado(configuracion, enviados.sum(), entregados.sum(), malEnrutados.sum(),
+                    erroresConexion.sum(), segundos, latencias, escriturasUsuarios, escriturasServidor, encolados,
+                    drenadoNanos >= 0 ? medirReinicio(segundoReinicio) : null);
+        } finally {
+            for (UsuarioSimulado usuario : usuarios) {
+                usuario.cerrar();
+            }
+            if (servidor != null) {
+                servidor.detener();
+            }
+        }
+    }
+
+    // Método que espera hasta el instante del reinicio, drena el servidor local y arranca otro en el mismo puerto con la
+    // misma configuración; anota cuánto tardó el drenado y cuánto el nuevo servidor en quedar listo para aceptar
+    private void reiniciar(long instante, ConfiguracionServidor configuracionServidor, int puerto) {
+        long espera = instante - System.nanoTime();
+        if (espera > 0) {
+            LockSupport.parkNanos(espera);
+        }
+        long comienzo = System.nanoTime();
+        int abiertas = servidor.drenar();
+        long drenado = System.nanoTime();
+        configuracionServidor.setPuerto(puerto);
+        Servidor nuevo = new Servidor(configuracionServidor);
+        try {
+            nuevo.iniciar();
+        } catch (IOException e) {
+            System.out.println("Aviso: no se pudo arrancar el nuevo servidor en el puerto " + puerto + ": " + e.getMessage());
+            return;
+        }
+        servidor = nuevo;
+        listoNanos = System.nanoTime() - drenado;
+        sinCerrar = abiertas;
+        drenadoNanos = drenado - comienzo;
+    }
+
+    // Función que compara cada segundo desde el reinicio con los de antes (sin el primero, que aún calienta): el p99
+    // estable es la mediana de sus p99 y las entregas estables, su promedio
+    private Reinicio medirReinicio(int segundoReinicio) {
+        int desde = segundoReinicio > 1 ? 1 : 0;
+        long[] p99 = new long[porSegundo.length];
+        long[] previos = new long[segundoReinicio - desde];
+        long entregasPrevias = 0;
+        for (int s = 0; s < porSegundo.length; s++) {
+            p99[s] = porSegundo[s].percentil(99);
+            if (s >= desde && s < segundoReinicio) {
+                previos[s - desde] = p99[s];
+                entregasPrevias += porSegundo[s].total();
+            }
+        }
+        Arrays.sort(previos);
+        long p99Estable = previos[previos.length / 2];
+        double entregasEstables = entregasPrevias / (double) previos.length;
+        int recuperacion = -1;
+        for (int s = segundoReinicio; s < configuracion.getDuracionS(); s++) {
+            if (p99[s] <= TOLERANCIA_P99 * p99Estable && porSegundo[s].total() >= FRACCION_ENTREGAS * entregasEstables) {
+                recuperacion = s + 1 - segundoReinicio;
+                break;
+            }
+        }
+        return new Reinicio(segundoReinicio, drenadoNanos, sinCerrar, listoNanos, reconexiones.sum(), p99Estable,
+                recuperacion, Arrays.copyOf(p99, configuracion.getDuracionS()));
+    }
+
+    // Método que conecta un observador y espera a que su lista de clientes contenga a todos los usuarios simulados,
+    // para no enviar mensajes a usuarios que el servidor aún no ha registrado
+    private void esperarRegistro(String host, int puerto) throws IOException {
+        Set<String> vistos = new HashSet<>();
+        ProtocoloCliente.Oyente observador = new ProtocoloCliente.Oyente() {
+            @Override
+            public void listaCompleta(List<String> clientes) {
+                vistos.clear();
+                vistos.addAll(clientes);
+            }
+
+            @Override
+            public void entra(String cliente) {
+                vistos.add(cliente);
+            }
+
+            @Override
+            public void sale(String cliente) {
+                vistos.remove(cliente);
+            }
+
+            @Override
+            public void mensajePrivado(String remitente, String texto) {
+            }
+        };
+        long limite = System.currentTimeMillis() + ESPERA_REGISTRO_MS;
+        try (Socket socket = new Socket(host, puerto)) {
+            socket.setSoTimeout(100);
+            BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            Writer salida = new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8);
+            salida.write("observador-" + ProcessHandle.current().pid() + "\n");
+            salida.flush();
+            while (contarUsuarios(vistos) < configuracion.getUsuarios()) {
+                if (System.currentTimeMillis() > limite) {
+                    System.out.println("Aviso: el servidor registró " + contarUsuarios(vistos) + " de "
+                            + configuracion.getUsuarios() + " usuarios; se envía de todos modos.");
+                    return;
+                }
+                try {
+                    String linea = entrada.readLine();
+                    if (linea == null) {
+                        throw new EOFException("El servidor cerró la conexión del observador");
+                    }
+                    ProtocoloCliente.procesar(linea, observador);
+                } catch (SocketTimeoutException e) {
+                    // Se vuelve a comprobar el límite de tiempo
+                }
+            }
+        }
+    }
+
+    private static int contarUsuarios(Set<String> vistos) {
+        int cantidad = 0;
+        for (String nombre : vistos) {
+            if (nombre.startsWith(PREFIJO_USUARIO)) {
+                cantidad++;
+            }
+        }
+        return cantidad;
+    }
+
+    // Método que espera a que lleguen los mensajes en vuelo, hasta que no quede ninguno o pase el límite
+    private void esperarEntregas() throws InterruptedException {
+        long limite = System.currentTimeMillis() + ESPERA_ENTREGAS_MS;
+        while (entregados.sum() + malEnrutados.sum() < enviados.sum() && System.currentTimeMillis() < limite) {
+            Thread.sleep(50);
+        }
+    }
+
+    // Método que muestra cada 5 segundos cuántos mensajes se enviaron y entregaron
+    private void informarProgreso(long inicio) {
+        long enviadosAntes = 0;
+        long entregadosAntes = 0;
+        try {
+            while (true) {
+                Thread.sleep(5_000);
+                long enviadosAhora = enviados.sum();
+                long entregadosAhora = entregados.sum();
+                System.out.printf("[%3d s] enviados %,d msg/s, entregados %,d msg/s, p99 %.2f ms%n",
+                        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - inicio),
+                        (enviadosAhora - enviadosAntes) / 5, (entregadosAhora - entregadosAntes) / 5,
+                        latencias.percentil(99) / 1e6);
+                enviadosAntes = enviadosAhora;
+                entregadosAntes = entregadosAhora;
+            }
+        } catch (InterruptedException e) {
+            // Terminó la corrida
+        }
+    }
+
+    // Usuario simulado: un socket, un hilo virtual que lee y otro que envía
+    private final class UsuarioSimulado implements ProtocoloCliente.Oyente {
+        private final int indice;
+        private final String nombre;
+        private String host;
+        private int puerto;
+        private volatile Socket socket;
+        private BufferedReader entrada;
+        private volatile EscritorAgrupado salida; // null mientras se reconecta después de un aviso de reinicio
+        private volatile long escriturasAnteriores; // Escrituras de las conexiones cerradas por un reinicio
+        private volatile boolean cerrado;
+        private long escriturasRegistro; // Escrituras antes de empezar a enviar, que no cuentan en el resultado
+
+        UsuarioSimulado(int indice) {
+            this.indice = indice;
+            this.nombre = PREFIJO_USUARIO + indice;
+        }
+
+        void conectar(String host, int puerto) throws IOException {
+            this.host = host;
+            this.puerto = puerto;
+            abrir();
+            Thread.ofVirtual().name("lector-" + indice).start(this::leer);
+        }
+
+        // Método que abre el socket y se presenta con el nombre
+        private void abrir() throws IOException {
+            Socket nuevo = new Socket(host, puerto);
+            nuevo.setTcpNoDelay(true);
+            entrada = new BufferedReader(new InputStreamReader(nuevo.getInputStream(), StandardCharsets.UTF_8));
+            EscritorAgrupado escritor = new EscritorAgrupado(nuevo.getOutputStream(), configuracion.getCoalescenciaMs(), UMBRAL_COALESCENCIA);
+            escritor.enviar(nombre);
+            socket = nuevo;
+            salida = escritor;
+        }
+
+        // Método que lee hasta que se cierre la conexión; si el servidor avisa que se reinicia, se reconecta y sigue
+        private void leer() {
+            long espera;
+            do {
+                espera = -1;
+                try {
+                    String linea;
+                    while (espera < 0 && (linea = entrada.readLine()) != null) {
+                        if (ProtocoloCliente.esPing(linea)) {
+                            salida.enviar(ProtocoloCliente.lineaPong());
+                        } else if ((espera = ProtocoloCliente.esperaReconectar(linea)) < 0) {
+                            ProtocoloCliente.procesar(linea, this);
+                        }
+                    }
+                } catch (IOException e) {
+                    // La conexión se cerró al terminar la corrida
+                }
+            } while (espera >= 0 && reconectar(espera));
+        }
+
+        // Función que cierra la conexión avisada, espera lo que pidió el servidor y vuelve a conectarse; si el nuevo
+        // servidor aún no escucha, reintenta con espera exponencial al azar. Devuelve false si la corrida terminó antes
+        private boolean reconectar(long esperaMs) {
+            EscritorAgrupado anterior = salida;
+            salida = null;
+            escriturasAnteriores += anterior.getEscrituras();
+            cerrarConexion(anterior, socket);
+            reconexiones.increment();
+            long pausa = esperaMs;
+            for (int intento = 1; !cerrado; intento++) {
+                try {
+                    Thread.sleep(pausa);
+                    abrir();
+                    if (cerrado) {
+                        cerrarConexion(salida, socket);
+                    }
+                    return !cerrado;
+                } catch (IOException e) {
+                    long tope = Math.min(ESPERA_MAXIMA_RECONEXION_MS, 50L << Math.min(intento, 6));
+                    pausa = ThreadLocalRandom.current().nextLong(tope / 2, tope + 1);
+                } catch (InterruptedException e) {
+                    return false;
+                }
+            }
+            return false;
+        }
+
+        // Escrituras al socket de todas las conexiones del usuario
+        long escrituras() {
+            EscritorAgrupado actual = salida;
+            return escriturasAnteriores + (actual != null ? actual.getEscrituras() : 0);
+        }
+
+        // Método que envía a intervalos fijos según la tasa; el primer envío se desplaza al azar para no sincronizar
+        // a todos los usuarios. Mientras se reconecta, los envíos que tocan se saltan
+        void enviarMensajes(long inicio, long fin) {
+            escriturasRegistro = escrituras();
+            ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+            long intervalo = (long) (TimeUnit.SECONDS.toNanos(1) / configuracion.getTasa());
+            long siguiente = inicio + aleatorio.nextLong(Math.max(1, intervalo));
+            while (siguiente < fin) {
+                long espera = siguiente - System.nanoTime();
+                if (espera > 0) {
+                    LockSupport.parkNanos(espera);
+                    continue;
+                }
+                siguiente += intervalo;
+                EscritorAgrupado actual = salida;
+                if (actual == null) {
+                    continue;
+                }
+                int destinatario = distribucion.siguiente(indice, aleatorio);
+                String texto = destinatario + ";" + System.nanoTime() + ";" + relleno;
+                try {
+                    actual.enviar(ProtocoloCliente.lineaPrivado(PREFIJO_USUARIO + destinatario, texto));
+                    enviados.increment();
+                } catch (IOException e) {
+                    if (actual == salida) {
+                        erroresConexion.increment();
+                        return;
+                    }
+                    // El lector cerró esta conexión para reconectarse
+                }
+            }
+        }
+
+        @Override
+        public void mensajePrivado(String remitente, String texto) {
+            long recibido = System.nanoTime();
+            if (remitente.equals(nombre)) {
+                return; // Eco de un mensaje propio
+            }
+            int primero = texto.indexOf(';');
+            int segundo = primero < 0 ? -1 : texto.indexOf(';', primero + 1);
+            if (segundo < 0) {
+                malEnrutados.increment();
+                return;
+            }
+            int destinatario = Integer.parseInt(texto, 0, primero, 10);
+            if (destinatario != indice) {
+                malEnrutados.increment();
+                return;
+            }
+            entregados.increment();
+            long latencia = recibido - Long.parseLong(texto, primero + 1, segundo, 10);
+            latencias.registrar(latencia);
+            if (porSegundo != null) {
+                long segundoRecibido = TimeUnit.NANOSECONDS.toSeconds(recibido - inicioEnvio);
+                porSegundo[(int) Math.min(segundoRecibido, porSegundo.length - 1)].registrar(latencia);
+            }
+        }
+
+        @Override
+        public void listaCompleta(List<String> clientes) {
+        }
+
+        @Override
+        public void entra(String cliente) {
+        }
+
+        @Override
+        public void sale(String cliente) {
+        }
+
+        void cerrar() {
+            cerrado = true;
+            cerrarConexion(salida, socket);
+        }
+
+        private static void cerrarConexion(EscritorAgrupado escritor, Socket socket) {
+            if (escritor != null) {
+                escritor.close();
+            }
+            try {
+                if (socket != null) {
+                    socket.close();
+                }
+            } catch (IOException e) {
+                // El socket ya estaba cerrado
+            }
+        }
+    }
+
+    // Reinicio del servidor local durante la corrida: duraciones en nanosegundos; recuperacionS es cuántos segundos,
+    // contando el del reinicio, pasaron hasta el primero con el p99 y las entregas de antes (-1 si no volvieron)
+    public record Reinicio(int segundo, long drenadoNanos, int sinCerrar, long listoNanos, long reconexiones,
+                           long p99EstableNanos, int recuperacionS, long[] p99PorSegundo) {
+    }
+
+    // Resultado de una corrida (reinicio es null si no hubo)
+    public record Resultado(ConfiguracionGenerador configuracion, long enviados, long entregados, long malEnrutados,
+                            long erroresConexion, double segundos, Histograma latencias, long escriturasUsuarios,
+                            long escriturasServidor, long encoladosServidor, Reinicio reinicio) {
+
+        public long perdidos() {
+            return Math.max(0, enviados - entregados - malEnrutados);
+        }
+
+        public void imprimir(PrintStream salida) {
+            salida.printf("Usuarios: %,d | tasa: %.2f msg/s por usuario | distribución: %s | duración: %.1f s%n",
+                    configuracion.getUsuarios(), configuracion.getTasa(), configuracion.getDistribucion(), segundos);
+            salida.printf("Enviados:      %,d (%,.0f msg/s)%n", enviados, enviados / segundos);
+            salida.printf("Entregados:    %,d (%,.0f msg/s)%n", entregados, entregados / segundos);
+            salida.printf("Perdidos:      %,d%n", perdidos());
+            salida.printf("Mal enrutados: %,d%n", malEnrutados);
+            if (erroresConexion > 0) {
+                salida.printf("Usuarios con errores de conexión: %,d%n", erroresConexion);
+            }
+            salida.printf("Latencia de entrega (ms): media %.3f | p50 %.3f | p90 %.3f | p99 %.3f | p99.9 %.3f | máx %.3f%n",
+                    latencias.media() / 1e6, latencias.percentil(50) / 1e6, latencias.percentil(90) / 1e6,
+                    latencias.percentil(99) / 1e6, latencias.percentil(99.9) / 1e6, latencias.maximo() / 1e6);
+            salida.printf("Escrituras de los usuarios: %,d (%.3f por mensaje enviado)%n", escriturasUsuarios,
+                    escriturasUsuarios / (double) Math.max(1, enviados));
+            if (escriturasServidor >= 0) {
+                salida.printf("Escrituras del servidor:    %,d (%.3f por mensaje encolado)%n", escriturasServidor,
+                        escriturasServidor / (double) Math.max(1, encoladosServidor));
+            }
+            if (reinicio != null) {
+                salida.printf("Reinicio en el segundo %d: drenado en %.1f ms (%d conexiones sin cerrar), nuevo servidor listo en %.1f ms, %,d reconexiones%n",
+                        reinicio.segundo(), reinicio.drenadoNanos() / 1e6, reinicio.sinCerrar(), reinicio.listoNanos() / 1e6,
+                        reinicio.reconexiones());
+                if (reinicio.recuperacionS() >= 0) {
+                    salida.printf("p99 estable %.3f ms, de vuelta en %d s%n", reinicio.p99EstableNanos() / 1e6, reinicio.recuperacionS());
+                } else {
+                    salida.printf("p99 estable %.3f ms, no volvió antes del fin del envío%n", reinicio.p99EstableNanos() / 1e6);
+                }
+                StringBuilder p99 = new StringBuilder("p99 por segundo (ms):");
+                for (long valor : reinicio.p99PorSegundo()) {
+                    p99.append(String.format(" %.1f", valor / 1e6));
+                }
+                salida.println(p99);
+            }
+        }
+    }
+}
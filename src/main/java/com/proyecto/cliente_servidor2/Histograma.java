@@ -0,0 +1,105 @@
+// Nombre del Programa: Histograma de Latencias
+// Descripción: Histograma concurrente con cubetas logarítmico-lineales, al estilo de HdrHistogram: cada potencia de dos
+// se divide en 64 cubetas iguales, así que cualquier valor se guarda con un error relativo menor al 1,6 % y el
+// histograma ocupa un tamaño fijo (unos 30 KB) sin importar cuántos valores se registren. Registrar un valor es un
+// solo incremento atómico, por lo que miles de hilos pueden registrar a la vez sin candados.
+// Con varias franjas, cada hilo incrementa las cubetas de su propia franja (como las celdas de un LongAdder), para que los
+// hilos que registran valores parecidos no compitan por la misma línea de caché; al leer se suman todas las franjas.
+// Ejemplo: Los valores 1.000.000 y 1.010.000 ns caen en la misma cubeta; percentil(99) devuelve el límite superior de
+// la cubeta en la que está el 99 % de los valores.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histograma {
+    private static final int BITS_SUBCUBETA = 7; // 128 cubetas para los valores pequeños, luego 64 por potencia de dos
+    private static final int SUBCUBETAS = 1 << BITS_SUBCUBETA;
+    private static final int MITAD = SUBCUBETAS / 2;
+    private static final int CUBETAS = SUBCUBETAS + (Long.SIZE - BITS_SUBCUBETA) * MITAD;
+
+    private final AtomicLongArray cuentas; // Cubetas de todas las franjas, una franja detrás de otra
+    private final int mascaraFranjas;
+    private final LongAdder total = new LongAdder();
+    private final LongAdder suma = new LongAdder();
+    private final LongAccumulator maximo = new LongAccumulator(Math::max, 0);
+
+    public Histograma() {
+        this(1);
+    }
+
+    // Histograma repartido en franjas (se redondea hacia abajo a una potencia de dos); cada franja ocupa unos 30 KB
+    public Histograma(int franjas) {
+        this.mascaraFranjas = Integer.highestOneBit(Math.max(1, franjas)) - 1;
+        this.cuentas = new AtomicLongArray(CUBETAS * (mascaraFranjas + 1));
+    }
+
+    // Método que registra un valor (los negativos se cuentan como 0)
+    public void registrar(long valor) {
+        valor = Math.max(0, valor);
+        int franja = (int) (Thread.currentThread().threadId() & mascaraFranjas);
+        cuentas.incrementAndGet(franja * CUBETAS + indice(valor));
+        total.increment();
+        suma.add(valor);
+        maximo.accumulate(valor);
+    }
+
+    public long total() {
+        return total.sum();
+    }
+
+    public long maximo() {
+        return maximo.get();
+    }
+
+    public long suma() {
+        return suma.sum();
+    }
+
+    public double media() {
+        long cantidad = total.sum();
+        return cantidad == 0 ? 0 : (double) suma.sum() / cantidad;
+    }
+
+    // Función que devuelve el valor por debajo del cual queda el porcentaje indicado de los valores (0 a 100)
+    public long percentil(double porcentaje) {
+        long cantidad = total.sum();
+        if (cantidad == 0) {
+            return 0;
+        }
+        long objetivo = Math.max(1, (long) Math.ceil(cantidad * porcentaje / 100.0));
+        long acumulado = 0;
+        for (int i = 0; i < CUBETAS; i++) {
+            for (int franja = 0; franja <= mascaraFranjas; franja++) {
+                acumulado += cuentas.get(franja * CUBETAS + i);
+            }
+            if (acumulado >= objetivo) {
+                return Math.min(limiteSuperior(i), maximo());
+            }
+        }
+        return maximo();
+    }
+
+    // Función que calcula la cubeta de un valor: los menores a 128 tienen cubeta propia; los demás se agrupan según su
+    // potencia de dos (exponente) y los 6 bits que siguen al bit más alto
+    static int indice(long valor) {
+        int exponente = Long.SIZE - Long.numberOfLeadingZeros(valor) - BITS_SUBCUBETA;
+        if (exponente <= 0) {
+            return (int) valor;
+        }
+        int subcubeta = (int) (valor >>> exponente); // Entre 64 y 127
+        return SUBCUBETAS + (exponente - 1) * MITAD + (subcubeta - MITAD);
+    }
+
+    // Función que devuelve el mayor valor que cae en la cubeta
+    static long limiteSuperior(int indice) {
+        if (indice < SUBCUBETAS) {
+            return indice;
+        }
+        int exponente = (indice - SUBCUBETAS) / MITAD + 1;
+        long subcubeta = (indice - SUBCUBETAS) % MITAD + MITAD;
+        return ((subcubeta + 1) << exponente) - 1;
+    }
+}
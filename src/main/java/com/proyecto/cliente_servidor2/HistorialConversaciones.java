@@ -0,0 +1,366 @@
+// Nombre del Programa: Historial Reciente de Conversaciones
+// Descripción: Guarda en memoria los últimos mensajes de cada conversación privada (el par de clientes, sin importar
+// quién escribe) para que una ventana de chat recién abierta muestre el contexto sin leer nada del disco.
+// Cada conversación es un anillo de bytes: al llenarse se descartan sus mensajes más antiguos. El total de bytes de todos
+// los anillos está acotado; al superarlo se desaloja la conversación usada hace más tiempo (LRU).
+// Las conversaciones se buscan por el par de identificadores (TablaIds) en un mapa de direccionamiento abierto y la lista
+// LRU está enlazada dentro de las propias conversaciones, así que anotar un mensaje en una conversación que ya existe no
+// reserva memoria.
+// Las conversaciones se reparten en franjas según el par, cada una con su propio mapa, su lista LRU, su parte del total de
+// bytes y su candado: los hilos que enrutan mensajes de conversaciones distintas casi nunca compiten. Hay tantas franjas
+// (hasta 64) como permita el total sin que a cada una le quepan menos de 8 conversaciones del tamaño máximo, así que
+// con poca memoria hay una sola y el desalojo es el LRU exacto; con varias, es LRU dentro de cada franja.
+// Protocolo: el cliente pide "Historial:otro:N" (los N más recientes) o "Historial:otro:N:cursor" (los N anteriores al
+// cursor) y recibe una línea "Historial:otro:secuencia:remitente:texto" por mensaje, del más antiguo al más nuevo, y al
+// final "FinHistorial:otro:cursor", donde cursor sirve para pedir la página anterior (0 si no quedan más).
+// Ejemplo: "Historial:luis:20" -> hasta 20 líneas "Historial:luis:41:ana:hola" ... y "FinHistorial:luis:41".
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+class HistorialConversaciones {
+    static final String PREFIJO_PETICION = "Historial:";
+    static final String PREFIJO_FIN = "FinHistorial:";
+
+    private static final int CAPACIDAD_INICIAL = 1024; // Bytes del anillo de una conversación nueva
+    private static final int SOBRECARGA = 12; // Por mensaje: largo y remitente al inicio, largo al final
+    private static final int MAXIMO_FRANJAS = 64;
+    private static final int CONVERSACIONES_POR_FRANJA = 8; // Conversaciones del tamaño máximo que caben en una franja
+
+    private final Franja[] franjas;
+    private final int desplazamientoFranja; // Bits altos del hash del par que eligen la franja
+
+    // Mensaje leído del historial
+    record Entrada(long secuencia, int idRemitente, byte[] texto) {
+    }
+
+    // Página de mensajes, del más antiguo al más nuevo; cursorAnterior es 0 si no hay mensajes más antiguos
+    record Pagina(List<Entrada> entradas, long cursorAnterior) {
+    }
+
+    private static final class Conversacion {
+        private final long clave;
+        private byte[] anillo;
+        private int inicio; // Posición del mensaje más antiguo
+        private int usados; // Bytes ocupados en el anillo
+        private long primeraSecuencia = 1; // Secuencia del mensaje más antiguo que queda
+        private long siguienteSecuencia = 1; // Secuencia que tendrá el próximo mensaje
+        private Conversacion anterior;
+        private Conversacion siguiente;
+
+        Conversacion(long clave, int capacidad) {
+            this.clave = clave;
+            this.anillo = new byte[capacidad];
+        }
+    }
+
+    HistorialConversaciones(long maximoBytes, int maximoPorConversacion) {
+        long conversaciones = maximoBytes / ((long) Math.max(1, maximoPorConversacion) * CONVERSACIONES_POR_FRANJA);
+        int cantidad = (int) Long.highestOneBit(Math.max(1, Math.min(MAXIMO_FRANJAS, conversaciones)));
+        this.franjas = new Franja[cantidad];
+        for (int i = 0; i < cantidad; i++) {
+            franjas[i] = new Franja(maximoBytes / cantidad, maximoPorConversacion);
+        }
+        this.desplazamientoFranja = Long.SIZE - Integer.numberOfTrailingZeros(cantidad);
+    }
+
+    // Método que anota un mensaje en la conversación entre remitente y destinatario
+    void agregar(int idRemitente, int idDestinatario, byte[] mensaje, int desde, int largo) {
+        long clave = clave(idRemitente, idDestinatario);
+        franja(clave).agregar(clave, idRemitente, mensaje, desde, largo);
+    }
+
+    // Función que devuelve hasta "cantidad" mensajes de la conversación anteriores al cursor (0: los más recientes)
+    Pagina leer(int idCliente, int idOtro, int cantidad, long antesDe) {
+        long clave = clave(idCliente, idOtro);
+        return franja(clave).leer(clave, cantidad, antesDe);
+    }
+
+    // Método que borra las conversaciones en las que participa alguno de los identificadores: TablaIds los reclamó y
+    // su próximo dueño no debe ver una conversación ajena
+    void olvidar(BitSet ids) {
+        for (Franja franja : franjas) {
+            franja.olvidar(ids);
+        }
+    }
+
+    long bytesUsados() {
+        long total = 0;
+        for (Franja franja : franjas) {
+            total += franja.bytesUsados();
+        }
+        return total;
+    }
+
+    // La conversación de a con b es la misma que la de b con a
+    private static long clave(int a, int b) {
+        return ((long) Math.min(a, b) << 32) | (Math.max(a, b) & 0xFFFFFFFFL);
+    }
+
+    // Función que elige la franja con los bits más altos del hash; el mapa de cada franja usa los de la mitad, así que
+    // las claves de una misma franja no se amontonan en su mapa (con una sola franja el desplazamiento es 64 y da 0)
+    private Franja franja(long clave) {
+        long h = clave * 0x9E3779B97F4A7C15L;
+        return franjas[(int) (h >>> desplazamientoFranja) & (franjas.length - 1)];
+    }
+
+    // Parte de las conversaciones con su propio mapa, lista LRU y presupuesto de bytes; se protege con su propio candado
+    private static final class Franja {
+        private final long maximoBytes; // Suma máxima del tamaño de los anillos de la franja
+        private final int maximoPorConversacion; // Tamaño máximo del anillo de una conversación
+        private long bytesUsados;
+
+        // Mapa clave del par -> conversación, con direccionamiento abierto y sondeo lineal
+        private long[] claves = new long[64];
+        private Conversacion[] valores = new Conversacion[64];
+        private int cantidad;
+
+        // Lista LRU: de la usada hace más tiempo a la más reciente
+        private Conversacion masAntigua;
+        private Conversacion masReciente;
+
+        Franja(long maximoBytes, int maximoPorConversacion) {
+            this.maximoBytes = maximoBytes;
+            this.maximoPorConversacion = maximoPorConversacion;
+        }
+
+        synchronized void agregar(long clave, int idRemitente, byte[] mensaje, int desde, int largo) {
+            int necesario = SOBRECARGA + largo;
+            if (necesario > maximoPorConversacion || necesario > maximoBytes) {
+                return;
+            }
+            Conversacion conversacion = buscar(clave);
+            if (conversacion == null) {
+                conversacion = new Conversacion(clave, Math.min(maximoPorConversacion,
+                        Math.max(CAPACIDAD_INICIAL, Integer.highestOneBit(necesario - 1) << 1)));
+                insertar(conversacion);
+                bytesUsados += conversacion.anillo.length;
+                Metricas.HISTORIAL_BYTES.add(conversacion.anillo.length);
+            } else {
+                quitarDeLista(conversacion);
+            }
+            agregarAlFinal(conversacion);
+
+            // Agrandar el anillo mientras se pueda; cuando ya no, descartar los mensajes más antiguos
+            while (conversacion.anillo.length - conversacion.usados < necesario && conversacion.anillo.length < maximoPorConversacion) {
+                agrandar(conversacion);
+            }
+            while (conversacion.anillo.length - conversacion.usados < necesario) {
+                descartarMasAntiguo(conversacion);
+            }
+            int posicion = (conversacion.inicio + conversacion.usados) % conversacion.anillo.length;
+            ponerEntero(conversacion, posicion, largo);
+            ponerEntero(conversacion, posicion + 4, idRemitente);
+            poner(conversacion, posicion + 8, mensaje, desde, largo);
+            ponerEntero(conversacion, posicion + 8 + largo, largo);
+            conversacion.usados += necesario;
+            conversacion.siguienteSecuencia++;
+
+            // Desalojar conversaciones completas, de la usada hace más tiempo en adelante
+            while (bytesUsados > maximoBytes && masAntigua != conversacion) {
+                desalojar(masAntigua);
+            }
+        }
+
+        synchronized Pagina leer(long clave, int cantidad, long antesDe) {
+            Conversacion conversacion = buscar(clave);
+            if (conversacion == null || cantidad <= 0) {
+                return new Pagina(List.of(), 0);
+            }
+            quitarDeLista(conversacion);
+            agregarAlFinal(conversacion);
+            if (antesDe <= 0 || antesDe > conversacion.siguienteSecuencia) {
+                antesDe = conversacion.siguienteSecuencia;
+            }
+            List<Entrada> entradas = new ArrayList<>(Math.min(cantidad, 64));
+            int capacidad = conversacion.anillo.length;
+            int fin = conversacion.inicio + conversacion.usados; // Fin del mensaje más nuevo (sin aplicar el módulo)
+            long secuencia = conversacion.siguienteSecuencia - 1;
+            while (secuencia >= conversacion.primeraSecuencia && entradas.size() < cantidad) {
+                int largo = leerEntero(conversacion, fin - 4);
+                int inicioEntrada = fin - SOBRECARGA - largo;
+                if (secuencia < antesDe) {
+                    byte[] texto = new byte[largo];
+                    for (int i = 0; i < largo; i++) {
+                        texto[i] = conversacion.anillo[Math.floorMod(inicioEntrada + 8 + i, capacidad)];
+                    }
+                    entradas.add(new Entrada(secuencia, leerEntero(conversacion, inicioEntrada + 4), texto));
+                }
+                fin = inicioEntrada;
+                secuencia--;
+            }
+            Collections.reverse(entradas);
+            long cursor = entradas.isEmpty() || entradas.get(0).secuencia() <= conversacion.primeraSecuencia
+                    ? 0 : entradas.get(0).secuencia();
+            return new Pagina(entradas, cursor);
+        }
+
+        synchronized void olvidar(BitSet ids) {
+            Conversacion conversacion = masAntigua;
+            while (conversacion != null) {
+                Conversacion siguiente = conversacion.siguiente;
+                if (ids.get((int) (conversacion.clave >>> 32)) || ids.get((int) conversacion.clave)) {
+                    quitar(conversacion);
+                }
+                conversacion = siguiente;
+            }
+        }
+
+        synchronized long bytesUsados() {
+            return bytesUsados;
+        }
+
+        private void agrandar(Conversacion conversacion) {
+            byte[] anterior = conversacion.anillo;
+            byte[] mayor = new byte[Math.min(maximoPorConversacion, anterior.length * 2)];
+            // Copiar los mensajes en orden, empezando en la posición 0
+            for (int i = 0; i < conversacion.usados; i++) {
+                mayor[i] = anterior[(conversacion.inicio + i) % anterior.length];
+            }
+            conversacion.anillo = mayor;
+            conversacion.inicio = 0;
+            bytesUsados += mayor.length - anterior.length;
+            Metricas.HISTORIAL_BYTES.add(mayor.length - anterior.length);
+        }
+
+        private void descartarMasAntiguo(Conversacion conversacion) {
+            int total = SOBRECARGA + leerEntero(conversacion, conversacion.inicio);
+            conversacion.inicio = (conversacion.inicio + total) % conversacion.anillo.length;
+            conversacion.usados -= total;
+            conversacion.primeraSecuencia++;
+        }
+
+        private void desalojar(Conversacion conversacion) {
+            quitar(conversacion);
+            Metricas.HISTORIAL_DESALOJOS.increment();
+        }
+
+        private void quitar(Conversacion conversacion) {
+            quitarDeLista(conversacion);
+            eliminar(conversacion.clave);
+            bytesUsados -= conversacion.anillo.length;
+            Metricas.HISTORIAL_BYTES.add(-conversacion.anillo.length);
+        }
+
+        // Operaciones sobre el anillo; las posiciones se reducen al tamaño del anillo (también las negativas)
+        private static void poner(Conversacion conversacion, int posicion, byte[] origen, int desde, int largo) {
+            int capacidad = conversacion.anillo.length;
+            int inicio = Math.floorMod(posicion, capacidad);
+            int primeraParte = Math.min(largo, capacidad - inicio);
+            System.arraycopy(origen, desde, conversacion.anillo, inicio, primeraParte);
+            System.arraycopy(origen, desde + primeraParte, conversacion.anillo, 0, largo - primeraParte);
+        }
+
+        private static void ponerEntero(Conversacion conversacion, int posicion, int valor) {
+            byte[] anillo = conversacion.anillo;
+            for (int i = 0; i < 4; i++) {
+                anillo[Math.floorMod(posicion + i, anillo.length)] = (byte) (valor >>> (24 - 8 * i));
+            }
+        }
+
+        private static int leerEntero(Conversacion conversacion, int posicion) {
+            byte[] anillo = conversacion.anillo;
+            int valor = 0;
+            for (int i = 0; i < 4; i++) {
+                valor = (valor << 8) | (anillo[Math.floorMod(posicion + i, anillo.length)] & 0xFF);
+            }
+            return valor;
+        }
+
+        // Lista LRU
+        private void quitarDeLista(Conversacion conversacion) {
+            if (conversacion.anterior != null) {
+                conversacion.anterior.siguiente = conversacion.siguiente;
+            } else {
+                masAntigua = conversacion.siguiente;
+            }
+            if (conversacion.siguiente != null) {
+                conversacion.siguiente.anterior = conversacion.anterior;
+            } else {
+                masReciente = conversacion.anterior;
+            }
+            conversacion.anterior = null;
+            conversacion.siguiente = null;
+        }
+
+        private void agregarAlFinal(Conversacion conversacion) {
+            conversacion.anterior = masReciente;
+            if (masReciente != null) {
+                masReciente.siguiente = conversacion;
+            } else {
+                masAntigua = conversacion;
+            }
+            masReciente = conversacion;
+        }
+
+        // Mapa de direccionamiento abierto
+        private static int posicionInicial(long clave, int capacidad) {
+            long h = clave * 0x9E3779B97F4A7C15L;
+            return (int) (h >>> 32) & (capacidad - 1);
+        }
+
+        private Conversacion buscar(long clave) {
+            int mascara = claves.length - 1;
+            for (int i = posicionInicial(clave, claves.length); valores[i] != null; i = (i + 1) & mascara) {
+                if (claves[i] == clave) {
+                    return valores[i];
+                }
+            }
+            return null;
+        }
+
+        private void insertar(Conversacion conversacion) {
+            if ((cantidad + 1) * 2 > claves.length) {
+                long[] clavesAnteriores = claves;
+                Conversacion[] valoresAnteriores = valores;
+                claves = new long[clavesAnteriores.length * 2];
+                valores = new Conversacion[valoresAnteriores.length * 2];
+                for (Conversacion valor : valoresAnteriores) {
+                    if (valor != null) {
+                        colocar(valor);
+                    }
+                }
+            }
+            colocar(conversacion);
+            cantidad++;
+        }
+
+        private void colocar(Conversacion conversacion) {
+            int mascara = claves.length - 1;
+            int i = posicionInicial(conversacion.clave, claves.length);
+            while (valores[i] != null) {
+                i = (i + 1) & mascara;
+            }
+            claves[i] = conversacion.clave;
+            valores[i] = conversacion;
+        }
+
+        // Borrado con desplazamiento hacia atrás, para no dejar huecos que corten las cadenas de sondeo
+        private void eliminar(long clave) {
+            int mascara = claves.length - 1;
+            int i = posicionInicial(clave, claves.length);
+            while (valores[i] != null && claves[i] != clave) {
+                i = (i + 1) & mascara;
+            }
+            if (valores[i] == null) {
+                return;
+            }
+            valores[i] = null;
+            cantidad--;
+            for (int j = (i + 1) & mascara; valores[j] != null; j = (j + 1) & mascara) {
+                int deseada = posicionInicial(claves[j], claves.length);
+                // Mover la entrada j al hueco i si su posición deseada no está entre i (excluida) y j (incluida)
+                if (((j - deseada) & mascara) >= ((j - i) & mascara)) {
+                    claves[i] = claves[j];
+                    valores[i] = valores[j];
+                    valores[j] = null;
+                    i = j;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,98 @@
+// Nombre del Programa: Latidos y Conexiones Inactivas
+// Descripción: Detecta las conexiones medio abiertas (el cliente desapareció sin cerrar el socket, por ejemplo al
+// perder la red o apagarse) que de otro modo ocuparían su lugar en el registro, su cola y su hilo hasta que el sistema
+// operativo reporte un error, lo que puede tardar horas. Cada conexión anota el tic de la rueda en que recibió algo.
+// - Tras servidor.latido.intervaloMs sin recibir nada, el servidor le envía "Ping" (y otro en cada intervalo). El
+//   cliente responde "Pong"; cualquier línea cuenta como actividad, así que un cliente que conversa nunca recibe pings.
+// - Tras servidor.latido.inactividadMs sin recibir nada, la conexión se cierra como cualquier otra desconexión (si el
+//   cliente tenía sesión, la baja llega al vencer la gracia). Una conexión que nunca envió su nombre no recibe pings y
+//   se cierra igual.
+// Cada conexión tiene una sola tarea en la RuedaTemporizadores, que vence a la hora del siguiente ping o del cierre y
+// se vuelve a programar; recibir datos no toca la rueda, solo anota el tic.
+// Ejemplo: con intervalo de 30 s e inactividad de 90 s, un cliente medio abierto recibe pings a los 30 s y a los 60 s
+// (que nunca responde) y su conexión se cierra a los 90 s.
+// Si un cliente envía "Ping", el servidor le responde "Pong", para que también pueda medir la conexión.
+
+package com.proyecto.cliente_servidor2;
+
+class Latidos {
+    static final String LINEA_PING = "Ping";
+    static final String LINEA_PONG = "Pong";
+    static final Carga PING = Carga.linea(LINEA_PING); // Se codifica una sola vez para todas las conexiones
+    static final Carga PONG = Carga.linea(LINEA_PONG);
+
+    private final RuedaTemporizadores rueda;
+    private final long intervalo; // Tics sin recibir nada tras los que se envía un ping (0: sin pings)
+    private final long inactividad; // Tics sin recibir nada tras los que se cierra la conexión (0: nunca)
+
+    Latidos(RuedaTemporizadores rueda, long intervaloMs, long inactividadMs) {
+        this.rueda = rueda;
+        this.intervalo = intervaloMs > 0 ? rueda.tics(intervaloMs) : 0;
+        this.inactividad = inactividadMs > 0 ? rueda.tics(inactividadMs) : 0;
+    }
+
+    // Método que empieza a vigilar una conexión recién aceptada
+    void vigilar(Conexion conexion) {
+        if (intervalo == 0 && inactividad == 0) {
+            return;
+        }
+        Vigilancia vigilancia = new Vigilancia(conexion);
+        conexion.setVigilancia(vigilancia);
+        conexion.anotarActividad(rueda.tic());
+        rueda.programar(vigilancia, siguienteRevision(0));
+    }
+
+    // Método que deja de vigilar una conexión cerrada, para que la rueda no la retenga
+    void olvidar(Conexion conexion) {
+        Vigilancia vigilancia = conexion.getVigilancia();
+        if (vigilancia != null) {
+            rueda.cancelar(vigilancia);
+        }
+    }
+
+    long tic() {
+        return rueda.tic();
+    }
+
+    // Función que devuelve en cuántos tics hay que volver a mirar una conexión que lleva "inactiva" tics sin recibir nada
+    private long siguienteRevision(long inactiva) {
+        long siguiente = Long.MAX_VALUE;
+        if (intervalo > 0) {
+            // El próximo múltiplo del intervalo: el primer ping o el siguiente
+            siguiente = intervalo - inactiva % intervalo;
+        }
+        if (inactividad > 0) {
+            siguiente = Math.min(siguiente, inactividad - inactiva);
+        }
+        return siguiente;
+    }
+
+    // Tarea de la rueda de una conexión: envía el ping o la cierra según cuánto lleva sin recibir nada
+    final class Vigilancia extends RuedaTemporizadores.Tarea {
+        private final Conexion conexion;
+
+        private Vigilancia(Conexion conexion) {
+            this.conexion = conexion;
+        }
+
+        @Override
+        void vencer() {
+            if (conexion.estaCerrada()) {
+                return;
+            }
+            long inactiva = rueda.tic() - conexion.getUltimaActividad();
+            if (inactividad > 0 && inactiva >= inactividad) {
+                Metricas.CONEXIONES_INACTIVAS.increment();
+                Bitacora.SERVIDOR.aviso("inactiva", conexion.getNombreCliente(),
+                        "sin recibir nada en " + inactiva * rueda.getTicNanos() / 1_000_000 + " ms");
+                conexion.cerrar();
+                return;
+            }
+            if (intervalo > 0 && inactiva >= intervalo && conexion.getNombreCliente() != null) {
+                Metricas.PINGS_ENVIADOS.increment();
+                conexion.encolar(PING, false);
+            }
+            rueda.programar(this, siguienteRevision(inactiva));
+        }
+    }
+}
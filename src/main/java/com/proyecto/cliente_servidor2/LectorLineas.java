@@ -0,0 +1,56 @@
+// Nombre del Programa: Lector de Líneas del Protocolo
+// Descripción: Reconstruye las líneas de texto del protocolo (terminadas en '\n') a partir de los bloques de bytes
+// que entrega cada motor de conexiones. Un bloque puede contener varias líneas o solo un fragmento de una;
+// los bytes pendientes se guardan hasta que llega el resto de la línea. La línea se entrega como bytes en un arreglo
+// que se reutiliza, y solo se convierte a String cuando quien la procesa lo necesita.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+class LectorLineas {
+    // Longitud máxima de una línea; evita que un cliente agote la memoria enviando bytes sin '\n'
+    static final int LONGITUD_MAXIMA = 64 * 1024;
+
+    private byte[] pendiente = new byte[128]; // Bytes de la línea que aún no se ha completado
+    private int longitud; // Cantidad de bytes válidos en pendiente
+    private boolean completa; // La línea en pendiente ya se entregó y se descarta en la siguiente llamada
+
+    // Función que consume bytes del buffer hasta completar una línea; devuelve su largo en bytes (sin el '\n')
+    // o -1 si faltan bytes. Los bytes de la línea quedan en bytes() hasta la siguiente llamada.
+    int siguienteLinea(ByteBuffer datos) throws IOException {
+        if (completa) {
+            longitud = 0;
+            completa = false;
+        }
+        while (datos.hasRemaining()) {
+            byte b = datos.get();
+            if (b == '\n') {
+                completa = true;
+                // Ignorar el '\r' final de los clientes que envían "\r\n"
+                return longitud > 0 && pendiente[longitud - 1] == '\r' ? longitud - 1 : longitud;
+            }
+            if (longitud == pendiente.length) {
+                if (longitud >= LONGITUD_MAXIMA) {
+                    throw new IOException("Línea demasiado larga");
+                }
+                pendiente = Arrays.copyOf(pendiente, Math.min(longitud * 2, LONGITUD_MAXIMA));
+            }
+            pendiente[longitud++] = b;
+        }
+        return -1;
+    }
+
+    // Función que devuelve el arreglo con los bytes de la última línea completa
+    byte[] bytes() {
+        return pendiente;
+    }
+
+    // Función que convierte a texto los primeros "largo" bytes de la última línea completa
+    String texto(int largo) {
+        return new String(pendiente, 0, largo, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+// Nombre del Programa: Lector de Tramas del Protocolo Binario
+// Descripción: Separa las tramas [largo][código][datos] de los bloques de bytes que entrega el motor. Si la trama
+// completa está dentro del bloque recibido, se procesa en su sitio sin copiar nada; si llega partida, se acumula en
+// un buffer propio de la conexión que se reutiliza para todas las tramas siguientes.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+class LectorTramas {
+    // Recibe cada trama: los datos están entre position() y limit() del buffer, que solo es válido durante la llamada
+    interface Manejador {
+        void trama(byte codigo, ByteBuffer datos) throws IOException;
+    }
+
+    private ByteBuffer acumulado = ByteBuffer.allocate(256); // Trama incompleta (en modo escritura)
+
+    // Función que procesa la siguiente trama completa del bloque; devuelve false si no hay una completa (los bytes de
+    // la trama partida se guardan para la siguiente llamada). Quien llama decide entre trama y trama si sigue leyendo.
+    boolean procesar(ByteBuffer datos, Manejador manejador) throws IOException {
+        if (acumulado.position() == 0 && datos.remaining() >= 4) {
+            int largo = validar(datos.getInt(datos.position()));
+            if (datos.remaining() >= 4 + largo) {
+                // La trama está completa en el bloque del motor: se procesa sin copiarla
+                int limite = datos.limit();
+                int inicio = datos.position() + 4;
+                int fin = inicio + largo;
+                byte codigo = datos.get(inicio);
+                datos.limit(fin).position(inicio + 1);
+                manejador.trama(codigo, datos);
+                datos.limit(limite).position(fin);
+                return true;
+            }
+        }
+        if (!acumular(datos)) {
+            return false;
+        }
+        acumulado.flip();
+        byte codigo = acumulado.get(4);
+        acumulado.position(5);
+        manejador.trama(codigo, acumulado);
+        acumulado.clear();
+        return true;
+    }
+
+    // Función que copia bytes de la trama en curso; devuelve true cuando la trama ya está completa
+    private boolean acumular(ByteBuffer datos) throws IOException {
+        if (acumulado.position() < 4) {
+            copiar(datos, 4 - acumulado.position());
+            if (acumulado.position() < 4) {
+                return false;
+            }
+        }
+        int largo = validar(acumulado.getInt(0));
+        if (acumulado.capacity() < 4 + largo) {
+            ByteBuffer mayor = ByteBuffer.allocate(4 + largo);
+            acumulado.flip();
+            mayor.put(acumulado);
+            acumulado = mayor;
+        }
+        copiar(datos, 4 + largo - acumulado.position());
+        return acumulado.position() == 4 + largo;
+    }
+
+    private void copiar(ByteBuffer datos, int faltan) {
+        int cantidad = Math.min(faltan, datos.remaining());
+        int limite = datos.limit();
+        datos.limit(datos.position() + cantidad);
+        acumulado.put(datos);
+        datos.limit(limite);
+    }
+
+    private static int validar(int largo) throws IOException {
+        if (largo < 1 || largo > ProtocoloBinario.LARGO_MAXIMO) {
+            throw new IOException("Trama con largo inválido: " + largo);
+        }
+        return largo;
+    }
+}
@@ -0,0 +1,55 @@
+// Nombre del Programa: Límite de Tasa con Ráfaga
+// Descripción: Cubeta de tokens de "ráfaga" tokens que se recarga a "tasa" tokens por segundo, guardada como un solo
+// número: el tiempo teórico de llegada (GCRA). Cada evento admitido adelanta ese tiempo un intervalo (1 / tasa); un
+// evento se rechaza si el tiempo teórico ya está más de (ráfaga - 1) intervalos por delante del reloj. Es equivalente
+// a contar tokens y la hora de la última recarga, pero con un solo long: la comprobación no crea objetos, y cuando el
+// estado es compartido entre hilos basta un compareAndSet.
+// Ejemplo: tasa 10 y ráfaga 20 admiten 20 mensajes seguidos y después uno cada 100 ms.
+// La configuración es inmutable; el estado (el tiempo teórico) lo guarda quien usa el límite.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+final class LimiteTasa {
+    private final long intervalo; // Nanosegundos entre tokens
+    private final long tolerancia; // Adelanto máximo del tiempo teórico sobre el reloj
+
+    LimiteTasa(int tasaPorSegundo, int rafaga) {
+        this.intervalo = 1_000_000_000L / Math.max(1, tasaPorSegundo);
+        this.tolerancia = (Math.max(1, rafaga) - 1) * intervalo;
+    }
+
+    // Función que crea el límite, o devuelve null si la tasa es 0 (sin límite)
+    static LimiteTasa crear(int tasaPorSegundo, int rafaga) {
+        return tasaPorSegundo > 0 ? new LimiteTasa(tasaPorSegundo, rafaga) : null;
+    }
+
+    // Función que indica si se admite un evento ahora con el tiempo teórico dado (las restas toleran el desborde de nanoTime)
+    boolean admite(long teorico, long ahora) {
+        return teorico - ahora <= tolerancia;
+    }
+
+    // Función que devuelve el tiempo teórico después de admitir un evento ahora
+    long siguiente(long teorico, long ahora) {
+        return (teorico - ahora > 0 ? teorico : ahora) + intervalo;
+    }
+
+    // Función que devuelve cuánto falta (en nanosegundos) para que se vuelva a admitir un evento
+    long espera(long teorico, long ahora) {
+        return Math.max(0, teorico - ahora - tolerancia);
+    }
+
+    // Función que admite un evento sobre un estado compartido entre hilos
+    boolean tomar(AtomicLong teorico, long ahora) {
+        while (true) {
+            long actual = teorico.get();
+            if (!admite(actual, ahora)) {
+                return false;
+            }
+            if (teorico.compareAndSet(actual, siguiente(actual, ahora))) {
+                return true;
+            }
+        }
+    }
+}
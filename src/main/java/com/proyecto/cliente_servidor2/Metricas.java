@@ -0,0 +1,175 @@
+// Nombre del Programa: Métricas del Servidor
+// Descripción: Contadores globales del servidor. Se usan LongAdder para que muchos hilos puedan incrementarlos a la vez
+// sin competir por la misma variable. exportar() devuelve los valores en el formato de texto de Prometheus.
+// Las latencias por etapa se miden en 1 de cada MUESTREO mensajes (dos lecturas del reloj por mensaje medido) y se
+// guardan en histogramas con una franja por núcleo, para que la instrumentación no se convierta en un punto de espera.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+final class Metricas {
+    // Se mide uno de cada MUESTREO mensajes de cada conexión (potencia de dos)
+    static final int MUESTREO = 16;
+    private static final int FRANJAS = Runtime.getRuntime().availableProcessors();
+
+    // Tráfico
+    static final LongAdder MENSAJES_ENRUTADOS = new LongAdder(); // Mensajes privados entregados, reenviados o guardados
+    static final LongAdder BYTES_RECIBIDOS = new LongAdder(); // Bytes leídos de los sockets de los clientes
+    static final LongAdder BYTES_ENVIADOS = new LongAdder(); // Bytes copiados a los buffers de escritura de los sockets
+
+    // Latencias en nanosegundos
+    static final Histograma RUTEO_ANALISIS = new Histograma(FRANJAS); // Desde la línea completa hasta encontrar al destinatario
+    static final Histograma RUTEO_ENTREGA = new Histograma(FRANJAS); // Historial y encolado en las colas de salida
+    static final Histograma ESPERA_COLA = new Histograma(FRANJAS); // Desde el encolado hasta que el escritor lo copia
+    static final Histograma DIFUSION_PRESENCIA = new Histograma(FRANJAS); // Envío de un delta de presencia a todos
+    static final Histograma DIFUSION_SALA = new Histograma(FRANJAS); // Reparto de un mensaje a todos los miembros de una sala
+
+    // Colas de salida por conexión
+    static final LongAdder MENSAJES_ENCOLADOS = new LongAdder(); // Mensajes aceptados en alguna cola de salida
+    static final LongAdder MENSAJES_DESCARTADOS = new LongAdder(); // Mensajes perdidos por colas llenas
+    static final LongAdder CLIENTES_LENTOS_DESCONECTADOS = new LongAdder(); // Conexiones cerradas por cola llena
+    static final LongAdder ESPERAS_CONTRAPRESION = new LongAdder(); // Veces que un remitente tuvo que esperar sitio
+    static final LongAdder PROFUNDIDAD_COLAS = new LongAdder(); // Mensajes pendientes sumando todas las colas
+    static final LongAccumulator PROFUNDIDAD_MAXIMA = new LongAccumulator(Math::max, 0); // Mayor profundidad vista en una cola
+    static final LongAdder LOTES_ESCRITOS = new LongAdder(); // Escrituras al socket (una por lote)
+
+    // Diario de mensajes para clientes desconectados
+    static final LongAdder DIARIO_GUARDADOS = new LongAdder(); // Mensajes guardados para un destinatario desconectado
+    static final LongAdder DIARIO_ENTREGADOS = new LongAdder(); // Mensajes guardados que se entregaron al conectarse
+    static final LongAdder DIARIO_ESCRITURAS = new LongAdder(); // Escrituras agrupadas al diario (una por lote)
+    static final LongAdder DIARIO_SEGMENTOS_ELIMINADOS = new LongAdder(); // Segmentos borrados por la compactación
+    static final LongAdder DIARIO_DESCARTADOS = new LongAdder(); // Mensajes o entregas perdidos con la cola del diario llena
+
+    // Historial reciente de conversaciones
+    static final LongAdder HISTORIAL_BYTES = new LongAdder(); // Bytes reservados por los anillos de las conversaciones
+    static final LongAdder HISTORIAL_DESALOJOS = new LongAdder(); // Conversaciones desalojadas por falta de espacio
+
+    // Identificadores de los nombres
+    static final LongAdder IDS_RECLAMADOS = new LongAdder(); // Números de nombres sin uso que se pueden volver a asignar
+
+    // Salas
+    static final LongAdder SALAS_PUBLICADOS = new LongAdder(); // Mensajes publicados en alguna sala
+    static final LongAdder SALAS_ENTREGAS = new LongAdder(); // Copias encoladas a los miembros (una por miembro y mensaje)
+
+    // Compresión de la salida (solo conexiones que la pidieron)
+    static final LongAdder COMPRESION_BYTES_ENTRADA = new LongAdder(); // Bytes que pasaron por deflate
+    static final LongAdder COMPRESION_BYTES_SALIDA = new LongAdder(); // Bytes resultantes, con la cabecera de cada bloque
+    static final Histograma COMPRESION = new Histograma(FRANJAS); // Tiempo de deflate de cada bloque
+
+    // Sesiones reanudables
+    static final LongAdder SESIONES_REANUDADAS = new LongAdder(); // Reconexiones que retomaron su sesión
+    static final LongAdder SESIONES_VENCIDAS = new LongAdder(); // Sesiones que nadie retomó durante la gracia
+    static final LongAdder MENSAJES_REENVIADOS = new LongAdder(); // Mensajes repetidos desde el anillo al reanudar
+
+    // Latidos
+    static final LongAdder PINGS_ENVIADOS = new LongAdder(); // Pings enviados a conexiones en silencio
+    static final LongAdder CONEXIONES_INACTIVAS = new LongAdder(); // Conexiones cerradas por no recibir nada a tiempo
+
+    // Control de admisión
+    static final LongAdder CONEXIONES_RECHAZADAS = new LongAdder(); // Sockets cerrados al aceptar por el límite global
+    static final LongAdder CONEXIONES_LIMITADAS_IP = new LongAdder(); // Sockets cerrados al aceptar por el límite de su IP
+    static final LongAdder MENSAJES_LIMITADOS = new LongAdder(); // Pausas de lectura por el límite de mensajes del usuario
+
+    // TLS (solo con servidor.tls.almacen)
+    static final LongAdder TLS_SALUDOS = new LongAdder(); // Saludos TLS terminados
+    static final LongAdder TLS_SALUDOS_COMPLETOS = new LongAdder(); // Saludos con certificado y firma (los demás se reanudaron)
+    static final Histograma TLS_SALUDO = new Histograma(FRANJAS); // Desde el primer byte del saludo hasta terminarlo
+    static final Histograma TLS_CIFRADO = new Histograma(FRANJAS); // Cifrado de cada lote
+    static final Histograma TLS_DESCIFRADO = new Histograma(FRANJAS); // Descifrado de cada registro recibido
+
+    // Bitácora
+    static final LongAdder BITACORA_DESCARTADOS = new LongAdder(); // Eventos perdidos porque el anillo de la bitácora estaba lleno
+
+    // Clúster de nodos
+    static final LongAdder CLUSTER_REENVIADOS = new LongAdder(); // Mensajes privados reenviados al nodo del destinatario
+    static final LongAdder CLUSTER_RECIBIDOS = new LongAdder(); // Mensajes privados recibidos de otro nodo
+
+    private Metricas() {
+    }
+
+    // Función que devuelve todas las métricas en formato de texto de Prometheus
+    static String exportar() {
+        StringBuilder texto = new StringBuilder();
+        contador(texto, "chat_mensajes_enrutados_total", "Mensajes privados entregados, reenviados o guardados", MENSAJES_ENRUTADOS.sum());
+        contador(texto, "chat_bytes_recibidos_total", "Bytes leidos de los clientes", BYTES_RECIBIDOS.sum());
+        contador(texto, "chat_bytes_enviados_total", "Bytes enviados a los clientes", BYTES_ENVIADOS.sum());
+        contador(texto, "chat_mensajes_encolados_total", "Mensajes aceptados en las colas de salida", MENSAJES_ENCOLADOS.sum());
+        contador(texto, "chat_mensajes_descartados_total", "Mensajes descartados por colas de salida llenas", MENSAJES_DESCARTADOS.sum());
+        contador(texto, "chat_clientes_lentos_desconectados_total", "Conexiones cerradas por cola de salida llena", CLIENTES_LENTOS_DESCONECTADOS.sum());
+        contador(texto, "chat_esperas_contrapresion_total", "Envios que esperaron sitio en una cola llena", ESPERAS_CONTRAPRESION.sum());
+        contador(texto, "chat_lotes_escritos_total", "Escrituras al socket, una por lote de mensajes", LOTES_ESCRITOS.sum());
+        contador(texto, "chat_diario_guardados_total", "Mensajes guardados para destinatarios desconectados", DIARIO_GUARDADOS.sum());
+        contador(texto, "chat_diario_entregados_total", "Mensajes guardados entregados al conectarse el destinatario", DIARIO_ENTREGADOS.sum());
+        contador(texto, "chat_diario_escrituras_total", "Escrituras agrupadas al diario de mensajes", DIARIO_ESCRITURAS.sum());
+        contador(texto, "chat_diario_segmentos_eliminados_total", "Segmentos del diario eliminados por la compactacion", DIARIO_SEGMENTOS_ELIMINADOS.sum());
+        contador(texto, "chat_diario_descartados_total", "Operaciones descartadas con la cola del diario llena", DIARIO_DESCARTADOS.sum());
+        contador(texto, "chat_historial_desalojos_total", "Conversaciones desalojadas del historial (LRU)", HISTORIAL_DESALOJOS.sum());
+        contador(texto, "chat_ids_reclamados_total", "Identificadores de nombres sin uso reclamados", IDS_RECLAMADOS.sum());
+        contador(texto, "chat_salas_publicados_total", "Mensajes publicados en salas", SALAS_PUBLICADOS.sum());
+        contador(texto, "chat_salas_entregas_total", "Mensajes de sala encolados a sus miembros", SALAS_ENTREGAS.sum());
+        contador(texto, "chat_cluster_reenviados_total", "Mensajes privados reenviados a otro nodo del cluster", CLUSTER_REENVIADOS.sum());
+        contador(texto, "chat_cluster_recibidos_total", "Mensajes privados recibidos de otro nodo del cluster", CLUSTER_RECIBIDOS.sum());
+        contador(texto, "chat_sesiones_reanudadas_total", "Reconexiones que retomaron su sesion sin avisar a los demas", SESIONES_REANUDADAS.sum());
+        contador(texto, "chat_sesiones_vencidas_total", "Sesiones que nadie retomo durante la gracia", SESIONES_VENCIDAS.sum());
+        contador(texto, "chat_mensajes_reenviados_total", "Mensajes repetidos a un cliente que reanudo su sesion", MENSAJES_REENVIADOS.sum());
+        contador(texto, "chat_pings_enviados_total", "Pings enviados a conexiones en silencio", PINGS_ENVIADOS.sum());
+        contador(texto, "chat_conexiones_inactivas_total", "Conexiones cerradas por inactividad (medio abiertas)", CONEXIONES_INACTIVAS.sum());
+        contador(texto, "chat_conexiones_rechazadas_total", "Conexiones rechazadas con el servidor lleno", CONEXIONES_RECHAZADAS.sum());
+        contador(texto, "chat_conexiones_limitadas_ip_total", "Conexiones rechazadas por el limite de su IP", CONEXIONES_LIMITADAS_IP.sum());
+        contador(texto, "chat_mensajes_limitados_total", "Pausas de lectura por el limite de mensajes del usuario", MENSAJES_LIMITADOS.sum());
+        contador(texto, "chat_tls_saludos_total", "Saludos TLS terminados", TLS_SALUDOS.sum());
+        contador(texto, "chat_tls_saludos_completos_total", "Saludos TLS completos; el resto se reanudo con un ticket", TLS_SALUDOS_COMPLETOS.sum());
+        contador(texto, "chat_bitacora_descartados_total", "Eventos de la bitacora descartados con el anillo lleno", BITACORA_DESCARTADOS.sum());
+        contador(texto, "chat_compresion_bytes_entrada_total", "Bytes sin comprimir que pasaron por deflate", COMPRESION_BYTES_ENTRADA.sum());
+        contador(texto, "chat_compresion_bytes_salida_total", "Bytes comprimidos enviados en su lugar", COMPRESION_BYTES_SALIDA.sum());
+        medidor(texto, "chat_historial_bytes", "Bytes reservados por el historial de conversaciones", HISTORIAL_BYTES.sum());
+        medidor(texto, "chat_profundidad_colas", "Mensajes pendientes en todas las colas de salida", PROFUNDIDAD_COLAS.sum());
+        medidor(texto, "chat_profundidad_maxima_cola", "Mayor profundidad observada en una cola de salida", PROFUNDIDAD_MAXIMA.get());
+        resumen(texto, "chat_ruteo_segundos", "Latencia de cada etapa del ruteo de un mensaje privado (muestreada)", "etapa",
+                new String[] {"analisis", "entrega", "espera_cola"}, RUTEO_ANALISIS, RUTEO_ENTREGA, ESPERA_COLA);
+        resumen(texto, "chat_difusion_segundos", "Duracion de un envio a muchos clientes", "tipo",
+                new String[] {"presencia", "sala"}, DIFUSION_PRESENCIA, DIFUSION_SALA);
+        resumen(texto, "chat_compresion_segundos", "Tiempo de deflate por bloque (la suma es el costo total)", "algoritmo",
+                new String[] {"deflate"}, COMPRESION);
+        resumen(texto, "chat_tls_segundos", "Duracion de los saludos TLS y del cifrado de cada lote o registro", "operacion",
+                new String[] {"saludo", "cifrado", "descifrado"}, TLS_SALUDO, TLS_CIFRADO, TLS_DESCIFRADO);
+        return texto.toString();
+    }
+
+    static void contador(StringBuilder texto, String nombre, String ayuda, long valor) {
+        serie(texto, nombre, ayuda, "counter", valor);
+    }
+
+    static void medidor(StringBuilder texto, String nombre, String ayuda, long valor) {
+        serie(texto, nombre, ayuda, "gauge", valor);
+    }
+
+    // Método que exporta histogramas en nanosegundos como un resumen de Prometheus en segundos, uno por etiqueta
+    static void resumen(StringBuilder texto, String nombre, String ayuda, String etiqueta, String[] valores,
+            Histograma... histogramas) {
+        texto.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        texto.append("# TYPE ").append(nombre).append(" summary\n");
+        for (int i = 0; i < histogramas.length; i++) {
+            String etiquetas = etiqueta + "=\"" + valores[i] + "\"";
+            for (double cuantil : new double[] {0.5, 0.9, 0.99, 0.999}) {
+                texto.append(nombre).append('{').append(etiquetas).append(",quantile=\"").append(cuantil).append("\"} ")
+                        .append(segundos(histogramas[i].percentil(cuantil * 100))).append('\n');
+            }
+            texto.append(nombre).append("_sum{").append(etiquetas).append("} ").append(segundos(histogramas[i].suma())).append('\n');
+            texto.append(nombre).append("_count{").append(etiquetas).append("} ").append(histogramas[i].total()).append('\n');
+        }
+    }
+
+    private static String segundos(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+
+    private static void serie(StringBuilder texto, String nombre, String ayuda, String tipo, long valor) {
+        texto.append("# HELP ").append(nombre).append(' ').append(ayuda).append('\n');
+        texto.append("# TYPE ").append(nombre).append(' ').append(tipo).append('\n');
+        texto.append(nombre).append(' ').append(valor).append('\n');
+    }
+}
@@ -0,0 +1,26 @@
+// Nombre del Programa: Motor de Conexiones del Servidor
+// Descripción: Interfaz común de los motores que aceptan sockets y mueven bytes entre la red y el protocolo del servidor.
+// Cada motor crea una Conexion por cliente y le entrega los bytes leídos; el protocolo de líneas (nombre, "Privado:...")
+// es el mismo sin importar el motor elegido.
+// Implementaciones:
+// - MotorNio: Bucle de eventos con Selector y N hilos reactor (sockets no bloqueantes).
+// - MotorHilosVirtuales: Un hilo virtual por conexión con E/S bloqueante.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.util.Collection;
+
+interface MotorConexiones {
+    // Abre el socket de escucha y empieza a aceptar clientes; devuelve el puerto real en el que escucha
+    int iniciar() throws IOException;
+
+    // Cierra el socket de escucha sin tocar las conexiones abiertas (primer paso del drenado)
+    void dejarDeAceptar();
+
+    // Conexiones abiertas en este momento; la vista es débilmente consistente, como la del RegistroClientes
+    Collection<? extends Conexion> conexiones();
+
+    // Deja de aceptar clientes y cierra todas las conexiones abiertas
+    void detener();
+}
@@ -0,0 +1,282 @@
+// Nombre del Programa: Motor de Conexiones con Hilos Virtuales
+// Descripción: Atiende cada cliente en su propio hilo virtual con E/S bloqueante, igual que el ClienteHandler original
+// pero sin reservar un hilo de plataforma por cliente. Un hilo virtual bloqueado en read() solo ocupa su pila en el heap,
+// por lo que miles de clientes ociosos cuestan poca memoria y ningún cambio de contexto del sistema operativo.
+// Cada conexión tiene además un hilo virtual escritor que vacía su cola de salida en lotes; con una ventana de
+// coalescencia, el escritor espera esa ventana después del primer mensaje para enviar los siguientes en la misma escritura.
+// Una conexión que pasa de su límite de mensajes deja de leerse durante la pausa que indica el ControlAdmision.
+// Con TLS, el lector descifra con el TransporteTls de la conexión y escribe él mismo el saludo; el escritor cifra cada
+// lote. Ambos escriben en el socket con el mismo candado, para que un registro del saludo no se cuele en otro.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+class MotorHilosVirtuales implements MotorConexiones {
+    // Tamaño del buffer de lectura de cada conexión; pequeño porque hay uno por cliente
+    private static final int TAMANO_LECTURA = 4 * 1024;
+
+    private final Servidor servidor;
+    private final int puerto;
+    private final Set<ConexionVirtual> conexiones = ConcurrentHashMap.newKeySet(); // Conexiones abiertas, para cerrarlas al detener
+
+    private ServerSocketChannel canalServidor;
+    private volatile boolean activo;
+
+    MotorHilosVirtuales(Servidor servidor, ConfiguracionServidor configuracion) {
+        this.servidor = servidor;
+        this.puerto = configuracion.getPuerto();
+    }
+
+    @Override
+    public int iniciar() throws IOException {
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(puerto), 1024);
+        activo = true;
+        Thread.ofPlatform().name("virtual-aceptador").start(this::aceptarClientes);
+        return ((InetSocketAddress) canalServidor.getLocalAddress()).getPort();
+    }
+
+    @Override
+    public void dejarDeAceptar() {
+        try {
+            canalServidor.close(); // El aceptador termina con ClosedChannelException
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("motor", "no se pudo cerrar el puerto del servidor", e);
+        }
+    }
+
+    @Override
+    public Collection<ConexionVirtual> conexiones() {
+        return Collections.unmodifiableSet(conexiones);
+    }
+
+    @Override
+    public void detener() {
+        activo = false;
+        dejarDeAceptar();
+        for (ConexionVirtual conexion : conexiones) {
+            conexion.cerrar();
+        }
+    }
+
+    // Bucle que acepta conexiones y crea un hilo virtual para cada una
+    private void aceptarClientes() {
+        while (activo) {
+            try {
+                SocketChannel canal = canalServidor.accept();
+                if (!servidor.admitir(canal)) {
+                    continue;
+                }
+                canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                Thread.ofVirtual().name("cliente-virtual").start(() -> atenderCliente(canal));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (activo) {
+                    Bitacora.SERVIDOR.error("motor", "error al aceptar un cliente", e);
+                }
+            }
+        }
+    }
+
+    // Función que lee del socket hasta que el cliente se desconecta
+    private void atenderCliente(SocketChannel canal) {
+        ConexionVirtual conexion = new ConexionVirtual(canal);
+        // El escritor arranca antes de publicar la conexión: los latidos o un cierre desde otro hilo ya lo encuentran
+        conexion.escritor.start();
+        conexiones.add(conexion);
+        Bitacora.SERVIDOR.info("conexion", null, conexion.getPar());
+        servidor.getLatidos().vigilar(conexion);
+        ByteBuffer lectura = ByteBuffer.allocate(TAMANO_LECTURA);
+        boolean saludoAvisado = false; // Ya se despertó al escritor que esperaba el fin del saludo TLS
+        try {
+            while (canal.read(lectura) >= 0) {
+                lectura.flip();
+                if (conexion.tls == null) {
+                    conexion.recibir(lectura);
+                } else if (!conexion.tls.descifrar(lectura, conexion.descifrado.clear(), conexion)) {
+                    break;
+                } else if (!saludoAvisado && conexion.tls.isSaludoTerminado()) {
+                    saludoAvisado = true;
+                    LockSupport.unpark(conexion.escritor);
+                }
+                lectura.clear();
+                while (conexion.esperarPausa()) {
+                    conexion.recibirRetenidos();
+                }
+            }
+        } catch (IOException e) {
+            // El cliente cerró la conexión de forma abrupta o envió una línea inválida
+        } catch (RuntimeException e) {
+            // Un mensaje mal formado cierra solo esta conexión, y queda registrado como en el motor NIO
+            Bitacora.SERVIDOR.registrar(Bitacora.Nivel.ERROR, "mensaje_invalido", conexion.getNombreCliente(),
+                    conexion.getPar(), -1, null, e);
+        } finally {
+            conexion.cerrar();
+        }
+    }
+
+    // Conexión atendida por un hilo virtual; otro hilo virtual escribe en el socket lo que llega a la cola de salida
+    private final class ConexionVirtual extends Conexion {
+        private final SocketChannel canal;
+        private final TransporteTls tls; // Cifrado de la conexión (null en texto plano)
+        private final ByteBuffer descifrado; // Texto plano de lo que lee el hilo lector (solo con TLS)
+        private final ReentrantLock escrituraTls = new ReentrantLock(); // Lector (saludo) y escritor escriben por turnos
+        private final Thread escritor; // Hilo virtual que vacía la cola de salida
+        private volatile boolean juntando; // El escritor espera a que se junten más mensajes
+        private long pausa; // Nanosegundos que el lector no lee por el límite de mensajes (solo el hilo lector)
+
+        ConexionVirtual(SocketChannel canal) {
+            super(servidor);
+            this.canal = canal;
+            ContextoTls contexto = servidor.getTls();
+            this.tls = contexto != null ? new TransporteTls(contexto.crearMotor(), this::enviarSaludo) : null;
+            this.descifrado = contexto != null ? ByteBuffer.allocate(PoolBuffers.TAMANO_REGISTRO_TLS) : null;
+            setPar(String.valueOf(canal.socket().getRemoteSocketAddress()));
+            this.escritor = Thread.ofVirtual().name("escritor-virtual").unstarted(this::escribirEnLotes);
+        }
+
+        @Override
+        protected void hayDatosParaEnviar() {
+            // El escritor está esperando en la cola y se despierta solo; solo hay que avisarle si está juntando mensajes
+            // y ya se llegó al umbral
+            if (juntando && !convieneEsperar()) {
+                LockSupport.unpark(escritor);
+            }
+        }
+
+        // Método del hilo lector: recuerda la pausa más larga pedida mientras procesaba lo leído
+        @Override
+        protected void pausarLectura(long nanos) {
+            pausa = Math.max(pausa, Math.max(1, nanos));
+        }
+
+        // Función que detiene al hilo lector durante la pausa pedida; mientras tanto el socket acumula lo que llegue.
+        // Devuelve true si hubo pausa (entonces hay bytes retenidos por procesar antes de volver a leer).
+        boolean esperarPausa() {
+            if (pausa == 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, pausa);
+            pausa = 0;
+            return true;
+        }
+
+        // Método que espera la ventana de coalescencia (o hasta llegar al umbral de mensajes) antes de escribir
+        private void juntarMensajes() {
+            if (!convieneEsperar()) {
+                return;
+            }
+            long limite = System.nanoTime() + getVentanaCoalescencia();
+            juntando = true;
+            long restante;
+            while (convieneEsperar() && !estaCerrada() && (restante = limite - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, restante);
+            }
+            juntando = false;
+        }
+
+        // Bucle del escritor: espera una carga y copia esa y las demás que haya a un buffer prestado, que escribe con una
+        // sola llamada; el buffer se devuelve en cuanto la cola queda vacía
+        void escribirEnLotes() {
+            try {
+                while (!estaCerrada()) {
+                    esperarSalida();
+                    esperarSaludo();
+                    juntarMensajes();
+                    ByteBuffer buffer = PoolBuffers.SALIDA.tomar();
+                    try {
+                        while (llenar(buffer)) {
+                            buffer.flip();
+                            if (tls != null) {
+                                escribirCifrado(buffer);
+                            } else {
+                                while (buffer.hasRemaining()) {
+                                    canal.write(buffer);
+                                }
+                            }
+                            buffer.clear();
+                            Metricas.LOTES_ESCRITOS.increment();
+                        }
+                    } finally {
+                        PoolBuffers.SALIDA.devolver(buffer);
+                    }
+                }
+            } catch (InterruptedException e) {
+                // La conexión se cerró mientras el escritor esperaba
+            } catch (IOException e) {
+                cerrar();
+            }
+        }
+
+        // Método del escritor que, con TLS, no cifra datos hasta que termine el saludo (como cargar() en el motor NIO);
+        // lo que se encole antes (un ping de los latidos) espera en la cola, y el lector lo despierta al terminar
+        private void esperarSaludo() throws InterruptedException {
+            while (tls != null && !tls.isSaludoTerminado()) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        }
+
+        // Método del escritor que cifra un lote y lo escribe entero
+        private void escribirCifrado(ByteBuffer plano) throws IOException {
+            ByteBuffer red = PoolBuffers.REGISTROS_TLS.tomar();
+            escrituraTls.lock();
+            try {
+                tls.cifrar(plano, red);
+                escribirTodo(red.flip());
+            } finally {
+                escrituraTls.unlock();
+                PoolBuffers.REGISTROS_TLS.devolver(red);
+            }
+        }
+
+        // Método del lector que escribe lo que pide el saludo TLS antes de seguir descifrando
+        private void enviarSaludo() throws IOException {
+            ByteBuffer red = PoolBuffers.REGISTROS_TLS.tomar();
+            escrituraTls.lock();
+            try {
+                while (tls.generarSaludo(red)) {
+                    escribirTodo(red.flip());
+                    red.clear();
+                }
+            } finally {
+                escrituraTls.unlock();
+                PoolBuffers.REGISTROS_TLS.devolver(red);
+            }
+        }
+
+        private void escribirTodo(ByteBuffer datos) throws IOException {
+            while (datos.hasRemaining()) {
+                canal.write(datos);
+            }
+        }
+
+        @Override
+        protected void cerrarTransporte() {
+            conexiones.remove(this);
+            servidor.conexionCerrada();
+            escritor.interrupt();
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // El socket ya estaba cerrado
+            }
+        }
+    }
+}
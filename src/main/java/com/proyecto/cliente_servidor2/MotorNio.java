@@ -0,0 +1,457 @@
+// Nombre del Programa: Motor de Conexiones NIO
+// Descripción: Atiende miles de clientes con pocos hilos usando sockets no bloqueantes (java.nio). Un hilo aceptador
+// recibe las conexiones nuevas y las reparte en turno rotativo entre N reactores; cada reactor tiene su propio Selector
+// y se encarga de leer y escribir en sus sockets. Las conexiones ociosas no ocupan ningún hilo.
+// Ejemplo: Con 8 núcleos hay 8 reactores; 10.000 clientes conectados quedan repartidos en unos 1.250 sockets por reactor.
+// Con una ventana de coalescencia, el reactor aplaza la escritura de la conexión hasta que vence la ventana: mientras
+// tanto los demás hilos solo encolan (sin despertar al Selector) y todo lo acumulado sale en una sola escritura.
+// Una conexión que pasa de su límite de mensajes deja de leerse (se le quita OP_READ) hasta que la rueda de
+// temporizadores avisa al reactor que terminó la pausa.
+// Con TLS, cada conexión tiene su TransporteTls: el reactor descifra lo leído con un buffer de texto plano propio y
+// cifra cada lote antes de escribirlo; el saludo avanza en el mismo hilo, sin bloquear, a medida que llegan los bytes.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class MotorNio implements MotorConexiones {
+    private final Servidor servidor;
+    private final int puerto;
+    private final Reactor[] reactores;
+    private final Set<ConexionNio> conexiones = ConcurrentHashMap.newKeySet(); // Conexiones abiertas, para cerrarlas al detener
+
+    private ServerSocketChannel canalServidor;
+    private volatile boolean activo;
+
+    MotorNio(Servidor servidor, ConfiguracionServidor configuracion) {
+        this.servidor = servidor;
+        this.puerto = configuracion.getPuerto();
+        this.reactores = new Reactor[configuracion.getReactores()];
+    }
+
+    @Override
+    public int iniciar() throws IOException {
+        canalServidor = ServerSocketChannel.open();
+        canalServidor.bind(new InetSocketAddress(puerto), 1024);
+        activo = true;
+
+        // Crear un hilo por reactor, cada uno con su propio Selector
+        for (int i = 0; i < reactores.length; i++) {
+            reactores[i] = new Reactor(Selector.open());
+            Thread hilo = new Thread(reactores[i], "nio-reactor-" + i);
+            reactores[i].hilo = hilo;
+            hilo.start();
+        }
+        new Thread(this::aceptarClientes, "nio-aceptador").start();
+        return ((InetSocketAddress) canalServidor.getLocalAddress()).getPort();
+    }
+
+    @Override
+    public void dejarDeAceptar() {
+        try {
+            canalServidor.close(); // El aceptador termina con ClosedChannelException
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("motor", "no se pudo cerrar el puerto del servidor", e);
+        }
+    }
+
+    @Override
+    public Collection<ConexionNio> conexiones() {
+        return Collections.unmodifiableSet(conexiones);
+    }
+
+    @Override
+    public void detener() {
+        activo = false;
+        dejarDeAceptar();
+        for (ConexionNio conexion : conexiones) {
+            conexion.cerrar();
+        }
+        for (Reactor reactor : reactores) {
+            if (reactor != null) {
+                reactor.selector.wakeup();
+            }
+        }
+    }
+
+    // Bucle del hilo aceptador: acepta conexiones y las reparte entre los reactores
+    private void aceptarClientes() {
+        int siguiente = 0;
+        while (activo) {
+            try {
+                SocketChannel canal = canalServidor.accept();
+                if (!servidor.admitir(canal)) {
+                    continue;
+                }
+                canal.configureBlocking(false);
+                canal.setOption(StandardSocketOptions.TCP_NODELAY, true);
+
+                reactores[siguiente].registrar(canal);
+                siguiente = (siguiente + 1) % reactores.length;
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (activo) {
+                    Bitacora.SERVIDOR.error("motor", "error al aceptar un cliente", e);
+                }
+            }
+        }
+    }
+
+    // Hilo con su propio Selector que lee y escribe en los sockets que tiene asignados
+    private final class Reactor implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> nuevos = new ConcurrentLinkedQueue<>(); // Sockets pendientes de registrar
+        private final Queue<ConexionNio> escriturasPendientes = new ConcurrentLinkedQueue<>(); // Conexiones con datos por enviar
+        private final Queue<ConexionNio> lecturasReanudadas = new ConcurrentLinkedQueue<>(); // Conexiones al final de su pausa
+        private final ByteBuffer lectura = ByteBuffer.allocateDirect(64 * 1024); // Buffer de lectura compartido por todo el reactor
+        private final ByteBuffer descifrado; // Texto plano de las conexiones TLS, compartido por todo el reactor (null sin TLS)
+        // Conexiones con la escritura aplazada por la ventana de coalescencia, en orden de vencimiento (la ventana es
+        // la misma para todas); solo las usa el hilo del reactor
+        private final ArrayDeque<ConexionNio> aplazadas = new ArrayDeque<>();
+        private Thread hilo;
+
+        Reactor(Selector selector) {
+            this.selector = selector;
+            this.descifrado = servidor.getTls() != null ? ByteBuffer.allocateDirect(PoolBuffers.TAMANO_REGISTRO_TLS) : null;
+        }
+
+        // Método llamado desde el aceptador para entregar un socket nuevo al reactor
+        void registrar(SocketChannel canal) {
+            nuevos.add(canal);
+            selector.wakeup();
+        }
+
+        // Método llamado desde otros hilos cuando una conexión de este reactor tiene datos por escribir
+        void solicitarEscritura(ConexionNio conexion) {
+            escriturasPendientes.add(conexion);
+            selector.wakeup();
+        }
+
+        // Método llamado desde la rueda de temporizadores cuando termina la pausa de lectura de una conexión
+        void reanudarLectura(ConexionNio conexion) {
+            lecturasReanudadas.add(conexion);
+            selector.wakeup();
+        }
+
+        boolean enHiloReactor() {
+            return Thread.currentThread() == hilo;
+        }
+
+        // Método que aplaza la escritura de la conexión hasta que venza su ventana de coalescencia. Si ya está aplazada no
+        // se vuelve a agregar ni se corre su vencimiento: la ventana cuenta desde el primer mensaje que espera.
+        void aplazar(ConexionNio conexion) {
+            if (conexion.aplazada) {
+                return;
+            }
+            conexion.aplazada = true;
+            conexion.vencimiento = System.nanoTime() + conexion.getVentanaCoalescencia();
+            aplazadas.add(conexion);
+        }
+
+        // Método que espera eventos de los sockets sin pasarse del vencimiento de la primera escritura aplazada
+        private void esperarEventos() throws IOException {
+            ConexionNio primera = aplazadas.peek();
+            if (primera == null) {
+                selector.select();
+                return;
+            }
+            long restante = primera.vencimiento - System.nanoTime();
+            if (restante <= 0) {
+                selector.selectNow();
+            } else {
+                selector.select(Math.max(1, (restante + 999_999) / 1_000_000));
+            }
+        }
+
+        // Método que escribe las conexiones cuya ventana de coalescencia ya venció
+        private void escribirAplazadas() {
+            long ahora = System.nanoTime();
+            ConexionNio conexion;
+            while ((conexion = aplazadas.peek()) != null && conexion.vencimiento - ahora <= 0) {
+                aplazadas.poll();
+                conexion.aplazada = false;
+                conexion.escribirPendiente();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (activo) {
+                try {
+                    esperarEventos();
+                    registrarNuevos();
+                    procesarLecturasReanudadas();
+                    procesarEscriturasPendientes();
+                    escribirAplazadas();
+
+                    Iterator<SelectionKey> claves = selector.selectedKeys().iterator();
+                    while (claves.hasNext()) {
+                        SelectionKey clave = claves.next();
+                        claves.remove();
+                        ConexionNio conexion = (ConexionNio) clave.attachment();
+                        if (!clave.isValid()) {
+                            conexion.cerrar();
+                            continue;
+                        }
+                        if (clave.isReadable()) {
+                            leer(conexion);
+                        }
+                        if (clave.isValid() && clave.isWritable()) {
+                            conexion.escribirPendiente();
+                        }
+                    }
+                } catch (IOException e) {
+                    Bitacora.SERVIDOR.error("motor", "error en el selector del reactor", e);
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                Bitacora.SERVIDOR.error("motor", "no se pudo cerrar el selector", e);
+            }
+        }
+
+        private void registrarNuevos() {
+            SocketChannel canal;
+            while ((canal = nuevos.poll()) != null) {
+                try {
+                    ConexionNio conexion = new ConexionNio(canal, this);
+                    conexion.clave = canal.register(selector, SelectionKey.OP_READ, conexion);
+                    conexiones.add(conexion);
+                    Bitacora.SERVIDOR.info("conexion", null, conexion.getPar());
+                    servidor.getLatidos().vigilar(conexion);
+                } catch (IOException e) {
+                    servidor.conexionCerrada();
+                    try {
+                        canal.close();
+                    } catch (IOException ignorada) {
+                        // El socket ya no se puede usar
+                    }
+                }
+            }
+        }
+
+        private void procesarLecturasReanudadas() {
+            ConexionNio conexion;
+            while ((conexion = lecturasReanudadas.poll()) != null) {
+                conexion.lecturaPausada = false;
+                if (!recibirRetenidos(conexion) || conexion.lecturaPausada) {
+                    continue; // Se cerró, o lo retenido volvió a pasar del límite y la lectura sigue en pausa
+                }
+                try {
+                    conexion.clave.interestOps(conexion.clave.interestOps() | SelectionKey.OP_READ);
+                } catch (CancelledKeyException e) {
+                    // La conexión se cerró durante la pausa
+                }
+            }
+        }
+
+        private void procesarEscriturasPendientes() {
+            ConexionNio conexion;
+            while ((conexion = escriturasPendientes.poll()) != null) {
+                if (conexion.convieneEsperar()) {
+                    aplazar(conexion); // escrituraSolicitada sigue activa: los nuevos mensajes no despiertan al Selector
+                } else {
+                    conexion.escribirPendiente();
+                }
+            }
+        }
+
+        private void leer(ConexionNio conexion) {
+            try {
+                lectura.clear();
+                int leidos = conexion.canal.read(lectura);
+                if (leidos < 0) {
+                    conexion.cerrar();
+                    return;
+                }
+                lectura.flip();
+                if (conexion.tls == null) {
+                    conexion.recibir(lectura);
+                } else if (!conexion.tls.descifrar(lectura, descifrado.clear(), conexion)) {
+                    conexion.cerrar();
+                }
+            } catch (IOException e) {
+                conexion.cerrar();
+            } catch (RuntimeException e) {
+                mensajeInvalido(conexion, e);
+            }
+        }
+
+        // Función que procesa lo que la conexión retuvo durante la pausa; devuelve false si la conexión quedó cerrada
+        private boolean recibirRetenidos(ConexionNio conexion) {
+            try {
+                conexion.recibirRetenidos();
+            } catch (IOException e) {
+                conexion.cerrar();
+            } catch (RuntimeException e) {
+                mensajeInvalido(conexion, e);
+            }
+            return !conexion.estaCerrada();
+        }
+
+        // Método que cierra la conexión que envió un mensaje mal formado; no debe detener el reactor ni al resto de sus
+        // clientes
+        private void mensajeInvalido(ConexionNio conexion, RuntimeException e) {
+            Bitacora.SERVIDOR.registrar(Bitacora.Nivel.ERROR, "mensaje_invalido", conexion.getNombreCliente(),
+                    conexion.getPar(), -1, null, e);
+            conexion.cerrar();
+        }
+    }
+
+    // Conexión atendida por un reactor; los bloques se encolan y los escribe siempre el hilo del reactor, por lotes
+    private final class ConexionNio extends Conexion {
+        private final SocketChannel canal;
+        private final Reactor reactor;
+        private final TransporteTls tls; // Cifrado de la conexión (null en texto plano)
+        private final AtomicBoolean escrituraSolicitada = new AtomicBoolean(); // Evita avisar varias veces al reactor
+        private ByteBuffer pendiente; // Buffer prestado con bytes que el socket aún no aceptó (null si no hay)
+        private SelectionKey clave;
+        private long vencimiento; // Instante en que vence la ventana de coalescencia (si la escritura está aplazada)
+        private boolean aplazada; // Está en la lista de aplazadas del reactor (solo lo usa el hilo del reactor)
+        private boolean lecturaPausada; // Sin OP_READ hasta que termine la pausa por el límite de mensajes (hilo del reactor)
+        private RuedaTemporizadores.Tarea finPausa; // Tarea de la rueda que termina la pausa (se crea la primera vez)
+
+        ConexionNio(SocketChannel canal, Reactor reactor) {
+            super(servidor);
+            this.canal = canal;
+            this.reactor = reactor;
+            ContextoTls contexto = servidor.getTls();
+            this.tls = contexto != null ? new TransporteTls(contexto.crearMotor(), this::enviarSaludo) : null;
+            setPar(String.valueOf(canal.socket().getRemoteSocketAddress()));
+        }
+
+        @Override
+        protected void hayDatosParaEnviar() {
+            if (reactor.enHiloReactor()) {
+                if (!convieneEsperar()) {
+                    escribirPendiente();
+                } else if (escrituraSolicitada.compareAndSet(false, true)) {
+                    reactor.aplazar(this);
+                }
+            } else if (escrituraSolicitada.compareAndSet(false, true)) {
+                reactor.solicitarEscritura(this);
+            }
+        }
+
+        @Override
+        protected boolean puedeEsperarSitio() {
+            // El reactor que vacía esta cola no puede quedarse esperando a que él mismo la vacíe
+            return !reactor.enHiloReactor();
+        }
+
+        // Método que escribe lotes mientras quepan en el socket; si se llena, espera a que el Selector avise con OP_WRITE.
+        // El buffer se toma prestado solo mientras hay algo que escribir.
+        void escribirPendiente() {
+            escrituraSolicitada.set(false);
+            PoolBuffers reserva = tls != null ? PoolBuffers.REGISTROS_TLS : PoolBuffers.SALIDA;
+            try {
+                while (true) {
+                    if (pendiente == null) {
+                        ByteBuffer buffer = reserva.tomar();
+                        if (!cargar(buffer)) {
+                            reserva.devolver(buffer);
+                            break;
+                        }
+                        pendiente = buffer.flip();
+                    }
+                    canal.write(pendiente);
+                    Metricas.LOTES_ESCRITOS.increment();
+                    if (pendiente.hasRemaining()) {
+                        clave.interestOps(intereses() | SelectionKey.OP_WRITE);
+                        return;
+                    }
+                    reserva.devolver(pendiente);
+                    pendiente = null;
+                }
+                clave.interestOps(intereses());
+            } catch (IOException | CancelledKeyException e) {
+                cerrar();
+            }
+        }
+
+        // Función que deja en el buffer el siguiente lote por enviar; con TLS, primero lo que pida el saludo y después el
+        // texto plano cifrado
+        private boolean cargar(ByteBuffer buffer) throws IOException {
+            if (tls == null) {
+                return llenar(buffer);
+            }
+            if (tls.generarSaludo(buffer)) {
+                return true;
+            }
+            if (!tls.isSaludoTerminado()) {
+                return false;
+            }
+            ByteBuffer plano = PoolBuffers.SALIDA.tomar();
+            try {
+                if (!llenar(plano)) {
+                    return false;
+                }
+                tls.cifrar(plano.flip(), buffer);
+                return true;
+            } finally {
+                PoolBuffers.SALIDA.devolver(plano);
+            }
+        }
+
+        // Método del hilo del reactor que escribe lo que pide el saludo TLS; si el socket tiene bytes a medio escribir,
+        // el saludo va detrás de ellos y sale con OP_WRITE
+        private void enviarSaludo() throws IOException {
+            if (pendiente != null) {
+                tls.generarSaludo(pendiente.compact());
+                pendiente.flip();
+            } else {
+                escribirPendiente();
+            }
+        }
+
+        private int intereses() {
+            return lecturaPausada ? 0 : SelectionKey.OP_READ;
+        }
+
+        // Método del hilo del reactor: deja de leer esta conexión hasta que la rueda termine la pausa (al menos un tic)
+        @Override
+        protected void pausarLectura(long nanos) {
+            if (lecturaPausada || !clave.isValid()) {
+                return;
+            }
+            lecturaPausada = true;
+            clave.interestOps(clave.interestOps() & ~SelectionKey.OP_READ);
+            if (finPausa == null) {
+                finPausa = new RuedaTemporizadores.Tarea() {
+                    @Override
+                    void vencer() {
+                        reactor.reanudarLectura(ConexionNio.this);
+                    }
+                };
+            }
+            RuedaTemporizadores rueda = servidor.getRueda();
+            rueda.programar(finPausa, (nanos + rueda.getTicNanos() - 1) / rueda.getTicNanos());
+        }
+
+        @Override
+        protected void cerrarTransporte() {
+            conexiones.remove(this);
+            servidor.conexionCerrada();
+            try {
+                canal.close();
+            } catch (IOException e) {
+                // El socket ya estaba cerrado
+            }
+        }
+    }
+}
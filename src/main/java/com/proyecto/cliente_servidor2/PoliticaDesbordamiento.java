@@ -0,0 +1,15 @@
+// Nombre del Programa: Política de Desbordamiento de la Cola de Salida
+// Descripción: Indica qué hace el servidor cuando la cola de salida de un cliente está llena porque el cliente
+// lee más despacio de lo que recibe mensajes.
+// - DESCARTAR_ANTIGUO: Se descarta el mensaje más antiguo de la cola para hacer sitio al nuevo.
+// - DESCONECTAR: Se cierra la conexión del cliente lento.
+// - CONTRAPRESION: El hilo que envía espera un tiempo acotado a que haya sitio; si no lo hay, se descarta el mensaje nuevo.
+// Las conexiones con sesión reanudable no usan la política: con la cola llena se cierran y el cliente reanuda la sesión.
+
+package com.proyecto.cliente_servidor2;
+
+public enum PoliticaDesbordamiento {
+    DESCARTAR_ANTIGUO,
+    DESCONECTAR,
+    CONTRAPRESION
+}
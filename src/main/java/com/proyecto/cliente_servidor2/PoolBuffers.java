@@ -0,0 +1,47 @@
+// Nombre del Programa: Reserva de Buffers de Escritura
+// Descripción: Buffers directos que los escritores toman prestados para juntar un lote de cargas y escribirlo con una
+// sola llamada al socket. Al terminar se devuelven para el siguiente lote, así el camino de escritura no reserva
+// memoria por mensaje y las conexiones ociosas no retienen ningún buffer.
+// Las conexiones TLS usan además REGISTROS_TLS, con buffers para dos registros TLS completos: el SSLEngine solo cifra
+// si en el destino cabe un registro del tamaño máximo, y un lote de SALIDA puede quedar partido en dos registros.
+// También guardan un registro recibido a medias.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+
+final class PoolBuffers {
+    static final int TAMANO_BUFFER = 16 * 1024;
+    // 16 KiB de datos más la cabecera, el relleno y la etiqueta de autenticación (SSLSession.getPacketBufferSize())
+    static final int TAMANO_REGISTRO_TLS = 17 * 1024;
+    static final int TAMANO_BUFFER_TLS = 2 * TAMANO_REGISTRO_TLS;
+
+    // Reserva compartida por todos los escritores del servidor
+    static final PoolBuffers SALIDA = new PoolBuffers(1024);
+    static final PoolBuffers REGISTROS_TLS = new PoolBuffers(1024, TAMANO_BUFFER_TLS);
+
+    private final ArrayBlockingQueue<ByteBuffer> libres; // Basada en arreglo: tomar y devolver no reservan memoria
+    private final int tamano; // Capacidad de cada buffer
+
+    PoolBuffers(int maximoLibres) {
+        this(maximoLibres, TAMANO_BUFFER);
+    }
+
+    PoolBuffers(int maximoLibres, int tamano) {
+        this.libres = new ArrayBlockingQueue<>(maximoLibres);
+        this.tamano = tamano;
+    }
+
+    // Función que presta un buffer vacío; si no queda ninguno libre se crea uno nuevo
+    ByteBuffer tomar() {
+        ByteBuffer buffer = libres.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(tamano);
+    }
+
+    // Método que devuelve un buffer prestado; si la reserva está llena se deja al recolector de basura
+    void devolver(ByteBuffer buffer) {
+        buffer.clear();
+        libres.offer(buffer);
+    }
+}
@@ -0,0 +1,146 @@
+// Nombre del Programa: Precalentamiento del Servidor
+// Descripción: Deja el servidor listo antes de abrir el puerto, para que la ola de reconexiones que sigue a un reinicio
+// no encuentre las tablas vacías ni el código sin compilar:
+// - Nombres conocidos: al drenar, el servidor guarda los nombres registrados en servidor.precalentamiento.archivo (en
+//   orden de identificador); al arrancar se leen, se les asigna su identificador en la TablaIds (en el mismo orden, así
+//   que conservan el que tenían si no hay otros antes) y se agranda de una vez el arreglo del RegistroClientes. Las
+//   tablas crecen antes de abrir el puerto y no mientras los reactores registran y enrutan a la vez.
+// - Compilación: un servidor desechable (sin puerto, diario, clúster ni bitácora) enruta
+//   servidor.precalentamiento.mensajes mensajes privados entre conexiones simuladas, que vacían su cola con llenar() en
+//   buffers de PoolBuffers.SALIDA como el escritor de un motor. Así el JIT compila el análisis de líneas, la búsqueda
+//   del destinatario, las colas y la copia de bytes antes del primer cliente real, y la reserva de buffers ya tiene
+//   alguno. Se hace una sola vez por proceso: el código compilado sirve a todos los servidores que se creen después.
+// Los mensajes del precalentamiento se cuentan en Metricas como cualquier otro (los contadores son del proceso).
+// Ejemplo: con 20.000 mensajes el precalentamiento tarda unos cientos de milisegundos; sin él, los primeros miles de
+// mensajes después del arranque se enrutan en el intérprete y su latencia sube el p99 de los primeros segundos.
+
+package com.proyecto.cliente_servidor2;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+final class Precalentamiento {
+    private static final int CONEXIONES = 16; // Conexiones simuladas que se escriben en ronda
+    private static final String PREFIJO_NOMBRE = "precalentamiento-";
+    private static final AtomicBoolean compilado = new AtomicBoolean(); // Ya se precalentó en este proceso
+
+    private Precalentamiento() {
+    }
+
+    // Método que guarda los nombres de las conexiones registradas, en orden de identificador; escribe un archivo
+    // temporal y lo mueve encima del anterior, para que un corte a mitad no deje un archivo incompleto
+    static void guardarNombres(Path archivo, Collection<Conexion> registradas) {
+        List<Conexion> ordenadas = new ArrayList<>(registradas);
+        ordenadas.sort(Comparator.comparingInt(Conexion::getIdCliente));
+        List<String> nombres = new ArrayList<>(ordenadas.size());
+        for (Conexion conexion : ordenadas) {
+            nombres.add(conexion.getNombreCliente());
+        }
+        Path temporal = archivo.resolveSibling(archivo.getFileName() + ".tmp");
+        try {
+            Files.write(temporal, nombres, StandardCharsets.UTF_8);
+            Files.move(temporal, archivo, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("precalentamiento", "no se pudieron guardar los nombres en " + archivo, e);
+        }
+    }
+
+    // Función que carga los nombres guardados por el drenado anterior en la tabla de identificadores y reserva su
+    // lugar en el registro; devuelve cuántos se cargaron (0 si el archivo no existe o no se puede leer)
+    static int cargarNombres(Path archivo, TablaIds ids, RegistroClientes clientes) {
+        if (!Files.exists(archivo)) {
+            return 0;
+        }
+        List<String> nombres;
+        try {
+            nombres = Files.readAllLines(archivo, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("precalentamiento", "no se pudieron leer los nombres de " + archivo, e);
+            return 0;
+        }
+        int mayor = 0;
+        for (String nombre : nombres) {
+            if (!nombre.isEmpty()) {
+                mayor = Math.max(mayor, ids.id(nombre));
+            }
+        }
+        clientes.reservar(mayor);
+        return nombres.size();
+    }
+
+    // Método que enruta los mensajes de precalentamiento en un servidor desechable, la primera vez que se llama en el
+    // proceso; la bitácora queda en silencio mientras tanto y vuelve al nivel de la configuración
+    static void compilar(ConfiguracionServidor configuracion) {
+        int mensajes = configuracion.getMensajesPrecalentamiento();
+        if (mensajes == 0 || !compilado.compareAndSet(false, true)) {
+            return;
+        }
+        long inicio = System.nanoTime();
+        ConfiguracionServidor desechable = new ConfiguracionServidor();
+        desechable.setReactores(1);
+        desechable.setTasaMensajes(0);
+        desechable.setNivelLog(Bitacora.Nivel.NADA);
+        Servidor servidor = new Servidor(desechable);
+        try {
+            ConexionLocal[] conexiones = new ConexionLocal[CONEXIONES];
+            ByteBuffer[] lineas = new ByteBuffer[CONEXIONES];
+            for (int i = 0; i < CONEXIONES; i++) {
+                conexiones[i] = new ConexionLocal(servidor);
+                conexiones[i].recibir(ByteBuffer.wrap((PREFIJO_NOMBRE + i + "\n").getBytes(StandardCharsets.UTF_8)));
+                String linea = ProtocoloCliente.lineaPrivado(PREFIJO_NOMBRE + ((i + 1) % CONEXIONES), "hola, ¿cómo va todo?");
+                lineas[i] = ByteBuffer.wrap((linea + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+            for (int n = 0; n < mensajes; n++) {
+                int i = n % CONEXIONES;
+                conexiones[i].recibir(lineas[i].rewind());
+                conexiones[(i + 1) % CONEXIONES].vaciar();
+                conexiones[i].vaciar(); // Eco
+            }
+            for (ConexionLocal conexion : conexiones) {
+                conexion.cerrar();
+            }
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("precalentamiento", "falló el precalentamiento", e);
+        } finally {
+            servidor.detener();
+            Bitacora.SERVIDOR.setNivel(configuracion.getNivelLog());
+        }
+        Bitacora.SERVIDOR.info("precalentamiento",
+                mensajes + " mensajes en " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - inicio) + " ms");
+    }
+
+    // Conexión sin socket que el hilo del precalentamiento vacía con vaciar(); otros hilos (los avisos de presencia)
+    // solo encolan, así que el estado del escritor lo usa un solo hilo
+    private static final class ConexionLocal extends Conexion {
+        ConexionLocal(Servidor servidor) {
+            super(servidor);
+        }
+
+        // Método que copia lo pendiente a un buffer prestado, igual que el escritor de un motor, y lo descarta
+        void vaciar() {
+            ByteBuffer buffer = PoolBuffers.SALIDA.tomar();
+            while (llenar(buffer)) {
+                buffer.clear();
+            }
+            PoolBuffers.SALIDA.devolver(buffer);
+        }
+
+        @Override
+        protected void hayDatosParaEnviar() {
+        }
+
+        @Override
+        protected void cerrarTransporte() {
+        }
+    }
+}
@@ -0,0 +1,113 @@
+// Nombre del Programa: Presencia de Clientes Conectados
+// Descripción: Informa a los clientes quién entra y quién sale sin reenviar la lista completa en cada cambio.
+// La lista completa ("Clientes conectados:a, b, c") solo se envía una vez, al cliente que acaba de registrarse.
+// Los cambios posteriores se acumulan durante una ventana corta y se envían a todos en una sola línea de deltas.
+// Ejemplo: Si en 50 ms entran "ana" y "luis" y sale "pedro", cada cliente recibe una única línea
+// "Presencia:+ana,+luis,-pedro". Si un mismo nombre entra y sale dentro de la ventana, solo se envía el último cambio.
+// Los deltas son idempotentes: un "+ana" para quien ya ve a "ana", o un "-pedro" para quien no lo ve, no tiene efecto.
+// Los clientes en modo binario reciben lo mismo como tramas LISTA y PRESENCIA, con el identificador de cada nombre.
+// En un clúster, la lista y los deltas incluyen también a los clientes de los demás nodos (DirectorioCluster).
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+class Presencia {
+    static final String PREFIJO_LISTA = "Clientes conectados:";
+    static final String PREFIJO_DELTA = "Presencia:";
+
+    private final RegistroClientes clientes; // Registro del que se toma la lista completa y los destinatarios
+    private final TablaIds ids; // Identificadores de los nombres, para los clientes en modo binario
+    private final DirectorioCluster directorio; // Clientes conectados a otros nodos del clúster
+    private final Map<String, Boolean> cambiosPendientes = new LinkedHashMap<>(); // nombre -> true (entra) / false (sale)
+    private final ScheduledExecutorService temporizador;
+
+    Presencia(RegistroClientes clientes, TablaIds ids, DirectorioCluster directorio, long ventanaMs) {
+        this.clientes = clientes;
+        this.ids = ids;
+        this.directorio = directorio;
+        this.temporizador = Executors.newSingleThreadScheduledExecutor(tarea -> {
+            Thread hilo = new Thread(tarea, "presencia");
+            hilo.setDaemon(true);
+            return hilo;
+        });
+        temporizador.scheduleWithFixedDelay(this::enviarCambios, ventanaMs, ventanaMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Método llamado después de registrar al cliente: le envía la lista completa y anota su entrada para los demás
+    void alta(Conexion conexion) {
+        enviarLista(conexion);
+        anotarCambio(conexion.getNombreCliente(), true);
+    }
+
+    // Método que envía la lista completa a un solo cliente (al registrarse o al pasar a modo binario)
+    void enviarLista(Conexion conexion) {
+        List<Carga.Cambio> lista = new ArrayList<>(clientes.tamano());
+        for (String cliente : clientes.nombres()) {
+            lista.add(new Carga.Cambio(cliente, ids.id(cliente), true));
+        }
+        for (String cliente : directorio.nombres()) {
+            if (clientes.buscar(cliente) == null) {
+                lista.add(new Carga.Cambio(cliente, ids.id(cliente), true));
+            }
+        }
+        conexion.encolar(Carga.lista(lista));
+    }
+
+    // Método llamado después de eliminar al cliente del registro; si sigue conectado a otro nodo, no ha salido
+    void baja(String nombreCliente) {
+        if (directorio.nodo(nombreCliente) == null) {
+            anotarCambio(nombreCliente, false);
+        }
+    }
+
+    // Método llamado cuando un cliente entra o sale de otro nodo; si también está conectado aquí, no cambia nada
+    void cambioRemoto(String nombreCliente, boolean entra) {
+        if (clientes.buscar(nombreCliente) == null) {
+            anotarCambio(nombreCliente, entra);
+        }
+    }
+
+    void detener() {
+        temporizador.shutdownNow();
+    }
+
+    private void anotarCambio(String nombreCliente, boolean entra) {
+        synchronized (cambiosPendientes) {
+            // Se quita antes de poner para que el nombre quede al final, en el orden del último cambio
+            cambiosPendientes.remove(nombreCliente);
+            cambiosPendientes.put(nombreCliente, entra);
+        }
+    }
+
+    // Método que envía en una sola línea los cambios acumulados durante la ventana
+    void enviarCambios() {
+        List<Carga.Cambio> cambios;
+        synchronized (cambiosPendientes) {
+            if (cambiosPendientes.isEmpty()) {
+                return;
+            }
+            cambios = new ArrayList<>(cambiosPendientes.size());
+            for (Map.Entry<String, Boolean> cambio : cambiosPendientes.entrySet()) {
+                cambios.add(new Carga.Cambio(cambio.getKey(), ids.id(cambio.getKey()), cambio.getValue()));
+            }
+            cambiosPendientes.clear();
+        }
+
+        // El envío se hace fuera del candado para no frenar altas y bajas; todos comparten la misma carga. Sin esperar
+        // sitio (como el reparto a las salas): con CONTRAPRESION, un cliente lento frenaría el temporizador y con él
+        // los deltas de todos los demás
+        long inicio = System.nanoTime();
+        Carga delta = Carga.presencia(cambios);
+        for (Conexion cliente : clientes.instantanea()) {
+            cliente.encolar(delta, false);
+        }
+        Metricas.DIFUSION_PRESENCIA.registrar(System.nanoTime() - inicio);
+    }
+}
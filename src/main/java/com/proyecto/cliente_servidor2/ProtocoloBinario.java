@@ -0,0 +1,41 @@
+// Nombre del Programa: Protocolo Binario con Tramas
+// Descripción: Modo alternativo al protocolo de texto, negociado justo después de enviar el nombre.
+// El cliente envía la línea "Modo:binario"; el servidor contesta con la misma línea y desde ese momento, en ambos
+// sentidos, cada mensaje es una trama: [largo: int][código: byte][datos], donde largo cuenta el código y los datos.
+// Los clientes se identifican con números (TablaIds) en lugar de repetir su nombre en cada mensaje, y el texto de un
+// mensaje puede contener ':' sin cortarse.
+// Códigos de trama:
+// - PRIVADO: cliente -> servidor [idDestinatario: int][texto UTF-8]; servidor -> cliente [idRemitente: int][texto UTF-8]
+// - LISTA: servidor -> cliente [cantidad: int] y por cada cliente [id: int][largo: short][nombre UTF-8]
+// - PRESENCIA: servidor -> cliente [cantidad: int] y por cada cambio ['+' o '-': byte][id: int][largo: short][nombre UTF-8]
+// - TEXTO: cualquier otra línea del protocolo de texto, en UTF-8 y sin '\n'
+// - SALA: servidor -> cliente [idRemitente: int][largo: short][nombre de la sala UTF-8][texto UTF-8]
+//   (para publicar en una sala, el cliente envía la línea "Sala:sala:texto" dentro de una trama TEXTO)
+// Ejemplo: "Privado:luis:hola" pasa a ser [00 00 00 09][01][00 00 00 07]["hola"] si luis tiene el id 7.
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.ByteBuffer;
+
+public final class ProtocoloBinario {
+    public static final String LINEA_NEGOCIACION = "Modo:binario";
+
+    public static final byte PRIVADO = 1;
+    public static final byte LISTA = 2;
+    public static final byte PRESENCIA = 3;
+    public static final byte TEXTO = 4;
+    public static final byte SALA = 5;
+
+    // Largo máximo de una trama (código más datos)
+    public static final int LARGO_MAXIMO = 64 * 1024;
+
+    private ProtocoloBinario() {
+    }
+
+    // Función que reserva un buffer con la cabecera de una trama ya escrita; el llamador añade los datos y hace flip()
+    static ByteBuffer nuevaTrama(byte codigo, int largoDatos) {
+        ByteBuffer trama = ByteBuffer.allocate(4 + 1 + largoDatos);
+        trama.putInt(1 + largoDatos).put(codigo);
+        return trama;
+    }
+}
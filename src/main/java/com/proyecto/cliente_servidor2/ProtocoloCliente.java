@@ -0,0 +1,194 @@
+// Nombre del Programa: Protocolo de Texto del Lado del Cliente
+// Descripción: Reúne en un solo lugar cómo un cliente interpreta las líneas que envía el servidor y cómo arma las suyas,
+// para que las ventanas Swing (Cliente, Cliente2) y el generador de carga sin interfaz hablen exactamente igual.
+// Líneas que entiende:
+// - "Clientes conectados:a, b, c, " -> lista completa, recibida al registrarse.
+// - "Presencia:+a,-b" -> entradas y salidas desde la última línea de presencia.
+// - "Privado:remitente:texto" -> mensaje privado (el texto puede contener ':'); el eco de los propios también llega así.
+// - "Historial:otro:secuencia:remitente:texto" y "FinHistorial:otro:cursor" -> respuesta a lineaHistorial().
+// - "Sala:sala:remitente:texto" -> mensaje publicado en una sala a la que se unió con lineaUnirse().
+// - "Error:motivo" -> el servidor rechazó la conexión (servidor_lleno, demasiadas_conexiones) o deja de leer por un
+//   rato por pasar del límite de mensajes (limite_mensajes).
+// - "Ping" -> el servidor no recibe nada del cliente desde hace un rato; se responde con lineaPong() (ver esPing()).
+// - "Reconectar:ms" -> el servidor se está drenando para reiniciarse: el cliente cierra y vuelve a conectar pasados esos
+//   milisegundos (ver esperaReconectar()).
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class ProtocoloCliente {
+    static final String PREFIJO_PRIVADO = "Privado:";
+
+    // Acciones que toma el cliente ante cada línea del servidor
+    public interface Oyente {
+        void listaCompleta(List<String> clientes);
+
+        void entra(String cliente);
+
+        void sale(String cliente);
+
+        void mensajePrivado(String remitente, String texto);
+
+        // Mensaje anterior de la conversación con "otro", pedido con lineaHistorial(); llegan del más antiguo al más nuevo
+        default void historial(String otro, long secuencia, String remitente, String texto) {
+        }
+
+        // Fin de una página de historial; cursorAnterior sirve para pedir la página anterior (0 si no hay más)
+        default void finHistorial(String otro, long cursorAnterior) {
+        }
+
+        // Mensaje publicado en una sala de la que el cliente es miembro (incluidos los suyos)
+        default void mensajeSala(String sala, String remitente, String texto) {
+        }
+
+        // El servidor rechazó la conexión o descarta los mensajes por exceso (ver ControlAdmision)
+        default void error(String motivo) {
+        }
+    }
+
+    private ProtocoloCliente() {
+    }
+
+    // Función que arma la línea para enviar un mensaje privado (sin el '\n' final)
+    public static String lineaPrivado(String destinatario, String texto) {
+        return PREFIJO_PRIVADO + destinatario + ":" + texto;
+    }
+
+    // Función que arma la petición de los últimos mensajes de la conversación con "otro"
+    public static String lineaHistorial(String otro, int cantidad) {
+        return HistorialConversaciones.PREFIJO_PETICION + otro + ":" + cantidad;
+    }
+
+    // Función que arma la petición de los mensajes anteriores al cursor recibido en finHistorial()
+    public static String lineaHistorial(String otro, int cantidad, long cursor) {
+        return lineaHistorial(otro, cantidad) + ":" + cursor;
+    }
+
+    // Funciones que arman las líneas para entrar, salir y publicar en una sala
+    public static String lineaUnirse(String sala) {
+        return Salas.PREFIJO_UNIRSE + sala;
+    }
+
+    public static String lineaSalir(String sala) {
+        return Salas.PREFIJO_SALIR + sala;
+    }
+
+    public static String lineaSala(String sala, String texto) {
+        return Salas.PREFIJO_SALA + sala + ":" + texto;
+    }
+
+    // Función que arma la línea que activa o desactiva la espera del servidor para juntar mensajes en una sola escritura;
+    // un cliente sensible a la latencia la desactiva y recibe cada mensaje en cuanto está listo
+    public static String lineaCoalescencia(boolean activa) {
+        return Conexion.PREFIJO_COALESCENCIA + (activa ? "on" : "off");
+    }
+
+    // Función que arma la línea que pide recibir la salida comprimida; se envía antes del nombre para que la lista
+    // completa de clientes ya llegue comprimida, y la entrada se lee a través de EntradaComprimida
+    public static String lineaCompresion() {
+        return CompresionSalida.LINEA_NEGOCIACION;
+    }
+
+    // Función que arma la línea que pide una sesión reanudable; se envía justo antes del nombre
+    public static String lineaPedirSesion() {
+        return Sesiones.LINEA_PEDIR;
+    }
+
+    // Función que arma la línea que reanuda una sesión en lugar de enviar el nombre; "recibidos" es cuántos mensajes
+    // (privados y de salas) llegaron desde que el servidor confirmó la sesión
+    public static String lineaReanudar(String token, long recibidos) {
+        return Sesiones.PREFIJO_REANUDAR + token + ":" + recibidos;
+    }
+
+    // Función que indica si la línea es un ping del servidor, que se responde con lineaPong() para no ser desconectado
+    public static boolean esPing(String linea) {
+        return Latidos.LINEA_PING.equals(linea);
+    }
+
+    public static String lineaPong() {
+        return Latidos.LINEA_PONG;
+    }
+
+    // Función que devuelve la espera en milisegundos que pide "Reconectar:ms", o -1 si la línea es otra. Cada cliente
+    // recibe una espera distinta, así que al reconectar no llegan todos a la vez al servidor reiniciado
+    public static long esperaReconectar(String linea) {
+        if (!linea.startsWith(Servidor.PREFIJO_RECONECTAR)) {
+            return -1;
+        }
+        try {
+            return Math.max(0, Long.parseLong(linea.substring(Servidor.PREFIJO_RECONECTAR.length())));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    // Función que indica si la línea es un mensaje numerado por la sesión (los que el servidor puede repetir)
+    public static boolean esMensajeDeSesion(String linea) {
+        return linea.startsWith(PREFIJO_PRIVADO) || linea.startsWith(Salas.PREFIJO_SALA);
+    }
+
+    // Función que interpreta una línea del servidor y avisa al oyente; devuelve false si la línea no es del protocolo
+    public static boolean procesar(String linea, Oyente oyente) {
+        if (linea.startsWith(PREFIJO_PRIVADO)) {
+            // Solo se corta en los dos primeros ':' para que el texto pueda contener ':'
+            int separador = linea.indexOf(':', PREFIJO_PRIVADO.length());
+            if (separador < 0) {
+                return false;
+            }
+            oyente.mensajePrivado(linea.substring(PREFIJO_PRIVADO.length(), separador), linea.substring(separador + 1));
+        } else if (linea.startsWith(HistorialConversaciones.PREFIJO_PETICION)) {
+            // Historial:otro:secuencia:remitente:texto
+            int inicio = HistorialConversaciones.PREFIJO_PETICION.length();
+            int finOtro = linea.indexOf(':', inicio);
+            int finSecuencia = finOtro < 0 ? -1 : linea.indexOf(':', finOtro + 1);
+            int finRemitente = finSecuencia < 0 ? -1 : linea.indexOf(':', finSecuencia + 1);
+            if (finRemitente < 0) {
+                return false;
+            }
+            oyente.historial(linea.substring(inicio, finOtro), Long.parseLong(linea, finOtro + 1, finSecuencia, 10),
+                    linea.substring(finSecuencia + 1, finRemitente), linea.substring(finRemitente + 1));
+        } else if (linea.startsWith(HistorialConversaciones.PREFIJO_FIN)) {
+            int separador = linea.lastIndexOf(':');
+            if (separador < HistorialConversaciones.PREFIJO_FIN.length()) {
+                return false;
+            }
+            oyente.finHistorial(linea.substring(HistorialConversaciones.PREFIJO_FIN.length(), separador),
+                    Long.parseLong(linea, separador + 1, linea.length(), 10));
+        } else if (linea.startsWith(Salas.PREFIJO_SALA)) {
+            // Sala:sala:remitente:texto
+            int finSala = linea.indexOf(':', Salas.PREFIJO_SALA.length());
+            int finRemitente = finSala < 0 ? -1 : linea.indexOf(':', finSala + 1);
+            if (finRemitente < 0) {
+                return false;
+            }
+            oyente.mensajeSala(linea.substring(Salas.PREFIJO_SALA.length(), finSala), linea.substring(finSala + 1, finRemitente),
+                    linea.substring(finRemitente + 1));
+        } else if (linea.startsWith(Presencia.PREFIJO_DELTA)) {
+            for (String cambio : linea.substring(Presencia.PREFIJO_DELTA.length()).split(",")) {
+                if (cambio.length() < 2) {
+                    continue;
+                }
+                if (cambio.charAt(0) == '+') {
+                    oyente.entra(cambio.substring(1));
+                } else {
+                    oyente.sale(cambio.substring(1));
+                }
+            }
+        } else if (linea.startsWith(ControlAdmision.PREFIJO_ERROR)) {
+            oyente.error(linea.substring(ControlAdmision.PREFIJO_ERROR.length()));
+        } else if (linea.startsWith(Presencia.PREFIJO_LISTA)) {
+            List<String> clientes = new ArrayList<>();
+            for (String cliente : linea.substring(Presencia.PREFIJO_LISTA.length()).split(", ")) {
+                if (!cliente.isEmpty()) {
+                    clientes.add(cliente);
+                }
+            }
+            oyente.listaCompleta(clientes);
+        } else {
+            return false;
+        }
+        return true;
+    }
+}
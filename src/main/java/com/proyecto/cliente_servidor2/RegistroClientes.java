@@ -0,0 +1,139 @@
+// Nombre del Programa: Registro de Clientes Conectados
+// Descripción: Guarda la conexión de cada cliente registrado, indexada por su nombre. Reemplaza el HashMap estático
+// protegido por un único synchronized: las búsquedas no toman ningún candado y las altas y bajas solo bloquean la
+// porción del mapa donde cae el nombre (ConcurrentHashMap), nunca durante la escritura en un socket.
+// Además de por nombre, las conexiones se indexan por su identificador numérico (TablaIds) en un arreglo, para que el
+// enrutamiento encuentre al destinatario sin crear Strings ni objetos Integer. Las dos anotaciones de un alta o una baja
+// se hacen dentro del mismo compute() del nombre, así que un alta y una baja simultáneas del mismo nombre no pueden
+// dejar el arreglo apuntando a una conexión distinta de la del mapa. Escribir en el arreglo no toma ningún candado (cada
+// posición se cambia con compareAndSet); solo agrandarlo, y una escritura que llega durante la copia sigue la marca de
+// la posición movida hasta el arreglo nuevo.
+// Ejemplo: Mientras se recorre la lista para avisar a todos los clientes, otro hilo puede buscar al destinatario de un
+// mensaje privado sin esperar a que termine el recorrido.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+class RegistroClientes {
+    // Mapa concurrente nombre -> conexión
+    private final ConcurrentHashMap<String, Conexion> clientes = new ConcurrentHashMap<>();
+    // Marca de una posición que ya se copió a un arreglo mayor
+    private static final Object MOVIDA = new Object();
+    // Arreglo id -> conexión; se lee sin candados y solo se escribe (y se agranda) al registrar o eliminar
+    private volatile Tabla porId = new Tabla(1024);
+
+    // Arreglo por identificador y, mientras se agranda o después, el que lo reemplaza
+    private static final class Tabla {
+        private final AtomicReferenceArray<Object> posiciones;
+        private volatile Tabla siguiente;
+
+        Tabla(int largo) {
+            this.posiciones = new AtomicReferenceArray<>(largo);
+        }
+    }
+
+    // Método que registra al cliente; si el nombre ya estaba en uso, la nueva conexión lo reemplaza
+    // Devuelve la conexión anterior con ese nombre, o null si no había ninguna
+    Conexion registrar(String nombre, Conexion conexion) {
+        Conexion[] anterior = new Conexion[1];
+        clientes.compute(nombre, (clave, actual) -> {
+            anterior[0] = actual;
+            anotar(conexion.getIdCliente(), conexion);
+            return conexion;
+        });
+        return anterior[0];
+    }
+
+    // Método que agranda el arreglo por identificador para que quepa "id"; al arrancar se llama con el mayor
+    // identificador conocido, para no copiar el arreglo durante la ola de altas. Mueve cada posición al arreglo nuevo
+    // y deja MOVIDA en la vieja con compareAndSet: si una escritura llega en medio, la posición se vuelve a copiar.
+    synchronized void reservar(int id) {
+        Tabla actual = porId;
+        if (id < actual.posiciones.length()) {
+            return;
+        }
+        Tabla mayor = new Tabla(Math.max(id + 1, actual.posiciones.length() * 2));
+        actual.siguiente = mayor; // Antes de la primera MOVIDA, para que quien la vea encuentre el arreglo nuevo
+        for (int i = 0; i < actual.posiciones.length(); i++) {
+            Object valor;
+            do {
+                valor = actual.posiciones.get(i);
+                mayor.posiciones.set(i, valor);
+            } while (!actual.posiciones.compareAndSet(i, valor, MOVIDA));
+        }
+        porId = mayor;
+    }
+
+    // Método que elimina al cliente solo si el nombre sigue asociado a esta conexión
+    boolean eliminar(String nombre, Conexion conexion) {
+        boolean[] eliminado = new boolean[1];
+        clientes.computeIfPresent(nombre, (clave, actual) -> {
+            if (actual != conexion) {
+                return actual;
+            }
+            eliminado[0] = true;
+            anotar(conexion.getIdCliente(), null);
+            return null;
+        });
+        return eliminado[0];
+    }
+
+    // Método que escribe en el arreglo por identificador con compareAndSet, sin candados (las escrituras de un mismo
+    // identificador ya van de una en una, dentro del compute() del nombre); si la posición ya se movió a un arreglo
+    // mayor, escribe en ese
+    private void anotar(int id, Conexion conexion) {
+        Tabla tabla = porId;
+        while (true) {
+            if (id >= tabla.posiciones.length()) {
+                reservar(id);
+                tabla = porId;
+                continue;
+            }
+            Object anterior = tabla.posiciones.get(id);
+            if (anterior == MOVIDA) {
+                tabla = tabla.siguiente;
+            } else if (tabla.posiciones.compareAndSet(id, anterior, conexion)) {
+                return;
+            }
+        }
+    }
+
+    // Función que busca la conexión por identificador sin candados ni reservas de memoria
+    Conexion buscarPorId(int id) {
+        Tabla tabla = porId;
+        while (id >= 0 && id < tabla.posiciones.length()) {
+            Object valor = tabla.posiciones.get(id);
+            if (valor != MOVIDA) {
+                return (Conexion) valor;
+            }
+            tabla = tabla.siguiente; // Se está agrandando (o se leyó el arreglo justo antes de publicar el nuevo)
+        }
+        return null;
+    }
+
+    // Función que busca la conexión de un cliente sin tomar candados
+    Conexion buscar(String nombre) {
+        return clientes.get(nombre);
+    }
+
+    // Función que devuelve una vista de las conexiones para recorrerlas sin bloquear a nadie.
+    // El recorrido es débilmente consistente: refleja el registro en algún momento durante la iteración,
+    // nunca lanza ConcurrentModificationException y no impide altas, bajas ni búsquedas simultáneas.
+    Collection<Conexion> instantanea() {
+        return Collections.unmodifiableCollection(clientes.values());
+    }
+
+    // Función que devuelve los nombres registrados, con la misma semántica que instantanea()
+    Set<String> nombres() {
+        return Collections.unmodifiableSet(clientes.keySet());
+    }
+
+    int tamano() {
+        return clientes.size();
+    }
+}
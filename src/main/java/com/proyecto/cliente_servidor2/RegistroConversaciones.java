@@ -0,0 +1,190 @@
+// Nombre del Programa: Registro de Conversaciones del Cliente
+// Descripción: Guarda, por cada contacto, su conversación: los últimos mensajes y la ventana de chat si está abierta.
+// Un mensaje entrante se dirige a la conversación de su remitente con una búsqueda en un mapa (O(1)), en lugar de ir a
+// la última ventana que se abrió. Solo se usa desde el EDT, así que no necesita candados.
+// Memoria acotada aunque haya cientos de chats largos:
+// - Cada conversación guarda como mucho cliente.mensajesPorConversacion mensajes (por defecto 1000) en un anillo que
+//   crece bajo demanda; al llenarse, cada mensaje nuevo reemplaza al más antiguo.
+// - Se guardan como mucho cliente.conversacionesEnMemoria conversaciones (por defecto 200); si hay más, se olvida la que
+//   lleva más tiempo sin usarse (si no tiene ventana abierta). Al volver a abrirla, se pide su historial al servidor.
+// El anillo es el modelo de la JList de la ventana: la lista solo pinta las filas visibles (con alto fijo no mide las
+// demás), y los avisos de cambios se envían una vez por lote de mensajes (ver publicarCambios()).
+
+package com.proyecto.cliente_servidor2;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JFrame;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class RegistroConversaciones {
+    private static final int MENSAJES_POR_CONVERSACION = Integer.getInteger("cliente.mensajesPorConversacion", 1000);
+    private static final int CONVERSACIONES_EN_MEMORIA = Integer.getInteger("cliente.conversacionesEnMemoria", 200);
+
+    private final int mensajesPorConversacion;
+    private final int conversacionesEnMemoria;
+    private final List<Conversacion> cambiadas = new ArrayList<>(); // Conversaciones con cambios sin avisar a su lista
+    // Orden de acceso: la primera es la que lleva más tiempo sin usarse
+    private final LinkedHashMap<String, Conversacion> conversaciones = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Conversacion> masAntigua) {
+            return size() > conversacionesEnMemoria && masAntigua.getValue().ventana == null;
+        }
+    };
+
+    public RegistroConversaciones() {
+        this(MENSAJES_POR_CONVERSACION, CONVERSACIONES_EN_MEMORIA);
+    }
+
+    RegistroConversaciones(int mensajesPorConversacion, int conversacionesEnMemoria) {
+        this.mensajesPorConversacion = Math.max(1, mensajesPorConversacion);
+        this.conversacionesEnMemoria = Math.max(1, conversacionesEnMemoria);
+    }
+
+    // Función que devuelve la conversación con el contacto, creándola si no existe
+    public Conversacion conversacion(String contacto) {
+        return conversaciones.computeIfAbsent(contacto, c -> new Conversacion(c, mensajesPorConversacion));
+    }
+
+    // Función que devuelve la conversación con el contacto, o null si no está en memoria
+    public Conversacion buscar(String contacto) {
+        return conversaciones.get(contacto);
+    }
+
+    // Método que agrega un mensaje a la conversación con el contacto; la lista se entera en publicarCambios()
+    public void agregar(String contacto, String mensaje) {
+        Conversacion conversacion = conversacion(contacto);
+        if (conversacion.mensajes.agregar(mensaje)) {
+            cambiadas.add(conversacion);
+        }
+    }
+
+    // Método que avisa a las listas de todas las conversaciones que cambiaron desde el último aviso (una vez por lote)
+    public void publicarCambios() {
+        for (Conversacion conversacion : cambiadas) {
+            conversacion.mensajes.publicar();
+        }
+        cambiadas.clear();
+    }
+
+    public int cantidad() {
+        return conversaciones.size();
+    }
+
+    // Conversación con un contacto: sus mensajes y, si está abierta, su ventana
+    public static final class Conversacion {
+        private final String contacto;
+        private final Mensajes mensajes;
+        private JFrame ventana; // Ventana de chat abierta (null si está cerrada)
+        private boolean historialPedido;
+
+        private Conversacion(String contacto, int capacidad) {
+            this.contacto = contacto;
+            this.mensajes = new Mensajes(capacidad);
+        }
+
+        public String getContacto() {
+            return contacto;
+        }
+
+        // Modelo para la JList de la ventana
+        public AbstractListModel<String> getMensajes() {
+            return mensajes;
+        }
+
+        public JFrame getVentana() {
+            return ventana;
+        }
+
+        public void setVentana(JFrame ventana) {
+            this.ventana = ventana;
+        }
+
+        // Función que indica si hay que pedir el historial al abrir la ventana: solo la primera vez, y solo si la
+        // conversación no trae ya mensajes recibidos mientras estaba cerrada
+        public boolean pedirHistorial() {
+            if (historialPedido) {
+                return false;
+            }
+            historialPedido = true;
+            return mensajes.getSize() == 0;
+        }
+    }
+
+    // Anillo de mensajes que además es el modelo de la lista. Los cambios se acumulan en agregados y descartados hasta
+    // publicar(), que envía como mucho un aviso de filas quitadas y otro de filas agregadas.
+    private static final class Mensajes extends AbstractListModel<String> {
+        private static final long serialVersionUID = 1L;
+        private static final int TAMANO_INICIAL = 16;
+
+        private final int capacidad;
+        private String[] anillo; // Al llegar a la capacidad, su largo es exactamente la capacidad
+        private int inicio; // Posición del mensaje más antiguo
+        private int tamano; // Mensajes guardados
+        private int tamanoPublicado; // Tamaño que conoce la lista
+        private int descartados; // Mensajes antiguos reemplazados desde la última publicación
+        private boolean pendiente; // Hay cambios sin publicar
+
+        Mensajes(int capacidad) {
+            this.capacidad = capacidad;
+            this.anillo = new String[Math.min(TAMANO_INICIAL, capacidad)];
+        }
+
+        // Función que agrega un mensaje al final; devuelve true si es el primer cambio desde la última publicación
+        boolean agregar(String mensaje) {
+            boolean primerCambio = !pendiente;
+            pendiente = true;
+            if (tamano == capacidad) {
+                anillo[inicio] = mensaje;
+                inicio = (inicio + 1) % anillo.length;
+                descartados++;
+                return primerCambio;
+            }
+            if (tamano == anillo.length) {
+                // Crece hasta la capacidad; los chats cortos no reservan el anillo completo
+                anillo = Arrays.copyOf(ordenados(), Math.min(capacidad, anillo.length * 2));
+                inicio = 0;
+            }
+            anillo[(inicio + tamano) % anillo.length] = mensaje;
+            tamano++;
+            return primerCambio;
+        }
+
+        private String[] ordenados() {
+            String[] copia = new String[tamano];
+            for (int i = 0; i < tamano; i++) {
+                copia[i] = anillo[(inicio + i) % anillo.length];
+            }
+            return copia;
+        }
+
+        // Método que avisa a la lista de lo que cambió desde la última publicación
+        void publicar() {
+            // De las filas que conocía la lista, las primeras quitadas ya no están; el resto se movió al principio
+            int quitadas = Math.min(descartados, tamanoPublicado);
+            int conservadas = tamanoPublicado - quitadas;
+            descartados = 0;
+            tamanoPublicado = tamano;
+            pendiente = false;
+            if (quitadas > 0) {
+                fireIntervalRemoved(this, 0, quitadas - 1);
+            }
+            if (tamano > conservadas) {
+                fireIntervalAdded(this, conservadas, tamano - 1);
+            }
+        }
+
+        @Override
+        public int getSize() {
+            return tamano;
+        }
+
+        @Override
+        public String getElementAt(int indice) {
+            return anillo[(inicio + indice) % anillo.length];
+        }
+    }
+}
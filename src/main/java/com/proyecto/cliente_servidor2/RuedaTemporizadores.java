@@ -0,0 +1,146 @@
+// Nombre del Programa: Rueda de Temporizadores
+// Descripción: Temporizadores para muchas conexiones con un solo hilo y sin una tarea programada por conexión
+// (rueda de temporizadores con dispersión). El tiempo avanza en tics fijos; la rueda tiene RANURAS ranuras y una tarea
+// que vence dentro de k tics se cuelga de la ranura (actual + k) % RANURAS, con las vueltas completas que le faltan.
+// En cada tic solo se recorre una ranura: programar y cancelar cuestan O(1) y cada tic cuesta lo que tenga su ranura
+// (con 100.000 conexiones y 512 ranuras, unas 200 tareas), en lugar de un montículo de O(log n) por operación.
+// Las tareas forman una lista doblemente enlazada dentro de su ranura, sin nodos aparte, así que reprogramarlas no crea
+// objetos. Se ejecutan en el hilo de la rueda y deben ser cortas (encolar un mensaje, cerrar una conexión).
+// Ejemplo: Con tics de 100 ms, una tarea a 30 s son 300 tics: queda en la ranura (actual + 300) % 512 con 0 vueltas.
+// Además, tic() sirve de reloj grueso: anotar la hora de un evento es leer un long, sin llamar a System.nanoTime().
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+final class RuedaTemporizadores {
+    private static final int RANURAS = 512; // Potencia de dos
+
+    private final long ticNanos;
+    private final Tarea[] ranuras = new Tarea[RANURAS]; // Primera tarea de cada ranura (con el candado de la rueda)
+    private final List<Tarea> vencidas = new ArrayList<>(); // Tareas del tic en curso (solo hilo de la rueda)
+    private final Thread hilo;
+    private volatile long tic; // Tics transcurridos desde que arrancó la rueda
+    private volatile boolean activa = true;
+    private int programadas; // Tareas colgadas de la rueda (con el candado)
+
+    RuedaTemporizadores(long ticMs) {
+        this.ticNanos = Math.max(1, ticMs) * 1_000_000;
+        this.hilo = new Thread(this::girar, "temporizadores");
+        hilo.setDaemon(true);
+        hilo.start();
+    }
+
+    // Tarea que se puede programar en la rueda; cada una está como mucho una vez (reprogramarla la mueve)
+    abstract static class Tarea {
+        private Tarea anterior; // Vecinos en la lista de su ranura
+        private Tarea siguiente;
+        private int ranura = -1; // Ranura en la que está, o -1 si no está programada
+        private long vueltas; // Vueltas completas de la rueda que faltan antes de vencer
+
+        // Método que se ejecuta en el hilo de la rueda cuando vence la tarea
+        abstract void vencer();
+    }
+
+    // Función que devuelve los tics transcurridos; sirve para anotar cuándo pasó algo sin leer el reloj del sistema
+    long tic() {
+        return tic;
+    }
+
+    long getTicNanos() {
+        return ticNanos;
+    }
+
+    // Función que convierte milisegundos a tics, redondeando hacia arriba (al menos 1)
+    long tics(long ms) {
+        return Math.max(1, (ms * 1_000_000 + ticNanos - 1) / ticNanos);
+    }
+
+    // Método que programa la tarea para dentro de "tics" tics; si ya estaba programada, la mueve
+    synchronized void programar(Tarea tarea, long tics) {
+        quitar(tarea);
+        long demora = Math.max(1, tics);
+        int ranura = (int) ((tic + demora) & (RANURAS - 1));
+        tarea.vueltas = (demora - 1) / RANURAS;
+        tarea.ranura = ranura;
+        tarea.anterior = null;
+        tarea.siguiente = ranuras[ranura];
+        if (tarea.siguiente != null) {
+            tarea.siguiente.anterior = tarea;
+        }
+        ranuras[ranura] = tarea;
+        programadas++;
+    }
+
+    // Método que quita la tarea de la rueda; si ya estaba venciendo en este tic, igual se ejecuta
+    synchronized void cancelar(Tarea tarea) {
+        quitar(tarea);
+    }
+
+    synchronized int cantidad() {
+        return programadas;
+    }
+
+    void detener() {
+        activa = false;
+        hilo.interrupt();
+    }
+
+    private void quitar(Tarea tarea) {
+        if (tarea.ranura < 0) {
+            return;
+        }
+        if (tarea.anterior != null) {
+            tarea.anterior.siguiente = tarea.siguiente;
+        } else {
+            ranuras[tarea.ranura] = tarea.siguiente;
+        }
+        if (tarea.siguiente != null) {
+            tarea.siguiente.anterior = tarea.anterior;
+        }
+        tarea.anterior = null;
+        tarea.siguiente = null;
+        tarea.ranura = -1;
+        programadas--;
+    }
+
+    // Bucle del hilo de la rueda: cada tic se compara con la hora de arranque, así que los retrasos no se acumulan
+    private void girar() {
+        long inicio = System.nanoTime();
+        while (activa) {
+            long espera = inicio + (tic + 1) * ticNanos - System.nanoTime();
+            if (espera > 0) {
+                LockSupport.parkNanos(espera);
+                continue;
+            }
+            tomarVencidas();
+            for (int i = 0; i < vencidas.size(); i++) {
+                try {
+                    vencidas.get(i).vencer();
+                } catch (RuntimeException e) {
+                    Bitacora.SERVIDOR.error("temporizadores", "error en una tarea de la rueda", e);
+                }
+            }
+            vencidas.clear();
+        }
+    }
+
+    // Método que avanza un tic y descuelga de su ranura las tareas sin vueltas pendientes (las ejecuta fuera del
+    // candado, para que puedan reprogramarse o cancelar otras)
+    private synchronized void tomarVencidas() {
+        tic++;
+        Tarea tarea = ranuras[(int) (tic & (RANURAS - 1))];
+        while (tarea != null) {
+            Tarea siguiente = tarea.siguiente;
+            if (tarea.vueltas == 0) {
+                quitar(tarea);
+                vencidas.add(tarea);
+            } else {
+                tarea.vueltas--;
+            }
+            tarea = siguiente;
+        }
+    }
+}
@@ -0,0 +1,261 @@
+// Nombre del Programa: Salas de Conversación en Grupo
+// Descripción: Guarda las salas y sus miembros, y reparte cada mensaje publicado en una sala a todos ellos.
+// Los miembros de cada sala están en un conjunto concurrente: comprobar si alguien es miembro no toma candados, y unirse
+// o salir solo bloquea la sala afectada y la entrada de la conexión en salasPorConexion: las dos anotaciones se hacen
+// dentro del mismo compute() de esa entrada, así que una conexión que se cierra mientras se une a una sala no queda
+// como miembro para siempre. Para repartir se usa una instantánea de los miembros ya dividida por carril, que solo se rehace después de
+// una entrada o salida. Cada conexión cae siempre en el mismo carril (un hilo por carril, tantos como reactores de E/S),
+// así que los mensajes de una sala llegan a cada miembro en el orden en que se publicaron.
+// Las salas pequeñas se reparten en el mismo hilo que recibió el mensaje; a partir de UMBRAL_PARALELO miembros, cada
+// carril reparte su parte en paralelo. Una sala que baja del umbral sigue pasando por los carriles mientras les quede
+// algún reparto suyo pendiente, para que un mensaje repartido en el acto no adelante a los anteriores.
+// La carga se codifica una sola vez y la comparten todos los miembros.
+// Protocolo de texto:
+// - "Unirse:sala": entra en la sala (la crea si no existe).
+// - "Salir:sala": sale de la sala (la sala desaparece cuando se queda vacía).
+// - "Sala:sala:texto": publica en una sala de la que se es miembro; todos, incluido el remitente,
+//   reciben "Sala:sala:remitente:texto".
+
+package com.proyecto.cliente_servidor2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class Salas {
+    static final String PREFIJO_UNIRSE = "Unirse:";
+    static final String PREFIJO_SALIR = "Salir:";
+    static final String PREFIJO_SALA = "Sala:";
+
+    // Miembros a partir de los cuales el reparto se divide entre los carriles
+    static final int UMBRAL_PARALELO = 1024;
+
+    private final ConcurrentHashMap<ClaveNombre, Sala> salas = new ConcurrentHashMap<>(); // nombre en bytes -> sala
+    private final ConcurrentHashMap<Conexion, Set<Sala>> salasPorConexion = new ConcurrentHashMap<>(); // Para salir de todas al desconectarse
+    private final ExecutorService[] carriles; // Un hilo por carril; cada conexión se reparte siempre en el mismo
+
+    Salas(int carriles) {
+        this.carriles = new ExecutorService[carriles];
+        for (int i = 0; i < carriles; i++) {
+            String nombre = "sala-reparto-" + i;
+            this.carriles[i] = Executors.newSingleThreadExecutor(tarea -> {
+                Thread hilo = new Thread(tarea, nombre);
+                hilo.setDaemon(true);
+                return hilo;
+            });
+        }
+    }
+
+    // Método que agrega la conexión a la sala, creándola si no existe. Todo pasa con la entrada de la conexión en
+    // salasPorConexion bloqueada: si la conexión ya se cerró (salirDeTodas ya pasó o está esperando), no se une.
+    void unirse(String nombre, Conexion conexion) {
+        salasPorConexion.compute(conexion, (c, propias) -> {
+            if (conexion.estaCerrada()) {
+                return propias;
+            }
+            // compute() hace atómicos crear la sala y agregar al miembro frente a la salida del último miembro
+            Sala unida = salas.compute(ClaveNombre.copia(nombre), (clave, sala) -> {
+                Sala actual = sala != null ? sala : new Sala(nombre, carriles.length);
+                actual.agregar(conexion);
+                return actual;
+            });
+            Set<Sala> anotadas = propias != null ? propias : ConcurrentHashMap.newKeySet();
+            anotadas.add(unida);
+            return anotadas;
+        });
+    }
+
+    // Método que quita la conexión de la sala; la sala se elimina si se queda vacía
+    void salir(String nombre, Conexion conexion) {
+        Sala sala = salas.get(ClaveNombre.copia(nombre));
+        if (sala != null) {
+            salasPorConexion.computeIfPresent(conexion, (c, propias) -> {
+                salir(sala, conexion);
+                propias.remove(sala);
+                return propias.isEmpty() ? null : propias;
+            });
+        }
+    }
+
+    // Método llamado al cerrarse la conexión: la quita de todas sus salas
+    void salirDeTodas(Conexion conexion) {
+        salasPorConexion.computeIfPresent(conexion, (c, propias) -> {
+            for (Sala sala : propias) {
+                salir(sala, conexion);
+            }
+            return null;
+        });
+    }
+
+    // Método que pasa a la nueva conexión las salas de la anterior (al reanudar una sesión), sin que nadie vea una salida
+    void trasladar(Conexion anterior, Conexion nueva) {
+        Set<Sala> propias = salasPorConexion.remove(anterior);
+        if (propias == null) {
+            return;
+        }
+        salasPorConexion.compute(nueva, (c, anotadas) -> {
+            Set<Sala> trasladadas = anotadas != null ? anotadas : ConcurrentHashMap.newKeySet();
+            for (Sala sala : propias) {
+                salas.computeIfPresent(sala.clave, (clave, actual) -> {
+                    actual.agregar(nueva);
+                    actual.quitar(anterior);
+                    trasladadas.add(actual);
+                    return actual;
+                });
+            }
+            return trasladadas.isEmpty() ? null : trasladadas;
+        });
+    }
+
+    private void salir(Sala sala, Conexion conexion) {
+        salas.computeIfPresent(sala.clave, (clave, actual) -> {
+            actual.quitar(conexion);
+            return actual.vacia() ? null : actual;
+        });
+    }
+
+    // Función que devuelve cuántas salas existen
+    int cantidad() {
+        return salas.size();
+    }
+
+    // Función que busca una sala con los bytes de su nombre sin crear un String; devuelve null si no existe
+    Sala buscar(ClaveNombre clave) {
+        return salas.get(clave);
+    }
+
+    // Función que busca una sala por nombre; devuelve null si no existe
+    Sala buscar(String nombre) {
+        return salas.get(ClaveNombre.copia(nombre));
+    }
+
+    // Método que deja la carga en la cola de cada miembro. Ningún miembro espera sitio en su cola (con la política
+    // CONTRAPRESION, un miembro lento pierde el mensaje en lugar de frenar el reparto a los demás).
+    void repartir(Sala sala, Carga carga) {
+        long inicio = System.nanoTime();
+        Conexion[][] porCarril = sala.instantanea();
+        int miembros = 0;
+        int tramos = 0;
+        for (Conexion[] tramo : porCarril) {
+            miembros += tramo.length;
+            tramos += tramo.length > 0 ? 1 : 0;
+        }
+        Metricas.SALAS_PUBLICADOS.increment();
+        Metricas.SALAS_ENTREGAS.add(miembros);
+        if (miembros < UMBRAL_PARALELO && sala.enCarriles.get() == 0) {
+            for (Conexion[] tramo : porCarril) {
+                encolarTramo(tramo, carga);
+            }
+            Metricas.DIFUSION_SALA.registrar(System.nanoTime() - inicio);
+            return;
+        }
+        // El último carril en terminar registra la duración de todo el reparto
+        AtomicInteger pendientes = new AtomicInteger(tramos);
+        sala.enCarriles.addAndGet(tramos);
+        for (int i = 0; i < porCarril.length; i++) {
+            Conexion[] tramo = porCarril[i];
+            if (tramo.length > 0) {
+                carriles[i].execute(() -> {
+                    encolarTramo(tramo, carga);
+                    sala.enCarriles.decrementAndGet();
+                    if (pendientes.decrementAndGet() == 0) {
+                        Metricas.DIFUSION_SALA.registrar(System.nanoTime() - inicio);
+                    }
+                });
+            }
+        }
+    }
+
+    private static void encolarTramo(Conexion[] tramo, Carga carga) {
+        for (Conexion miembro : tramo) {
+            miembro.encolar(carga, false);
+        }
+    }
+
+    void detener() {
+        for (ExecutorService carril : carriles) {
+            carril.shutdownNow();
+        }
+    }
+
+    // Sala con su conjunto concurrente de miembros y la instantánea que se usa para repartir
+    static final class Sala {
+        private final String nombre;
+        private final byte[] nombreBytes; // Nombre en UTF-8, para armar las cargas sin convertirlo cada vez
+        private final ClaveNombre clave;
+        private final int carriles;
+        private final Set<Conexion> miembros = ConcurrentHashMap.newKeySet();
+        private volatile Conexion[][] porCarril; // Instantánea de los miembros por carril (null después de un cambio)
+        private final AtomicInteger enCarriles = new AtomicInteger(); // Tramos de esta sala que los carriles aún no repartieron
+
+        Sala(String nombre, int carriles) {
+            this.nombre = nombre;
+            this.nombreBytes = nombre.getBytes(StandardCharsets.UTF_8);
+            this.clave = ClaveNombre.copia(nombre);
+            this.carriles = carriles;
+        }
+
+        String nombre() {
+            return nombre;
+        }
+
+        byte[] nombreBytes() {
+            return nombreBytes;
+        }
+
+        boolean esMiembro(Conexion conexion) {
+            return miembros.contains(conexion);
+        }
+
+        int tamano() {
+            return miembros.size();
+        }
+
+        private synchronized void agregar(Conexion conexion) {
+            if (miembros.add(conexion)) {
+                porCarril = null;
+            }
+        }
+
+        private synchronized void quitar(Conexion conexion) {
+            if (miembros.remove(conexion)) {
+                porCarril = null;
+            }
+        }
+
+        private boolean vacia() {
+            return miembros.isEmpty();
+        }
+
+        // Función que devuelve los miembros divididos por carril; solo se rehace (con el candado de la sala, para que no
+        // se mezcle con una entrada o salida) cuando cambió la membresía
+        private Conexion[][] instantanea() {
+            Conexion[][] actual = porCarril;
+            if (actual != null) {
+                return actual;
+            }
+            synchronized (this) {
+                if (porCarril == null) {
+                    List<List<Conexion>> tramos = new ArrayList<>(carriles);
+                    for (int i = 0; i < carriles; i++) {
+                        tramos.add(new ArrayList<>());
+                    }
+                    for (Conexion miembro : miembros) {
+                        tramos.get((System.identityHashCode(miembro) & Integer.MAX_VALUE) % carriles).add(miembro);
+                    }
+                    Conexion[][] nueva = new Conexion[carriles][];
+                    for (int i = 0; i < carriles; i++) {
+                        nueva[i] = tramos.get(i).toArray(new Conexion[0]);
+                    }
+                    porCarril = nueva;
+                }
+                return porCarril;
+            }
+        }
+    }
+}
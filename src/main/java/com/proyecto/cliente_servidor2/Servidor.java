@@ -8,126 +8,649 @@
 // Librerías usadas:
 // - java.io: Para manejar las entradas y salidas a través de las conexiones de red.
 // - java.net: Para manejar las conexiones de red mediante sockets.
-// - java.util: Para gestionar las colecciones de clientes y sus respectivas conexiones.
+// - java.nio: Para atender muchas conexiones con pocos hilos (motor NIO con Selector).
+// - java.util.concurrent: Para el registro concurrente de clientes y sus respectivas conexiones (RegistroClientes).
+// - java.nio.charset: Para decodificar el texto de las tramas del protocolo binario.
+// Protocolos: texto ("Privado:destinatario:texto") o binario con tramas, negociado con la línea "Modo:binario"
+// justo después del nombre (ver ProtocoloBinario). Los clientes de texto siguen funcionando sin cambios.
+// Motores de conexiones (propiedad servidor.motor):
+// - nio: Bucle de eventos con Selector y un reactor por núcleo (MotorNio).
+// - virtual: Un hilo virtual por cliente con E/S bloqueante (MotorHilosVirtuales).
+// Mensajes a clientes desconectados: si se configura servidor.diario.directorio, se guardan en un diario en disco
+// (DiarioMensajes) y se entregan cuando el destinatario se vuelve a registrar; si no, se descartan como antes.
+// Historial: los últimos mensajes de cada conversación quedan en memoria (HistorialConversaciones) y el cliente los pide
+// con "Historial:otro:N[:cursor]" al abrir una ventana de chat.
+// Salas: "Unirse:sala", "Salir:sala" y "Sala:sala:texto" para conversar en grupo (ver Salas).
+// Clúster: si se configura servidor.cluster.puerto, varios servidores comparten quién está conectado en cada nodo y se
+// reenvían los mensajes privados cuyo destinatario está en otro nodo (ver Cluster).
+// Sesiones: un cliente que pide "Sesion:nueva" puede reconectar con "Reanudar:<token>:<recibidos>" sin que los demás
+// lo vean salir y entrar, y recibe los mensajes que se perdió (ver Sesiones).
+// Latidos: el servidor envía "Ping" a las conexiones en silencio y cierra las que no responden (ver Latidos); estos
+// temporizadores y los de las sesiones comparten una RuedaTemporizadores.
+// Control de admisión: límite global de conexiones y de conexiones nuevas por IP al aceptar, y límite de mensajes por
+// usuario al leer; lo rechazado recibe una línea "Error:motivo" y se cuenta en las métricas (ver ControlAdmision).
+// TLS: si se configura servidor.tls.almacen, ambos motores cifran las conexiones con un SSLEngine por conexión
+// (TransporteTls); las reconexiones reanudan la sesión con un ticket y se saltan el saludo completo (ver ContextoTls).
+// Drenado: drenar() apaga el servidor sin provocar una tormenta de reconexiones. Deja de aceptar, envía a cada conexión
+// "Reconectar:<ms>" con una espera al azar dentro de servidor.drenado.ventanaMs y espera (hasta servidor.drenado.plazoMs)
+// a que los clientes cierren: el aviso va detrás de todo lo que ya estaba en su cola, así que un cliente que lo leyó ya
+// recibió lo pendiente. Mientras tanto las salidas no se anuncian a los demás (todos se van) y las sesiones no esperan
+// la gracia (no sobreviven al reinicio). Al arrancar, Precalentamiento carga los nombres guardados al drenar y compila
+// el camino de ruteo antes de abrir el puerto.
+// Bitácora: los eventos (conexiones, registros, errores) se escriben en segundo plano sin bloquear el ruteo (ver Bitacora).
+// Métricas: al arrancar con ClienteServidor2Application, exportarMetricas() se publica en http://127.0.0.1:9100/metrics.
 
 package com.proyecto.cliente_servidor2;
 
 import java.io.*;
-import java.net.*;
-import java.util.*;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 public class Servidor {
-    // Mapa para mantener los clientes y sus conexiones
-    private static Map<String, PrintWriter> clientes = new HashMap<>();
+    private static final byte[] PREFIJO_PRIVADO = "Privado:".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] PREFIJO_SALA = Salas.PREFIJO_SALA.getBytes(StandardCharsets.UTF_8);
+    private static final int MAXIMO_HISTORIAL = 200; // Mensajes por página de historial como máximo
+    static final String PREFIJO_RECONECTAR = "Reconectar:";
+    private static final long ESPERA_DRENADO_MS = 10; // Cada cuánto se revisa si los clientes ya cerraron
+
+    // Registro concurrente de los clientes y sus conexiones
+    private final RegistroClientes clientes = new RegistroClientes();
+    // Identificadores numéricos de los nombres para el protocolo binario
+    private final TablaIds ids;
+    // Clientes conectados a los demás nodos del clúster (vacío si el servidor trabaja solo)
+    private final DirectorioCluster directorio = new DirectorioCluster();
+
+    private final ConfiguracionServidor configuracion; // Parámetros de arranque (puerto, motor, reactores)
+    private final Presencia presencia; // Envía la lista inicial y los deltas de entradas y salidas
+    private MotorConexiones motor; // Motor que acepta los sockets y mueve los bytes
+    private DiarioMensajes diario; // Mensajes para clientes desconectados (null si no hay directorio configurado)
+    private final HistorialConversaciones historial; // Últimos mensajes de cada conversación
+    private final Salas salas; // Salas de conversación en grupo y sus miembros
+    private final Sesiones sesiones; // Sesiones reanudables de los clientes que las pidieron
+    private final RuedaTemporizadores rueda; // Temporizadores de todas las conexiones y sesiones
+    private final Latidos latidos; // Pings y cierre de las conexiones inactivas
+    private final ControlAdmision admision; // Límites de conexiones y de mensajes
+    private ContextoTls tls; // Certificado y sesiones TLS de los clientes (null si se usa texto plano)
+    private Cluster cluster; // Enlaces con los demás nodos (null si no hay puerto de clúster configurado)
+    private volatile boolean detenido; // Al detener no se reenvía la lista por cada conexión cerrada
+    private volatile boolean drenando; // Al drenar las salidas no se anuncian y las sesiones no esperan la gracia
+
+    public Servidor(ConfiguracionServidor configuracion) {
+        this.configuracion = configuracion;
+        this.historial = new HistorialConversaciones(configuracion.getBytesHistorial(), configuracion.getBytesPorConversacion());
+        this.ids = new TablaIds(configuracion.getMaximoIds(), this::nombreEnUso, historial::olvidar);
+        this.presencia = new Presencia(clientes, ids, directorio, configuracion.getVentanaPresenciaMs());
+        this.salas = new Salas(configuracion.getReactores());
+        this.rueda = new RuedaTemporizadores(configuracion.getTicTemporizadoresMs());
+        this.latidos = new Latidos(rueda, configuracion.getIntervaloLatidoMs(), configuracion.getInactividadMs());
+        this.sesiones = new Sesiones(configuracion.getRetransmisionSesion(), configuracion.getGraciaSesionMs(), rueda,
+                this::guardarDeSesionVencida);
+        this.admision = new ControlAdmision(configuracion, rueda);
+        Bitacora.SERVIDOR.setNivel(configuracion.getNivelLog());
+    }
 
     public static void main(String[] args) {
         try {
-            // Crea un servidor socket que escucha en el puerto 8080
-            ServerSocket servidorSocket = new ServerSocket(8080);
-            System.out.println("Servidor iniciado. Esperando clientes...");
-
-            // Bucle infinito para aceptar múltiples conexiones de clientes
-            while (true) {
-                // Acepta la conexión de un cliente
-                Socket socket = servidorSocket.accept();
-                System.out.println("Cliente conectado.");
-
-                // Crea un nuevo hilo para manejar la comunicación con el cliente
-                new ClienteHandler(socket).start();
+            // Crea el servidor con el motor de conexiones configurado (por defecto NIO en el puerto 8080)
+            Servidor servidor = new Servidor(ConfiguracionServidor.desdePropiedades());
+            int puerto = servidor.iniciar();
+            // Al terminar el proceso (Ctrl+C, kill) se drena en lugar de cortar todas las conexiones a la vez
+            Runtime.getRuntime().addShutdownHook(new Thread(servidor::drenar, "drenado"));
+            Bitacora.SERVIDOR.info("inicio", "esperando clientes en el puerto " + puerto);
+        } catch (IOException e) {
+            Bitacora.SERVIDOR.error("inicio", "no se pudo iniciar el servidor", e);
+            Bitacora.SERVIDOR.vaciar(1000);
+        }
+    }
+
+    // Método que arranca el motor de conexiones; devuelve el puerto en el que escucha. El puerto se abre después del
+    // precalentamiento, así que el servidor enruta a velocidad normal desde el primer cliente
+    public int iniciar() throws IOException {
+        if (configuracion.getArchivoNombres() != null) {
+            int nombres = Precalentamiento.cargarNombres(Path.of(configuracion.getArchivoNombres()), ids, clientes);
+            Bitacora.SERVIDOR.info("precalentamiento", nombres + " nombres conocidos");
+        }
+        Precalentamiento.compilar(configuracion);
+        if (configuracion.getDirectorioDiario() != null) {
+            diario = DiarioMensajes.abrir(configuracion, clientes, ids);
+        }
+        if (configuracion.getPuertoCluster() >= 0) {
+            cluster = new Cluster(this, configuracion, clientes, ids, directorio, presencia);
+            cluster.iniciar();
+        }
+        if (configuracion.getAlmacenTls() != null) {
+            tls = ContextoTls.servidor(configuracion.getAlmacenTls(), configuracion.getClaveTls());
+        }
+        if (ConfiguracionServidor.MOTOR_VIRTUAL.equals(configuracion.getMotor())) {
+            motor = new MotorHilosVirtuales(this, configuracion);
+        } else {
+            motor = new MotorNio(this, configuracion);
+        }
+        return motor.iniciar();
+    }
+
+    ConfiguracionServidor getConfiguracion() {
+        return configuracion;
+    }
+
+    Salas getSalas() {
+        return salas;
+    }
+
+    ControlAdmision getAdmision() {
+        return admision;
+    }
+
+    Latidos getLatidos() {
+        return latidos;
+    }
+
+    // Función que devuelve el contexto TLS de las conexiones de los clientes, o null si van en texto plano
+    ContextoTls getTls() {
+        return tls;
+    }
+
+    RuedaTemporizadores getRueda() {
+        return rueda;
+    }
+
+    // Función del bucle de aceptación de los motores: indica si se atiende el socket nuevo. Si no, le envía el motivo
+    // ("Error:...") y lo cierra, sin llegar a crear su conexión. Una conexión admitida llama a conexionCerrada() al cerrarse.
+    // Con TLS el motivo va en texto plano antes del saludo: el cliente no lo puede leer y solo ve que el saludo falla.
+    boolean admitir(SocketChannel canal) {
+        String rechazo;
+        try {
+            rechazo = admision.admitir(((InetSocketAddress) canal.getRemoteAddress()).getAddress());
+        } catch (IOException e) {
+            rechazo = ""; // El socket ya se cerró
+        }
+        if (rechazo == null) {
+            return true;
+        }
+        try (canal) {
+            if (!rechazo.isEmpty()) {
+                canal.write(StandardCharsets.UTF_8.encode(rechazo + "\n"));
             }
         } catch (IOException e) {
-            e.printStackTrace();
+            // El cliente ya no está; solo importa cerrar el socket
         }
+        return false;
+    }
+
+    // Método que los motores llaman al cerrar el socket de una conexión admitida
+    void conexionCerrada() {
+        admision.liberar();
     }
 
-    // Clase interna que maneja la comunicación con el cliente
-    private static class ClienteHandler extends Thread {
-        private Socket socket;
-        private PrintWriter salidaCliente;
-        private String nombreCliente;
+    // Función que devuelve el puerto real de los enlaces del clúster, o -1 si el servidor trabaja solo
+    public int getPuertoCluster() {
+        return cluster != null ? cluster.getPuerto() : -1;
+    }
 
-        // Constructor que recibe el socket del cliente
-        public ClienteHandler(Socket socket) {
-            this.socket = socket;
+    // Método que apaga el servidor ordenadamente (ver Drenado en el encabezado); devuelve cuántas conexiones seguían
+    // abiertas al vencer el plazo, que se cierran de golpe con detener()
+    public int drenar() {
+        if (motor == null || detenido) {
+            detener();
+            return 0;
+        }
+        drenando = true;
+        motor.dejarDeAceptar();
+        Bitacora.SERVIDOR.info("drenado", admision.abiertas() + " conexiones abiertas");
+        if (configuracion.getArchivoNombres() != null) {
+            Precalentamiento.guardarNombres(Path.of(configuracion.getArchivoNombres()), clientes.instantanea());
+        }
+        ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+        for (Conexion conexion : motor.conexiones()) {
+            conexion.enviar(PREFIJO_RECONECTAR + aleatorio.nextLong(configuracion.getVentanaDrenadoMs() + 1));
+        }
+        long limite = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(configuracion.getPlazoDrenadoMs());
+        try {
+            while (admision.abiertas() > 0 && System.nanoTime() - limite < 0) {
+                Thread.sleep(ESPERA_DRENADO_MS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int restantes = admision.abiertas();
+        if (restantes > 0) {
+            Bitacora.SERVIDOR.aviso("drenado", null, restantes + " conexiones no cerraron a tiempo");
         }
+        detener();
+        return restantes;
+    }
 
-        @Override
-        public void run() {
-            try {
-                // Prepara el input y output para comunicación
-                BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                salidaCliente = new PrintWriter(socket.getOutputStream(), true);
+    // Método que detiene el motor y cierra todas las conexiones
+    public void detener() {
+        detenido = true;
+        if (motor != null) {
+            motor.detener();
+        }
+        if (cluster != null) {
+            cluster.detener();
+        }
+        presencia.detener();
+        salas.detener();
+        sesiones.detener();
+        rueda.detener();
+        if (diario != null) {
+            diario.detener();
+        }
+        Bitacora.SERVIDOR.vaciar(1000);
+    }
 
-                // Leer el nombre del cliente
-                nombreCliente = entrada.readLine();
-                System.out.println("Cliente registrado con el nombre: " + nombreCliente);
+    // Método que procesa una línea recibida como bytes. Los mensajes privados de clientes registrados, que son casi todo
+    // el tráfico, se enrutan directamente desde los bytes; el resto de líneas se convierte a String.
+    void procesarLinea(Conexion conexion, byte[] linea, int largo) {
+        admision.admitirMensaje(conexion);
+        if (conexion.getNombreCliente() != null && empiezaCon(linea, largo, PREFIJO_PRIVADO)) {
+            long inicio = conexion.tocaMedir() ? System.nanoTime() : 0;
+            int separador = buscarSeparador(linea, PREFIJO_PRIVADO.length, largo);
+            if (separador < 0) {
+                return;
+            }
+            ClaveNombre clave = conexion.getClaveBusqueda().apuntar(linea, PREFIJO_PRIVADO.length,
+                    separador - PREFIJO_PRIVADO.length);
+            Integer id = ids.buscar(clave);
+            if (id == null) {
+                return; // Nadie ha usado nunca ese nombre
+            }
+            Conexion destinatario = clientes.buscarPorId(id);
+            if (destinatario != null) {
+                entregar(conexion, destinatario,
+                        CargaPrivada.obtener(conexion, linea, separador + 1, largo - separador - 1), inicio);
+            } else if (!reenviarARemoto(conexion, id, linea, separador + 1, largo - separador - 1)) {
+                guardarParaDesconectado(conexion, id, linea, separador + 1, largo - separador - 1);
+            }
+            return;
+        }
+        if (conexion.getNombreCliente() != null && empiezaCon(linea, largo, PREFIJO_SALA)) {
+            publicarEnSala(conexion, linea, largo);
+            return;
+        }
+        procesarLinea(conexion, new String(linea, 0, largo, StandardCharsets.UTF_8));
+    }
 
-                // Añadir el cliente a la lista de clientes conectados
-                synchronized (clientes) {
-                    clientes.put(nombreCliente, salidaCliente);
-                    actualizarClientesConectados();
-                }
+    // Método que procesa cada línea recibida de un cliente; la primera línea es su nombre
+    void procesarLinea(Conexion conexion, String mensaje) {
+        if (CompresionSalida.LINEA_NEGOCIACION.equals(mensaje)) {
+            // Se acepta antes o después del nombre, pero no una vez pasada la salida a tramas
+            if (!conexion.leeEnBinario() && conexion.pedirCompresion()) {
+                conexion.encolar(Carga.CAMBIO_A_COMPRESION);
+            }
+        } else if (Latidos.LINEA_PONG.equals(mensaje)) {
+            // Nada más que hacer: la conexión ya anotó la actividad al recibirla
+        } else if (Latidos.LINEA_PING.equals(mensaje)) {
+            conexion.encolar(Latidos.PONG);
+        } else if (conexion.getNombreCliente() == null) {
+            if (Sesiones.LINEA_PEDIR.equals(mensaje)) {
+                conexion.pedirSesion();
+            } else if (mensaje.startsWith(Sesiones.PREFIJO_REANUDAR)) {
+                reanudarSesion(conexion, mensaje);
+            } else {
+                registrarCliente(conexion, mensaje);
+            }
+        } else if (mensaje.startsWith("Privado:")) {
+            enviarMensajePrivado(conexion, mensaje);
+        } else if (mensaje.startsWith(HistorialConversaciones.PREFIJO_PETICION)) {
+            enviarHistorial(conexion, mensaje);
+        } else if (mensaje.startsWith(Salas.PREFIJO_UNIRSE)) {
+            salas.unirse(mensaje.substring(Salas.PREFIJO_UNIRSE.length()), conexion);
+        } else if (mensaje.startsWith(Salas.PREFIJO_SALIR)) {
+            salas.salir(mensaje.substring(Salas.PREFIJO_SALIR.length()), conexion);
+        } else if (mensaje.startsWith(Salas.PREFIJO_SALA)) {
+            // Llega así de los clientes en modo binario (trama TEXTO)
+            byte[] bytes = mensaje.getBytes(StandardCharsets.UTF_8);
+            publicarEnSala(conexion, bytes, bytes.length);
+        } else if (mensaje.startsWith(Conexion.PREFIJO_COALESCENCIA)) {
+            conexion.setCoalescencia(!"off".equals(mensaje.substring(Conexion.PREFIJO_COALESCENCIA.length())));
+        } else if (ProtocoloBinario.LINEA_NEGOCIACION.equals(mensaje)) {
+            cambiarABinario(conexion);
+        } else if (Bitacora.SERVIDOR.activo(Bitacora.Nivel.DEPURAR) && Bitacora.muestra(configuracion.getMuestreoLog())) {
+            Bitacora.SERVIDOR.depurar("mensaje", conexion.getNombreCliente(), conexion.getPar(), mensaje.length(), mensaje);
+        }
+    }
 
-                // Leer y procesar mensajes del cliente
-                String mensaje;
-                while ((mensaje = entrada.readLine()) != null) {
-                    if (mensaje.startsWith("Privado:")) {
-                        enviarMensajePrivado(mensaje);
-                    } else {
-                        System.out.println("Mensaje recibido: " + mensaje);
+    // Método que procesa cada trama recibida de un cliente en modo binario
+    void procesarTrama(Conexion conexion, byte codigo, ByteBuffer datos) {
+        admision.admitirMensaje(conexion);
+        switch (codigo) {
+            case ProtocoloBinario.PRIVADO -> {
+                int id = datos.getInt();
+                Conexion destinatario = clientes.buscarPorId(id);
+                if (destinatario != null) {
+                    entregar(conexion, destinatario, CargaPrivada.obtener(conexion, datos), 0);
+                } else if (ids.nombre(id) != null) {
+                    byte[] mensaje = new byte[datos.remaining()];
+                    datos.get(mensaje);
+                    if (!reenviarARemoto(conexion, id, mensaje, 0, mensaje.length)) {
+                        guardarParaDesconectado(conexion, id, mensaje, 0, mensaje.length);
                     }
                 }
+            }
+            case ProtocoloBinario.TEXTO -> procesarLinea(conexion, StandardCharsets.UTF_8.decode(datos).toString());
+            default -> Bitacora.SERVIDOR.aviso("trama_desconocida", conexion.getNombreCliente(), "codigo " + codigo);
+        }
+    }
 
-                // Cuando el cliente se desconecta, lo eliminamos de la lista
-                synchronized (clientes) {
-                    clientes.remove(nombreCliente);
-                    actualizarClientesConectados();
-                }
+    // Método que atiende la negociación del modo binario: confirma con la misma línea y envía la lista con identificadores
+    private void cambiarABinario(Conexion conexion) {
+        if (conexion.leeEnBinario()) {
+            return;
+        }
+        conexion.leerEnBinario();
+        conexion.encolar(Carga.CAMBIO_A_BINARIO);
+        presencia.enviarLista(conexion);
+    }
+
+    // Método que registra el nombre del cliente y avisa a todos
+    private void registrarCliente(Conexion conexion, String nombreCliente) {
+        conexion.setNombreCliente(nombreCliente);
+        conexion.setIdCliente(ids.id(nombreCliente));
+        Bitacora.SERVIDOR.info("registro", nombreCliente, conexion.getPar());
+
+        // La sesión se crea antes de registrar al cliente para que todos los mensajes que reciba queden numerados
+        if (conexion.sesionPedida()) {
+            conexion.enviar(Sesiones.PREFIJO_SESION + sesiones.crear(conexion).token());
+        }
+
+        // Añadir el cliente a la lista de clientes conectados; él recibe la lista completa y los demás un delta
+        clientes.registrar(nombreCliente, conexion);
+        presencia.alta(conexion);
+        if (cluster != null) {
+            cluster.anunciar(nombreCliente);
+        }
+
+        // Entregar en un solo lote los mensajes que recibió mientras estaba desconectado
+        if (diario != null) {
+            diario.entregarPendientes(nombreCliente, conexion);
+        }
+    }
+
+    // Método que atiende "Reanudar:<token>:<recibidos>" en lugar del nombre: la nueva conexión toma el lugar de la
+    // anterior en el registro y en las salas sin avisar a nadie, y recibe la lista completa y los mensajes que le faltan.
+    // Si la sesión ya no existe, responde "Sesion:expirada" y espera el nombre como en un registro normal.
+    private void reanudarSesion(Conexion conexion, String mensaje) {
+        int separador = mensaje.lastIndexOf(':');
+        long recibidos;
+        try {
+            recibidos = Math.max(0, Long.parseLong(mensaje.substring(separador + 1)));
+        } catch (NumberFormatException e) {
+            recibidos = 0;
+        }
+        String token = separador > Sesiones.PREFIJO_REANUDAR.length()
+                ? mensaje.substring(Sesiones.PREFIJO_REANUDAR.length(), separador) : "";
+        Conexion anterior = sesiones.reanudar(token, recibidos, conexion);
+        if (anterior == null) {
+            conexion.enviar(Sesiones.LINEA_EXPIRADA);
+            return;
+        }
+        String nombreCliente = conexion.getNombreCliente();
+        Bitacora.SERVIDOR.info("reanudacion", nombreCliente, conexion.getPar());
+        clientes.registrar(nombreCliente, conexion);
+        salas.trasladar(anterior, conexion);
+        presencia.enviarLista(conexion);
+        // Si el servidor aún no había notado el corte, la conexión anterior se cierra ahora; como ya no es la de la
+        // sesión, su cierre no da de baja a nadie
+        anterior.cerrar();
+    }
+
+    // Método llamado por la conexión al cerrarse; elimina al cliente de la lista. Si el cliente tiene sesión, la baja se
+    // aplaza hasta que venza la gracia sin que la reanude.
+    void clienteDesconectado(Conexion conexion) {
+        String nombreCliente = conexion.getNombreCliente();
+        Bitacora.SERVIDOR.info("desconexion", nombreCliente, conexion.getPar());
+        latidos.olvidar(conexion);
+        if (nombreCliente != null && !detenido && !drenando && sesiones.aplazarBaja(conexion, () -> darDeBaja(conexion))) {
+            return;
+        }
+        darDeBaja(conexion);
+    }
 
-                // Cerrar las conexiones
-                entrada.close();
-                salidaCliente.close();
-                socket.close();
-                System.out.println("Cliente desconectado.");
-            } catch (IOException e) {
-                e.printStackTrace();
+    // Método que saca al cliente de sus salas y del registro, y avisa a los demás de su salida
+    private void darDeBaja(Conexion conexion) {
+        String nombreCliente = conexion.getNombreCliente();
+        if (nombreCliente != null) {
+            salas.salirDeTodas(conexion);
+        }
+        if (nombreCliente != null && !detenido) {
+            // Solo se elimina si el nombre no lo ha vuelto a registrar otra conexión
+            if (clientes.eliminar(nombreCliente, conexion)) {
+                if (!drenando) {
+                    presencia.baja(nombreCliente);
+                }
+                if (cluster != null) {
+                    cluster.anunciar(nombreCliente);
+                }
             }
         }
+    }
 
-        // Método para enviar un mensaje privado a otro cliente
-        private void enviarMensajePrivado(String mensaje) {
-            String[] partes = mensaje.split(":");
-            String destinatario = partes[1];
-            String textoMensaje = partes[2];
+    // Método para enviar un mensaje privado a otro cliente ("Privado:destinatario:texto"; el texto puede contener ':')
+    private void enviarMensajePrivado(Conexion remitente, String mensaje) {
+        int separador = mensaje.indexOf(':', "Privado:".length());
+        if (separador < 0) {
+            return;
+        }
+        String destinatario = mensaje.substring("Privado:".length(), separador);
+        String textoMensaje = mensaje.substring(separador + 1);
+        enrutarPrivado(remitente, destinatario, textoMensaje);
+    }
 
-            // Obtener el PrintWriter del cliente destinatario
-            PrintWriter salidaDestinatario;
-            synchronized (clientes) {
-                salidaDestinatario = clientes.get(destinatario);
+    // Método que entrega el mensaje al destinatario y el eco al remitente, compartiendo la misma carga
+    private void enrutarPrivado(Conexion remitente, String destinatario, String textoMensaje) {
+        // Obtener la conexión del cliente destinatario (sin candados)
+        Conexion salidaDestinatario = clientes.buscar(destinatario);
+        byte[] bytes = textoMensaje.getBytes(StandardCharsets.UTF_8);
+        if (salidaDestinatario != null) {
+            entregar(remitente, salidaDestinatario, CargaPrivada.obtener(remitente, bytes, 0, bytes.length), 0);
+        } else if (ids.conoce(destinatario)) {
+            int id = ids.id(destinatario);
+            if (!reenviarARemoto(remitente, id, bytes, 0, bytes.length)) {
+                guardarParaDesconectado(remitente, id, bytes, 0, bytes.length);
             }
+        }
+    }
+
+    // Método que deja la carga en la cola del destinatario y en la del remitente (eco). Si el mensaje se mide, inicio es
+    // el instante en que se empezó a analizar la línea (0 si no se mide).
+    private void entregar(Conexion remitente, Conexion destinatario, CargaPrivada carga, long inicio) {
+        long encontrado = 0;
+        if (inicio != 0) {
+            encontrado = System.nanoTime();
+            Metricas.RUTEO_ANALISIS.registrar(encontrado - inicio);
+            carga.marcar(encontrado);
+        }
+        Metricas.MENSAJES_ENRUTADOS.increment();
+        // Se anota antes de encolar: una vez escrita en ambas colas, la carga se puede reutilizar
+        historial.agregar(remitente.getIdCliente(), destinatario.getIdCliente(), carga.bytesTexto(), carga.inicioMensaje(),
+                carga.largoMensaje());
+        carga.retener(2);
+        destinatario.encolar(carga);
+        remitente.encolar(carga); // También envía al remitente
+        if (inicio != 0) {
+            Metricas.RUTEO_ENTREGA.registrar(System.nanoTime() - encontrado);
+        }
+    }
+
+    // Método que publica "Sala:sala:texto" en una sala de la que el remitente es miembro; la carga se arma una sola vez
+    // con los bytes de la línea y se reparte a todos los miembros (y a los demás nodos del clúster)
+    private void publicarEnSala(Conexion remitente, byte[] linea, int largo) {
+        int separador = buscarSeparador(linea, PREFIJO_SALA.length, largo);
+        if (separador < 0) {
+            return;
+        }
+        Salas.Sala sala = salas.buscar(remitente.getClaveBusqueda().apuntar(linea, PREFIJO_SALA.length,
+                separador - PREFIJO_SALA.length));
+        if (sala == null || !sala.esMiembro(remitente)) {
+            return; // Solo los miembros publican en una sala
+        }
+        salas.repartir(sala, new CargaSala(sala.nombreBytes(), remitente.getNombreBytes(), remitente.getIdCliente(),
+                linea, separador + 1, largo - separador - 1));
+        if (cluster != null) {
+            cluster.difundirSala(sala.nombreBytes(), remitente.getNombreBytes(), linea, separador + 1, largo - separador - 1);
+        }
+    }
+
+    // Método que reparte a los miembros locales de una sala un mensaje publicado en otro nodo del clúster
+    void recibirMensajeSala(String nombreSala, String remitente, byte[] mensaje, int desde, int largo) {
+        Salas.Sala sala = salas.buscar(nombreSala);
+        if (sala != null) {
+            salas.repartir(sala, new CargaSala(sala.nombreBytes(), remitente.getBytes(StandardCharsets.UTF_8),
+                    ids.id(remitente), mensaje, desde, largo));
+        }
+    }
+
+    // Función que reenvía el mensaje al nodo del clúster donde está el destinatario y envía el eco al remitente;
+    // devuelve false si el destinatario no está conectado a ningún otro nodo
+    private boolean reenviarARemoto(Conexion remitente, int idDestinatario, byte[] mensaje, int desde, int largo) {
+        if (cluster == null || !cluster.reenviar(ids.nombre(idDestinatario), remitente.getNombreBytes(), mensaje, desde, largo)) {
+            return false;
+        }
+        Metricas.MENSAJES_ENRUTADOS.increment();
+        CargaPrivada eco = CargaPrivada.obtener(remitente, mensaje, desde, largo);
+        historial.agregar(remitente.getIdCliente(), idDestinatario, mensaje, desde, largo);
+        eco.retener(1);
+        remitente.encolar(eco);
+        return true;
+    }
+
+    // Método que entrega a un cliente local un mensaje privado reenviado por otro nodo del clúster
+    void recibirReenvio(String remitente, String destinatario, byte[] mensaje, int desde, int largo) {
+        int idRemitente = ids.id(remitente);
+        byte[] nombreRemitente = remitente.getBytes(StandardCharsets.UTF_8);
+        Conexion conexion = clientes.buscar(destinatario);
+        if (conexion != null) {
+            CargaPrivada carga = CargaPrivada.obtener(nombreRemitente, idRemitente, mensaje, desde, largo);
+            historial.agregar(idRemitente, conexion.getIdCliente(), mensaje, desde, largo);
+            carga.retener(1);
+            conexion.encolar(carga);
+        } else {
+            // Se desconectó mientras el mensaje viajaba: se guarda en este nodo como para cualquier desconectado
+            guardarParaDesconectado(idRemitente, nombreRemitente, ids.id(destinatario), mensaje, desde, largo);
+        }
+    }
+
+    // Método para un mensaje cuyo destinatario conocido no está conectado: queda en el historial y, si hay diario,
+    // se guarda para entregárselo al volver
+    private void guardarParaDesconectado(Conexion remitente, int idDestinatario, byte[] mensaje, int desde, int largo) {
+        guardarParaDesconectado(remitente.getIdCliente(), remitente.getNombreBytes(), idDestinatario, mensaje, desde, largo);
+    }
+
+    private void guardarParaDesconectado(int idRemitente, byte[] nombreRemitente, int idDestinatario, byte[] mensaje,
+            int desde, int largo) {
+        Metricas.MENSAJES_ENRUTADOS.increment();
+        historial.agregar(idRemitente, idDestinatario, mensaje, desde, largo);
+        if (diario != null) {
+            diario.guardar(ids.nombre(idDestinatario), nombreRemitente, mensaje, desde, largo);
+        }
+    }
+
+    // Función que indica si el identificador del nombre se tiene que conservar: el cliente está conectado aquí (o en la
+    // gracia de su sesión) o en otro nodo, o tiene mensajes guardados en el diario
+    private boolean nombreEnUso(String nombre) {
+        DiarioMensajes diarioActual = diario;
+        return clientes.buscar(nombre) != null || directorio.nodo(nombre) != null
+                || (diarioActual != null && diarioActual.tienePendientes(nombre));
+    }
+
+    // Método que guarda en el diario un mensaje que quedó sin entregar en una sesión vencida (ya está en el historial)
+    private void guardarDeSesionVencida(String destinatario, CargaPrivada carga) {
+        if (diario != null) {
+            diario.guardar(destinatario, carga.nombreRemitente(), carga.bytesTexto(), carga.inicioMensaje(), carga.largoMensaje());
+        }
+    }
+
+    // Método que responde "Historial:otro:N[:cursor]" con los mensajes de la conversación y la línea de fin con el cursor
+    // de la página anterior
+    private void enviarHistorial(Conexion conexion, String peticion) {
+        String[] partes = peticion.substring(HistorialConversaciones.PREFIJO_PETICION.length()).split(":");
+        if (partes.length < 2) {
+            return;
+        }
+        String otro = partes[0];
+        int cantidad;
+        long cursor;
+        try {
+            cantidad = Integer.parseInt(partes[1]);
+            cursor = partes.length > 2 ? Long.parseLong(partes[2]) : 0;
+        } catch (NumberFormatException e) {
+            return;
+        }
+        // Sin pasar de lo que cabe en la cola de salida, para que la página no desplace otros mensajes
+        cantidad = Math.min(Math.min(cantidad, MAXIMO_HISTORIAL), conexion.getSalida().sitioLibre() - 1);
+        HistorialConversaciones.Pagina pagina = ids.conoce(otro)
+                ? historial.leer(conexion.getIdCliente(), ids.id(otro), cantidad, cursor)
+                : new HistorialConversaciones.Pagina(List.of(), 0);
+        for (HistorialConversaciones.Entrada entrada : pagina.entradas()) {
+            conexion.enviar(HistorialConversaciones.PREFIJO_PETICION + otro + ":" + entrada.secuencia() + ":"
+                    + ids.nombre(entrada.idRemitente()) + ":" + new String(entrada.texto(), StandardCharsets.UTF_8));
+        }
+        conexion.enviar(HistorialConversaciones.PREFIJO_FIN + otro + ":" + pagina.cursorAnterior());
+    }
 
-            // Enviar el mensaje al destinatario y al remitente
-            if (salidaDestinatario != null) {
-                salidaDestinatario.println("Privado:" + nombreCliente + ":" + textoMensaje);
-                salidaCliente.println("Privado:" + nombreCliente + ":" + textoMensaje); // También envía al remitente
+    // Función que devuelve las métricas globales más las del estado actual del servidor (clientes, salas y la
+    // distribución de mensajes pendientes en las colas de salida) en formato de texto de Prometheus
+    public String exportarMetricas() {
+        StringBuilder texto = new StringBuilder(Metricas.exportar());
+        Metricas.medidor(texto, "chat_clientes_conectados", "Clientes registrados en este nodo", clientes.tamano());
+        Metricas.medidor(texto, "chat_salas", "Salas con al menos un miembro", salas.cantidad());
+        Metricas.medidor(texto, "chat_sesiones", "Sesiones reanudables abiertas", sesiones.cantidad());
+        Metricas.medidor(texto, "chat_conexiones_abiertas", "Conexiones admitidas que siguen abiertas", admision.abiertas());
+        Metricas.medidor(texto, "chat_temporizadores", "Tareas programadas en la rueda de temporizadores", rueda.cantidad());
+        if (diario != null) {
+            Metricas.medidor(texto, "chat_diario_cola", "Operaciones esperando al hilo del diario", diario.profundidad());
+        }
+        // Una serie por conexión no escala con miles de clientes: se exporta cuántas colas hay en cada rango de tamaño
+        long[] limites = {0, 1, 4, 16, 64, 256};
+        long[] conteos = new long[limites.length + 1];
+        long suma = 0;
+        for (Conexion conexion : clientes.instantanea()) {
+            int pendientes = conexion.getSalida().profundidad();
+            suma += pendientes;
+            int i = 0;
+            while (i < limites.length && pendientes > limites[i]) {
+                i++;
             }
+            conteos[i]++;
+        }
+        texto.append("# HELP chat_cola_salida_pendientes Mensajes pendientes en la cola de salida de cada conexion\n");
+        texto.append("# TYPE chat_cola_salida_pendientes histogram\n");
+        long acumulado = 0;
+        for (int i = 0; i <= limites.length; i++) {
+            acumulado += conteos[i];
+            String limite = i < limites.length ? Long.toString(limites[i]) : "+Inf";
+            texto.append("chat_cola_salida_pendientes_bucket{le=\"").append(limite).append("\"} ").append(acumulado).append('\n');
         }
+        texto.append("chat_cola_salida_pendientes_sum ").append(suma).append('\n');
+        texto.append("chat_cola_salida_pendientes_count ").append(acumulado).append('\n');
+        return texto.toString();
+    }
 
-        // Método para actualizar la lista de clientes conectados
-        private void actualizarClientesConectados() {
-            StringBuilder listaClientes = new StringBuilder("Clientes conectados:");
-            synchronized (clientes) {
-                for (String cliente : clientes.keySet()) {
-                    listaClientes.append(cliente).append(", ");
-                }
+    private static boolean empiezaCon(byte[] linea, int largo, byte[] prefijo) {
+        if (largo < prefijo.length) {
+            return false;
+        }
+        for (int i = 0; i < prefijo.length; i++) {
+            if (linea[i] != prefijo[i]) {
+                return false;
             }
+        }
+        return true;
+    }
 
-            // Enviar la lista de clientes conectados a todos
-            synchronized (clientes) {
-                for (PrintWriter cliente : clientes.values()) {
-                    cliente.println(listaClientes.toString());
-                }
+    private static int buscarSeparador(byte[] linea, int desde, int largo) {
+        for (int i = desde; i < largo; i++) {
+            if (linea[i] == ':') {
+                return i;
             }
         }
+        return -1;
     }
 }
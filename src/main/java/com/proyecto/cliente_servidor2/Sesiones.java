@@ -0,0 +1,285 @@
+// Nombre del Programa: Sesiones Reanudables
+// Descripción: Permite que un cliente que pierde la conexión vuelva sin perder mensajes y sin que los demás vean que
+// salió y volvió a entrar. El cliente pide una sesión con "Sesion:nueva" antes de su nombre y recibe "Sesion:<token>".
+// Desde ahí, cada mensaje que se le entrega (privados, incluido el eco de los suyos, y de salas) lleva un número de
+// secuencia implícito: el servidor los cuenta al encolarlos y el cliente al recibirlos, en el mismo orden. Para que las
+// dos cuentas coincidan, la cola de una conexión con sesión nunca descarta nada, sea cual sea servidor.salida.politica:
+// si se llena, la conexión se cierra como si se hubiera caído, y al reanudar el anillo repite lo que no llegó.
+// Los últimos servidor.sesion.retransmision mensajes quedan retenidos en un anillo de la sesión.
+// Si la conexión se cae, el cliente sigue registrado durante servidor.sesion.graciaMs: los mensajes que le llegan en
+// ese tiempo solo se guardan en el anillo. Al reconectar, el cliente envía "Reanudar:<token>:<recibidos>" en lugar de
+// su nombre; el servidor confirma con "Sesion:<token>", le vuelve a enviar solo a él la lista completa y repite los
+// mensajes posteriores a <recibidos>. La repetición va al ritmo del escritor: se encola lo que cabe y el resto se repone
+// desde el anillo a medida que la cola se vacía; mientras tanto los mensajes nuevos solo se guardan en el anillo, detrás
+// de los que faltan por repetir. Si la sesión ya venció (o no existe), responde "Sesion:expirada" y el cliente se
+// registra de nuevo como siempre. Al vencer la gracia, el cliente sale como en una desconexión normal, y los mensajes
+// privados del anillo que el escritor nunca llegó a pasar al socket (los que llegaron durante la gracia y los que
+// quedaban en la cola al caer la conexión) se guardan en el diario como para cualquier desconectado; el cliente los
+// recibe al volver a registrarse. Lo que ya estaba en el socket al caer se da por entregado.
+// Los vencimientos de la gracia son tareas de la rueda de temporizadores del servidor, no una tarea programada aparte
+// por cada conexión caída.
+// Ejemplo: ana recibió 40 mensajes y se cae su Wi-Fi; luis le envía 3 más. Ana vuelve a los 2 segundos con
+// "Reanudar:<token>:40" y recibe los mensajes 41 a 43; nadie recibe "Presencia:-ana" ni "Presencia:+ana".
+
+package com.proyecto.cliente_servidor2;
+
+import java.security.SecureRandom;
+import java.util.HexFormat;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+
+class Sesiones {
+    static final String PREFIJO_SESION = "Sesion:";
+    static final String LINEA_PEDIR = "Sesion:nueva";
+    static final String LINEA_EXPIRADA = "Sesion:expirada";
+    static final String PREFIJO_REANUDAR = "Reanudar:";
+
+    private final ConcurrentHashMap<String, Sesion> sesiones = new ConcurrentHashMap<>(); // token -> sesión
+    private final SecureRandom aleatorio = new SecureRandom();
+    private final int retransmision;
+    private final RuedaTemporizadores rueda;
+    private final long gracia; // Tics de la rueda
+    private final BiConsumer<String, CargaPrivada> guardarPendiente; // Destinatario y mensaje sin entregar al vencer
+
+    Sesiones(int retransmision, long graciaMs, RuedaTemporizadores rueda, BiConsumer<String, CargaPrivada> guardarPendiente) {
+        this.retransmision = Math.max(1, retransmision);
+        this.rueda = rueda;
+        this.gracia = rueda.tics(graciaMs);
+        this.guardarPendiente = guardarPendiente;
+    }
+
+    // Función que crea una sesión para la conexión recién registrada; desde aquí sus mensajes se numeran
+    Sesion crear(Conexion conexion) {
+        byte[] bytes = new byte[16];
+        aleatorio.nextBytes(bytes);
+        Sesion sesion = new Sesion(HexFormat.of().formatHex(bytes), conexion, retransmision);
+        sesiones.put(sesion.token, sesion);
+        conexion.setSesion(sesion);
+        return sesion;
+    }
+
+    // Función que pasa la sesión a la nueva conexión y le encola la confirmación y los mensajes posteriores a
+    // "recibidos"; devuelve la conexión anterior de la sesión, o null si la sesión no existe o ya venció
+    Conexion reanudar(String token, long recibidos, Conexion nueva) {
+        Sesion sesion = sesiones.get(token);
+        if (sesion == null) {
+            return null;
+        }
+        Conexion anterior;
+        synchronized (sesion) {
+            if (sesion.terminada) {
+                return null;
+            }
+            if (sesion.vencimiento != null) {
+                rueda.cancelar(sesion.vencimiento);
+                sesion.vencimiento = null;
+            }
+            anterior = sesion.actual;
+            nueva.setNombreCliente(anterior.getNombreCliente());
+            nueva.setIdCliente(anterior.getIdCliente());
+            nueva.setSesion(sesion);
+            sesion.cambiarConexion(nueva);
+            // Con el candado de la sesión, ningún mensaje nuevo se cuela entre la confirmación y los repetidos
+            nueva.encolarEnCola(Carga.linea(PREFIJO_SESION + token), nueva.puedeEsperarSitio());
+            long perdidos = sesion.repetirDesde(recibidos, nueva);
+            if (perdidos > 0) {
+                Bitacora.SERVIDOR.aviso("reanudacion_incompleta", nueva.getNombreCliente(),
+                        perdidos + " mensajes ya no estaban en el anillo");
+            }
+        }
+        Metricas.SESIONES_REANUDADAS.increment();
+        return anterior;
+    }
+
+    // Función llamada cuando se cierra una conexión con sesión: aplaza la baja del cliente durante la gracia y devuelve
+    // true; si la sesión ya pasó a otra conexión, no hay nada que dar de baja y también devuelve true.
+    // Devuelve false si la conexión no tiene sesión (la baja se hace en el momento, como siempre).
+    boolean aplazarBaja(Conexion conexion, Runnable baja) {
+        Sesion sesion = conexion.getSesion();
+        if (sesion == null) {
+            return false;
+        }
+        synchronized (sesion) {
+            if (sesion.actual == conexion && !sesion.terminada) {
+                sesion.vencimiento = new Vencimiento(sesion, conexion, baja);
+                rueda.programar(sesion.vencimiento, gracia);
+            }
+        }
+        return true;
+    }
+
+    // Método que termina la sesión si nadie la reanudó durante la gracia, guarda en el diario los mensajes que no se
+    // llegaron a escribir y da de baja al cliente
+    private void vencer(Sesion sesion, Conexion conexion, Runnable baja) {
+        synchronized (sesion) {
+            if (sesion.actual != conexion || sesion.terminada) {
+                return;
+            }
+            long perdidos = sesion.guardarPendientes(guardarPendiente);
+            if (perdidos > 0) {
+                Bitacora.SERVIDOR.aviso("sesion_vencida", conexion.getNombreCliente(),
+                        perdidos + " mensajes sin entregar ya no estaban en el anillo");
+            }
+            sesion.terminar();
+        }
+        sesiones.remove(sesion.token, sesion);
+        Metricas.SESIONES_VENCIDAS.increment();
+        baja.run();
+    }
+
+    int cantidad() {
+        return sesiones.size();
+    }
+
+    void detener() {
+        for (Sesion sesion : sesiones.values()) {
+            synchronized (sesion) {
+                sesion.terminar();
+            }
+        }
+        sesiones.clear();
+    }
+
+    // Tarea de la rueda que da de baja al cliente si la gracia termina sin que nadie reanude la sesión
+    private final class Vencimiento extends RuedaTemporizadores.Tarea {
+        private final Sesion sesion;
+        private final Conexion conexion;
+        private final Runnable baja;
+
+        private Vencimiento(Sesion sesion, Conexion conexion, Runnable baja) {
+            this.sesion = sesion;
+            this.conexion = conexion;
+            this.baja = baja;
+        }
+
+        @Override
+        void vencer() {
+            Sesiones.this.vencer(sesion, conexion, baja);
+        }
+    }
+
+    // Sesión de un cliente: su conexión actual y los últimos mensajes que se le encolaron, numerados desde 1
+    static final class Sesion {
+        private final String token;
+        private final Carga[] anillo; // El mensaje número n está en anillo[(n - 1) % largo]
+        private Conexion actual; // Conexión que recibe los mensajes (puede estar cerrada durante la gracia)
+        private long enviados; // Mensajes numerados hasta ahora
+        private long encolados; // Número del último mensaje que pasó a la cola de la conexión actual
+        private volatile boolean atrasada; // Quedan mensajes del anillo por pasar a la cola (encolados < enviados)
+        private long previosActual; // Número del último mensaje anterior al primero que se encoló en la conexión actual
+        private long escritosAlCambiar; // Mensajes reenviables que la conexión actual ya había escrito al pasar a ella
+        private Vencimiento vencimiento; // Baja pendiente mientras la conexión está caída
+        private boolean terminada;
+
+        private Sesion(String token, Conexion conexion, int retransmision) {
+            this.token = token;
+            this.anillo = new Carga[retransmision];
+            cambiarConexion(conexion);
+        }
+
+        // Método que pasa los mensajes siguientes a otra conexión (con el candado de la sesión)
+        private void cambiarConexion(Conexion conexion) {
+            actual = conexion;
+            escritosAlCambiar = conexion.getReenviablesEscritos();
+        }
+
+        String token() {
+            return token;
+        }
+
+        // Método que numera la carga, la retiene en el anillo y la deja en la cola de la conexión actual. Llegue por la
+        // conexión que llegue (la anterior o la nueva), todo pasa por aquí, así que el orden del anillo es el de la cola.
+        // Nunca espera sitio con el candado tomado (CONTRAPRESION): frenaría a los demás remitentes y a Reanudar.
+        // Mientras la conexión está atrasada repitiendo mensajes, la carga solo queda en el anillo y se encola después.
+        synchronized void encolar(Carga carga) {
+            if (terminada) {
+                actual.encolarEnCola(carga, false);
+                return;
+            }
+            int posicion = (int) (enviados % anillo.length);
+            if (anillo[posicion] != null) {
+                anillo[posicion].liberar();
+            }
+            carga.retener(1);
+            anillo[posicion] = carga;
+            enviados++;
+            if (atrasada) {
+                carga.liberar(); // La referencia de la cola: se vuelve a tomar al reponerla
+                return;
+            }
+            encolados = enviados;
+            actual.encolarEnCola(carga, false);
+        }
+
+        boolean isAtrasada() {
+            return atrasada;
+        }
+
+        // Método que llama el escritor de la conexión antes de tomar más cargas (avisar false, porque él mismo las toma
+        // a continuación): si está atrasada, pasa a la cola los siguientes mensajes del anillo que quepan
+        synchronized void reponer(Conexion conexion, boolean avisar) {
+            if (conexion != actual || terminada) {
+                return;
+            }
+            long hueco = enviados - anillo.length; // Los mensajes hasta este número ya no están en el anillo
+            if (encolados < hueco) {
+                Bitacora.SERVIDOR.aviso("reanudacion_incompleta", conexion.getNombreCliente(),
+                        (hueco - encolados) + " mensajes ya no estaban en el anillo");
+                previosActual += hueco - encolados; // El escritor ya no los va a escribir
+                encolados = hueco;
+            }
+            long caben = conexion.getSalida().sitioLibre() - 1; // Sitio para una línea que no pasa por la sesión
+            long antes = encolados;
+            while (caben-- > 0 && encolados < enviados) {
+                Carga carga = anillo[(int) (encolados % anillo.length)];
+                encolados++;
+                carga.retener(1);
+                conexion.encolarSinAvisar(carga, false);
+                Metricas.MENSAJES_REENVIADOS.increment();
+            }
+            atrasada = encolados < enviados;
+            if (avisar && encolados > antes) {
+                conexion.hayDatosParaEnviar();
+            }
+        }
+
+        // Función que vuelve a encolar los mensajes posteriores a "recibidos" que sigan en el anillo: los que caben ahora
+        // y el resto a medida que el escritor vacíe la cola (reponer()); devuelve cuántos ya no se pudieron repetir (con
+        // el candado de la sesión)
+        private long repetirDesde(long recibidos, Conexion conexion) {
+            long primero = Math.max(recibidos + 1, enviados - anillo.length + 1);
+            previosActual = primero - 1; // La conexión nueva recibe desde aquí
+            encolados = primero - 1;
+            atrasada = encolados < enviados;
+            reponer(conexion, true);
+            return Math.max(0, primero - (recibidos + 1));
+        }
+
+        // Función que pasa a "guardar" los mensajes privados del anillo que el escritor de la conexión actual no llegó a
+        // pasar al socket, sin los ecos de los mensajes del propio cliente (que no se guardan para un desconectado); los
+        // de salas se descartan como para cualquier cliente que ya no es miembro. Devuelve cuántos mensajes sin
+        // escribir ya no estaban en el anillo (con el candado de la sesión)
+        private long guardarPendientes(BiConsumer<String, CargaPrivada> guardar) {
+            long escritos = previosActual + actual.getReenviablesEscritos() - escritosAlCambiar;
+            long primero = Math.max(escritos + 1, enviados - anillo.length + 1);
+            for (long numero = primero; numero <= enviados; numero++) {
+                if (anillo[(int) ((numero - 1) % anillo.length)] instanceof CargaPrivada privada
+                        && privada.getIdRemitente() != actual.getIdCliente()) {
+                    guardar.accept(actual.getNombreCliente(), privada);
+                }
+            }
+            return Math.max(0, primero - (escritos + 1));
+        }
+
+        // Método que suelta los mensajes retenidos (con el candado de la sesión)
+        private void terminar() {
+            terminada = true;
+            for (int i = 0; i < anillo.length; i++) {
+                if (anillo[i] != null) {
+                    anillo[i].liberar();
+                    anillo[i] = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+// Nombre del Programa: Tabla de Identificadores de Clientes
+// Descripción: Asigna a cada nombre de cliente un número entero. El protocolo binario envía ese número en lugar
+// del nombre en cada mensaje, y los clientes lo traducen con la lista y los deltas de presencia, que sí llevan el nombre.
+// Mientras el nombre está en uso, su número no cambia: un cliente que se reconecta con el mismo nombre conserva su
+// identificador. También se puede buscar el identificador con los bytes UTF-8 del nombre (ClaveNombre), sin crear un
+// String.
+// Reclamación: los nombres que llegan por el clúster, el diario o el precalentamiento (o cualquier nombre nuevo que se
+// registra) ocupan un número aunque no vuelvan nunca. Cuando la tabla pasa de servidor.ids.maximo números y no quedan
+// libres, se reclaman los de los nombres que ya no están en uso (ni conectados aquí ni en otro nodo, ni con mensajes en
+// el diario) y que nadie pidió desde la reclamación anterior; sus conversaciones del historial se olvidan. Un número
+// reclamado pasa una reclamación entera en cuarentena antes de reutilizarse, para que un hilo que lo acababa de buscar
+// no le entregue un mensaje al nuevo dueño. Si no hay nada que reclamar, la tabla sigue creciendo: el máximo decide
+// cuándo reclamar, no rechaza nombres. Las reclamaciones se espacian (al menos una cuarta parte del máximo o tantos
+// nombres nuevos como nombres vivos), así que cuestan O(1) amortizado por nombre nuevo.
+
+package com.proyecto.cliente_servidor2;
+
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+class TablaIds {
+    private final ConcurrentHashMap<String, Asignacion> idsPorNombre = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, String> nombresPorId = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<ClaveNombre, Integer> idsPorBytes = new ConcurrentHashMap<>();
+    private final AtomicInteger siguiente = new AtomicInteger(1);
+    private final ConcurrentLinkedQueue<Integer> libres = new ConcurrentLinkedQueue<>(); // Reclamados tras su cuarentena
+    private final AtomicInteger nuevos = new AtomicInteger(); // Nombres nuevos desde la última reclamación
+    private final int maximo; // Números con los que se empieza a reclamar
+    private final Predicate<String> enUso; // Indica si un nombre sigue en uso y no se puede reclamar
+    private final Consumer<BitSet> olvidar; // Borra del historial las conversaciones de los números reclamados
+    private volatile int epoca; // Reclamaciones hechas; cada asignación anota la última en la que se pidió
+    private volatile int intervalo; // Nombres nuevos que tienen que llegar entre dos reclamaciones
+    private BitSet enCuarentena = new BitSet(); // Reclamados en la última reclamación (con el candado de la tabla)
+
+    // Número asignado a un nombre y época en la que se pidió por última vez
+    private static final class Asignacion {
+        private final int numero;
+        private volatile int epoca;
+
+        Asignacion(int numero, int epoca) {
+            this.numero = numero;
+            this.epoca = epoca;
+        }
+    }
+
+    // Tabla que nunca reclama números (pruebas y benchmarks)
+    TablaIds() {
+        this(Integer.MAX_VALUE, nombre -> true, reclamados -> {
+        });
+    }
+
+    TablaIds(int maximo, Predicate<String> enUso, Consumer<BitSet> olvidar) {
+        this.maximo = maximo;
+        this.enUso = enUso;
+        this.olvidar = olvidar;
+        this.intervalo = Math.max(1, maximo / 4);
+    }
+
+    // Función que devuelve el identificador del nombre, asignándolo la primera vez que se ve. Los otros dos mapas se
+    // llenan dentro de compute: cuando otro hilo ve el nombre, ya se puede buscar por sus bytes y por su número.
+    // Anota la época, dentro del mismo compute que usa la reclamación, para que el nombre no se reclame mientras quien
+    // lo pidió todavía lo está usando.
+    int id(String nombre) {
+        Asignacion asignacion = idsPorNombre.get(nombre);
+        if (asignacion != null && asignacion.epoca == epoca) {
+            return asignacion.numero;
+        }
+        if (asignacion == null && tocaReclamar()) {
+            reclamar();
+        }
+        return idsPorNombre.compute(nombre, (n, actual) -> {
+            if (actual == null) {
+                actual = new Asignacion(asignar(), epoca);
+                nombresPorId.put(actual.numero, n);
+                idsPorBytes.put(ClaveNombre.copia(n), actual.numero);
+            } else {
+                actual.epoca = epoca;
+            }
+            return actual;
+        }).numero;
+    }
+
+    // Función que busca el identificador a partir de los bytes del nombre; devuelve null si el nombre no se ha visto
+    Integer buscar(ClaveNombre clave) {
+        return idsPorBytes.get(clave);
+    }
+
+    // Función que indica si el nombre ya tiene identificador (algún cliente lo usó o tiene mensajes guardados)
+    boolean conoce(String nombre) {
+        return idsPorNombre.containsKey(nombre);
+    }
+
+    // Función que devuelve el nombre de un identificador, o null si no existe
+    String nombre(int id) {
+        return nombresPorId.get(id);
+    }
+
+    int tamano() {
+        return idsPorNombre.size();
+    }
+
+    // Función que da un número libre que ya pasó su cuarentena o, si no hay, uno nuevo
+    private int asignar() {
+        nuevos.incrementAndGet();
+        Integer libre = libres.poll();
+        return libre != null ? libre : siguiente.getAndIncrement();
+    }
+
+    private boolean tocaReclamar() {
+        return libres.isEmpty() && siguiente.get() > maximo && nuevos.get() >= intervalo;
+    }
+
+    // Método que reclama los números de los nombres que no están en uso ni se pidieron desde la reclamación anterior,
+    // y libera los que estaban en cuarentena
+    private synchronized void reclamar() {
+        if (!tocaReclamar()) {
+            return; // Otro hilo acaba de reclamar
+        }
+        int anterior = epoca;
+        epoca = anterior + 1;
+        BitSet reclamados = new BitSet();
+        for (String nombre : idsPorNombre.keySet()) {
+            idsPorNombre.computeIfPresent(nombre, (n, asignacion) -> {
+                if (asignacion.epoca >= anterior || enUso.test(n)) {
+                    return asignacion;
+                }
+                nombresPorId.remove(asignacion.numero);
+                idsPorBytes.remove(ClaveNombre.copia(n));
+                reclamados.set(asignacion.numero);
+                return null;
+            });
+        }
+        // Se olvidan las conversaciones de los recién reclamados y, otra vez, las de la cuarentena: un mensaje que
+        // estaba en camino al reclamarlos pudo anotar una conversación después
+        BitSet olvidados = (BitSet) reclamados.clone();
+        olvidados.or(enCuarentena);
+        olvidar.accept(olvidados);
+        enCuarentena.stream().forEach(libres::add);
+        Metricas.IDS_RECLAMADOS.add(reclamados.cardinality());
+        Bitacora.SERVIDOR.info("ids", reclamados.cardinality() + " identificadores reclamados, "
+                + enCuarentena.cardinality() + " vuelven a estar libres");
+        enCuarentena = reclamados;
+        nuevos.set(0);
+        intervalo = Math.max(Math.max(1, maximo / 4), idsPorNombre.size());
+    }
+}
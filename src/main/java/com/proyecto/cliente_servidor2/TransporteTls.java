@@ -0,0 +1,185 @@
+// Nombre del Programa: Transporte TLS de una Conexión
+// Descripción: Cifra y descifra los bytes de una conexión con su SSLEngine sin cambiar cómo el motor mueve los bytes:
+// el motor lee del socket a su propio buffer y llama a descifrar(), y el texto plano llega a Conexion.recibir() igual
+// que sin TLS; para escribir, el motor llena un lote de texto plano con llenar() y lo pasa por cifrar().
+// Lo que el SSLEngine necesita enviar por su cuenta (el saludo, el ticket de sesión) lo pide durante descifrar() con
+// Salida.enviarSaludo(), y el motor lo escribe con generarSaludo() antes que cualquier dato.
+// - Memoria: una conexión ociosa solo guarda su SSLEngine. Un registro recibido a medias se copia a un buffer prestado
+//   de PoolBuffers.REGISTROS_TLS hasta que llega el resto (si la conexión se cierra antes, se deja al recolector); el
+//   texto plano pasa por un buffer del motor (uno por reactor en NIO).
+// - Las tareas del saludo (verificar el ClientHello, firmar) se ejecutan en el mismo hilo: con una clave EC son cortas,
+//   y los saludos reanudados con un ticket no firman nada.
+// - Cada lote se cifra de una vez (un buffer de PoolBuffers.SALIDA cabe en uno o dos registros), así que el costo de
+//   cifrar se paga por lote y no por mensaje. La duración de los saludos y de cada cifrado y descifrado va a
+//   Metricas.
+// Ejemplo: al reconectar con un ticket, el servidor recibe el ClientHello y responde ServerHello y Finished sin
+// certificado ni firma; el cliente envía su Finished y su primera línea en el mismo viaje.
+
+package com.proyecto.cliente_servidor2;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+final class TransporteTls {
+    private static final ByteBuffer VACIO = ByteBuffer.allocate(0); // Origen de los wrap del saludo (no tiene datos)
+
+    // Quien escribe en el socket lo que el SSLEngine genera durante el saludo (con generarSaludo())
+    interface Salida {
+        void enviarSaludo() throws IOException;
+    }
+
+    private final SSLEngine motor;
+    private final Salida salida;
+    private ByteBuffer resto; // Registro recibido a medias, en modo escritura (null si no hay; solo el hilo lector)
+    private long inicioSaludo; // Instante en que llegó el primer byte del saludo
+    private volatile boolean saludoTerminado; // Hasta entonces el escritor no cifra datos
+
+    TransporteTls(SSLEngine motor, Salida salida) {
+        this.motor = motor;
+        this.salida = salida;
+    }
+
+    boolean isSaludoTerminado() {
+        return saludoTerminado;
+    }
+
+    // Función que descifra los registros completos de "red" y entrega su texto plano a la conexión, usando "plano" (vacío
+    // y de al menos un registro) de intermedio; un registro incompleto se guarda hasta la siguiente lectura.
+    // Devuelve false si el cliente cerró la sesión TLS.
+    boolean descifrar(ByteBuffer red, ByteBuffer plano, Conexion conexion) throws IOException {
+        if (inicioSaludo == 0) {
+            inicioSaludo = System.nanoTime();
+        }
+        while (resto != null) {
+            // Se completa el registro guardado con lo recién leído; en el buffer cabe un registro entero, y lo que
+            // sobre después de él vuelve a quedar guardado
+            int cabe = Math.min(resto.remaining(), red.remaining());
+            resto.put(resto.position(), red, red.position(), cabe);
+            resto.position(resto.position() + cabe);
+            red.position(red.position() + cabe);
+            resto.flip();
+            if (!desenvolver(resto, plano, conexion)) {
+                return false;
+            }
+            if (!resto.hasRemaining()) {
+                PoolBuffers.REGISTROS_TLS.devolver(resto);
+                resto = null;
+            } else if (resto.position() == 0 && resto.limit() == resto.capacity()) {
+                throw new SSLException("Registro TLS más grande que " + resto.capacity() + " bytes");
+            } else {
+                resto.compact();
+                if (!red.hasRemaining()) {
+                    return true;
+                }
+            }
+        }
+        if (!desenvolver(red, plano, conexion)) {
+            return false;
+        }
+        if (red.hasRemaining()) {
+            resto = PoolBuffers.REGISTROS_TLS.tomar();
+            resto.put(red);
+        }
+        return true;
+    }
+
+    // Función que descifra registros mientras estén completos; devuelve false si la sesión TLS se cerró
+    private boolean desenvolver(ByteBuffer red, ByteBuffer plano, Conexion conexion) throws IOException {
+        while (red.hasRemaining()) {
+            long inicio = saludoTerminado ? System.nanoTime() : 0;
+            SSLEngineResult resultado = motor.unwrap(red, plano);
+            if (plano.position() > 0) {
+                if (inicio != 0) {
+                    Metricas.TLS_DESCIFRADO.registrar(System.nanoTime() - inicio);
+                }
+                plano.flip();
+                conexion.recibir(plano);
+                plano.clear();
+            }
+            switch (resultado.getStatus()) {
+                case CLOSED -> {
+                    return false;
+                }
+                case BUFFER_UNDERFLOW -> {
+                    return true; // Falta el resto del registro
+                }
+                case BUFFER_OVERFLOW -> throw new SSLException("El buffer de texto plano es menor que un registro TLS");
+                default -> atender(resultado.getHandshakeStatus());
+            }
+            if (resultado.bytesConsumed() == 0 && resultado.bytesProduced() == 0) {
+                return true;
+            }
+        }
+        atender(motor.getHandshakeStatus());
+        return true;
+    }
+
+    // Método que hace avanzar el saludo: ejecuta las tareas del SSLEngine y envía lo que pida
+    private void atender(HandshakeStatus estado) throws IOException {
+        while (true) {
+            switch (estado) {
+                case NEED_TASK -> ejecutarTareas();
+                case FINISHED -> terminarSaludo();
+                case NEED_WRAP -> {
+                    salida.enviarSaludo();
+                    if (motor.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+                        throw new SSLException("No se pudo enviar el saludo TLS");
+                    }
+                }
+                default -> {
+                    return;
+                }
+            }
+            estado = motor.getHandshakeStatus();
+        }
+    }
+
+    // Función que escribe en "red" lo que el SSLEngine necesita enviar durante el saludo; devuelve true si escribió algo
+    boolean generarSaludo(ByteBuffer red) throws SSLException {
+        int inicio = red.position();
+        while (motor.getHandshakeStatus() == HandshakeStatus.NEED_WRAP) {
+            SSLEngineResult resultado = motor.wrap(VACIO, red);
+            if (resultado.getStatus() != SSLEngineResult.Status.OK) {
+                break; // Sin sitio en el buffer (se sigue en la siguiente escritura) o sesión cerrada
+            }
+            if (resultado.getHandshakeStatus() == HandshakeStatus.NEED_TASK) {
+                ejecutarTareas();
+            } else if (resultado.getHandshakeStatus() == HandshakeStatus.FINISHED) {
+                terminarSaludo();
+            }
+        }
+        return red.position() > inicio;
+    }
+
+    // Método que cifra un lote de texto plano (como mucho un buffer de PoolBuffers.SALIDA) en "red", un buffer vacío de
+    // PoolBuffers.REGISTROS_TLS
+    void cifrar(ByteBuffer plano, ByteBuffer red) throws SSLException {
+        long inicio = System.nanoTime();
+        while (plano.hasRemaining()) {
+            SSLEngineResult resultado = motor.wrap(plano, red);
+            if (resultado.getStatus() != SSLEngineResult.Status.OK || resultado.bytesConsumed() == 0) {
+                throw new SSLException("No se pudo cifrar el lote: " + resultado.getStatus());
+            }
+        }
+        Metricas.TLS_CIFRADO.registrar(System.nanoTime() - inicio);
+    }
+
+    private void ejecutarTareas() {
+        Runnable tarea;
+        while ((tarea = motor.getDelegatedTask()) != null) {
+            tarea.run();
+        }
+    }
+
+    private void terminarSaludo() {
+        if (!saludoTerminado) {
+            saludoTerminado = true;
+            Metricas.TLS_SALUDOS.increment();
+            Metricas.TLS_SALUDO.registrar(System.nanoTime() - inicioSaludo);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BitacoraTest {
+
+	@Test
+	void escribeCamposEstructuradosYFiltraPorNivel() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Bitacora bitacora = new Bitacora(64, new PrintStream(bytes, true, StandardCharsets.UTF_8));
+		bitacora.setNivel(Bitacora.Nivel.INFO);
+
+		bitacora.info("registro", "ana", "/127.0.0.1:5000");
+		bitacora.depurar("mensaje", "ana", null, 4, "hola");
+		bitacora.aviso("trama_desconocida", "luis", "codigo \"9\"");
+		bitacora.vaciar(5000);
+
+		String[] lineas = bytes.toString(StandardCharsets.UTF_8).split("\n");
+		assertEquals(2, lineas.length);
+		assertTrue(lineas[0].endsWith(" INFO evento=registro usuario=ana par=/127.0.0.1:5000"), lineas[0]);
+		assertTrue(lineas[1].endsWith(" AVISO evento=trama_desconocida usuario=luis detalle=\"codigo \\\"9\\\"\""), lineas[1]);
+	}
+
+	@Test
+	void conElAnilloLlenoDescartaSinBloquear() throws Exception {
+		CountDownLatch soltar = new CountDownLatch(1);
+		CountDownLatch escribiendo = new CountDownLatch(1);
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		// Salida que se queda bloqueada en la primera escritura, como una consola lenta
+		OutputStream lenta = new OutputStream() {
+			@Override
+			public void write(int b) {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+			@Override
+			public void write(byte[] datos, int desde, int largo) {
+				escribiendo.countDown();
+				try {
+					soltar.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				bytes.write(datos, desde, largo);
+			}
+		};
+		Bitacora bitacora = new Bitacora(8, new PrintStream(lenta, true, StandardCharsets.UTF_8));
+		bitacora.info("primero", "x");
+		escribiendo.await();
+
+		long descartadosAntes = Metricas.BITACORA_DESCARTADOS.sum();
+		long inicio = System.nanoTime();
+		for (int i = 0; i < 100; i++) {
+			bitacora.info("evento", "n" + i);
+		}
+		assertTrue(System.nanoTime() - inicio < 1_000_000_000L, "Registrar no debe esperar a la salida");
+		assertEquals(100 - 8, Metricas.BITACORA_DESCARTADOS.sum() - descartadosAntes);
+
+		soltar.countDown();
+		bitacora.vaciar(5000);
+		String texto = bytes.toString(StandardCharsets.UTF_8);
+		assertTrue(texto.contains("detalle=n0\n"), texto);
+		assertTrue(texto.contains("detalle=n7\n"), texto);
+		assertFalse(texto.contains("detalle=n8\n"), texto);
+	}
+}
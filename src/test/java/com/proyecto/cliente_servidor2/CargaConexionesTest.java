@@ -0,0 +1,116 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Prueba de carga: 10.000 conexiones ociosas más 1.000 activas deben caber en un heap acotado.
+// Se ejecuta con el perfil "carga", que fija -Xmx y activa la propiedad carga=true:
+//   mvn -Pcarga test -Dtest=CargaConexionesTest
+@EnabledIfSystemProperty(named = "carga", matches = "true")
+class CargaConexionesTest {
+
+	private static final int INACTIVAS = Integer.getInteger("carga.inactivas", 10_000);
+	private static final int ACTIVAS = Integer.getInteger("carga.activas", 1_000);
+	private static final int MENSAJES_POR_CLIENTE = 20;
+
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void inactivasYActivasCabenEnHeapAcotado(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+
+		List<SocketChannel> inactivas = new ArrayList<>(INACTIVAS);
+		List<Socket> activas = new ArrayList<>(ACTIVAS);
+		try {
+			long heapInicial = heapUsado();
+
+			// Conexiones ociosas: se abren y no envían nada
+			for (int i = 0; i < INACTIVAS; i++) {
+				inactivas.add(SocketChannel.open(new InetSocketAddress("localhost", puerto)));
+			}
+
+			// Conexiones activas: se registran por parejas y se envían mensajes privados
+			CountDownLatch recibidos = new CountDownLatch(ACTIVAS * MENSAJES_POR_CLIENTE);
+			AtomicInteger erroneos = new AtomicInteger();
+			List<PrintWriter> salidas = new ArrayList<>(ACTIVAS);
+			for (int i = 0; i < ACTIVAS; i++) {
+				Socket socket = new Socket("localhost", puerto);
+				activas.add(socket);
+				PrintWriter salida = new PrintWriter(socket.getOutputStream(), true);
+				salida.println("activo-" + i);
+				salidas.add(salida);
+				String esperado = "Privado:activo-" + (i ^ 1) + ":";
+				String propio = "Privado:activo-" + i + ":";
+				BufferedReader entrada = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+				Thread.ofVirtual().start(() -> leerMensajes(entrada, esperado, propio, recibidos, erroneos));
+			}
+			// Esperar a que todos estén registrados antes de enviar
+			Thread.sleep(2_000);
+			for (int m = 0; m < MENSAJES_POR_CLIENTE; m++) {
+				for (int i = 0; i < ACTIVAS; i++) {
+					salidas.get(i).println("Privado:activo-" + (i ^ 1) + ":mensaje " + m);
+				}
+			}
+
+			assertTrue(recibidos.await(60, TimeUnit.SECONDS), "No llegaron todos los mensajes privados");
+			assertEquals(0, erroneos.get(), "Mensajes entregados al destinatario equivocado");
+
+			long heapFinal = heapUsado();
+			long porConexion = (heapFinal - heapInicial) / (INACTIVAS + ACTIVAS);
+			assertTrue(porConexion < 32 * 1024, "Motor " + motor + ": demasiada memoria por conexión (cliente y servidor): "
+					+ porConexion + " bytes, heap " + heapFinal / (1024 * 1024) + " MB para " + (INACTIVAS + ACTIVAS)
+					+ " conexiones");
+		} finally {
+			for (SocketChannel canal : inactivas) {
+				canal.close();
+			}
+			for (Socket socket : activas) {
+				socket.close();
+			}
+			servidor.detener();
+		}
+	}
+
+	// Cuenta los mensajes privados recibidos (los ecos de los propios envíos llegan también y se ignoran)
+	private static void leerMensajes(BufferedReader entrada, String esperado, String propio,
+			CountDownLatch recibidos, AtomicInteger erroneos) {
+		try {
+			String linea;
+			while ((linea = entrada.readLine()) != null) {
+				if (linea.startsWith(esperado)) {
+					recibidos.countDown();
+				} else if (linea.startsWith("Privado:") && !linea.startsWith(propio)) {
+					erroneos.incrementAndGet();
+				}
+			}
+		} catch (IOException e) {
+			// La conexión se cerró al terminar la prueba
+		}
+	}
+
+	private static long heapUsado() {
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
@@ -1,13 +1,29 @@
 package com.proyecto.cliente_servidor2;
 
 import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
 
-@SpringBootTest
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "servidor.puerto=0")
 class ClienteServidor2ApplicationTests {
 
+	@Autowired
+	private TestRestTemplate http;
+
 	@Test
 	void contextLoads() {
 	}
 
+	@Test
+	void publicaLasMetricasEnFormatoPrometheus() {
+		String metricas = http.getForObject("/metrics", String.class);
+		assertTrue(metricas.contains("# TYPE chat_mensajes_enrutados_total counter"), metricas);
+		assertTrue(metricas.contains("chat_clientes_conectados 0"), metricas);
+		assertTrue(metricas.contains("chat_ruteo_segundos{etapa=\"analisis\",quantile=\"0.99\"}"), metricas);
+		assertTrue(metricas.contains("chat_cola_salida_pendientes_bucket{le=\"+Inf\"} 0"), metricas);
+	}
+
 }
@@ -0,0 +1,198 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+// Tres nodos en puertos de localhost: b solo conoce a a, y c solo conoce a b; el resto de enlaces se descubre
+class ClusterTest {
+
+	private final Map<Servidor, Integer> puertos = new HashMap<>(); // Puerto de clientes de cada nodo
+	private String secreto = ""; // Secreto compartido de los nodos que se inician
+
+	@Test
+	void enrutaEntreNodosYLaPresenciaConverge() throws Exception {
+		List<Servidor> nodos = new ArrayList<>();
+		try {
+			Servidor a = iniciarNodo(nodos, "nodo-a", "");
+			Servidor b = iniciarNodo(nodos, "nodo-b", "localhost:" + a.getPuertoCluster());
+			Servidor c = iniciarNodo(nodos, "nodo-c", "localhost:" + b.getPuertoCluster());
+
+			try (ClientePrueba ana = new ClientePrueba(puertos.get(a), "ana");
+					ClientePrueba luis = new ClientePrueba(puertos.get(b), "luis");
+					ClientePrueba eva = new ClientePrueba(puertos.get(c), "eva")) {
+				ana.esperarPresencia("luis", "eva");
+				eva.esperarPresencia("ana");
+
+				// De un nodo a otro en ambos sentidos, incluido el enlace descubierto entre a y c
+				ana.enviar("Privado:luis:hola luis");
+				luis.esperar("Privado:ana:hola luis");
+				ana.esperar("Privado:ana:hola luis");
+				luis.enviar("Privado:ana:hola: ana");
+				ana.esperar("Privado:luis:hola: ana");
+				eva.enviar("Privado:ana:desde c");
+				ana.esperar("Privado:eva:desde c");
+				ana.enviar("Privado:eva:desde a");
+				eva.esperar("Privado:ana:desde a");
+
+				// Al detener un nodo, los demás dan de baja a sus clientes
+				c.detener();
+				ana.esperar("Presencia:-eva");
+				luis.esperar("Presencia:-eva");
+			}
+		} finally {
+			for (Servidor nodo : nodos) {
+				nodo.detener();
+			}
+		}
+	}
+
+	// Quien no conoce el secreto recibe el reto, pero su saludo se rechaza y la conexión se cierra sin atender lo que
+	// envió detrás; un nodo con el secreto correcto se enlaza normalmente
+	@Test
+	void sinElSecretoNoSePuedeInyectarMensajes() throws Exception {
+		List<Servidor> nodos = new ArrayList<>();
+		try {
+			secreto = "compartido";
+			Servidor a = iniciarNodo(nodos, "nodo-a", "");
+			Servidor b = iniciarNodo(nodos, "nodo-b", "localhost:" + a.getPuertoCluster());
+			try (ClientePrueba ana = new ClientePrueba(puertos.get(a), "ana");
+					ClientePrueba luis = new ClientePrueba(puertos.get(b), "luis")) {
+				ana.esperarPresencia("luis");
+
+				try (Socket intruso = new Socket("localhost", a.getPuertoCluster())) {
+					BufferedReader entrada = abrir(intruso);
+					PrintWriter salida = new PrintWriter(intruso.getOutputStream(), true);
+					String reto = entrada.readLine();
+					assertTrue(reto.startsWith(Cluster.RETO), reto);
+					salida.println(Cluster.SALUDO + "intruso:1:1:00:" + "0".repeat(64));
+					salida.println(Cluster.REENVIO + "luis:ana:falso");
+					assertNull(entrada.readLine());
+				}
+
+				luis.enviar("Privado:ana:verdadero");
+				ana.esperarSinPasarPor("Privado:luis:verdadero", "Privado:luis:falso");
+			}
+		} finally {
+			for (Servidor nodo : nodos) {
+				nodo.detener();
+			}
+		}
+	}
+
+	// Fuera de loopback el nodo no arranca sin secreto
+	@Test
+	void fueraDeLoopbackElSecretoEsObligatorio() {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setPuertoCluster(0);
+		configuracion.setDireccionCluster("0.0.0.0");
+		Servidor servidor = new Servidor(configuracion);
+		try {
+			assertThrows(IOException.class, servidor::iniciar);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	private Servidor iniciarNodo(List<Servidor> nodos, String nombre, String vecinos) throws IOException {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setPuertoCluster(0);
+		configuracion.setNombreNodo(nombre);
+		configuracion.setVecinosCluster(vecinos);
+		configuracion.setVentanaPresenciaMs(10);
+		configuracion.setSecretoCluster(secreto);
+		Servidor servidor = new Servidor(configuracion);
+		puertos.put(servidor, servidor.iniciar());
+		nodos.add(servidor);
+		return servidor;
+	}
+
+	private static final class ClientePrueba implements AutoCloseable {
+		private final Socket socket;
+		private final PrintWriter salida;
+		private final BufferedReader entrada;
+
+		ClientePrueba(int puerto, String nombre) throws IOException {
+			socket = new Socket("localhost", puerto);
+			salida = new PrintWriter(socket.getOutputStream(), true);
+			entrada = abrir(socket);
+			salida.println(nombre);
+		}
+
+		void enviar(String linea) {
+			salida.println(linea);
+		}
+
+		// Lee hasta encontrar la línea esperada
+		void esperar(String esperada) throws IOException {
+			String linea;
+			try {
+				while ((linea = entrada.readLine()) != null) {
+					if (linea.equals(esperada)) {
+						return;
+					}
+				}
+			} catch (SocketTimeoutException e) {
+				// Se informa abajo
+			}
+			fail("No llegó la línea " + esperada);
+		}
+
+		// Lee hasta encontrar la línea esperada; falla si antes llega la prohibida
+		void esperarSinPasarPor(String esperada, String prohibida) throws IOException {
+			String linea;
+			while ((linea = entrada.readLine()) != null && !linea.equals(esperada)) {
+				assertNotEquals(prohibida, linea);
+			}
+			assertEquals(esperada, linea);
+		}
+
+		// Lee la lista completa y los deltas de presencia hasta ver a todos los clientes indicados
+		void esperarPresencia(String... clientes) throws IOException {
+			Set<String> visibles = new HashSet<>();
+			String linea;
+			while ((linea = entrada.readLine()) != null) {
+				if (linea.startsWith("Clientes conectados:")) {
+					visibles.addAll(List.of(linea.substring(20).split(", ")));
+				} else if (linea.startsWith("Presencia:")) {
+					for (String cambio : linea.substring(10).split(",")) {
+						if (cambio.startsWith("+")) {
+							visibles.add(cambio.substring(1));
+						} else {
+							visibles.remove(cambio.substring(1));
+						}
+					}
+				}
+				if (visibles.containsAll(List.of(clientes))) {
+					return;
+				}
+			}
+			fail("No se vieron todos los clientes: " + List.of(clientes));
+		}
+
+		@Override
+		public void close() throws IOException {
+			socket.close();
+		}
+	}
+}
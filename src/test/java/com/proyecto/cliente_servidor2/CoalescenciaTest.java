@@ -0,0 +1,88 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.esperarInicio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CoalescenciaTest {
+
+	@Test
+	void elClienteJuntaLasLineasDeLaVentanaEnUnaEscritura() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (EscritorAgrupado escritor = new EscritorAgrupado(bytes, 200, 64 * 1024)) {
+			for (int i = 0; i < 50; i++) {
+				escritor.enviar("linea " + i);
+			}
+			esperarEscrituras(escritor, 1);
+			assertEquals(1, escritor.getEscrituras());
+		}
+		assertTrue(bytes.toString(StandardCharsets.UTF_8).startsWith("linea 0\nlinea 1\n"));
+	}
+
+	@Test
+	void sinVentanaCadaLineaEsUnaEscritura() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (EscritorAgrupado escritor = new EscritorAgrupado(bytes, 0, 64 * 1024)) {
+			for (int i = 0; i < 5; i++) {
+				escritor.enviar("linea " + i);
+			}
+			assertEquals(5, escritor.getEscrituras());
+		}
+		assertEquals("linea 0\nlinea 1\nlinea 2\nlinea 3\nlinea 4\n", bytes.toString(StandardCharsets.UTF_8));
+	}
+
+	// Una ráfaga de mensajes dentro de la ventana del servidor sale en una escritura por destinatario
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void elServidorJuntaLaRafagaEnPocasEscrituras(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		configuracion.setVentanaCoalescenciaMs(100);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket ana = new Socket("localhost", puerto); Socket luis = new Socket("localhost", puerto)) {
+			BufferedReader entradaAna = abrir(ana);
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(ana, "ana\n");
+			esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			esperarInicio(entradaAna, "Presencia:+luis");
+
+			StringBuilder rafaga = new StringBuilder();
+			for (int i = 0; i < 20; i++) {
+				rafaga.append(ProtocoloCliente.lineaPrivado("ana", "mensaje " + i)).append('\n');
+			}
+			long lotesAntes = Metricas.LOTES_ESCRITOS.sum();
+			escribir(luis, rafaga.toString());
+			for (int i = 0; i < 20; i++) {
+				assertEquals("Privado:luis:mensaje " + i, entradaAna.readLine());
+			}
+			esperarInicio(entradaLuis, "Privado:luis:mensaje 19");
+			// Una escritura para ana y otra para el eco a luis (con margen por si la ráfaga llegó en dos lecturas)
+			assertTrue(Metricas.LOTES_ESCRITOS.sum() - lotesAntes <= 4,
+					"Escrituras: " + (Metricas.LOTES_ESCRITOS.sum() - lotesAntes));
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	private static void esperarEscrituras(EscritorAgrupado escritor, long escrituras) throws InterruptedException {
+		long limite = System.nanoTime() + 5_000_000_000L;
+		while (escritor.getEscrituras() < escrituras && System.nanoTime() < limite) {
+			Thread.sleep(5);
+		}
+	}
+}
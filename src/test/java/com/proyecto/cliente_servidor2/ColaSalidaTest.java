@@ -0,0 +1,55 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ColaSalidaTest {
+
+	@Test
+	void descartarAntiguoConservaLosMasRecientes() {
+		ColaSalida cola = new ColaSalida(2, PoliticaDesbordamiento.DESCARTAR_ANTIGUO, 0);
+		Carga primero = Carga.linea("x");
+		Carga segundo = Carga.linea("x");
+		Carga tercero = Carga.linea("x");
+
+		assertTrue(cola.ofrecer(primero, true));
+		assertTrue(cola.ofrecer(segundo, true));
+		assertTrue(cola.ofrecer(tercero, true));
+
+		Carga[] lote = new Carga[ColaSalida.TAMANO_LOTE];
+		assertEquals(2, cola.drenarLote(lote));
+		assertSame(segundo, lote[0]);
+		assertSame(tercero, lote[1]);
+	}
+
+	@Test
+	void desconectarAvisaCuandoLaColaEstaLlena() {
+		ColaSalida cola = new ColaSalida(1, PoliticaDesbordamiento.DESCONECTAR, 0);
+		assertTrue(cola.ofrecer(Carga.linea("x"), true));
+		assertFalse(cola.ofrecer(Carga.linea("x"), true));
+	}
+
+	@Test
+	void contrapresionEsperaAQueElEscritorHagaSitio() throws Exception {
+		ColaSalida cola = new ColaSalida(1, PoliticaDesbordamiento.CONTRAPRESION, 5_000);
+		cola.ofrecer(Carga.linea("x"), true);
+		Carga[] lote = new Carga[1];
+		Thread escritor = Thread.ofVirtual().start(() -> {
+			try {
+				Thread.sleep(100);
+				cola.tomarLote(lote);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		Carga nuevo = Carga.linea("x");
+		assertTrue(cola.ofrecer(nuevo, true));
+		escritor.join();
+		assertEquals(1, cola.profundidad());
+	}
+}
@@ -0,0 +1,77 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrirComprimido;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.esperarInicio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompresionTest {
+
+	// Ana pide compresión antes del nombre y luis no: los dos leen las mismas líneas, y lo repetitivo viaja comprimido
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void elClienteQueLaPideRecibeLoMismoComprimido(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket ana = new Socket("localhost", puerto); Socket luis = new Socket("localhost", puerto)) {
+			BufferedReader entradaAna = abrirComprimido(ana);
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(ana, ProtocoloCliente.lineaCompresion() + "\nana\n");
+			assertEquals(CompresionSalida.LINEA_NEGOCIACION, entradaAna.readLine());
+			esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			// La presencia se agrupa: la entrada de luis puede llegar junto con la de ana
+			String presencia;
+			do {
+				presencia = entradaAna.readLine();
+			} while (!presencia.contains("+luis"));
+
+			String largo = "el mismo texto se repite muchas veces. ".repeat(200);
+			long entradaAntes = Metricas.COMPRESION_BYTES_ENTRADA.sum();
+			long salidaAntes = Metricas.COMPRESION_BYTES_SALIDA.sum();
+			StringBuilder rafaga = new StringBuilder();
+			for (int i = 0; i < 10; i++) {
+				rafaga.append(ProtocoloCliente.lineaPrivado("ana", "corto " + i)).append('\n');
+				rafaga.append(ProtocoloCliente.lineaPrivado("ana", largo + i)).append('\n');
+			}
+			escribir(luis, rafaga.toString());
+			for (int i = 0; i < 10; i++) {
+				assertEquals("Privado:luis:corto " + i, entradaAna.readLine());
+				assertEquals("Privado:luis:" + largo + i, entradaAna.readLine());
+			}
+			esperarInicio(entradaLuis, "Privado:luis:" + largo + 9);
+
+			long entrada = Metricas.COMPRESION_BYTES_ENTRADA.sum() - entradaAntes;
+			long salida = Metricas.COMPRESION_BYTES_SALIDA.sum() - salidaAntes;
+			assertTrue(entrada >= 10 * largo.length(), "Bytes comprimidos: " + entrada);
+			assertTrue(salida * 10 < entrada, "Bytes enviados " + salida + " de " + entrada);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Una vez cerrada, la compresión no vuelve a usar el Deflater liberado (ni toca la conexión), y cerrar dos veces
+	// no falla
+	@Test
+	void despuesDeCerrarNoComprimeNada() {
+		CompresionSalida compresion = new CompresionSalida(6, 64);
+		compresion.cerrar();
+		compresion.cerrar();
+		assertFalse(compresion.llenar(null, ByteBuffer.allocate(PoolBuffers.TAMANO_BUFFER)));
+	}
+}
@@ -0,0 +1,281 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.awt.EventQueue;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConexionClienteTest {
+
+	// Una ráfaga recibida mientras el EDT está ocupado llega en pocos lotes, en orden y siempre en el EDT
+	@Test
+	void laRafagaLlegaAlEdtEnPocosLotes() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		int mensajes = 2000;
+		List<String> recibidos = new ArrayList<>();
+		AtomicBoolean fueraDelEdt = new AtomicBoolean();
+		CountDownLatch conectado = new CountDownLatch(1);
+		CountDownLatch todos = new CountDownLatch(1);
+		CountDownLatch luisEntro = new CountDownLatch(1);
+		ConexionCliente ana = new ConexionCliente("localhost", puerto, "ana", new ConexionCliente.Oyente() {
+			@Override
+			public void conectado() {
+				revisarHilo();
+				conectado.countDown();
+			}
+
+			@Override
+			public void listaCompleta(List<String> clientes) {
+				revisarHilo();
+			}
+
+			@Override
+			public void entra(String cliente) {
+				revisarHilo();
+				if (cliente.equals("luis")) {
+					luisEntro.countDown();
+				}
+			}
+
+			@Override
+			public void sale(String cliente) {
+				revisarHilo();
+			}
+
+			@Override
+			public void mensajePrivado(String remitente, String texto) {
+				revisarHilo();
+				recibidos.add(texto);
+				if (recibidos.size() == mensajes) {
+					todos.countDown();
+				}
+			}
+
+			private void revisarHilo() {
+				if (!EventQueue.isDispatchThread()) {
+					fueraDelEdt.set(true);
+				}
+			}
+		});
+		try (Socket luis = new Socket("localhost", puerto)) {
+			ana.conectar();
+			assertTrue(conectado.await(10, TimeUnit.SECONDS));
+			luis.getOutputStream().write("luis\n".getBytes(StandardCharsets.UTF_8));
+			assertTrue(luisEntro.await(10, TimeUnit.SECONDS));
+
+			StringBuilder rafaga = new StringBuilder();
+			for (int i = 0; i < mensajes; i++) {
+				rafaga.append(ProtocoloCliente.lineaPrivado("ana", "mensaje " + i)).append('\n');
+			}
+			long lotesAntes = ana.getLotes();
+			// El EDT está ocupado mientras llega la ráfaga, como si estuviera pintando un cuadro largo
+			CountDownLatch edtOcupado = new CountDownLatch(1);
+			EventQueue.invokeLater(() -> {
+				edtOcupado.countDown();
+				try {
+					Thread.sleep(300);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+			edtOcupado.await();
+			luis.getOutputStream().write(rafaga.toString().getBytes(StandardCharsets.UTF_8));
+			assertTrue(todos.await(10, TimeUnit.SECONDS), "Llegaron " + recibidos.size());
+
+			EventQueue.invokeAndWait(() -> {
+				for (int i = 0; i < mensajes; i++) {
+					assertEquals("mensaje " + i, recibidos.get(i));
+				}
+			});
+			assertFalse(fueraDelEdt.get(), "El oyente se llamó fuera del EDT");
+			long lotes = ana.getLotes() - lotesAntes;
+			assertTrue(lotes < mensajes / 10, "Lotes: " + lotes);
+		} finally {
+			ana.cerrar();
+			servidor.detener();
+		}
+	}
+
+	@Test
+	void avisaSiNoPuedeConectar() throws Exception {
+		int puerto;
+		try (ServerSocket libre = new ServerSocket(0)) {
+			puerto = libre.getLocalPort();
+		}
+		CountDownLatch fallo = new CountDownLatch(1);
+		ConexionCliente conexion = new ConexionCliente("localhost", puerto, "ana", new ConexionCliente.Oyente() {
+			@Override
+			public void noConecto(IOException error) {
+				if (EventQueue.isDispatchThread()) {
+					fallo.countDown();
+				}
+			}
+
+			@Override
+			public void listaCompleta(List<String> clientes) {
+			}
+
+			@Override
+			public void entra(String cliente) {
+			}
+
+			@Override
+			public void sale(String cliente) {
+			}
+
+			@Override
+			public void mensajePrivado(String remitente, String texto) {
+			}
+		});
+		conexion.conectar();
+		conexion.enviar("antes de conectar"); // No debe fallar ni bloquear
+		assertTrue(fallo.await(10, TimeUnit.SECONDS));
+	}
+
+	// Si la conexión se corta, el cliente reconecta, reanuda la sesión y recibe cada mensaje una vez y en orden
+	@Test
+	void reconectaYNoPierdeMensajes() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		List<String> recibidos = new CopyOnWriteArrayList<>();
+		CountDownLatch luisEntro = new CountDownLatch(1);
+		CountDownLatch primeros = new CountDownLatch(5);
+		CountDownLatch todos = new CountDownLatch(10);
+		CountDownLatch reconectando = new CountDownLatch(1);
+		try (Intermediario intermediario = new Intermediario(puerto); Socket luis = new Socket("localhost", puerto)) {
+			ConexionCliente ana = new ConexionCliente("localhost", intermediario.puerto(), "ana", new ConexionCliente.Oyente() {
+				@Override
+				public void reconectando(int intento) {
+					reconectando.countDown();
+				}
+
+				@Override
+				public void listaCompleta(List<String> clientes) {
+				}
+
+				@Override
+				public void entra(String cliente) {
+					if (cliente.equals("luis")) {
+						luisEntro.countDown();
+					}
+				}
+
+				@Override
+				public void sale(String cliente) {
+				}
+
+				@Override
+				public void mensajePrivado(String remitente, String texto) {
+					if (!remitente.equals("luis")) {
+						return; // Eco de lo que envía ana
+					}
+					recibidos.add(texto);
+					primeros.countDown();
+					todos.countDown();
+				}
+			});
+			try {
+				ana.conectar();
+				BufferedReader entradaLuis = abrir(luis);
+				luis.getOutputStream().write("luis\n".getBytes(StandardCharsets.UTF_8));
+				assertTrue(luisEntro.await(10, TimeUnit.SECONDS));
+				for (int i = 0; i < 5; i++) {
+					luis.getOutputStream().write((ProtocoloCliente.lineaPrivado("ana", "mensaje " + i) + "\n").getBytes(StandardCharsets.UTF_8));
+				}
+				assertTrue(primeros.await(10, TimeUnit.SECONDS));
+
+				intermediario.cortar();
+				for (int i = 5; i < 10; i++) {
+					luis.getOutputStream().write((ProtocoloCliente.lineaPrivado("ana", "mensaje " + i) + "\n").getBytes(StandardCharsets.UTF_8));
+				}
+				assertTrue(reconectando.await(10, TimeUnit.SECONDS));
+				assertTrue(todos.await(10, TimeUnit.SECONDS), "Llegaron " + recibidos);
+				ana.enviar(ProtocoloCliente.lineaPrivado("luis", "volví"));
+				String linea;
+				while (!(linea = entradaLuis.readLine()).equals("Privado:ana:volví")) {
+					assertFalse(linea.startsWith(Presencia.PREFIJO_DELTA) && linea.contains("-ana"), linea);
+				}
+				for (int i = 0; i < 10; i++) {
+					assertEquals("mensaje " + i, recibidos.get(i));
+				}
+				assertEquals(10, recibidos.size());
+			} finally {
+				ana.cerrar();
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Reenvía las conexiones al servidor y permite cortarlas todas, como una red que se cae un momento
+	private static final class Intermediario implements AutoCloseable {
+		private final ServerSocket escucha = new ServerSocket(0);
+		private final List<Socket> sockets = new CopyOnWriteArrayList<>();
+
+		Intermediario(int destino) throws IOException {
+			Thread.ofVirtual().start(() -> {
+				try {
+					while (true) {
+						Socket cliente = escucha.accept();
+						Socket servidor = new Socket("localhost", destino);
+						sockets.add(cliente);
+						sockets.add(servidor);
+						copiar(cliente, servidor);
+						copiar(servidor, cliente);
+					}
+				} catch (IOException e) {
+					// Intermediario cerrado
+				}
+			});
+		}
+
+		int puerto() {
+			return escucha.getLocalPort();
+		}
+
+		void cortar() throws IOException {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			sockets.clear();
+		}
+
+		@Override
+		public void close() throws IOException {
+			escucha.close();
+			cortar();
+		}
+
+		private static void copiar(Socket desde, Socket hacia) {
+			Thread.ofVirtual().start(() -> {
+				try (InputStream entrada = desde.getInputStream(); OutputStream salida = hacia.getOutputStream()) {
+					entrada.transferTo(salida);
+				} catch (IOException e) {
+					// Conexión cortada
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,178 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.net.Socket;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.esperarInicio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ControlAdmisionTest {
+
+	// Pepe inunda a luis con mensajes: recibe el error, casi todo se descarta y el mensaje de ana llega sin demora
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void elAbusadorSeLimitaSinRetrasarALosDemas(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		configuracion.setTasaMensajes(50);
+		configuracion.setRafagaMensajes(20);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		long limitadosAntes = Metricas.MENSAJES_LIMITADOS.sum();
+		try (Socket luis = new Socket("localhost", puerto); Socket ana = new Socket("localhost", puerto);
+				Socket pepe = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			BufferedReader entradaAna = abrir(ana);
+			escribir(ana, "ana\n");
+			esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+			BufferedReader entradaPepe = abrir(pepe);
+			escribir(pepe, "pepe\n");
+			esperarInicio(entradaPepe, Presencia.PREFIJO_LISTA);
+
+			StringBuilder inundacion = new StringBuilder();
+			for (int i = 0; i < 500; i++) {
+				inundacion.append(ProtocoloCliente.lineaPrivado("luis", "spam " + i)).append('\n');
+			}
+			escribir(pepe, inundacion.toString());
+			esperarInicio(entradaPepe, ControlAdmision.LIMITE_MENSAJES);
+
+			long inicio = System.nanoTime();
+			escribir(ana, ProtocoloCliente.lineaPrivado("luis", "hola") + "\n");
+			int dePepe = 0;
+			String linea;
+			while (!(linea = entradaLuis.readLine()).equals("Privado:ana:hola")) {
+				if (linea.startsWith("Privado:pepe:")) {
+					dePepe++;
+				}
+			}
+			long demoraMs = (System.nanoTime() - inicio) / 1_000_000;
+			assertTrue(demoraMs < 1_000, "El mensaje de ana tardó " + demoraMs + " ms");
+			assertTrue(dePepe < 500, "Pasaron todos los mensajes de pepe");
+			assertTrue(Metricas.MENSAJES_LIMITADOS.sum() > limitadosAntes);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Lo que pasa de la ráfaga no se descarta: el servidor deja de leer a pepe y los mensajes llegan todos, en orden, al
+	// ritmo de la tasa; pepe recibe un solo aviso
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void loQuePasaDelLimiteEsperaSinPerderse(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		configuracion.setTasaMensajes(100);
+		configuracion.setRafagaMensajes(20);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket luis = new Socket("localhost", puerto); Socket pepe = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			BufferedReader entradaPepe = abrir(pepe);
+			escribir(pepe, "pepe\n");
+			esperarInicio(entradaPepe, Presencia.PREFIJO_LISTA);
+
+			StringBuilder rafaga = new StringBuilder();
+			for (int i = 0; i < 80; i++) {
+				rafaga.append(ProtocoloCliente.lineaPrivado("luis", "mensaje " + i)).append('\n');
+			}
+			escribir(pepe, rafaga.toString());
+			int recibidos = 0;
+			while (recibidos < 80) {
+				String linea = entradaLuis.readLine();
+				if (linea.startsWith("Privado:pepe:")) {
+					assertEquals("Privado:pepe:mensaje " + recibidos, linea);
+					recibidos++;
+				}
+			}
+			int avisos = 0;
+			String linea;
+			while (!(linea = entradaPepe.readLine()).equals("Privado:pepe:mensaje 79")) {
+				if (linea.equals(ControlAdmision.LIMITE_MENSAJES)) {
+					avisos++;
+				}
+			}
+			assertEquals(1, avisos);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Con el servidor lleno, el socket de más recibe el error y se cierra; al salir un cliente vuelve a haber lugar
+	@Test
+	void rechazaConexionesPorEncimaDelMaximo() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMaximoConexiones(1);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		long rechazadasAntes = Metricas.CONEXIONES_RECHAZADAS.sum();
+		try {
+			try (Socket luis = new Socket("localhost", puerto); Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaLuis = abrir(luis);
+				escribir(luis, "luis\n");
+				esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+				BufferedReader entradaAna = abrir(ana);
+				assertEquals(ControlAdmision.SERVIDOR_LLENO, entradaAna.readLine());
+				assertNull(entradaAna.readLine());
+			}
+			assertEquals(1, Metricas.CONEXIONES_RECHAZADAS.sum() - rechazadasAntes);
+
+			// El cierre de luis libera su lugar (puede tardar un momento en procesarse)
+			String primera = null;
+			for (int intento = 0; intento < 100 && !(primera != null && primera.startsWith(Presencia.PREFIJO_LISTA)); intento++) {
+				try (Socket ana = new Socket("localhost", puerto)) {
+					BufferedReader entradaAna = abrir(ana);
+					escribir(ana, "ana\n");
+					primera = entradaAna.readLine();
+				}
+				Thread.sleep(20);
+			}
+			assertTrue(primera.startsWith(Presencia.PREFIJO_LISTA), "Ana no pudo entrar: " + primera);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Sin la exención de las direcciones locales, la tercera conexión seguida desde la misma IP se rechaza
+	@Test
+	void limitaLasConexionesNuevasPorIp() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setIpLocalExenta(false);
+		configuracion.setTasaConexionesIp(1);
+		configuracion.setRafagaConexionesIp(2);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		long limitadasAntes = Metricas.CONEXIONES_LIMITADAS_IP.sum();
+		try (Socket uno = new Socket("localhost", puerto); Socket dos = new Socket("localhost", puerto);
+				Socket tres = new Socket("localhost", puerto)) {
+			BufferedReader entradaTres = abrir(tres);
+			assertEquals(ControlAdmision.DEMASIADAS_CONEXIONES, entradaTres.readLine());
+			assertNull(entradaTres.readLine());
+			// Las dos primeras entraron con la ráfaga y funcionan con normalidad
+			BufferedReader entradaUno = abrir(uno);
+			escribir(uno, "uno\n");
+			esperarInicio(entradaUno, Presencia.PREFIJO_LISTA);
+			BufferedReader entradaDos = abrir(dos);
+			escribir(dos, "dos\n");
+			esperarInicio(entradaDos, Presencia.PREFIJO_LISTA);
+			assertEquals(1, Metricas.CONEXIONES_LIMITADAS_IP.sum() - limitadasAntes);
+		} finally {
+			servidor.detener();
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DiarioMensajesTest {
+
+	private static final int MENSAJES = 200;
+
+	@TempDir
+	Path directorio;
+
+	@Test
+	void entregaLosMensajesGuardadosDespuesDeReiniciarYCompacta() throws Exception {
+		Servidor servidor = new Servidor(configuracion());
+		int puerto = servidor.iniciar();
+		try (Socket ana = new Socket("localhost", puerto)) {
+			PrintWriter salidaAna = new PrintWriter(ana.getOutputStream(), true);
+			BufferedReader entradaAna = abrir(ana);
+			salidaAna.println("ana");
+			entradaAna.readLine();
+
+			// luis se conecta y se va; ana espera a enterarse de que salió
+			try (Socket luis = new Socket("localhost", puerto)) {
+				new PrintWriter(luis.getOutputStream(), true).println("luis");
+				abrir(luis).readLine();
+			}
+			String linea;
+			while (!(linea = entradaAna.readLine()).startsWith("Presencia:") || !linea.contains("-luis")) {
+				// Otras líneas de presencia
+			}
+
+			for (int i = 0; i < MENSAJES; i++) {
+				salidaAna.println("Privado:luis:mensaje " + i);
+			}
+			salidaAna.println("Privado:nadie:no se guarda porque nadie usó ese nombre");
+			salidaAna.println("Privado:ana:fin");
+			while (!entradaAna.readLine().equals("Privado:ana:fin")) {
+				// Ecos de los mensajes guardados (no los hay: el destinatario no estaba conectado)
+			}
+		} finally {
+			servidor.detener();
+		}
+		assertTrue(segmentos().size() > 1, "Se esperaban varios segmentos: " + segmentos());
+
+		// Simular una escritura cortada por una caída al final del último segmento
+		Files.write(segmentos().get(segmentos().size() - 1), new byte[] {0, 0, 0, 50, 1, 2, 3}, StandardOpenOption.APPEND);
+
+		servidor = new Servidor(configuracion());
+		puerto = servidor.iniciar();
+		try (Socket luis = new Socket("localhost", puerto)) {
+			new PrintWriter(luis.getOutputStream(), true).println("luis");
+			BufferedReader entradaLuis = abrir(luis);
+			int recibidos = 0;
+			while (recibidos < MENSAJES) {
+				String linea = entradaLuis.readLine();
+				if (linea.startsWith("Privado:")) {
+					assertEquals("Privado:ana:mensaje " + recibidos, linea);
+					recibidos++;
+				}
+			}
+
+			// Todos entregados: solo queda el segmento activo
+			long limite = System.currentTimeMillis() + 5_000;
+			while (segmentos().size() > 1 && System.currentTimeMillis() < limite) {
+				Thread.sleep(20);
+			}
+			assertEquals(1, segmentos().size(), "Segmentos sin compactar: " + segmentos());
+		} finally {
+			servidor.detener();
+		}
+
+		// Al volver a arrancar no queda nada pendiente para luis
+		servidor = new Servidor(configuracion());
+		puerto = servidor.iniciar();
+		try (Socket luis = new Socket("localhost", puerto)) {
+			PrintWriter salidaLuis = new PrintWriter(luis.getOutputStream(), true);
+			salidaLuis.println("luis");
+			salidaLuis.println("Privado:luis:solo el eco");
+			BufferedReader entradaLuis = abrir(luis);
+			String linea;
+			while (!(linea = entradaLuis.readLine()).startsWith("Privado:")) {
+				// Lista de clientes
+			}
+			assertEquals("Privado:luis:solo el eco", linea);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	private ConfiguracionServidor configuracion() {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setDirectorioDiario(directorio.toString());
+		configuracion.setTamanoSegmentoDiario(4096);
+		configuracion.setSincronizarDiario(false);
+		// Cola más chica que los mensajes guardados: la entrega se hace en varias tandas
+		configuracion.setCapacidadSalida(64);
+		return configuracion;
+	}
+
+	private List<Path> segmentos() throws IOException {
+		try (Stream<Path> archivos = Files.list(directorio)) {
+			return archivos.filter(archivo -> archivo.toString().endsWith(".diario")).sorted().toList();
+		}
+	}
+}
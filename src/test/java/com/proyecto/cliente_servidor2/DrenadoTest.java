@@ -0,0 +1,171 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DrenadoTest {
+
+	// Ana recibe los mensajes que tenía pendientes y después el aviso con una espera dentro de la ventana; el servidor
+	// ya no acepta conexiones, guarda los nombres y termina en cuanto ana y luis cierran
+	@Test
+	void entregaLoPendienteAntesDelAviso(@TempDir Path directorio) throws Exception {
+		Path archivo = directorio.resolve("nombres.txt");
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setVentanaDrenadoMs(500);
+		configuracion.setArchivoNombres(archivo.toString());
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try {
+			CompletableFuture<Integer> drenado;
+			try (Socket ana = new Socket("localhost", puerto); Socket luis = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				BufferedReader entradaLuis = abrir(luis);
+				escribir(ana, "ana\n");
+				escribir(luis, "luis\n");
+				esperarEntrada(entradaLuis, "ana");
+				StringBuilder rafaga = new StringBuilder();
+				for (int i = 0; i < 100; i++) {
+					rafaga.append(ProtocoloCliente.lineaPrivado("ana", "mensaje " + i)).append('\n');
+				}
+				rafaga.append(ProtocoloCliente.lineaPrivado("luis", "fin")).append('\n');
+				escribir(luis, rafaga.toString());
+				// El eco de "fin" llega después del último mensaje a ana, así que ya están todos en su cola
+				String linea;
+				do {
+					linea = entradaLuis.readLine();
+				} while (!linea.equals("Privado:luis:fin"));
+
+				drenado = CompletableFuture.supplyAsync(servidor::drenar);
+				List<String> mensajes = new ArrayList<>();
+				long espera;
+				while ((espera = ProtocoloCliente.esperaReconectar(linea = entradaAna.readLine())) < 0) {
+					if (linea.startsWith("Privado:luis:")) {
+						mensajes.add(linea);
+					}
+				}
+				assertEquals(100, mensajes.size(), "Mensajes antes del aviso: " + mensajes);
+				assertEquals("Privado:luis:mensaje 99", mensajes.get(99));
+				assertTrue(espera <= 500, "Espera: " + espera);
+				assertThrows(ConnectException.class, () -> new Socket("localhost", puerto).close());
+
+				while (ProtocoloCliente.esperaReconectar(entradaLuis.readLine()) < 0) {
+					// Luis no tenía nada pendiente
+				}
+			}
+			// Al cerrar ana y luis el drenado termina
+			assertEquals(0, drenado.get(5, TimeUnit.SECONDS));
+			assertEquals(List.of("ana", "luis"), Files.readAllLines(archivo).stream().sorted().toList());
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Al recibir el aviso, ConexionCliente cierra y se conecta al servidor nuevo que arranca en el mismo puerto
+	@Test
+	void elClienteVuelveConElServidorNuevo(@TempDir Path directorio) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setVentanaDrenadoMs(100);
+		configuracion.setArchivoNombres(directorio.resolve("nombres.txt").toString());
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		CountDownLatch primera = new CountDownLatch(1);
+		CountDownLatch conexiones = new CountDownLatch(2);
+		CountDownLatch recibido = new CountDownLatch(1);
+		ConexionCliente ana = new ConexionCliente("localhost", puerto, "ana", new ConexionCliente.Oyente() {
+			@Override
+			public void conectado() {
+				primera.countDown();
+				conexiones.countDown();
+			}
+
+			@Override
+			public void listaCompleta(List<String> clientes) {
+			}
+
+			@Override
+			public void entra(String cliente) {
+			}
+
+			@Override
+			public void sale(String cliente) {
+			}
+
+			@Override
+			public void mensajePrivado(String remitente, String texto) {
+				if (remitente.equals("luis") && texto.equals("bienvenida")) {
+					recibido.countDown();
+				}
+			}
+		});
+		Servidor nuevo = null;
+		try {
+			ana.conectar();
+			assertTrue(primera.await(10, TimeUnit.SECONDS));
+			assertEquals(0, servidor.drenar());
+			configuracion.setPuerto(puerto);
+			nuevo = new Servidor(configuracion);
+			nuevo.iniciar();
+			assertTrue(conexiones.await(10, TimeUnit.SECONDS), "Ana no se reconectó");
+			try (Socket luis = new Socket("localhost", puerto)) {
+				BufferedReader entradaLuis = abrir(luis);
+				escribir(luis, "luis\n");
+				esperarEntrada(entradaLuis, "ana");
+				escribir(luis, ProtocoloCliente.lineaPrivado("ana", "bienvenida") + "\n");
+				assertTrue(recibido.await(10, TimeUnit.SECONDS));
+			}
+		} finally {
+			ana.cerrar();
+			servidor.detener();
+			if (nuevo != null) {
+				nuevo.detener();
+			}
+		}
+	}
+
+	// Método que lee hasta que el cliente aparece en la lista completa o en una entrada
+	private static void esperarEntrada(BufferedReader entrada, String cliente) throws IOException {
+		boolean[] visto = new boolean[1];
+		ProtocoloCliente.Oyente oyente = new ProtocoloCliente.Oyente() {
+			@Override
+			public void listaCompleta(List<String> clientes) {
+				visto[0] |= clientes.contains(cliente);
+			}
+
+			@Override
+			public void entra(String nombre) {
+				visto[0] |= nombre.equals(cliente);
+			}
+
+			@Override
+			public void sale(String nombre) {
+			}
+
+			@Override
+			public void mensajePrivado(String remitente, String texto) {
+			}
+		};
+		while (!visto[0]) {
+			ProtocoloCliente.procesar(entrada.readLine(), oyente);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Corrida corta del generador contra un servidor local: ningún mensaje se pierde ni llega a quien no corresponde
+class GeneradorCargaTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {DistribucionDestinatarios.UNIFORME, DistribucionDestinatarios.ZIPF, DistribucionDestinatarios.PAREJAS})
+	void entregaTodosLosMensajes(String distribucion) throws Exception {
+		ConfiguracionGenerador configuracion = new ConfiguracionGenerador();
+		configuracion.setUsuarios(50);
+		configuracion.setTasa(20);
+		configuracion.setDuracionS(1);
+		configuracion.setDistribucion(distribucion);
+
+		GeneradorCarga.Resultado resultado = new GeneradorCarga(configuracion).ejecutar();
+
+		assertTrue(resultado.enviados() > 500, "Se enviaron muy pocos mensajes: " + resultado.enviados());
+		assertEquals(resultado.enviados(), resultado.entregados());
+		assertEquals(0, resultado.malEnrutados());
+		assertEquals(0, resultado.perdidos());
+		assertEquals(resultado.entregados(), resultado.latencias().total());
+	}
+}
@@ -0,0 +1,45 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistogramaTest {
+
+	@Test
+	void percentilesConErrorRelativoAcotado() {
+		Histograma histograma = new Histograma();
+		for (long valor = 1; valor <= 1_000_000; valor++) {
+			histograma.registrar(valor);
+		}
+		assertEquals(1_000_000, histograma.total());
+		assertEquals(1_000_000, histograma.maximo());
+		assertEquals(500_000.5, histograma.media(), 0.001);
+		for (double porcentaje : new double[] {50, 90, 99, 99.9}) {
+			double esperado = porcentaje * 10_000;
+			long obtenido = histograma.percentil(porcentaje);
+			assertTrue(obtenido >= esperado && obtenido <= esperado * 1.016,
+					"p" + porcentaje + ": " + obtenido + " en vez de " + esperado);
+		}
+	}
+
+	@Test
+	void valoresPequenosSonExactos() {
+		Histograma histograma = new Histograma();
+		for (long valor = 0; valor < 100; valor++) {
+			histograma.registrar(valor);
+		}
+		assertEquals(49, histograma.percentil(50));
+		assertEquals(99, histograma.percentil(100));
+	}
+
+	@Test
+	void cadaCubetaContieneSusLimites() {
+		for (long valor : new long[] {0, 127, 128, 129, 255, 256, 1_000_000, 123_456_789_012L}) {
+			int indice = Histograma.indice(valor);
+			assertTrue(Histograma.limiteSuperior(indice) >= valor);
+			assertTrue(indice == 0 || Histograma.limiteSuperior(indice - 1) < valor);
+		}
+	}
+}
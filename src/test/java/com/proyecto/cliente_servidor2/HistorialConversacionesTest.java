@@ -0,0 +1,198 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HistorialConversacionesTest {
+
+	@Test
+	void paginaHaciaAtrasConElAnilloLleno() {
+		HistorialConversaciones historial = new HistorialConversaciones(1024 * 1024, 1024);
+		for (int i = 1; i <= 100; i++) {
+			agregar(historial, i % 2 == 0 ? 1 : 2, i % 2 == 0 ? 2 : 1, "mensaje " + i);
+		}
+
+		HistorialConversaciones.Pagina pagina = historial.leer(1, 2, 10, 0);
+		assertEquals(List.of("mensaje 91", "mensaje 92", "mensaje 93", "mensaje 94", "mensaje 95", "mensaje 96",
+				"mensaje 97", "mensaje 98", "mensaje 99", "mensaje 100"), textos(pagina));
+		assertEquals(91, pagina.cursorAnterior());
+		assertEquals(1, pagina.entradas().get(9).idRemitente());
+
+		// La conversación es la misma vista desde el otro lado
+		HistorialConversaciones.Pagina anterior = historial.leer(2, 1, 10, pagina.cursorAnterior());
+		assertEquals("mensaje 81", textos(anterior).get(0));
+		assertEquals("mensaje 90", textos(anterior).get(9));
+
+		// Hasta llegar al mensaje más antiguo que cabe en el anillo
+		long cursor = anterior.cursorAnterior();
+		int leidos = 20;
+		while (cursor != 0) {
+			HistorialConversaciones.Pagina siguiente = historial.leer(1, 2, 10, cursor);
+			leidos += siguiente.entradas().size();
+			cursor = siguiente.cursorAnterior();
+		}
+		assertTrue(leidos > 20 && leidos < 100, "Mensajes retenidos: " + leidos);
+	}
+
+	@Test
+	void desalojaLaConversacionUsadaHaceMasTiempo() {
+		HistorialConversaciones historial = new HistorialConversaciones(3 * 1024, 1024);
+		agregar(historial, 1, 2, "a");
+		agregar(historial, 1, 3, "b");
+		agregar(historial, 1, 4, "c");
+		historial.leer(2, 1, 1, 0); // La conversación 1-2 pasa a ser la más reciente
+
+		agregar(historial, 1, 5, "d");
+
+		assertEquals(List.of("a"), textos(historial.leer(1, 2, 5, 0)));
+		assertEquals(List.of(), textos(historial.leer(1, 3, 5, 0)));
+		assertEquals(List.of("c"), textos(historial.leer(1, 4, 5, 0)));
+		assertEquals(List.of("d"), textos(historial.leer(1, 5, 5, 0)));
+		assertEquals(3 * 1024, historial.bytesUsados());
+	}
+
+	// Al reclamar un identificador se borran sus conversaciones (con cualquiera de los dos lados) y sus bytes
+	@Test
+	void olvidaLasConversacionesDeLosIdentificadoresReclamados() {
+		HistorialConversaciones historial = new HistorialConversaciones(1024 * 1024, 1024);
+		agregar(historial, 1, 2, "a");
+		agregar(historial, 3, 2, "b");
+		agregar(historial, 1, 3, "c");
+		BitSet reclamados = new BitSet();
+		reclamados.set(2);
+
+		historial.olvidar(reclamados);
+
+		assertEquals(List.of(), textos(historial.leer(1, 2, 5, 0)));
+		assertEquals(List.of(), textos(historial.leer(2, 3, 5, 0)));
+		assertEquals(List.of("c"), textos(historial.leer(1, 3, 5, 0)));
+		assertEquals(1024, historial.bytesUsados());
+	}
+
+	// Varios hilos anotan a la vez en conversaciones propias y en una compartida: las páginas quedan con secuencias
+	// seguidas y los mensajes de cada hilo en el orden en que los anotó
+	@Test
+	void anotarDesdeVariosHilosDejaLasPaginasConsistentes() throws Exception {
+		HistorialConversaciones historial = new HistorialConversaciones(32L * 1024 * 1024, 64 * 1024);
+		int hilos = 8;
+		int mensajes = 2000;
+		List<Thread> escritores = new ArrayList<>();
+		for (int h = 0; h < hilos; h++) {
+			int hilo = h;
+			escritores.add(Thread.ofPlatform().start(() -> {
+				for (int i = 0; i < mensajes; i++) {
+					agregar(historial, 100 + hilo, 200 + hilo, hilo + ":" + i);
+					agregar(historial, 1 + hilo % 2, 2 - hilo % 2, hilo + ":" + i);
+				}
+			}));
+		}
+		for (Thread escritor : escritores) {
+			escritor.join();
+		}
+
+		for (int h = 0; h < hilos; h++) {
+			HistorialConversaciones.Pagina pagina = historial.leer(200 + h, 100 + h, 10, 0);
+			assertEquals(mensajes, pagina.entradas().get(9).secuencia());
+			assertEquals(h + ":" + (mensajes - 1), textos(pagina).get(9));
+		}
+		// La conversación compartida se recorre página por página hasta el mensaje más antiguo que queda
+		int[] ultimo = new int[hilos];
+		Arrays.fill(ultimo, Integer.MAX_VALUE);
+		long esperada = hilos * mensajes;
+		long cursor = 0;
+		do {
+			HistorialConversaciones.Pagina pagina = historial.leer(1, 2, 50, cursor);
+			List<String> textos = textos(pagina);
+			for (int i = textos.size() - 1; i >= 0; i--) {
+				assertEquals(esperada--, pagina.entradas().get(i).secuencia());
+				String[] partes = textos.get(i).split(":");
+				int hilo = Integer.parseInt(partes[0]);
+				int indice = Integer.parseInt(partes[1]);
+				assertEquals(1 + hilo % 2, pagina.entradas().get(i).idRemitente());
+				assertTrue(indice < ultimo[hilo], "Desordenado: " + textos.get(i));
+				ultimo[hilo] = indice;
+			}
+			cursor = pagina.cursorAnterior();
+		} while (cursor != 0);
+	}
+
+	@Test
+	void elClientePideElHistorialAlServidor() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket ana = new Socket("localhost", puerto); Socket luis = new Socket("localhost", puerto)) {
+			PrintWriter salidaAna = new PrintWriter(ana.getOutputStream(), true);
+			BufferedReader entradaAna = abrir(ana);
+			PrintWriter salidaLuis = new PrintWriter(luis.getOutputStream(), true);
+			BufferedReader entradaLuis = abrir(luis);
+			salidaLuis.println("luis");
+			entradaLuis.readLine();
+			salidaAna.println("ana");
+			salidaAna.println("Privado:luis:uno");
+			salidaAna.println("Privado:luis:dos: con dos puntos");
+			salidaAna.println("Privado:luis:tres");
+			while (!entradaAna.readLine().equals("Privado:ana:tres")) {
+				// Lista y ecos anteriores
+			}
+
+			salidaLuis.println(ProtocoloCliente.lineaHistorial("ana", 2));
+			StringBuilder recibido = new StringBuilder();
+			long[] cursor = new long[1];
+			ProtocoloCliente.Oyente oyente = new ProtocoloCliente.Oyente() {
+				public void listaCompleta(List<String> clientes) {
+				}
+
+				public void entra(String cliente) {
+				}
+
+				public void sale(String cliente) {
+				}
+
+				public void mensajePrivado(String remitente, String texto) {
+				}
+
+				@Override
+				public void historial(String otro, long secuencia, String remitente, String texto) {
+					recibido.append(otro).append('|').append(secuencia).append('|').append(remitente).append('|').append(texto).append('\n');
+				}
+
+				@Override
+				public void finHistorial(String otro, long cursorAnterior) {
+					cursor[0] = cursorAnterior;
+				}
+			};
+			String linea;
+			while (!(linea = entradaLuis.readLine()).startsWith(HistorialConversaciones.PREFIJO_FIN)) {
+				ProtocoloCliente.procesar(linea, oyente);
+			}
+			ProtocoloCliente.procesar(linea, oyente);
+			assertEquals("ana|2|ana|dos: con dos puntos\nana|3|ana|tres\n", recibido.toString());
+			assertEquals(2, cursor[0]);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	private static void agregar(HistorialConversaciones historial, int remitente, int destinatario, String texto) {
+		byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+		historial.agregar(remitente, destinatario, bytes, 0, bytes.length);
+	}
+
+	private static List<String> textos(HistorialConversaciones.Pagina pagina) {
+		return pagina.entradas().stream().map(entrada -> new String(entrada.texto(), StandardCharsets.UTF_8)).toList();
+	}
+}
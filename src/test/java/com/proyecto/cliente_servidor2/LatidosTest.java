@@ -0,0 +1,80 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatidosTest {
+
+	// Ana deja de responder (como una conexión medio abierta) y se cierra; luis responde los pings y sigue conectado
+	@Test
+	void seCierraLaConexionQueNoRespondeLosPings() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setTicTemporizadoresMs(10);
+		configuracion.setIntervaloLatidoMs(100);
+		configuracion.setInactividadMs(400);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		long inactivasAntes = Metricas.CONEXIONES_INACTIVAS.sum();
+		try (Socket luis = new Socket("localhost", puerto); Socket ana = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(luis, "luis\n");
+			// Luis responde todos los pings; las demás líneas quedan en la cola
+			BlockingQueue<String> lineasLuis = new LinkedBlockingQueue<>();
+			AtomicInteger pingsLuis = new AtomicInteger();
+			Thread.ofVirtual().start(() -> {
+				try {
+					String linea;
+					while ((linea = entradaLuis.readLine()) != null) {
+						if (ProtocoloCliente.esPing(linea)) {
+							pingsLuis.incrementAndGet();
+							escribir(luis, ProtocoloCliente.lineaPong() + "\n");
+						} else {
+							lineasLuis.add(linea);
+						}
+					}
+				} catch (Exception e) {
+					// Socket cerrado al terminar la prueba
+				}
+				lineasLuis.add("fin de la conexión");
+			});
+
+			BufferedReader entradaAna = abrir(ana);
+			escribir(ana, "ana\n");
+			List<String> lineasAna = new ArrayList<>();
+			String linea;
+			while ((linea = entradaAna.readLine()) != null) {
+				lineasAna.add(linea);
+			}
+			assertTrue(lineasAna.contains(Latidos.LINEA_PING), "Ana no recibió pings: " + lineasAna);
+			assertTrue(Metricas.CONEXIONES_INACTIVAS.sum() - inactivasAntes >= 1);
+			do {
+				linea = lineasLuis.poll(10, TimeUnit.SECONDS);
+			} while (!(linea.startsWith(Presencia.PREFIJO_DELTA) && linea.contains("-ana")));
+
+			// Luis sigue conectado aunque pasa más que la inactividad sin enviar nada que no sea "Pong"
+			Thread.sleep(600);
+			escribir(luis, ProtocoloCliente.lineaPrivado("luis", "sigo aquí") + "\n");
+			do {
+				linea = lineasLuis.poll(10, TimeUnit.SECONDS);
+			} while (linea.startsWith(Presencia.PREFIJO_DELTA));
+			assertEquals("Privado:luis:sigo aquí", linea);
+			assertTrue(pingsLuis.get() > 0);
+		} finally {
+			servidor.detener();
+		}
+	}
+}
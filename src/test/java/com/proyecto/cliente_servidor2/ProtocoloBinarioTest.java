@@ -0,0 +1,111 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ProtocoloBinarioTest {
+
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void clienteBinarioYClienteDeTextoConversan(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+
+		try (Socket texto = new Socket("localhost", puerto); Socket binario = new Socket("localhost", puerto)) {
+			PrintWriter salidaTexto = new PrintWriter(texto.getOutputStream(), true);
+			BufferedReader entradaTexto = abrir(texto);
+			salidaTexto.println("ana");
+			assertEquals("Clientes conectados:ana, ", entradaTexto.readLine());
+
+			// Negociación: el nombre y "Modo:binario" se envían seguidos, sin esperar respuesta
+			DataOutputStream salidaBinaria = new DataOutputStream(binario.getOutputStream());
+			DataInputStream entradaBinaria = new DataInputStream(binario.getInputStream());
+			salidaBinaria.write("luis\nModo:binario\n".getBytes(StandardCharsets.UTF_8));
+			while (!leerLinea(entradaBinaria).equals(ProtocoloBinario.LINEA_NEGOCIACION)) {
+				// Líneas de texto enviadas antes de la confirmación
+			}
+
+			// Primera trama: la lista completa con identificadores
+			Map<String, Integer> ids = new HashMap<>();
+			byte[] lista = leerTrama(entradaBinaria, ProtocoloBinario.LISTA);
+			DataInputStream datosLista = new DataInputStream(new ByteArrayInputStream(lista));
+			int cantidad = datosLista.readInt();
+			for (int i = 0; i < cantidad; i++) {
+				int id = datosLista.readInt();
+				byte[] nombre = new byte[datosLista.readShort()];
+				datosLista.readFully(nombre);
+				ids.put(new String(nombre, StandardCharsets.UTF_8), id);
+			}
+
+			// Binario -> texto, con ':' dentro del mensaje
+			byte[] hora = "son las 10:30".getBytes(StandardCharsets.UTF_8);
+			salidaBinaria.writeInt(1 + 4 + hora.length);
+			salidaBinaria.writeByte(ProtocoloBinario.PRIVADO);
+			salidaBinaria.writeInt(ids.get("ana"));
+			salidaBinaria.write(hora);
+			salidaBinaria.flush();
+			assertEquals("Privado:luis:son las 10:30", siguientePrivado(entradaTexto));
+
+			// Texto -> binario
+			salidaTexto.println("Privado:luis:a:b:c");
+			byte[] privado;
+			do {
+				privado = leerTrama(entradaBinaria, ProtocoloBinario.PRIVADO);
+			} while (leerEntero(privado) != ids.get("ana"));
+			assertEquals("a:b:c", new String(privado, 4, privado.length - 4, StandardCharsets.UTF_8));
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	private static String siguientePrivado(BufferedReader entrada) throws IOException {
+		String linea;
+		do {
+			linea = entrada.readLine();
+		} while (!linea.startsWith("Privado:"));
+		return linea;
+	}
+
+	private static String leerLinea(DataInputStream entrada) throws IOException {
+		StringBuilder linea = new StringBuilder();
+		int b;
+		while ((b = entrada.read()) != '\n') {
+			linea.append((char) b);
+		}
+		return linea.toString();
+	}
+
+	// Lee tramas hasta encontrar una con el código pedido y devuelve sus datos
+	private static byte[] leerTrama(DataInputStream entrada, byte codigoBuscado) throws IOException {
+		while (true) {
+			int largo = entrada.readInt();
+			byte codigo = entrada.readByte();
+			byte[] datos = new byte[largo - 1];
+			entrada.readFully(datos);
+			if (codigo == codigoBuscado) {
+				return datos;
+			}
+		}
+	}
+
+	private static int leerEntero(byte[] datos) {
+		return ((datos[0] & 0xff) << 24) | ((datos[1] & 0xff) << 16) | ((datos[2] & 0xff) << 8) | (datos[3] & 0xff);
+	}
+}
@@ -0,0 +1,41 @@
+package com.proyecto.cliente_servidor2;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+// Ayudas comunes de las pruebas que hablan con el servidor por un socket de texto
+final class PruebasSocket {
+
+	private PruebasSocket() {
+	}
+
+	static BufferedReader abrir(Socket socket) throws IOException {
+		socket.setSoTimeout(10_000);
+		return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+	}
+
+	// Igual que abrir, para un cliente que pidió la salida comprimida
+	static BufferedReader abrirComprimido(Socket socket) throws IOException {
+		socket.setSoTimeout(10_000);
+		return new BufferedReader(new InputStreamReader(new EntradaComprimida(socket.getInputStream()),
+				StandardCharsets.UTF_8));
+	}
+
+	static void escribir(Socket socket, String texto) throws Exception {
+		socket.getOutputStream().write(texto.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// Método que lee hasta la primera línea que empieza por el prefijo; falla si el servidor cierra antes
+	static void esperarInicio(BufferedReader entrada, String prefijo) throws Exception {
+		String linea;
+		while ((linea = entrada.readLine()) != null) {
+			if (linea.startsWith(prefijo)) {
+				return;
+			}
+		}
+		throw new AssertionError("No llegó la línea " + prefijo);
+	}
+}
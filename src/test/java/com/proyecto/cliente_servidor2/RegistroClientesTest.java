@@ -0,0 +1,93 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class RegistroClientesTest {
+
+	// Varios hilos dan altas y bajas sin parar mientras el arreglo por identificador crece (la última copia es de
+	// millones de posiciones) y terminan la pasada en curso al acabar el crecimiento: ninguna escritura hecha durante
+	// una copia se pierde, aunque no se repita después
+	@Test
+	void lasAltasYBajasDuranteElCrecimientoNoSePierden() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setCapacidadSalida(1);
+		Servidor servidor = new Servidor(configuracion);
+		RegistroClientes registro = new RegistroClientes();
+		int hilos = 4;
+		int porHilo = 10_000;
+		int mayor = 1 << 22;
+		AtomicBoolean crecido = new AtomicBoolean();
+		List<ConexionPrueba[]> conexiones = new ArrayList<>();
+		List<boolean[]> registradas = new ArrayList<>();
+		List<Thread> trabajadores = new ArrayList<>();
+		for (int h = 0; h < hilos; h++) {
+			ConexionPrueba[] propias = new ConexionPrueba[porHilo];
+			for (int i = 0; i < porHilo; i++) {
+				propias[i] = new ConexionPrueba(servidor);
+				propias[i].setIdCliente(i * hilos + h + 1); // Los identificadores de todos los hilos se intercalan
+				propias[i].setNombreCliente("c" + propias[i].getIdCliente());
+			}
+			boolean[] registrada = new boolean[porHilo];
+			conexiones.add(propias);
+			registradas.add(registrada);
+			trabajadores.add(Thread.ofPlatform().start(() -> {
+				do {
+					pasada(registro, propias, registrada);
+				} while (!crecido.get());
+			}));
+		}
+
+		for (int largo = 2048; largo <= mayor; largo *= 2) {
+			registro.reservar(largo - 1);
+		}
+		crecido.set(true);
+		for (Thread trabajador : trabajadores) {
+			trabajador.join();
+		}
+
+		for (int h = 0; h < hilos; h++) {
+			for (int i = 0; i < porHilo; i++) {
+				ConexionPrueba conexion = conexiones.get(h)[i];
+				if (registradas.get(h)[i]) {
+					assertSame(conexion, registro.buscarPorId(conexion.getIdCliente()), "Id " + conexion.getIdCliente());
+				} else {
+					assertNull(registro.buscarPorId(conexion.getIdCliente()), "Id " + conexion.getIdCliente());
+				}
+			}
+		}
+	}
+
+	// Método que da de baja las conexiones registradas y registra las demás
+	private static void pasada(RegistroClientes registro, ConexionPrueba[] conexiones, boolean[] registradas) {
+		for (int i = 0; i < conexiones.length; i++) {
+			String nombre = conexiones[i].getNombreCliente();
+			if (registradas[i]) {
+				registro.eliminar(nombre, conexiones[i]);
+			} else {
+				registro.registrar(nombre, conexiones[i]);
+			}
+			registradas[i] = !registradas[i];
+		}
+	}
+
+	private static final class ConexionPrueba extends Conexion {
+		ConexionPrueba(Servidor servidor) {
+			super(servidor);
+		}
+
+		@Override
+		protected void hayDatosParaEnviar() {
+		}
+
+		@Override
+		protected void cerrarTransporte() {
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import javax.swing.ListModel;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RegistroConversacionesTest {
+
+	@Test
+	void cadaMensajeVaALaConversacionDeSuContacto() {
+		RegistroConversaciones registro = new RegistroConversaciones(10, 10);
+		registro.agregar("luis", "luis: hola");
+		registro.agregar("eva", "eva: buenas");
+		registro.agregar("luis", "luis: ¿estás?");
+		registro.publicarCambios();
+
+		assertEquals(List.of("luis: hola", "luis: ¿estás?"), mensajes(registro.buscar("luis").getMensajes()));
+		assertEquals(List.of("eva: buenas"), mensajes(registro.buscar("eva").getMensajes()));
+	}
+
+	// Al llenarse, los mensajes nuevos reemplazan a los más antiguos, y la lista recibe un solo aviso de cada tipo por lote
+	@Test
+	void elAnilloConservaLosUltimosYAvisaPorLote() {
+		RegistroConversaciones registro = new RegistroConversaciones(4, 10);
+		ListModel<String> modelo = registro.conversacion("luis").getMensajes();
+		List<String> avisos = new ArrayList<>();
+		modelo.addListDataListener(new ListDataListener() {
+			@Override
+			public void intervalAdded(ListDataEvent e) {
+				avisos.add("+" + e.getIndex0() + "-" + e.getIndex1());
+			}
+
+			@Override
+			public void intervalRemoved(ListDataEvent e) {
+				avisos.add("-" + e.getIndex0() + "-" + e.getIndex1());
+			}
+
+			@Override
+			public void contentsChanged(ListDataEvent e) {
+				avisos.add("cambio");
+			}
+		});
+
+		for (int i = 0; i < 3; i++) {
+			registro.agregar("luis", "m" + i);
+		}
+		registro.publicarCambios();
+		assertEquals(List.of("+0-2"), avisos);
+
+		avisos.clear();
+		for (int i = 3; i < 9; i++) {
+			registro.agregar("luis", "m" + i);
+		}
+		registro.publicarCambios();
+		// Las 3 filas conocidas se quitan y quedan 4 nuevas: m5..m8
+		assertEquals(List.of("-0-2", "+0-3"), avisos);
+		assertEquals(List.of("m5", "m6", "m7", "m8"), mensajes(modelo));
+
+		avisos.clear();
+		registro.agregar("luis", "m9");
+		registro.publicarCambios();
+		assertEquals(List.of("-0-0", "+3-3"), avisos);
+		assertEquals(List.of("m6", "m7", "m8", "m9"), mensajes(modelo));
+	}
+
+	@Test
+	void seOlvidaLaConversacionQueLlevaMasTiempoSinUsarse() {
+		RegistroConversaciones registro = new RegistroConversaciones(10, 3);
+		registro.agregar("a", "1");
+		registro.agregar("b", "1");
+		registro.agregar("c", "1");
+		registro.agregar("a", "2"); // "a" vuelve a ser reciente; la más antigua ahora es "b"
+		registro.agregar("d", "1");
+
+		assertEquals(3, registro.cantidad());
+		assertNull(registro.buscar("b"));
+		assertNotNull(registro.buscar("a"));
+		// Una conversación recreada empieza vacía y vuelve a pedir su historial
+		assertTrue(registro.conversacion("b").pedirHistorial());
+	}
+
+	private static List<String> mensajes(ListModel<String> modelo) {
+		List<String> mensajes = new ArrayList<>();
+		for (int i = 0; i < modelo.getSize(); i++) {
+			mensajes.add(modelo.getElementAt(i));
+		}
+		return mensajes;
+	}
+}
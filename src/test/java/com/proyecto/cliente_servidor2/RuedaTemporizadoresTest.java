@@ -0,0 +1,55 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RuedaTemporizadoresTest {
+
+	// Las tareas vencen en orden de plazo aunque den más de una vuelta a la rueda, y las canceladas no vencen
+	@Test
+	void vencenEnOrdenYLasCanceladasNo() throws Exception {
+		RuedaTemporizadores rueda = new RuedaTemporizadores(1);
+		try {
+			List<String> vencidas = new CopyOnWriteArrayList<>();
+			CountDownLatch ultima = new CountDownLatch(1);
+			RuedaTemporizadores.Tarea larga = tarea("larga", vencidas, ultima); // Más de 512 tics: una vuelta completa
+			RuedaTemporizadores.Tarea corta = tarea("corta", vencidas, null);
+			RuedaTemporizadores.Tarea media = tarea("media", vencidas, null);
+			RuedaTemporizadores.Tarea cancelada = tarea("cancelada", vencidas, null);
+			long inicio = System.nanoTime();
+			rueda.programar(larga, 700);
+			rueda.programar(media, 300);
+			rueda.programar(corta, 5);
+			rueda.programar(cancelada, 100);
+			rueda.programar(media, 200); // Reprogramar la mueve en lugar de duplicarla
+			rueda.cancelar(cancelada);
+			assertEquals(3, rueda.cantidad());
+
+			assertTrue(ultima.await(10, TimeUnit.SECONDS));
+			assertTrue(System.nanoTime() - inicio >= TimeUnit.MILLISECONDS.toNanos(700));
+			assertEquals(List.of("corta", "media", "larga"), vencidas);
+			assertEquals(0, rueda.cantidad());
+		} finally {
+			rueda.detener();
+		}
+	}
+
+	private static RuedaTemporizadores.Tarea tarea(String nombre, List<String> vencidas, CountDownLatch aviso) {
+		return new RuedaTemporizadores.Tarea() {
+			@Override
+			void vencer() {
+				vencidas.add(nombre);
+				if (aviso != null) {
+					aviso.countDown();
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,96 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// Comprueba que enrutar un mensaje privado de texto (lectura de la línea, búsqueda del destinatario, carga compartida,
+// colas de salida y copia al buffer de escritura) no reserva memoria por mensaje una vez que las reservas están calientes.
+class RuteoSinAsignacionesTest {
+
+	private static final int CALENTAMIENTO = 50_000;
+	private static final int MEDICION = 100_000;
+
+	@Test
+	void enrutarPrivadoNoReservaMemoriaPorMensaje() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		// La ráfaga alcanza para todos los mensajes: el límite por usuario se comprueba en cada uno sin descartar ninguno
+		configuracion.setRafagaMensajes(CALENTAMIENTO + MEDICION + 10);
+		Servidor servidor = new Servidor(configuracion);
+		try {
+			ConexionPrueba ana = new ConexionPrueba(servidor);
+			ConexionPrueba luis = new ConexionPrueba(servidor);
+			servidor.procesarLinea(ana, "ana");
+			servidor.procesarLinea(luis, "luis");
+
+			byte[] linea = "Privado:luis:hola mundo\n".getBytes(StandardCharsets.UTF_8);
+			ByteBuffer datos = ByteBuffer.wrap(linea);
+			for (int i = 0; i < CALENTAMIENTO; i++) {
+				ana.recibir(datos.rewind());
+			}
+			long bytesLuis = luis.escritos;
+
+			com.sun.management.ThreadMXBean hilos = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+			long antes = hilos.getCurrentThreadAllocatedBytes();
+			for (int i = 0; i < MEDICION; i++) {
+				ana.recibir(datos.rewind());
+			}
+			long porMensaje = (hilos.getCurrentThreadAllocatedBytes() - antes) / MEDICION;
+
+			int largoEntregado = "Privado:ana:hola mundo\n".length();
+			assertTrue(luis.escritos - bytesLuis >= (long) MEDICION * largoEntregado, "Faltan mensajes entregados");
+			assertEquals(0, (luis.escritos - bytesLuis) % largoEntregado);
+			assertTrue(porMensaje < 16, "Memoria reservada por mensaje: " + porMensaje + " bytes");
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Conexión sin socket que copia lo que llega a su cola con llenar(), como haría el escritor de un motor
+	private static final class ConexionPrueba extends Conexion {
+		private static final byte[] PRIVADO = "Privado:".getBytes(StandardCharsets.UTF_8);
+
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(PoolBuffers.TAMANO_BUFFER);
+		private long escritos; // Bytes copiados (sin contar los de la lista y los deltas de presencia)
+
+		ConexionPrueba(Servidor servidor) {
+			super(servidor);
+		}
+
+		@Override
+		protected synchronized void hayDatosParaEnviar() {
+			while (llenar(buffer)) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					escritos += contarPrivados(buffer);
+				}
+				buffer.clear();
+			}
+		}
+
+		// Cuenta los bytes de las líneas "Privado:" y descarta las demás (lista y deltas de presencia)
+		private static int contarPrivados(ByteBuffer datos) {
+			int inicio = datos.position();
+			int fin = inicio;
+			while (datos.get(fin) != '\n') {
+				fin++;
+			}
+			datos.position(fin + 1);
+			for (int i = 0; i < PRIVADO.length; i++) {
+				if (inicio + i >= fin || datos.get(inicio + i) != PRIVADO[i]) {
+					return 0;
+				}
+			}
+			return fin + 1 - inicio;
+		}
+
+		@Override
+		protected void cerrarTransporte() {
+		}
+	}
+}
@@ -0,0 +1,219 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SalasTest {
+
+	@Test
+	void soloLosMiembrosPublicanYReciben() {
+		Servidor servidor = new Servidor(new ConfiguracionServidor());
+		try {
+			ConexionPrueba ana = registrar(servidor, "ana");
+			ConexionPrueba luis = registrar(servidor, "luis");
+			ConexionPrueba eva = registrar(servidor, "eva");
+			servidor.procesarLinea(ana, ProtocoloCliente.lineaUnirse("general"));
+			servidor.procesarLinea(luis, ProtocoloCliente.lineaUnirse("general"));
+
+			enviar(servidor, ana, ProtocoloCliente.lineaSala("general", "hola: a todos"));
+			assertEquals(List.of("Sala:general:ana:hola: a todos"), ana.salas());
+			assertEquals(List.of("Sala:general:ana:hola: a todos"), luis.salas());
+
+			// Quien no es miembro no recibe ni puede publicar
+			enviar(servidor, eva, ProtocoloCliente.lineaSala("general", "intruso"));
+			assertEquals(List.of(), eva.salas());
+			assertEquals(1, luis.salas().size());
+
+			// Al salir (o desconectarse) deja de recibir
+			servidor.procesarLinea(luis, ProtocoloCliente.lineaSalir("general"));
+			enviar(servidor, ana, ProtocoloCliente.lineaSala("general", "adiós"));
+			assertEquals(1, luis.salas().size());
+			assertEquals("Sala:general:ana:adiós", ana.salas().get(1));
+			ana.cerrar();
+			assertTrue(servidor.getSalas().buscar("general") == null, "La sala vacía debe desaparecer");
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	@Test
+	void salaGrandeSeRepartePorCarrilesEnOrden() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setReactores(4);
+		Servidor servidor = new Servidor(configuracion);
+		try {
+			int miembros = 10_000;
+			int mensajes = 20;
+			List<ConexionPrueba> conexiones = new ArrayList<>(miembros);
+			for (int i = 0; i < miembros; i++) {
+				// Sin pasar por el registro, para no enviar la lista completa a cada uno
+				ConexionPrueba conexion = new ConexionPrueba(servidor);
+				conexion.setNombreCliente("miembro-" + i);
+				conexion.setIdCliente(i + 1);
+				servidor.procesarLinea(conexion, ProtocoloCliente.lineaUnirse("grande"));
+				conexiones.add(conexion);
+			}
+			assertEquals(miembros, servidor.getSalas().buscar("grande").tamano());
+
+			for (int m = 0; m < mensajes; m++) {
+				enviar(servidor, conexiones.get(0), ProtocoloCliente.lineaSala("grande", "mensaje " + m));
+			}
+
+			long limite = System.nanoTime() + 30_000_000_000L;
+			for (ConexionPrueba conexion : conexiones) {
+				while (conexion.salas().size() < mensajes && System.nanoTime() < limite) {
+					Thread.sleep(1);
+				}
+				List<String> recibidos = conexion.salas();
+				assertEquals(mensajes, recibidos.size(), "Faltan mensajes en " + conexion.getNombreCliente());
+				for (int m = 0; m < mensajes; m++) {
+					assertEquals("Sala:grande:miembro-0:mensaje " + m, recibidos.get(m));
+				}
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Una sala que sube y baja del umbral entre un mensaje y otro alterna reparto en el acto y por carriles; los mensajes
+	// repartidos en el acto no deben adelantar a los que todavía esperan en un carril
+	@Test
+	void alCruzarElUmbralSeConservaElOrden() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setReactores(4);
+		Servidor servidor = new Servidor(configuracion);
+		try {
+			int mensajes = 200;
+			List<ConexionPrueba> conexiones = new ArrayList<>();
+			for (int i = 0; i < Salas.UMBRAL_PARALELO - 1; i++) {
+				ConexionPrueba conexion = new ConexionPrueba(servidor);
+				conexion.setNombreCliente("miembro-" + i);
+				conexion.setIdCliente(i + 1);
+				servidor.procesarLinea(conexion, ProtocoloCliente.lineaUnirse("limite"));
+				conexiones.add(conexion);
+			}
+			conexiones.get(1).setLentaEnCarriles(true); // Su carril se atrasa frente al reparto en el acto
+			ConexionPrueba visitante = new ConexionPrueba(servidor);
+			visitante.setNombreCliente("visitante");
+			visitante.setIdCliente(Salas.UMBRAL_PARALELO);
+
+			// Con el visitante la sala llega al umbral (por carriles); sin él queda justo debajo (en el acto)
+			for (int m = 0; m < mensajes; m++) {
+				if (m % 2 == 0) {
+					servidor.procesarLinea(visitante, ProtocoloCliente.lineaUnirse("limite"));
+				} else {
+					servidor.procesarLinea(visitante, ProtocoloCliente.lineaSalir("limite"));
+				}
+				enviar(servidor, conexiones.get(0), ProtocoloCliente.lineaSala("limite", "mensaje " + m));
+			}
+
+			long limite = System.nanoTime() + 30_000_000_000L;
+			for (ConexionPrueba conexion : conexiones) {
+				while (conexion.salas().size() < mensajes && System.nanoTime() < limite) {
+					Thread.sleep(1);
+				}
+				List<String> recibidos = conexion.salas();
+				assertEquals(mensajes, recibidos.size(), "Faltan mensajes en " + conexion.getNombreCliente());
+				for (int m = 0; m < mensajes; m++) {
+					assertEquals("Sala:limite:miembro-0:mensaje " + m, recibidos.get(m), conexion.getNombreCliente());
+				}
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Una conexión que se cierra mientras se une a salas no queda como miembro de ninguna
+	@Test
+	void unirseMientrasSeCierraNoDejaMiembrosHuerfanos() throws Exception {
+		Servidor servidor = new Servidor(new ConfiguracionServidor());
+		try {
+			for (int intento = 0; intento < 200; intento++) {
+				ConexionPrueba conexion = registrar(servidor, "ana-" + intento);
+				Thread uniendo = new Thread(() -> {
+					for (int i = 0; i < 20; i++) {
+						servidor.procesarLinea(conexion, ProtocoloCliente.lineaUnirse("sala-" + i));
+					}
+				});
+				uniendo.start();
+				conexion.cerrar();
+				uniendo.join();
+			}
+			assertEquals(0, servidor.getSalas().cantidad());
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	private static ConexionPrueba registrar(Servidor servidor, String nombre) {
+		ConexionPrueba conexion = new ConexionPrueba(servidor);
+		servidor.procesarLinea(conexion, nombre);
+		return conexion;
+	}
+
+	// Envía la línea por el camino de bytes, como la recibiría un motor
+	private static void enviar(Servidor servidor, ConexionPrueba conexion, String linea) {
+		byte[] bytes = linea.getBytes(StandardCharsets.UTF_8);
+		servidor.procesarLinea(conexion, bytes, bytes.length);
+	}
+
+	// Conexión sin socket que copia lo que llega a su cola con llenar() y guarda las líneas de sala
+	private static final class ConexionPrueba extends Conexion {
+		private final ByteBuffer buffer = ByteBuffer.allocate(256);
+		private final ByteArrayOutputStream pendiente = new ByteArrayOutputStream();
+		private final List<String> salas = new ArrayList<>();
+		private volatile boolean lentaEnCarriles; // Tarda un milisegundo cada vez que un carril de las salas le encola
+
+		ConexionPrueba(Servidor servidor) {
+			super(servidor);
+		}
+
+		void setLentaEnCarriles(boolean lentaEnCarriles) {
+			this.lentaEnCarriles = lentaEnCarriles;
+		}
+
+		@Override
+		protected void hayDatosParaEnviar() {
+			if (lentaEnCarriles && Thread.currentThread().getName().startsWith("sala-reparto")) {
+				LockSupport.parkNanos(1_000_000); // Sin el candado, para no frenar a quien reparte en el acto
+			}
+			copiarLineas();
+		}
+
+		private synchronized void copiarLineas() {
+			while (llenar(buffer)) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					byte b = buffer.get();
+					if (b != '\n') {
+						pendiente.write(b);
+						continue;
+					}
+					String linea = pendiente.toString(StandardCharsets.UTF_8);
+					pendiente.reset();
+					if (linea.startsWith(Salas.PREFIJO_SALA)) {
+						salas.add(linea);
+					}
+				}
+				buffer.clear();
+			}
+		}
+
+		synchronized List<String> salas() {
+			return new ArrayList<>(salas);
+		}
+
+		@Override
+		protected void cerrarTransporte() {
+		}
+	}
+}
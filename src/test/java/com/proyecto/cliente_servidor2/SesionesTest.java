@@ -0,0 +1,254 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.BufferedReader;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.esperarInicio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SesionesTest {
+
+	// Ana pierde la conexión, luis le sigue escribiendo y ana reanuda: recibe solo lo que le faltaba y luis no ve su salida
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void alReanudarLlegaSoloLoQueFaltaSinAvisarALosDemas(String motor) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		long reanudadasAntes = Metricas.SESIONES_REANUDADAS.sum();
+		try (Socket luis = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			String token;
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaPedirSesion() + "\nana\n");
+				token = entradaAna.readLine().substring(Sesiones.PREFIJO_SESION.length());
+				esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+				escribir(luis, "luis\n");
+				esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+				for (int i = 1; i <= 3; i++) {
+					escribir(luis, ProtocoloCliente.lineaPrivado("ana", "mensaje " + i) + "\n");
+				}
+				esperarInicio(entradaAna, "Privado:luis:mensaje 1");
+				esperarInicio(entradaAna, "Privado:luis:mensaje 2");
+				esperarInicio(entradaAna, "Privado:luis:mensaje 3");
+			}
+
+			// Lo que se envía durante el corte queda en la sesión, aunque el servidor aún no haya notado el cierre
+			for (int i = 4; i <= 6; i++) {
+				escribir(luis, ProtocoloCliente.lineaPrivado("ana", "mensaje " + i) + "\n");
+			}
+			esperarInicio(entradaLuis, "Privado:luis:mensaje 6"); // El eco indica que ya se encoló para ana
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaReanudar(token, 3) + "\n");
+				assertEquals(Sesiones.PREFIJO_SESION + token, entradaAna.readLine());
+				for (int i = 4; i <= 6; i++) {
+					assertEquals("Privado:luis:mensaje " + i, entradaAna.readLine());
+				}
+				String lista = entradaAna.readLine();
+				assertTrue(lista.startsWith(Presencia.PREFIJO_LISTA) && lista.contains("luis"), lista);
+
+				// La conexión nueva ocupa el lugar de la anterior: los mensajes siguientes llegan por ella
+				escribir(luis, ProtocoloCliente.lineaPrivado("ana", "fin") + "\n");
+				String siguiente;
+				do {
+					siguiente = entradaAna.readLine(); // Puede llegar antes un delta de presencia que estaba pendiente
+				} while (siguiente.startsWith(Presencia.PREFIJO_DELTA));
+				assertEquals("Privado:luis:fin", siguiente);
+				String linea;
+				while (!(linea = entradaLuis.readLine()).endsWith("fin")) {
+					assertFalse(linea.startsWith(Presencia.PREFIJO_DELTA) && linea.contains("-ana"), linea);
+				}
+				assertEquals(1, Metricas.SESIONES_REANUDADAS.sum() - reanudadasAntes);
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Ana deja de leer y su cola se llena: en lugar de descartar mensajes ya numerados, el servidor cierra su conexión.
+	// Al reanudar con lo que contó, recibe el resto sin huecos ni repetidos
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void conLaColaLlenaSeCierraYSeReanudaSinHuecos(String motor) throws Exception {
+		int maximo = 20_000;
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		configuracion.setTasaMensajes(0);
+		configuracion.setCapacidadSalida(16);
+		configuracion.setRetransmisionSesion(maximo);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		String relleno = "x".repeat(1000);
+		try (Socket luis = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			String token;
+			int mensajes = 0;
+			int recibidos = 0;
+			try (Socket ana = new Socket()) {
+				ana.setReceiveBufferSize(4096); // Que el socket no absorba la ráfaga y se llene la cola
+				ana.connect(new InetSocketAddress("localhost", puerto));
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaPedirSesion() + "\nana\n");
+				token = entradaAna.readLine().substring(Sesiones.PREFIJO_SESION.length());
+				esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+				escribir(luis, "luis\n");
+				esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+
+				// Ana no lee mientras luis le envía tandas hasta que su cola se llena (los buffers del socket absorben
+				// bastante antes); el eco de "fin" de cada tanda indica que ya se encoló
+				long desconectadosAntes = Metricas.CLIENTES_LENTOS_DESCONECTADOS.sum();
+				while (Metricas.CLIENTES_LENTOS_DESCONECTADOS.sum() == desconectadosAntes) {
+					assertTrue(mensajes < maximo, "La cola de ana nunca se llenó");
+					StringBuilder tanda = new StringBuilder();
+					for (int i = 0; i < 100; i++, mensajes++) {
+						tanda.append(ProtocoloCliente.lineaPrivado("ana", mensajes + ":" + relleno)).append('\n');
+					}
+					escribir(luis, tanda + ProtocoloCliente.lineaPrivado("luis", "fin " + mensajes) + "\n");
+					esperarInicio(entradaLuis, "Privado:luis:fin " + mensajes);
+				}
+
+				// Lo que quedó en el socket llega en orden hasta que la conexión cerrada termina; se cuenta como el
+				// cliente, sin la última línea si el cierre la cortó
+				ConexionCliente.LectorLineasCompletas resto = new ConexionCliente.LectorLineasCompletas(entradaAna);
+				String linea;
+				while ((linea = resto.leer()) != null) {
+					if (linea.startsWith(ProtocoloCliente.PREFIJO_PRIVADO)) {
+						assertEquals("Privado:luis:" + recibidos + ":" + relleno, linea);
+						recibidos++;
+					}
+				}
+			}
+
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaReanudar(token, recibidos) + "\n");
+				assertEquals(Sesiones.PREFIJO_SESION + token, entradaAna.readLine());
+				while (recibidos < mensajes) {
+					String linea = entradaAna.readLine();
+					assertNotNull(linea, "Se cerró la conexión tras " + recibidos + " mensajes");
+					if (linea.startsWith(ProtocoloCliente.PREFIJO_PRIVADO)) {
+						assertEquals("Privado:luis:" + recibidos + ":" + relleno, linea);
+						recibidos++;
+					}
+				}
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Si la gracia vence, el cliente sale como siempre y la reanudación se rechaza; puede registrarse de nuevo
+	@Test
+	void laSesionVencidaNoSePuedeReanudar() throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setGraciaSesionMs(100);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket luis = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			String token;
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaPedirSesion() + "\nana\n");
+				token = entradaAna.readLine().substring(Sesiones.PREFIJO_SESION.length());
+				esperarCambio(entradaLuis, "+ana");
+			}
+			esperarCambio(entradaLuis, "-ana");
+
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaReanudar(token, 3) + "\n");
+				assertEquals(Sesiones.LINEA_EXPIRADA, entradaAna.readLine());
+				escribir(ana, ProtocoloCliente.lineaPedirSesion() + "\nana\n");
+				String nueva = entradaAna.readLine();
+				assertTrue(nueva.startsWith(Sesiones.PREFIJO_SESION), nueva);
+				assertNotEquals(Sesiones.PREFIJO_SESION + token, nueva);
+				esperarCambio(entradaLuis, "+ana");
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Lo que llega durante la gracia solo queda en el anillo; si la sesión vence, pasa al diario y ana lo recibe al volver
+	// a registrarse, sin repetir lo que ya había recibido antes del corte
+	@Test
+	void alVencerLoPendienteQuedaEnElDiario(@TempDir Path directorio) throws Exception {
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setGraciaSesionMs(500);
+		configuracion.setDirectorioDiario(directorio.toString());
+		configuracion.setSincronizarDiario(false);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket luis = new Socket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, ProtocoloCliente.lineaPedirSesion() + "\nana\n");
+				esperarCambio(entradaLuis, "+ana");
+				escribir(luis, ProtocoloCliente.lineaPrivado("ana", "antes") + "\n");
+				esperarInicio(entradaAna, "Privado:luis:antes");
+			}
+			Thread.sleep(100); // Que el servidor note el cierre antes de los mensajes siguientes
+			for (int i = 1; i <= 3; i++) {
+				escribir(luis, ProtocoloCliente.lineaPrivado("ana", "durante " + i) + "\n");
+			}
+			esperarInicio(entradaLuis, "Privado:luis:durante 3");
+			esperarCambio(entradaLuis, "-ana");
+
+			try (Socket ana = new Socket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, "ana\n");
+				List<String> privados = new ArrayList<>();
+				String linea;
+				do {
+					linea = entradaAna.readLine();
+					assertNotNull(linea, "Se cerró la conexión; llegaron " + privados);
+					if (linea.startsWith(ProtocoloCliente.PREFIJO_PRIVADO)) {
+						privados.add(linea);
+					}
+				} while (!linea.equals("Privado:luis:durante 3"));
+				assertEquals(List.of("Privado:luis:durante 1", "Privado:luis:durante 2", "Privado:luis:durante 3"), privados);
+			}
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// La presencia se agrupa: el cambio puede llegar junto con otros en la misma línea
+	private static void esperarCambio(BufferedReader entrada, String cambio) throws Exception {
+		String linea;
+		while ((linea = entrada.readLine()) != null) {
+			if (linea.startsWith(Presencia.PREFIJO_DELTA) && linea.contains(cambio)) {
+				return;
+			}
+		}
+		throw new AssertionError("No llegó el cambio " + cambio);
+	}
+}
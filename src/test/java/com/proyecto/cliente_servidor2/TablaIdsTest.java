@@ -0,0 +1,63 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TablaIdsTest {
+
+	// Pasado el máximo se reclaman los nombres sin uso que nadie pidió desde la reclamación anterior; sus números
+	// esperan una reclamación en cuarentena antes de volver a asignarse
+	@Test
+	void reclamaLosNombresSinUsoYReutilizaSusNumerosTrasLaCuarentena() {
+		List<BitSet> olvidados = new ArrayList<>();
+		TablaIds ids = new TablaIds(4, Set.of("a")::contains, olvidados::add);
+		for (String nombre : List.of("a", "b", "c", "d")) {
+			ids.id(nombre);
+		}
+
+		// Primera reclamación: todos se pidieron en esta época, así que no se reclama nada
+		assertEquals(5, ids.id("e"));
+		for (String nombre : List.of("f", "g", "h")) {
+			ids.id(nombre);
+		}
+
+		// Segunda: b, c y d no están en uso ni se volvieron a pedir; "a" está en uso
+		assertEquals(9, ids.id("i"));
+		assertEquals(BitSet.valueOf(new long[] {0b11100}), olvidados.get(olvidados.size() - 1));
+		assertFalse(ids.conoce("b"));
+		assertNull(ids.nombre(3));
+		assertNull(ids.buscar(ClaveNombre.copia("d")));
+		assertEquals(1, ids.id("a"));
+		assertEquals(6, ids.tamano());
+
+		// Mientras dura la cuarentena los números nuevos siguen creciendo; en la siguiente reclamación vuelven a estar libres
+		for (String nombre : List.of("j", "k", "l", "m")) {
+			assertTrue(ids.id(nombre) >= 10);
+		}
+		int reutilizado = ids.id("n");
+		assertTrue(reutilizado >= 2 && reutilizado <= 4, "Número asignado: " + reutilizado);
+		assertTrue(olvidados.get(olvidados.size() - 1).get(reutilizado));
+		assertEquals("n", ids.nombre(reutilizado));
+		assertEquals(reutilizado, ids.buscar(ClaveNombre.copia("n")));
+	}
+
+	// Un nombre recién asignado ya se puede buscar por sus bytes y por su número
+	@Test
+	void elNombreNuevoSeBuscaPorBytesYPorNumero() {
+		TablaIds ids = new TablaIds();
+		int id = ids.id("ana");
+		assertEquals(id, ids.buscar(ClaveNombre.copia("ana")));
+		assertEquals("ana", ids.nombre(id));
+		assertEquals(id, ids.id(new String("ana".getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)));
+	}
+}
@@ -0,0 +1,111 @@
+package com.proyecto.cliente_servidor2;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedReader;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static com.proyecto.cliente_servidor2.PruebasSocket.abrir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.escribir;
+import static com.proyecto.cliente_servidor2.PruebasSocket.esperarInicio;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TlsTest {
+
+	// Ana y luis conversan por TLS; solo el primer saludo es completo y los demás reanudan la sesión con el ticket
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void conversaCifradoYReanudaLaSesion(String motor, @TempDir Path directorio) throws Exception {
+		String almacen = directorio.resolve("servidor.p12").toString();
+		ContextoTls.generarAutofirmado(Path.of(almacen), "secreto", "localhost");
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		configuracion.setAlmacenTls(almacen);
+		configuracion.setClaveTls("secreto");
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		SSLSocketFactory fabrica = ContextoTls.fabricaCliente(almacen, "secreto");
+		long saludosAntes = Metricas.TLS_SALUDOS.sum();
+		long completosAntes = Metricas.TLS_SALUDOS_COMPLETOS.sum();
+		try (Socket luis = fabrica.createSocket("localhost", puerto)) {
+			BufferedReader entradaLuis = abrir(luis);
+			escribir(luis, "luis\n");
+			esperarInicio(entradaLuis, Presencia.PREFIJO_LISTA);
+			try (Socket ana = fabrica.createSocket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, "ana\n");
+				esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+
+				// Más de un registro TLS en cada sentido, para que lleguen registros partidos entre lecturas
+				String texto = "x".repeat(1000);
+				StringBuilder mensajes = new StringBuilder();
+				for (int i = 0; i < 200; i++) {
+					mensajes.append(ProtocoloCliente.lineaPrivado("ana", i + ":" + texto)).append('\n');
+				}
+				escribir(luis, mensajes.toString());
+				for (int i = 0; i < 200; i++) {
+					String linea;
+					do {
+						linea = entradaAna.readLine();
+					} while (linea.startsWith(Presencia.PREFIJO_DELTA));
+					assertEquals("Privado:luis:" + i + ":" + texto, linea);
+				}
+			}
+
+			// Ana reconecta y reanuda la sesión TLS
+			try (Socket ana = fabrica.createSocket("localhost", puerto)) {
+				BufferedReader entradaAna = abrir(ana);
+				escribir(ana, "ana\n");
+				esperarInicio(entradaAna, Presencia.PREFIJO_LISTA);
+				escribir(ana, ProtocoloCliente.lineaPrivado("luis", "volví") + "\n");
+				esperarInicio(entradaLuis, "Privado:ana:volví");
+			}
+			assertEquals(3, Metricas.TLS_SALUDOS.sum() - saludosAntes);
+			assertEquals(1, Metricas.TLS_SALUDOS_COMPLETOS.sum() - completosAntes);
+		} finally {
+			servidor.detener();
+		}
+	}
+
+	// Un aviso encolado mientras el cliente aún no empezó el saludo (el drenado avisa a todas las conexiones) se envía
+	// cuando el saludo termina, sin intentar cifrarlo antes (lo que cerraría la conexión)
+	@ParameterizedTest
+	@ValueSource(strings = {ConfiguracionServidor.MOTOR_NIO, ConfiguracionServidor.MOTOR_VIRTUAL})
+	void loEncoladoAntesDelSaludoEsperaASuFin(String motor, @TempDir Path directorio) throws Exception {
+		String almacen = directorio.resolve("servidor.p12").toString();
+		ContextoTls.generarAutofirmado(Path.of(almacen), "secreto", "localhost");
+		ConfiguracionServidor configuracion = new ConfiguracionServidor();
+		configuracion.setPuerto(0);
+		configuracion.setMotor(motor);
+		configuracion.setAlmacenTls(almacen);
+		configuracion.setClaveTls("secreto");
+		configuracion.setVentanaDrenadoMs(100);
+		Servidor servidor = new Servidor(configuracion);
+		int puerto = servidor.iniciar();
+		try (Socket tcp = new Socket("localhost", puerto)) {
+			while (servidor.getAdmision().abiertas() == 0) {
+				Thread.sleep(10);
+			}
+			Thread.sleep(100); // Que el motor termine de registrar la conexión
+			CompletableFuture<Integer> drenado = CompletableFuture.supplyAsync(servidor::drenar);
+			Thread.sleep(100); // El aviso ya está en la cola de salida
+			try (Socket luis = ContextoTls.fabricaCliente(almacen, "secreto").createSocket(tcp, "localhost", puerto, true)) {
+				BufferedReader entradaLuis = abrir(luis);
+				escribir(luis, "luis\n");
+				String linea = entradaLuis.readLine();
+				assertTrue(ProtocoloCliente.esperaReconectar(linea) >= 0, linea);
+			}
+			assertEquals(0, drenado.get(10, TimeUnit.SECONDS));
+		} finally {
+			servidor.detener();
+		}
+	}
+}